@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+final class ClientConnection {
+  private final SocketChannel channel;
+  private final ResponseParser parser = new ResponseParser();
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024).flip();
+  private final Deque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+  private final long[] sendTimes;
+  private SelectionKey key;
+  private int firstSendTime = 0;
+  private int inFlight = 0;
+  private int nextRequest;
+  private boolean connected = false;
+  boolean ready = false;
+
+  ClientConnection(final SocketChannel channel, final int pipeline, final int firstRequest) {
+    this.channel = channel;
+    this.sendTimes = new long[pipeline];
+    this.nextRequest = firstRequest;
+  }
+
+  void setKey(final SelectionKey key) {
+    this.key = key;
+  }
+
+  SelectionKey getKey() {
+    return key;
+  }
+
+  boolean finishConnect() throws IOException {
+    connected = channel.finishConnect();
+    if (connected) {
+      key.interestOps(SelectionKey.OP_READ);
+    }
+    return connected;
+  }
+
+  boolean isConnected() {
+    return connected;
+  }
+
+  boolean canSend() {
+    return connected && inFlight < sendTimes.length;
+  }
+
+  int getInFlight() {
+    return inFlight;
+  }
+
+  void send(final Corpus corpus, final long sendTime) throws IOException {
+    sendTimes[(firstSendTime + inFlight) % sendTimes.length] = sendTime;
+    inFlight++;
+    pendingWrites.add(corpus.get(nextRequest++));
+    flush();
+  }
+
+  void flush() throws IOException {
+    while (!pendingWrites.isEmpty()) {
+      final var buffer = pendingWrites.peek();
+      channel.write(buffer);
+      if (buffer.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+      pendingWrites.poll();
+    }
+    key.interestOps(SelectionKey.OP_READ);
+  }
+
+  boolean read() throws IOException {
+    readBuffer.compact();
+    final var read = channel.read(readBuffer);
+    readBuffer.flip();
+    if (read < 0) {
+      throw new IOException("Connection closed by the server");
+    }
+    return read > 0;
+  }
+
+  // Returns the send time of the oldest request in flight once its response is complete, or -1
+  // if the buffered bytes do not complete a response.
+  long nextResponse() throws IOException {
+    if (inFlight == 0 || !parser.parse(readBuffer)) {
+      if (inFlight == 0 && readBuffer.hasRemaining()) {
+        throw new IOException("Received a response without a request");
+      }
+      return -1;
+    }
+
+    final var sendTime = sendTimes[firstSendTime];
+    firstSendTime = (firstSendTime + 1) % sendTimes.length;
+    inFlight--;
+    return sendTime;
+  }
+
+  int getStatus() {
+    return parser.getStatus();
+  }
+
+  void close() {
+    try {
+      channel.close();
+    } catch (final IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+final class ClientLoop implements Runnable {
+  private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+  private final Selector selector;
+  private final Corpus corpus;
+  private final int pipeline;
+  private final long warmupNanos;
+  private final long durationNanos;
+  private final long intervalNanos;
+  private final List<ClientConnection> connections = new ArrayList<>();
+  private final Deque<ClientConnection> readyConnections = new ArrayDeque<>();
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  // intended send times of open-loop requests that found no connection ready to take them
+  private long[] backlog = new long[1024];
+  private int backlogStart = 0;
+  private int backlogSize = 0;
+  private int pendingConnects = 0;
+  private long measureStart;
+  private long sendEnd;
+  private long completed = 0;
+  private long errors = 0;
+  private long connectionErrors = 0;
+  private long maxBacklog = 0;
+
+  ClientLoop(final LoadGeneratorOptions options, final Corpus corpus, final long rate)
+      throws IOException {
+    this.selector = Selector.open();
+    this.corpus = corpus;
+    this.pipeline = options.pipeline;
+    this.warmupNanos = options.warmup.toNanos();
+    this.durationNanos = options.duration.toNanos();
+    this.intervalNanos = rate > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+  }
+
+  static SocketChannel open(final SocketAddress address) throws IOException {
+    if (address instanceof UnixDomainSocketAddress) {
+      return SocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+
+    final var channel = SocketChannel.open();
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    return channel;
+  }
+
+  void connect(final SocketAddress address) throws IOException {
+    final var channel = open(address);
+    channel.configureBlocking(false);
+
+    final var connection = new ClientConnection(channel, pipeline, connections.size());
+    connections.add(connection);
+    connection.setKey(channel.register(selector, SelectionKey.OP_CONNECT, connection));
+    // unix domain sockets connect immediately and never become connectable
+    if (channel.connect(address)) {
+      connection.finishConnect();
+    } else {
+      pendingConnects++;
+    }
+  }
+
+  private boolean isOpenLoop() {
+    return intervalNanos > 0;
+  }
+
+  private void addBacklog(final long intendedTime) {
+    if (backlogSize == backlog.length) {
+      final var grown = new long[backlog.length * 2];
+      for (var i = 0; i < backlogSize; i++) {
+        grown[i] = backlog[(backlogStart + i) % backlog.length];
+      }
+      backlog = grown;
+      backlogStart = 0;
+    }
+    backlog[(backlogStart + backlogSize) % backlog.length] = intendedTime;
+    backlogSize++;
+    maxBacklog = Math.max(maxBacklog, backlogSize);
+  }
+
+  private long pollBacklog() {
+    final var intendedTime = backlog[backlogStart];
+    backlogStart = (backlogStart + 1) % backlog.length;
+    backlogSize--;
+    return intendedTime;
+  }
+
+  private void markReady(final ClientConnection connection) {
+    if (!connection.ready && connection.canSend()) {
+      connection.ready = true;
+      readyConnections.add(connection);
+    }
+  }
+
+  private void sendScheduled(final long intendedTime) throws IOException {
+    ClientConnection connection;
+    while ((connection = readyConnections.poll()) != null) {
+      connection.ready = false;
+      if (connection.canSend()) {
+        connection.send(corpus, intendedTime);
+        markReady(connection);
+        return;
+      }
+    }
+    addBacklog(intendedTime);
+  }
+
+  private void fillConnection(final ClientConnection connection, final long now)
+      throws IOException {
+    if (isOpenLoop()) {
+      while (backlogSize > 0 && connection.canSend()) {
+        connection.send(corpus, pollBacklog());
+      }
+      markReady(connection);
+    } else if (now < sendEnd) {
+      while (connection.canSend()) {
+        connection.send(corpus, now);
+      }
+    }
+  }
+
+  private void onReadable(final ClientConnection connection) throws IOException {
+    if (!connection.read()) {
+      return;
+    }
+
+    long sendTime;
+    while ((sendTime = connection.nextResponse()) >= 0) {
+      final var now = System.nanoTime();
+      // open-loop send times are the intended ones, so time spent waiting for a free
+      // connection counts towards the latency and coordinated omission is corrected for
+      if (sendTime >= measureStart && sendTime < sendEnd) {
+        histogram.record(now - sendTime);
+        completed++;
+        if (connection.getStatus() >= 400) {
+          errors++;
+        }
+      }
+      fillConnection(connection, now);
+    }
+  }
+
+  private void onSelected(final SelectionKey key) {
+    final var connection = (ClientConnection) key.attachment();
+    try {
+      if (key.isConnectable()) {
+        if (connection.finishConnect()) {
+          pendingConnects--;
+          fillConnection(connection, System.nanoTime());
+        }
+        return;
+      }
+      if (key.isWritable()) {
+        connection.flush();
+      }
+      if (key.isReadable()) {
+        onReadable(connection);
+      }
+    } catch (final IOException exception) {
+      if (!connection.isConnected()) {
+        pendingConnects--;
+      }
+      connectionErrors++;
+      errors += connection.getInFlight();
+      connections.remove(connection);
+      connection.close();
+    }
+  }
+
+  private boolean isIdle() {
+    for (var connection : connections) {
+      if (connection.getInFlight() > 0) {
+        return false;
+      }
+    }
+    return backlogSize == 0;
+  }
+
+  private void select(final long timeout) throws IOException {
+    if (timeout < TimeUnit.MILLISECONDS.toNanos(1)) {
+      selector.selectNow();
+    } else {
+      selector.select(TimeUnit.NANOSECONDS.toMillis(timeout));
+    }
+
+    final var iterator = selector.selectedKeys().iterator();
+    while (iterator.hasNext()) {
+      final var key = iterator.next();
+      iterator.remove();
+      onSelected(key);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      // the clock only starts once every connection is established, so a slow connection setup
+      // does not show up as a backlog of open-loop requests
+      while (pendingConnects > 0) {
+        select(TimeUnit.MILLISECONDS.toNanos(100));
+      }
+
+      final var start = System.nanoTime();
+      measureStart = start + warmupNanos;
+      sendEnd = measureStart + durationNanos;
+      var nextSend = start;
+
+      for (var connection : List.copyOf(connections)) {
+        fillConnection(connection, start);
+      }
+
+      while (!connections.isEmpty()) {
+        final var now = System.nanoTime();
+        if (now >= sendEnd && (isIdle() || now >= sendEnd + DRAIN_TIMEOUT)) {
+          break;
+        }
+
+        var timeout = TimeUnit.MILLISECONDS.toNanos(100);
+        if (isOpenLoop() && nextSend < sendEnd) {
+          while (nextSend <= now && nextSend < sendEnd) {
+            sendScheduled(nextSend);
+            nextSend += intervalNanos;
+          }
+          timeout = nextSend - now;
+        }
+
+        select(timeout);
+      }
+    } catch (final IOException exception) {
+      throw new IllegalStateException(exception);
+    } finally {
+      // requests that never got a response within the drain timeout count as errors
+      for (var connection : connections) {
+        errors += connection.getInFlight();
+        connection.close();
+      }
+      errors += backlogSize;
+
+      try {
+        selector.close();
+      } catch (final IOException ignored) {
+      }
+    }
+  }
+
+  LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  long getCompleted() {
+    return completed;
+  }
+
+  long getErrors() {
+    return errors;
+  }
+
+  long getConnectionErrors() {
+    return connectionErrors;
+  }
+
+  long getMaxBacklog() {
+    return maxBacklog;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+final class Corpus {
+  static final String DEFAULT_REQUESTS =
+      "GET / HTTP/1.1\nHost: localhost\nUser-Agent: reactive-http-server-loadgen\nAccept: */*\n\n"
+          + "GET /index.html?page=1&sort=asc HTTP/1.1\nHost: localhost\nAccept: text/html\n"
+          + "Accept-Encoding: gzip, deflate\nAccept-Language: en-US,en;q=0.9\nCookie: a=1; b=2\n\n";
+
+  private final ByteBuffer[] requests;
+
+  private Corpus(final ByteBuffer[] requests) {
+    if (requests.length == 0) {
+      throw new IllegalArgumentException("The corpus does not contain any request heads");
+    }
+    this.requests = requests;
+  }
+
+  // Request heads are separated by blank lines and may use either LF or CRLF line endings.
+  static Corpus parse(final String text) {
+    final List<ByteBuffer> requests = new ArrayList<>();
+    final var head = new StringBuilder();
+    for (var line : text.split("\r?\n", -1)) {
+      if (line.isEmpty()) {
+        if (head.length() > 0) {
+          head.append("\r\n");
+          requests.add(
+              ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1))
+                  .asReadOnlyBuffer());
+          head.setLength(0);
+        }
+      } else {
+        head.append(line).append("\r\n");
+      }
+    }
+
+    if (head.length() > 0) {
+      throw new IllegalArgumentException("The last request head is not terminated");
+    }
+
+    return new Corpus(requests.toArray(new ByteBuffer[0]));
+  }
+
+  static Corpus load(final Path path) throws IOException {
+    return parse(Files.readString(path, StandardCharsets.ISO_8859_1));
+  }
+
+  int size() {
+    return requests.length;
+  }
+
+  ByteBuffer get(final int index) {
+    return requests[index % requests.length].duplicate();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.util.Arrays;
+
+final class LatencyHistogram {
+  // values below 256ns are recorded exactly, larger ones in buckets of 128 per power of two,
+  // which keeps the relative error of every percentile under one percent
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_COUNT = SUB_BUCKET_COUNT * 2;
+
+  private final long[] counts = new long[LINEAR_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT];
+  private long totalCount = 0;
+  private long maxValue = 0;
+  private double sum = 0;
+
+  static int indexOf(final long value) {
+    if (value < LINEAR_COUNT) {
+      return (int) value;
+    }
+
+    final var shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return LINEAR_COUNT
+        + (shift - 1) * SUB_BUCKET_COUNT
+        + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+  }
+
+  static long highestValueAt(final int index) {
+    if (index < LINEAR_COUNT) {
+      return index;
+    }
+
+    final var shift = (index - LINEAR_COUNT) / SUB_BUCKET_COUNT + 1;
+    final long subBucket = (index - LINEAR_COUNT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  void record(final long value) {
+    final var clamped = Math.max(0, value);
+    counts[indexOf(clamped)]++;
+    totalCount++;
+    maxValue = Math.max(maxValue, clamped);
+    sum += clamped;
+  }
+
+  void add(final LatencyHistogram other) {
+    for (var i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    maxValue = Math.max(maxValue, other.maxValue);
+    sum += other.sum;
+  }
+
+  void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    maxValue = 0;
+    sum = 0;
+  }
+
+  long getTotalCount() {
+    return totalCount;
+  }
+
+  long getMaxValue() {
+    return maxValue;
+  }
+
+  double getMean() {
+    return totalCount == 0 ? 0 : sum / totalCount;
+  }
+
+  long getValueAtPercentile(final double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+
+    final var target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+    var seen = 0L;
+    for (var i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(highestValueAt(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.server.HttpServer;
+
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class LoadGenerator {
+  private final LoadGeneratorOptions options;
+  private final Corpus corpus;
+
+  LoadGenerator(final LoadGeneratorOptions options, final Corpus corpus) {
+    this.options = options;
+    this.corpus = corpus;
+  }
+
+  static HttpServer embeddedServer(final LoadGeneratorOptions options) {
+    final var response =
+        new HttpResponse(
+            HttpStatus.OK,
+            new HttpHeaders().add("Content-Type", "text/plain"),
+            ByteBuffer.wrap("Hello, world!".getBytes()).asReadOnlyBuffer());
+
+    final var builder =
+        HttpServer.builder(request -> response)
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(options.serverEventLoops)
+            .reusePort(options.serverReusePort);
+    if (options.serverSocket != null) {
+      builder.unixDomainSocket(options.serverSocket);
+    }
+    return builder.build();
+  }
+
+  Report run(final SocketAddress address) throws Exception {
+    return options.storm ? runStorm(address) : runKeepAlive(address);
+  }
+
+  private Report runStorm(final SocketAddress address) throws InterruptedException {
+    final List<StormWorker> workers = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+    for (var i = 0; i < options.connections; i++) {
+      final var worker = new StormWorker(address, options);
+      final var thread = new Thread(worker, String.format("loadgen-storm-%d", i));
+      workers.add(worker);
+      threads.add(thread);
+      thread.start();
+    }
+    for (var thread : threads) {
+      thread.join();
+    }
+
+    final var report = new Report(options);
+    for (var worker : workers) {
+      report.add(worker);
+    }
+    return report;
+  }
+
+  private Report runKeepAlive(final SocketAddress address) throws Exception {
+    final List<ClientLoop> loops = new ArrayList<>();
+    for (var i = 0; i < options.threads; i++) {
+      // spread the rate so the loops together send exactly the requested number per second
+      final var rate =
+          options.rate / options.threads + (i < options.rate % options.threads ? 1 : 0);
+      loops.add(new ClientLoop(options, corpus, options.isOpenLoop() ? Math.max(1, rate) : 0));
+    }
+
+    for (var i = 0; i < options.connections; i++) {
+      loops.get(i % loops.size()).connect(address);
+    }
+
+    final List<Thread> threads = new ArrayList<>();
+    for (var i = 0; i < loops.size(); i++) {
+      final var thread = new Thread(loops.get(i), String.format("loadgen-%d", i));
+      threads.add(thread);
+      thread.start();
+    }
+    for (var thread : threads) {
+      thread.join();
+    }
+
+    final var report = new Report(options);
+    for (var loop : loops) {
+      report.add(loop);
+    }
+    return report;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final LoadGeneratorOptions options;
+    try {
+      options = LoadGeneratorOptions.parse(args);
+    } catch (final IllegalArgumentException exception) {
+      System.err.println(exception.getMessage());
+      System.err.println(LoadGeneratorOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+
+    final var corpus =
+        options.corpus == null
+            ? Corpus.parse(Corpus.DEFAULT_REQUESTS)
+            : Corpus.load(options.corpus);
+    final var loadGenerator = new LoadGenerator(options, corpus);
+
+    if (options.target != null) {
+      loadGenerator.run(options.target).print(System.out);
+      return;
+    }
+
+    try (var server = embeddedServer(options)) {
+      server.start();
+      loadGenerator.run(server.getLocalAddress()).print(System.out);
+    }
+  }
+
+  static final class Report {
+    private final LoadGeneratorOptions options;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long completed = 0;
+    private long errors = 0;
+    private long connectionErrors = 0;
+    private long maxBacklog = 0;
+
+    Report(final LoadGeneratorOptions options) {
+      this.options = options;
+    }
+
+    void add(final ClientLoop loop) {
+      histogram.add(loop.getHistogram());
+      completed += loop.getCompleted();
+      errors += loop.getErrors();
+      connectionErrors += loop.getConnectionErrors();
+      maxBacklog = Math.max(maxBacklog, loop.getMaxBacklog());
+    }
+
+    void add(final StormWorker worker) {
+      histogram.add(worker.getHistogram());
+      completed += worker.getCompleted();
+      errors += worker.getErrors();
+      connectionErrors += worker.getConnectionErrors();
+    }
+
+    long getConnectionErrors() {
+      return connectionErrors;
+    }
+
+    long getCompleted() {
+      return completed;
+    }
+
+    long getErrors() {
+      return errors;
+    }
+
+    double getThroughput() {
+      return completed / (options.duration.toNanos() / 1e9);
+    }
+
+    LatencyHistogram getHistogram() {
+      return histogram;
+    }
+
+    private static String millis(final long nanos) {
+      return String.format("%.3f ms", nanos / 1e6);
+    }
+
+    void print(final PrintStream out) {
+      if (options.storm) {
+        out.printf(
+            "connection storm with %d concurrent connects, %d s measured after %d s warmup%n",
+            options.connections,
+            options.duration.toSeconds(),
+            options.warmup.toSeconds());
+      } else {
+        out.printf(
+            "%d connections, %s, pipeline %d, %d s measured after %d s warmup%n",
+            options.connections,
+            options.isOpenLoop()
+                ? String.format("open-loop at %d req/s", options.rate)
+                : "closed-loop",
+            options.pipeline,
+            options.duration.toSeconds(),
+            options.warmup.toSeconds());
+      }
+      out.printf(
+          "requests: %d, errors: %d, connection errors: %d%n",
+          completed, errors, connectionErrors);
+      out.printf(
+          "throughput: %.1f %s%n", getThroughput(), options.storm ? "connections/s" : "req/s");
+      out.printf(
+          "latency: mean %s, p50 %s, p99 %s, p99.9 %s, max %s%n",
+          millis((long) histogram.getMean()),
+          millis(histogram.getValueAtPercentile(50)),
+          millis(histogram.getValueAtPercentile(99)),
+          millis(histogram.getValueAtPercentile(99.9)),
+          millis(histogram.getMaxValue()));
+      if (options.isOpenLoop()) {
+        out.printf("max requests waiting for a free connection: %d%n", maxBacklog);
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+
+final class LoadGeneratorOptions {
+  SocketAddress target = null;
+  boolean storm = false;
+  int connections = 100;
+  int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  int serverEventLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  boolean serverReusePort = false;
+  Path serverSocket = null;
+  int pipeline = 1;
+  long rate = 0;
+  Duration duration = Duration.ofSeconds(10);
+  Duration warmup = Duration.ofSeconds(2);
+  Path corpus = null;
+
+  static final String USAGE =
+      String.join(
+          "\n",
+          "Usage: loadgen [options]",
+          "  --target address      host:port or unix:path, defaults to an embedded server",
+          "  --mode mode           keep-alive, or storm for a new connection per request",
+          "  --connections n       keep-alive connections, or concurrent connects in a storm",
+          "  --threads n           number of client event loops",
+          "  --server-loops n      number of event loops of the embedded server",
+          "  --server-reuse-port b whether each embedded server loop accepts on its own socket",
+          "  --server-socket path  binds the embedded server to a unix domain socket instead",
+          "  --pipeline n          requests in flight per connection (default 1)",
+          "  --rate n              open-loop requests per second, 0 for closed-loop (default 0)",
+          "  --duration seconds    measured duration (default 10)",
+          "  --warmup seconds      unmeasured warmup before the measurement (default 2)",
+          "  --corpus file         request heads separated by blank lines");
+
+  private static int positive(final String name, final String value) {
+    final var number = Integer.parseInt(value);
+    if (number < 1) {
+      throw new IllegalArgumentException(String.format("%s must be at least 1", name));
+    }
+    return number;
+  }
+
+  static LoadGeneratorOptions parse(final String[] args) {
+    final var options = new LoadGeneratorOptions();
+    for (var i = 0; i < args.length; i++) {
+      final var name = args[i];
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException(String.format("Missing value for %s", name));
+      }
+      final var value = args[++i];
+
+      switch (name) {
+        case "--target":
+          if (value.startsWith("unix:")) {
+            options.target = UnixDomainSocketAddress.of(value.substring("unix:".length()));
+            break;
+          }
+          final var separator = value.lastIndexOf(':');
+          if (separator < 0) {
+            throw new IllegalArgumentException(
+                "--target must be of the form host:port or unix:path");
+          }
+          options.target =
+              new InetSocketAddress(
+                  value.substring(0, separator), Integer.parseInt(value.substring(separator + 1)));
+          break;
+        case "--mode":
+          if (!value.equals("keep-alive") && !value.equals("storm")) {
+            throw new IllegalArgumentException("--mode must be keep-alive or storm");
+          }
+          options.storm = value.equals("storm");
+          break;
+        case "--connections":
+          options.connections = positive(name, value);
+          break;
+        case "--threads":
+          options.threads = positive(name, value);
+          break;
+        case "--server-loops":
+          options.serverEventLoops = positive(name, value);
+          break;
+        case "--server-reuse-port":
+          options.serverReusePort = Boolean.parseBoolean(value);
+          break;
+        case "--server-socket":
+          options.serverSocket = Path.of(value);
+          break;
+        case "--pipeline":
+          options.pipeline = positive(name, value);
+          break;
+        case "--rate":
+          options.rate = Long.parseLong(value);
+          break;
+        case "--duration":
+          options.duration = Duration.ofSeconds(Long.parseLong(value));
+          break;
+        case "--warmup":
+          options.warmup = Duration.ofSeconds(Long.parseLong(value));
+          break;
+        case "--corpus":
+          options.corpus = Path.of(value);
+          break;
+        default:
+          throw new IllegalArgumentException(String.format("Unknown option %s", name));
+      }
+    }
+
+    options.threads = Math.min(options.threads, options.connections);
+    return options;
+  }
+
+  boolean isOpenLoop() {
+    return rate > 0;
+  }
+}
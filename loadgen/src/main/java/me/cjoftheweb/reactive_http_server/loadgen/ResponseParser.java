@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.loadgen.ResponseParserState.*;
+
+// A deliberately small response parser that only understands what it needs to find where one
+// response ends and the next begins, so the load generator measures the server and not itself.
+final class ResponseParser {
+  private static final byte[] CONTENT_LENGTH = "content-length:".getBytes();
+  private static final byte[] TRANSFER_ENCODING = "transfer-encoding:".getBytes();
+
+  private final byte[] line = new byte[8192];
+  private int lineLength = 0;
+  private ResponseParserState state = STATUS_LINE;
+  private int status = 0;
+  private long contentLength = 0;
+  private boolean chunked = false;
+  private long remaining = 0;
+
+  private boolean lineStartsWithIgnoreCase(final byte[] prefix) {
+    if (lineLength < prefix.length) {
+      return false;
+    }
+
+    for (var i = 0; i < prefix.length; i++) {
+      if (Character.toLowerCase(line[i]) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String lineString(final int from) {
+    return new String(line, from, lineLength - from).trim();
+  }
+
+  private boolean readLine(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      final var b = buffer.get();
+      if (b == '\n') {
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+          lineLength--;
+        }
+        return true;
+      }
+
+      if (lineLength == line.length) {
+        throw new IOException("Response line too long");
+      }
+      line[lineLength++] = b;
+    }
+    return false;
+  }
+
+  private void skipBody(final ByteBuffer buffer) {
+    final var skipped = (int) Math.min(buffer.remaining(), remaining);
+    buffer.position(buffer.position() + skipped);
+    remaining -= skipped;
+  }
+
+  private boolean complete() {
+    state = STATUS_LINE;
+    contentLength = 0;
+    chunked = false;
+    return true;
+  }
+
+  boolean parse(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      switch (state) {
+        case STATUS_LINE:
+          if (readLine(buffer)) {
+            if (lineLength < 12 || line[8] != ' ') {
+              throw new IOException(String.format("Malformed status line %s", lineString(0)));
+            }
+            status = (line[9] - '0') * 100 + (line[10] - '0') * 10 + (line[11] - '0');
+            lineLength = 0;
+            state = HEADER_LINE;
+          }
+          break;
+        case HEADER_LINE:
+          if (readLine(buffer)) {
+            if (lineLength == 0) {
+              if (chunked) {
+                state = CHUNK_SIZE_LINE;
+              } else if (contentLength > 0) {
+                remaining = contentLength;
+                state = BODY;
+              } else {
+                return complete();
+              }
+            } else if (lineStartsWithIgnoreCase(CONTENT_LENGTH)) {
+              contentLength = Long.parseLong(lineString(CONTENT_LENGTH.length));
+            } else if (lineStartsWithIgnoreCase(TRANSFER_ENCODING)) {
+              chunked = lineString(TRANSFER_ENCODING.length).toLowerCase().contains("chunked");
+            }
+            lineLength = 0;
+          }
+          break;
+        case BODY:
+          skipBody(buffer);
+          if (remaining == 0) {
+            return complete();
+          }
+          break;
+        case CHUNK_SIZE_LINE:
+          if (readLine(buffer)) {
+            var end = 0;
+            while (end < lineLength && line[end] != ';') {
+              end++;
+            }
+            remaining = Long.parseLong(new String(line, 0, end).trim(), 16);
+            lineLength = 0;
+            state = remaining == 0 ? TRAILER_LINE : CHUNK_DATA;
+          }
+          break;
+        case CHUNK_DATA:
+          skipBody(buffer);
+          if (remaining == 0) {
+            state = CHUNK_DATA_END;
+          }
+          break;
+        case CHUNK_DATA_END:
+          if (readLine(buffer)) {
+            lineLength = 0;
+            state = CHUNK_SIZE_LINE;
+          }
+          break;
+        case TRAILER_LINE:
+          if (readLine(buffer)) {
+            final var empty = lineLength == 0;
+            lineLength = 0;
+            if (empty) {
+              return complete();
+            }
+          }
+          break;
+      }
+    }
+    return false;
+  }
+
+  int getStatus() {
+    return status;
+  }
+}
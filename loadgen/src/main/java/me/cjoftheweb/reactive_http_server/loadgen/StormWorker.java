@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+
+// Opens a connection, sends a single request asking the server to close and waits for the
+// response before opening the next one, so every completed exchange costs the server an accept.
+final class StormWorker implements Runnable {
+  private static final ByteBuffer REQUEST =
+      ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: loadgen\r\nConnection: close\r\n\r\n".getBytes())
+          .asReadOnlyBuffer();
+
+  private final SocketAddress address;
+  private final long warmupNanos;
+  private final long durationNanos;
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private ResponseParser parser = new ResponseParser();
+  private long completed = 0;
+  private long errors = 0;
+  private long connectionErrors = 0;
+
+  StormWorker(final SocketAddress address, final LoadGeneratorOptions options) {
+    this.address = address;
+    this.warmupNanos = options.warmup.toNanos();
+    this.durationNanos = options.duration.toNanos();
+  }
+
+  private int exchange() throws IOException {
+    try (var channel = ClientLoop.open(address)) {
+      if (address instanceof InetSocketAddress) {
+        // closing with a reset keeps the client's ephemeral ports out of TIME_WAIT
+        channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+      }
+      channel.connect(address);
+
+      final var request = REQUEST.duplicate();
+      while (request.hasRemaining()) {
+        channel.write(request);
+      }
+
+      while (true) {
+        readBuffer.clear();
+        if (channel.read(readBuffer) < 0) {
+          throw new IOException("Connection closed before the response completed");
+        }
+        if (parser.parse(readBuffer.flip())) {
+          return parser.getStatus();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    final var start = System.nanoTime();
+    final var measureStart = start + warmupNanos;
+    final var end = measureStart + durationNanos;
+
+    var now = start;
+    while (now < end) {
+      final var connectTime = now;
+      try {
+        final var status = exchange();
+        now = System.nanoTime();
+        if (connectTime >= measureStart) {
+          histogram.record(now - connectTime);
+          completed++;
+          if (status >= 400) {
+            errors++;
+          }
+        }
+      } catch (final IOException exception) {
+        parser = new ResponseParser();
+        now = System.nanoTime();
+        if (connectTime >= measureStart) {
+          connectionErrors++;
+        }
+      }
+    }
+  }
+
+  LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  long getCompleted() {
+    return completed;
+  }
+
+  long getErrors() {
+    return errors;
+  }
+
+  long getConnectionErrors() {
+    return connectionErrors;
+  }
+}
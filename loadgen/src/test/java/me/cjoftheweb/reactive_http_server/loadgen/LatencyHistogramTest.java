@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+  @Test
+  void testBucketBoundaries() {
+    for (var value : new long[] {0, 1, 255, 256, 257, 1000, 123456789, Long.MAX_VALUE / 3}) {
+      var index = LatencyHistogram.indexOf(value);
+      assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+      if (index > 0) {
+        assertTrue(LatencyHistogram.highestValueAt(index - 1) < value);
+      }
+    }
+  }
+
+  @Test
+  void testPercentiles() {
+    var histogram = new LatencyHistogram();
+    for (var i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertEquals(100_000, histogram.getTotalCount());
+    assertEquals(100_000_000L, histogram.getMaxValue());
+    assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.01);
+    assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.01);
+    assertEquals(99_900_000, histogram.getValueAtPercentile(99.9), 99_900_000 * 0.01);
+    assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void testAdd() {
+    var first = new LatencyHistogram();
+    var second = new LatencyHistogram();
+    first.record(10);
+    second.record(20);
+    second.record(30);
+
+    first.add(second);
+
+    assertEquals(3, first.getTotalCount());
+    assertEquals(30, first.getMaxValue());
+    assertEquals(20, first.getMean(), 0);
+    assertEquals(20, first.getValueAtPercentile(50));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LoadGeneratorTest {
+  private static LoadGeneratorOptions options(final String... args) {
+    var options = LoadGeneratorOptions.parse(args);
+    options.duration = Duration.ofMillis(500);
+    options.warmup = Duration.ZERO;
+    return options;
+  }
+
+  private static LoadGenerator.Report run(final LoadGeneratorOptions options) throws Exception {
+    try (var server = LoadGenerator.embeddedServer(options)) {
+      server.start();
+      return new LoadGenerator(options, Corpus.parse(Corpus.DEFAULT_REQUESTS))
+          .run(server.getLocalAddress());
+    }
+  }
+
+  @Test
+  void testCorpus() {
+    var corpus = Corpus.parse("GET / HTTP/1.1\nHost: a\n\n\r\nPOST /b HTTP/1.1\r\n\r\n");
+
+    assertEquals(2, corpus.size());
+    assertEquals(
+        "GET / HTTP/1.1\r\nHost: a\r\n\r\n",
+        StandardCharsets.ISO_8859_1.decode(corpus.get(0)).toString());
+    assertEquals(
+        "POST /b HTTP/1.1\r\n\r\n", StandardCharsets.ISO_8859_1.decode(corpus.get(3)).toString());
+    assertThrows(IllegalArgumentException.class, () -> Corpus.parse("GET / HTTP/1.1\nHost: a"));
+  }
+
+  @Test
+  void testOptions() {
+    var options =
+        LoadGeneratorOptions.parse(
+            new String[] {"--target", "localhost:8080", "--connections", "4", "--threads", "8"});
+
+    assertEquals(8080, ((InetSocketAddress) options.target).getPort());
+    assertEquals(
+        UnixDomainSocketAddress.of("/tmp/server.sock"),
+        LoadGeneratorOptions.parse(new String[] {"--target", "unix:/tmp/server.sock"}).target);
+    assertEquals(4, options.threads);
+    assertFalse(options.isOpenLoop());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LoadGeneratorOptions.parse(new String[] {"--pipeline", "0"}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LoadGeneratorOptions.parse(new String[] {"--unknown", "1"}));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> LoadGeneratorOptions.parse(new String[] {"--mode", "burst"}));
+  }
+
+  @Test
+  void testClosedLoop() throws Exception {
+    var report = run(options("--connections", "8", "--threads", "2", "--pipeline", "4"));
+
+    assertTrue(report.getCompleted() > 0);
+    assertEquals(0, report.getErrors());
+    assertEquals(report.getCompleted(), report.getHistogram().getTotalCount());
+  }
+
+  @Test
+  void testOpenLoop() throws Exception {
+    var report = run(options("--connections", "8", "--threads", "2", "--rate", "1000"));
+
+    assertEquals(500, report.getCompleted());
+    assertEquals(0, report.getErrors());
+  }
+
+  @Test
+  void testConnectionStorm() throws Exception {
+    var report = run(options("--mode", "storm", "--connections", "4", "--server-loops", "2"));
+
+    assertTrue(report.getCompleted() > 0);
+    assertEquals(0, report.getErrors());
+    assertEquals(0, report.getConnectionErrors());
+  }
+
+  @Test
+  void testConnectionStormWithReusePort() throws Exception {
+    try (var channel = ServerSocketChannel.open()) {
+      assumeTrue(channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+    }
+
+    var options = options("--mode", "storm", "--connections", "4", "--server-loops", "2");
+    options.serverReusePort = true;
+    var report = run(options);
+
+    assertTrue(report.getCompleted() > 0);
+    assertEquals(0, report.getErrors());
+    assertEquals(0, report.getConnectionErrors());
+  }
+
+  @Test
+  void testUnixDomainSocket() throws Exception {
+    var directory = Files.createTempDirectory("loadgen");
+    try {
+      var options = options("--connections", "4", "--threads", "2", "--server-loops", "1");
+      options.serverSocket = directory.resolve("server.sock");
+      var report = run(options);
+
+      assertTrue(report.getCompleted() > 0);
+      assertEquals(0, report.getErrors());
+      assertFalse(Files.exists(options.serverSocket));
+    } finally {
+      Files.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseParserTest {
+  private static final String RESPONSES =
+      "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello"
+          + "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n"
+          + "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+          + "5\r\nhello\r\n1;ext\r\n!\r\n0\r\n\r\n"
+          + "HTTP/1.1 204 No Content\r\n\r\n";
+
+  @Test
+  void testParse() throws Exception {
+    var parser = new ResponseParser();
+    var buffer = ByteBuffer.wrap(RESPONSES.getBytes());
+
+    for (var status : new int[] {200, 404, 200, 204}) {
+      assertTrue(parser.parse(buffer));
+      assertEquals(status, parser.getStatus());
+    }
+
+    assertFalse(buffer.hasRemaining());
+    assertFalse(parser.parse(buffer));
+  }
+
+  @Test
+  void testParseFragmented() throws Exception {
+    var parser = new ResponseParser();
+    var bytes = RESPONSES.getBytes();
+    var responses = 0;
+
+    for (var b : bytes) {
+      if (parser.parse(ByteBuffer.wrap(new byte[] {b}))) {
+        responses++;
+      }
+    }
+
+    assertEquals(4, responses);
+  }
+
+  @Test
+  void testMalformedStatusLine() {
+    var parser = new ResponseParser();
+
+    assertThrows(
+        IOException.class, () -> parser.parse(ByteBuffer.wrap("garbage\r\n\r\n".getBytes())));
+  }
+}
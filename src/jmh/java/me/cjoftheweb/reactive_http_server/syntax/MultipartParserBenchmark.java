@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Parses a single 1 GB file part, offered in 64 KB reads as a socket would deliver it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MultipartParserBenchmark {
+  private static final int READ_SIZE = 64 * 1024;
+  private static final long UPLOAD_SIZE = 1L << 30;
+
+  @Param({"16", "70"})
+  public int boundaryLength;
+
+  private MultipartParser parser;
+  private ByteBuffer head;
+  private ByteBuffer content;
+  private ByteBuffer tail;
+
+  @Setup
+  public void setUp(final Blackhole blackhole) {
+    final var boundary = "-".repeat(boundaryLength - 16) + Long.toHexString(Long.MIN_VALUE);
+    head =
+        ByteBuffer.wrap(
+            ("--"
+                    + boundary
+                    + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"upload.bin\""
+                    + "\r\nContent-Type: application/octet-stream\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+    tail = ByteBuffer.wrap(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+    // random bytes contain the occasional CR and dash, so the search sees near misses as well
+    final var bytes = new byte[READ_SIZE];
+    new Random(0).nextBytes(bytes);
+    content = ByteBuffer.wrap(bytes);
+
+    parser =
+        new MultipartParser(
+            boundary,
+            new MultipartListener() {
+              @Override
+              public void onPartStart(final HttpHeaders headers) {
+                blackhole.consume(headers);
+              }
+
+              @Override
+              public void onPartData(final ByteBuffer data) {
+                blackhole.consume(data.remaining());
+              }
+
+              @Override
+              public void onPartEnd() {}
+            });
+  }
+
+  @Benchmark
+  public boolean parseUpload() throws Exception {
+    parser.reset();
+    parser.offer(head.clear());
+    for (var offered = 0L; offered < UPLOAD_SIZE; offered += READ_SIZE) {
+      parser.offer(content.clear());
+    }
+    parser.offer(tail.clear());
+    return parser.isDone();
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.util.List;
+
+// Chooses the application protocol of a TLS connection from the ones its client offered through
+// ALPN. An empty string leaves ALPN out of the handshake, while null fails it.
+@FunctionalInterface
+public interface ApplicationProtocolSelector {
+  String select(final List<String> offered);
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.util.Optional;
+
+// Decides whether a request that sent Expect: 100-continue may send its body, before any of it is
+// read. It runs on the event loop, so it must not block. An empty result accepts the body, and a
+// response rejects it; the connection is closed once that response is sent.
+@FunctionalInterface
+public interface ContinueHandler {
+  Optional<HttpResponse> check(final HttpRequest request) throws Exception;
+}
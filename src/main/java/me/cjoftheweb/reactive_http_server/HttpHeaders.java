@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public final class HttpHeaders {
+  private final List<String> names = new ArrayList<>();
+  private final List<String> values = new ArrayList<>();
+
+  public HttpHeaders add(final String name, final String value) {
+    names.add(name);
+    values.add(value);
+    return this;
+  }
+
+  public Optional<String> get(final String name) {
+    for (var i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        return Optional.of(values.get(i));
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  public List<String> getAll(final String name) {
+    final List<String> matches = new ArrayList<>();
+    for (var i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        matches.add(values.get(i));
+      }
+    }
+    return matches;
+  }
+
+  public boolean contains(final String name) {
+    return get(name).isPresent();
+  }
+
+  public boolean containsToken(final String name, final String token) {
+    for (var i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        for (var element : values.get(i).split(",")) {
+          if (element.trim().equalsIgnoreCase(token)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  public int size() {
+    return names.size();
+  }
+
+  public String getName(final int index) {
+    return names.get(index);
+  }
+
+  public String getValue(final int index) {
+    return values.get(index);
+  }
+}
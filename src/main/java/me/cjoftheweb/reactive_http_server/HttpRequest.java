@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+public final class HttpRequest {
+  private final HttpMethod method;
+  private final String requestTarget;
+  private final HttpVersion version;
+  private final HttpHeaders headers;
+  private final long contentLength;
+
+  public HttpRequest(
+      final HttpMethod method,
+      final String requestTarget,
+      final HttpVersion version,
+      final HttpHeaders headers) {
+    this(method, requestTarget, version, headers, 0);
+  }
+
+  public HttpRequest(
+      final HttpMethod method,
+      final String requestTarget,
+      final HttpVersion version,
+      final HttpHeaders headers,
+      final long contentLength) {
+    if (contentLength < 0) {
+      throw new IllegalArgumentException("Content length cannot be negative");
+    }
+    this.method = method;
+    this.requestTarget = requestTarget;
+    this.version = version;
+    this.headers = headers;
+    this.contentLength = contentLength;
+  }
+
+  public HttpMethod getMethod() {
+    return method;
+  }
+
+  public String getRequestTarget() {
+    return requestTarget;
+  }
+
+  public HttpVersion getVersion() {
+    return version;
+  }
+
+  public HttpHeaders getHeaders() {
+    return headers;
+  }
+
+  // The length of the body, as given by the Content-Length the server has already validated.
+  public long getContentLength() {
+    return contentLength;
+  }
+}
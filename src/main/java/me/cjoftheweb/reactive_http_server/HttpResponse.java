@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.Flow;
+
+public final class HttpResponse {
+  private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+  private final HttpStatus status;
+  private final HttpHeaders headers;
+  private final ByteBuffer body;
+  private final Flow.Publisher<ByteBuffer> bodyPublisher;
+
+  public HttpResponse(final HttpStatus status) {
+    this(status, new HttpHeaders(), EMPTY_BODY);
+  }
+
+  public HttpResponse(final HttpStatus status, final HttpHeaders headers, final ByteBuffer body) {
+    this.status = status;
+    this.headers = headers;
+    this.body = body;
+    this.bodyPublisher = null;
+  }
+
+  public HttpResponse(
+      final HttpStatus status,
+      final HttpHeaders headers,
+      final Flow.Publisher<ByteBuffer> bodyPublisher) {
+    this.status = status;
+    this.headers = headers;
+    this.body = null;
+    this.bodyPublisher = bodyPublisher;
+  }
+
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+  public HttpHeaders getHeaders() {
+    return headers;
+  }
+
+  public Optional<ByteBuffer> getBody() {
+    return body == null ? Optional.empty() : Optional.of(body.duplicate());
+  }
+
+  public Optional<Flow.Publisher<ByteBuffer>> getBodyPublisher() {
+    return Optional.ofNullable(bodyPublisher);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.util.Optional;
+
+public enum HttpStatus {
+  CONTINUE(100, "Continue"),
+  SWITCHING_PROTOCOLS(101, "Switching Protocols"),
+  OK(200, "OK"),
+  CREATED(201, "Created"),
+  ACCEPTED(202, "Accepted"),
+  NO_CONTENT(204, "No Content"),
+  PARTIAL_CONTENT(206, "Partial Content"),
+  MOVED_PERMANENTLY(301, "Moved Permanently"),
+  FOUND(302, "Found"),
+  SEE_OTHER(303, "See Other"),
+  NOT_MODIFIED(304, "Not Modified"),
+  TEMPORARY_REDIRECT(307, "Temporary Redirect"),
+  PERMANENT_REDIRECT(308, "Permanent Redirect"),
+  BAD_REQUEST(400, "Bad Request"),
+  UNAUTHORIZED(401, "Unauthorized"),
+  FORBIDDEN(403, "Forbidden"),
+  NOT_FOUND(404, "Not Found"),
+  METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+  NOT_ACCEPTABLE(406, "Not Acceptable"),
+  REQUEST_TIMEOUT(408, "Request Timeout"),
+  CONFLICT(409, "Conflict"),
+  GONE(410, "Gone"),
+  LENGTH_REQUIRED(411, "Length Required"),
+  PRECONDITION_FAILED(412, "Precondition Failed"),
+  PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+  URI_TOO_LONG(414, "URI Too Long"),
+  UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
+  RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
+  EXPECTATION_FAILED(417, "Expectation Failed"),
+  UNPROCESSABLE_ENTITY(422, "Unprocessable Entity"),
+  UPGRADE_REQUIRED(426, "Upgrade Required"),
+  TOO_MANY_REQUESTS(429, "Too Many Requests"),
+  REQUEST_HEADER_FIELDS_TOO_LARGE(431, "Request Header Fields Too Large"),
+  INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+  NOT_IMPLEMENTED(501, "Not Implemented"),
+  BAD_GATEWAY(502, "Bad Gateway"),
+  SERVICE_UNAVAILABLE(503, "Service Unavailable"),
+  GATEWAY_TIMEOUT(504, "Gateway Timeout"),
+  HTTP_VERSION_NOT_SUPPORTED(505, "HTTP Version Not Supported");
+
+  private final int code;
+  private final String reasonPhrase;
+
+  HttpStatus(final int code, final String reasonPhrase) {
+    this.code = code;
+    this.reasonPhrase = reasonPhrase;
+  }
+
+  public static Optional<HttpStatus> fromCode(final int code) {
+    for (var value : HttpStatus.values()) {
+      if (value.code == code) {
+        return Optional.of(value);
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public String getReasonPhrase() {
+    return reasonPhrase;
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+// Hears about every response once its last byte has been flushed. It runs on the event loop, so
+// it must not block, and the timings it is given are reused for a later request once it returns,
+// so anything kept has to be copied out. Responses cut short by a closed connection are not
+// reported.
+@FunctionalInterface
+public interface RequestTimingListener {
+  void onRequestCompleted(final RequestTimings timings);
+}
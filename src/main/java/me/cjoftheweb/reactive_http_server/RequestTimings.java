@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+// The moments one request passed through the server, as System.nanoTime() values. A phase the
+// request never reached reads 0: a request answered from the cache never starts a handler, and
+// one whose head could not be parsed has no request either. The first byte received is the
+// first byte read after the previous response was queued, so time a client takes to send a head
+// shows up before the request line, and time it takes to read a response after the first byte.
+public interface RequestTimings {
+  // Null when the server answered before it could parse the request head.
+  HttpRequest getRequest();
+
+  HttpStatus getStatus();
+
+  long getResponseBytes();
+
+  long getFirstByteReceived();
+
+  long getRequestLineParsed();
+
+  long getHeadParsed();
+
+  long getHandlerStarted();
+
+  long getHandlerFinished();
+
+  long getFirstByteWritten();
+
+  long getLastByteFlushed();
+}
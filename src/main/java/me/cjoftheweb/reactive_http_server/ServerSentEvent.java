@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// An event encoded once, in the text/event-stream format, into a read-only buffer that every
+// subscriber it is sent to writes a duplicate of.
+public final class ServerSentEvent {
+  private final ByteBuffer encoded;
+
+  private ServerSentEvent(final ByteBuffer encoded) {
+    this.encoded = encoded;
+  }
+
+  public static ServerSentEvent of(final String data) {
+    return of(null, null, data);
+  }
+
+  // The id and event type are left out when null; data with line breaks is sent as several lines.
+  public static ServerSentEvent of(final String id, final String event, final String data) {
+    final var builder = new StringBuilder(data.length() + 16);
+    if (id != null) {
+      builder.append("id: ").append(field("id", id)).append('\n');
+    }
+    if (event != null) {
+      builder.append("event: ").append(field("event", event)).append('\n');
+    }
+    for (final var line : data.split("\r\n|\r|\n", -1)) {
+      builder.append("data: ").append(line).append('\n');
+    }
+    builder.append('\n');
+
+    final var bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+    return new ServerSentEvent(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+  }
+
+  private static String field(final String name, final String value) {
+    if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+      throw new IllegalArgumentException(String.format("The %s must be a single line", name));
+    }
+    return value;
+  }
+
+  public ByteBuffer getEncoded() {
+    return encoded.duplicate();
+  }
+}
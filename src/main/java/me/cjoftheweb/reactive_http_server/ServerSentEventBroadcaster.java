@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Sends each published event to every subscribed response. Events are encoded once and each
+// subscriber is handed duplicates of the same buffers as it asks for them, holding at most a fixed
+// number it has not asked for yet; what happens beyond that is up to the slow consumer policy.
+public final class ServerSentEventBroadcaster implements Flow.Publisher<ByteBuffer> {
+  public enum SlowConsumerPolicy {
+    // Drops new events until the subscriber catches up.
+    DROP,
+    // Replaces the events the subscriber has yet to read with the newest one.
+    COALESCE,
+    // Ends the subscriber's response with an error, which closes its connection.
+    DISCONNECT
+  }
+
+  private final int bufferedEvents;
+  private final SlowConsumerPolicy policy;
+  private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder disconnected = new LongAdder();
+  private volatile boolean closed = false;
+
+  public ServerSentEventBroadcaster(final int bufferedEvents, final SlowConsumerPolicy policy) {
+    if (bufferedEvents < 1) {
+      throw new IllegalArgumentException("At least one event must be buffered");
+    }
+    this.bufferedEvents = bufferedEvents;
+    this.policy = policy;
+  }
+
+  // A response that streams every event published from now on.
+  public HttpResponse response() {
+    return new HttpResponse(
+        HttpStatus.OK,
+        new HttpHeaders().add("Content-Type", "text/event-stream").add("Cache-Control", "no-cache"),
+        this);
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+    final var subscription = new Subscription(subscriber);
+    subscriptions.add(subscription);
+    subscriber.onSubscribe(subscription);
+    if (closed) {
+      subscription.drain();
+    }
+  }
+
+  public void publish(final ServerSentEvent event) {
+    final var encoded = event.getEncoded();
+    for (final var subscription : subscriptions) {
+      subscription.offer(encoded);
+    }
+  }
+
+  // Ends every response once it has sent the events it holds.
+  public void close() {
+    closed = true;
+    subscriptions.forEach(Subscription::drain);
+  }
+
+  public int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  // Events that subscribers never received because of the DROP or COALESCE policies.
+  public long getDroppedEvents() {
+    return dropped.sum();
+  }
+
+  public long getDisconnectedSubscribers() {
+    return disconnected.sum();
+  }
+
+  private final class Subscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    // a ring of the events waiting for demand, guarded by the subscription's lock
+    private final ByteBuffer[] events = new ByteBuffer[bufferedEvents];
+    private int head = 0;
+    private int count = 0;
+    private boolean overflowed = false;
+    private volatile boolean cancelled = false;
+    private boolean terminated = false;
+
+    Subscription(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    void offer(final ByteBuffer event) {
+      synchronized (this) {
+        if (count < events.length) {
+          events[(head + count++) % events.length] = event;
+        } else {
+          switch (policy) {
+            case DROP:
+              dropped.increment();
+              break;
+            case COALESCE:
+              dropped.add(count);
+              clear();
+              events[head] = event;
+              count = 1;
+              break;
+            case DISCONNECT:
+              overflowed = true;
+              clear();
+              break;
+          }
+        }
+      }
+      drain();
+    }
+
+    private void clear() {
+      for (var i = 0; i < count; i++) {
+        events[(head + i) % events.length] = null;
+      }
+      head = 0;
+      count = 0;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Demand must be positive"));
+        return;
+      }
+
+      requested.getAndAccumulate(
+          n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+    }
+
+    void drain() {
+      if (work.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        while (!cancelled && !terminated) {
+          ByteBuffer event = null;
+          final boolean overflow;
+          final boolean complete;
+          synchronized (this) {
+            if (count > 0 && requested.get() > 0) {
+              event = events[head];
+              events[head] = null;
+              head = (head + 1) % events.length;
+              count--;
+            }
+            overflow = overflowed;
+            complete = closed && count == 0;
+          }
+
+          if (event != null) {
+            requested.decrementAndGet();
+            subscriber.onNext(event.duplicate());
+          } else if (overflow) {
+            terminated = true;
+            subscriptions.remove(this);
+            disconnected.increment();
+            subscriber.onError(new IOException("The subscriber fell too far behind"));
+          } else if (complete) {
+            terminated = true;
+            subscriptions.remove(this);
+            subscriber.onComplete();
+          } else {
+            break;
+          }
+        }
+      } while (work.decrementAndGet() != 0);
+    }
+  }
+}
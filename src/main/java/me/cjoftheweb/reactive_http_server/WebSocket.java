@@ -0,0 +1,33 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.nio.ByteBuffer;
+
+// Sends frames on an upgraded connection. Any thread may send, and frames sent from the event loop
+// during one iteration leave together in a single write.
+public interface WebSocket {
+  HttpRequest getRequest();
+
+  void sendText(final String text);
+
+  // The buffer is sent from its position to its limit and must not change until it is written.
+  void sendBinary(final ByteBuffer data);
+
+  // Starts the closing handshake; the connection closes once the client answers it.
+  void close(final int code, final String reason);
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+// Receives the messages of upgraded connections on their event loop, so it must not block.
+public interface WebSocketHandler {
+  default void onOpen(final WebSocket webSocket) {}
+
+  // The payload streams through the publisher as frames arrive. Nothing more is read from the
+  // connection until the publisher is subscribed to and asked for chunks, and each chunk is only
+  // valid until onNext returns.
+  void onMessage(
+      final WebSocket webSocket, final boolean text, final Flow.Publisher<ByteBuffer> message);
+
+  // Called once, when the client closes the connection or it is lost, which has the code 1006.
+  default void onClose(final WebSocket webSocket, final int code, final String reason) {}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+final class Acceptor implements SelectionHandler {
+  private static final ByteBuffer SERVICE_UNAVAILABLE =
+      new HttpResponseHeadEncoder()
+          .statusLine(HttpVersion.HTTP_1_1, HttpStatus.SERVICE_UNAVAILABLE)
+          .header("Content-Length", 0)
+          .header("Retry-After", 1)
+          .header("Connection", "close")
+          .encode()
+          .asReadOnlyBuffer();
+
+  private final HttpServer server;
+  private final ServerSocketChannel serverSocketChannel;
+  private final EventLoop[] eventLoops;
+  private final boolean tcp;
+  private int nextEventLoop = 0;
+
+  Acceptor(
+      final HttpServer server,
+      final ServerSocketChannel serverSocketChannel,
+      final EventLoop[] eventLoops)
+      throws IOException {
+    this.server = server;
+    this.serverSocketChannel = serverSocketChannel;
+    this.eventLoops = eventLoops;
+    this.tcp = serverSocketChannel.getLocalAddress() instanceof InetSocketAddress;
+  }
+
+  void register(final EventLoop eventLoop) throws IOException {
+    eventLoop.register(serverSocketChannel, SelectionKey.OP_ACCEPT, this);
+  }
+
+  private void shed(final SocketChannel channel) {
+    try {
+      // a fresh socket's send buffer is empty, so this small write never blocks; a TLS client
+      // could not read it before a handshake, so it is just closed
+      if (!server.isTls()) {
+        channel.write(SERVICE_UNAVAILABLE.duplicate());
+      }
+    } catch (final IOException ignored) {
+    } finally {
+      try {
+        channel.close();
+      } catch (final IOException ignored) {
+      }
+    }
+  }
+
+  @Override
+  public void onSelected(final SelectionKey key) throws IOException {
+    SocketChannel channel;
+    while ((channel = serverSocketChannel.accept()) != null) {
+      final var readBufferSize = ReadSizePredictor.initialSize(server.getReadBufferSize());
+      if (server.getMemoryGovernor().shouldShed(readBufferSize)) {
+        shed(channel);
+        continue;
+      }
+
+      final var eventLoop = eventLoops[nextEventLoop];
+      nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+      final var event = new ConnectionAcceptedEvent();
+      if (event.shouldCommit()) {
+        event.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        event.eventLoop = eventLoop.getIndex();
+        event.commit();
+      }
+
+      channel.configureBlocking(false);
+      if (tcp) {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+      }
+
+      final var connection = new HttpConnection(server, eventLoop, channel);
+      eventLoop.execute(
+          () -> {
+            try {
+              connection.register();
+            } catch (final IOException exception) {
+              connection.close();
+            }
+          });
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      serverSocketChannel.close();
+    } catch (final IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Writes a line per response without the event loops ever touching the file: they only fill a
+// slot of the ring, and a thread of its own turns the slots into text and writes them in batches.
+// The file is rotated once it would grow past its limit, keeping a fixed number of older files as
+// path.1, path.2 and so on.
+final class AccessLog implements Runnable {
+  private static final int RING_CAPACITY = 4096;
+  private static final int MAX_TARGET_LENGTH = 256;
+  private static final int BATCH_SIZE = 256 * 1024;
+  // the longest line a record can format to, with room to spare for the numbers
+  private static final int MAX_LINE_LENGTH = MAX_TARGET_LENGTH + 128;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final DateTimeFormatter SECONDS =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.").withZone(ZoneOffset.UTC);
+  private static final HttpMethod[] METHODS = HttpMethod.values();
+  private static final HttpVersion[] VERSIONS = HttpVersion.values();
+
+  private final Path path;
+  private final long maxFileBytes;
+  private final int maxFiles;
+  private final AccessLogRing ring = new AccessLogRing(RING_CAPACITY, MAX_TARGET_LENGTH);
+  private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+  private final Thread thread;
+  private final LongAdder failedLines = new LongAdder();
+  private FileChannel file;
+  private long fileBytes;
+  private int batchLines = 0;
+  private long second = -1;
+  private byte[] secondPrefix = null;
+  private volatile boolean running = true;
+
+  AccessLog(final Path path, final long maxFileBytes, final int maxFiles) throws IOException {
+    this.path = path;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+    open();
+    this.thread = new Thread(this, "reactive-http-server-access-log");
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  // Called by the event loops once a response is queued; never blocks.
+  void record(
+      final HttpRequest request,
+      final HttpStatus status,
+      final long bytes,
+      final long durationNanos) {
+    ring.offer(
+        request != null ? request.getMethod().ordinal() : -1,
+        request != null ? request.getVersion().ordinal() : -1,
+        request != null ? request.getRequestTarget() : null,
+        status.getCode(),
+        bytes,
+        System.currentTimeMillis(),
+        durationNanos);
+  }
+
+  // Records the ring had no room for, plus any the file refused.
+  long getDropped() {
+    return ring.getDropped() + failedLines.sum();
+  }
+
+  // Writes what is still in the ring and closes the file.
+  void close() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(thread);
+    thread.join();
+  }
+
+  @Override
+  public void run() {
+    final var record = ring.newRecord();
+    while (true) {
+      // read before draining, so whatever was recorded before close is still written
+      final var stopping = !running;
+      var polled = false;
+      while (ring.poll(record)) {
+        polled = true;
+        if (batch.remaining() < MAX_LINE_LENGTH) {
+          writeBatch();
+        }
+        format(record);
+      }
+      writeBatch();
+
+      if (stopping) {
+        break;
+      }
+      if (!polled) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+
+    try {
+      file.close();
+    } catch (final IOException ignored) {
+    }
+  }
+
+  // Lines look like "2026-01-01T12:00:00.000Z GET /index.html HTTP/1.1 200 1024 350us", with
+  // dashes in place of the request for errors sent without one, such as a head that failed to
+  // parse.
+  private void format(final AccessLogRing.Record record) {
+    putTime(record.timeMillis);
+    batch.put((byte) ' ');
+    putAscii(record.method >= 0 ? METHODS[record.method].toString() : "-");
+    batch.put((byte) ' ');
+    if (record.targetLength > 0) {
+      batch.put(record.target, 0, record.targetLength);
+    } else {
+      batch.put((byte) '-');
+    }
+    batch.put((byte) ' ');
+    putAscii(record.version >= 0 ? VERSIONS[record.version].getVersionString() : "-");
+    batch.put((byte) ' ');
+    putLong(record.status);
+    batch.put((byte) ' ');
+    putLong(record.bytes);
+    batch.put((byte) ' ');
+    putLong(TimeUnit.NANOSECONDS.toMicros(record.durationNanos));
+    putAscii("us\n");
+    batchLines++;
+  }
+
+  private void putTime(final long timeMillis) {
+    final var seconds = Math.floorDiv(timeMillis, 1000);
+    if (seconds != second) {
+      second = seconds;
+      secondPrefix =
+          SECONDS.format(Instant.ofEpochSecond(seconds)).getBytes(StandardCharsets.US_ASCII);
+    }
+    batch.put(secondPrefix);
+    final var millis = Math.floorMod(timeMillis, 1000);
+    batch.put((byte) ('0' + millis / 100));
+    batch.put((byte) ('0' + millis / 10 % 10));
+    batch.put((byte) ('0' + millis % 10));
+    batch.put((byte) 'Z');
+  }
+
+  private void putAscii(final String string) {
+    for (var i = 0; i < string.length(); i++) {
+      batch.put((byte) string.charAt(i));
+    }
+  }
+
+  private void putLong(final long value) {
+    var divisor = 1L;
+    while (value / divisor >= 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      batch.put((byte) ('0' + value / divisor % 10));
+    }
+  }
+
+  private void writeBatch() {
+    batch.flip();
+    try {
+      if (maxFileBytes > 0 && fileBytes > 0 && fileBytes + batch.remaining() > maxFileBytes) {
+        rotate();
+      }
+      while (batch.hasRemaining()) {
+        fileBytes += file.write(batch);
+      }
+    } catch (final IOException exception) {
+      failedLines.add(batchLines);
+    }
+    batch.clear();
+    batchLines = 0;
+  }
+
+  private void rotate() throws IOException {
+    file.close();
+    try {
+      if (maxFiles > 0) {
+        Files.deleteIfExists(rotated(maxFiles));
+        for (var i = maxFiles - 1; i >= 1; i--) {
+          if (Files.exists(rotated(i))) {
+            Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+        Files.move(path, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        Files.delete(path);
+      }
+    } finally {
+      open();
+    }
+  }
+
+  private Path rotated(final int index) {
+    return path.resolveSibling(path.getFileName() + "." + index);
+  }
+
+  private void open() throws IOException {
+    file =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    fileBytes = file.size();
+  }
+}
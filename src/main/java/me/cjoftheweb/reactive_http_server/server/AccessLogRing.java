@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// A bounded ring of access log records for many producers and a single consumer. Every slot is
+// allocated up front as a run of longs and a fixed run of target bytes, so recording a request
+// allocates nothing. Each slot carries a sequence number: a producer claims the slot whose
+// sequence matches the tail, fills it and publishes it by advancing the sequence, which is the
+// only store the consumer waits on. A producer that finds the ring full counts a drop and moves
+// on rather than waiting for the consumer.
+final class AccessLogRing {
+  // per slot: completion time in epoch milliseconds, duration in nanoseconds, response bytes and
+  // the method, version, status and target length packed together
+  private static final int STRIDE = 4;
+  private static final int TIME = 0;
+  private static final int DURATION = 1;
+  private static final int BYTES = 2;
+  private static final int PACKED = 3;
+
+  private final int mask;
+  private final int maxTargetLength;
+  private final long[] fields;
+  private final byte[] targets;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private long head = 0;
+
+  AccessLogRing(final int capacity, final int maxTargetLength) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("The capacity must be a power of two");
+    }
+    this.mask = capacity - 1;
+    this.maxTargetLength = maxTargetLength;
+    this.fields = new long[capacity * STRIDE];
+    this.targets = new byte[capacity * maxTargetLength];
+    this.sequences = new AtomicLongArray(capacity);
+    for (var i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  // Method and version are ordinals, or -1 when the request head never parsed. Targets longer
+  // than the slot are cut short.
+  boolean offer(
+      final int method,
+      final int version,
+      final CharSequence target,
+      final int status,
+      final long bytes,
+      final long timeMillis,
+      final long durationNanos) {
+    long position;
+    while (true) {
+      position = tail.get();
+      final var sequence = sequences.get((int) position & mask);
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (sequence < position) {
+        dropped.increment();
+        return false;
+      }
+    }
+
+    final var slot = (int) position & mask;
+    final var targetLength = target == null ? 0 : Math.min(target.length(), maxTargetLength);
+    for (var i = 0; i < targetLength; i++) {
+      targets[slot * maxTargetLength + i] = (byte) target.charAt(i);
+    }
+    fields[slot * STRIDE + TIME] = timeMillis;
+    fields[slot * STRIDE + DURATION] = durationNanos;
+    fields[slot * STRIDE + BYTES] = bytes;
+    fields[slot * STRIDE + PACKED] =
+        ((long) (method + 1) << 56)
+            | ((long) (version + 1) << 48)
+            | ((long) status << 32)
+            | targetLength;
+    sequences.lazySet(slot, position + 1);
+    return true;
+  }
+
+  // May only be called by the consumer. Copies the next published record out and frees its slot.
+  boolean poll(final Record record) {
+    final var slot = (int) head & mask;
+    if (sequences.get(slot) != head + 1) {
+      return false;
+    }
+
+    final var packed = fields[slot * STRIDE + PACKED];
+    record.timeMillis = fields[slot * STRIDE + TIME];
+    record.durationNanos = fields[slot * STRIDE + DURATION];
+    record.bytes = fields[slot * STRIDE + BYTES];
+    record.method = (int) (packed >>> 56) - 1;
+    record.version = (int) ((packed >>> 48) & 0xFF) - 1;
+    record.status = (int) ((packed >>> 32) & 0xFFFF);
+    record.targetLength = (int) packed;
+    System.arraycopy(targets, slot * maxTargetLength, record.target, 0, record.targetLength);
+
+    sequences.lazySet(slot, head + mask + 1);
+    head++;
+    return true;
+  }
+
+  Record newRecord() {
+    return new Record(maxTargetLength);
+  }
+
+  static final class Record {
+    final byte[] target;
+    int targetLength;
+    int method;
+    int version;
+    int status;
+    long bytes;
+    long timeMillis;
+    long durationNanos;
+
+    private Record(final int maxTargetLength) {
+      this.target = new byte[maxTargetLength];
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.BlockingHttpHandler;
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponder;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// One request handed to a blocking handler. Everything but abort runs on the handler's thread;
+// the connection only hears back through onBlockingResponse, which hops onto its event loop.
+final class BlockingExchange implements Runnable, HttpResponder {
+  private final HttpConnection connection;
+  private final BlockingHttpHandler handler;
+  private final HttpRequest request;
+  private final RequestBodyStream requestBody;
+  private volatile ResponseBodyStream responseBody = null;
+  private volatile boolean aborted = false;
+  private volatile long startedNanos = 0;
+  private volatile long finishedNanos = 0;
+
+  BlockingExchange(
+      final HttpConnection connection,
+      final BlockingHttpHandler handler,
+      final HttpRequest request,
+      final RequestBodyStream requestBody) {
+    this.connection = connection;
+    this.handler = handler;
+    this.request = request;
+    this.requestBody = requestBody;
+  }
+
+  @Override
+  public OutputStream respond(final HttpStatus status, final HttpHeaders headers) {
+    if (responseBody != null) {
+      throw new IllegalStateException("The response has already been started");
+    }
+
+    final var body =
+        new ResponseBodyStream(
+            status, headers, response -> connection.onBlockingResponse(this, response));
+    responseBody = body;
+    if (aborted) {
+      body.cancel();
+    }
+    return body;
+  }
+
+  @Override
+  public void run() {
+    Exception failure = null;
+    startedNanos = System.nanoTime();
+    try {
+      handler.handle(
+          request, requestBody != null ? requestBody : InputStream.nullInputStream(), this);
+    } catch (final Exception exception) {
+      failure = exception;
+    }
+    finishedNanos = System.nanoTime();
+
+    final var body = responseBody;
+    if (body == null || (failure != null && !body.isCommitted())) {
+      connection.onBlockingResponse(this, null);
+    } else if (failure != null) {
+      body.fail(failure);
+    } else {
+      try {
+        body.finish();
+      } catch (final IOException ignored) {
+      }
+    }
+  }
+
+  long getStartedNanos() {
+    return startedNanos;
+  }
+
+  // Still 0 while the handler runs, which it can after its response is complete.
+  long getFinishedNanos() {
+    return finishedNanos;
+  }
+
+  void abort() {
+    aborted = true;
+    if (requestBody != null) {
+      requestBody.abort();
+    }
+
+    final var body = responseBody;
+    if (body != null) {
+      body.cancel();
+    }
+  }
+}
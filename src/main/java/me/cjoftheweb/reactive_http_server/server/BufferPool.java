@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Direct buffers of one size, shared by the TLS connections of an event loop. Connections only
+// hold them while they hold data, so the pool is sized by the busy connections rather than all of
+// them. Only the loop's thread uses it.
+final class BufferPool {
+  private final int bufferSize;
+  private final int maxPooled;
+  private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+  private int outstanding = 0;
+
+  BufferPool(final int bufferSize, final int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+  }
+
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+  // The buffers handed out and not yet released.
+  int getOutstanding() {
+    return outstanding;
+  }
+
+  ByteBuffer acquire() {
+    outstanding++;
+    final var buffer = free.pollFirst();
+    return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  void release(final ByteBuffer buffer) {
+    outstanding--;
+    if (free.size() < maxPooled) {
+      free.offerFirst(buffer);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.syntax.HttpRequestHeadParser;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// What the connections of an event loop only need while a request is in flight, shared between
+// them so an idle keep-alive connection holds none of it. A connection reads into the shared
+// buffer unless it already holds input, takes a head parser when the first byte of a head arrives
+// and gives it back once the response is queued, and takes a timeline for the same request that it
+// gives back once the response is flushed. Only the loop's thread uses it.
+final class ConnectionResources {
+  private final HttpServer server;
+  private final int maxPooled;
+  private final ArrayDeque<HttpRequestHeadParser> freeParsers = new ArrayDeque<>();
+  private RequestTimeline freeTimelines = null;
+  private int freeTimelineCount = 0;
+  private final ByteBuffer readBuffer;
+  private final HttpResponseHeadEncoder encoder = new HttpResponseHeadEncoder();
+  private int outstandingParsers = 0;
+
+  ConnectionResources(final HttpServer server, final int maxPooled) {
+    this.server = server;
+    this.maxPooled = maxPooled;
+    this.readBuffer = ByteBuffer.allocate(server.getReadBufferSize());
+  }
+
+  ByteBuffer getReadBuffer() {
+    return readBuffer;
+  }
+
+  // Response heads are encoded in one go and copied out, so one encoder serves the whole loop.
+  HttpResponseHeadEncoder getEncoder() {
+    return encoder;
+  }
+
+  // The parsers handed out and not yet released.
+  int getOutstandingParsers() {
+    return outstandingParsers;
+  }
+
+  HttpRequestHeadParser acquireParser() {
+    outstandingParsers++;
+    final var parser = freeParsers.pollFirst();
+    return parser != null ? parser : newParser();
+  }
+
+  private HttpRequestHeadParser newParser() {
+    return new HttpRequestHeadParser(
+            server.getMaxRequestTargetLength(),
+            server.getMaxHeaderNameSize(),
+            server.getMaxHeaderValueSize(),
+            server.getMaxRequestHeadSize(),
+            server.getMaxHeaderCount())
+        .yieldAfterRequestLine(
+            server.getRateLimiter() != null && server.getRateLimitKeyHeader() == null);
+  }
+
+  void releaseParser(final HttpRequestHeadParser parser) {
+    outstandingParsers--;
+    parser.reset();
+    if (freeParsers.size() < maxPooled) {
+      freeParsers.offerFirst(parser);
+    }
+  }
+
+  RequestTimeline acquireTimeline() {
+    final var timeline = freeTimelines;
+    if (timeline == null) {
+      return new RequestTimeline();
+    }
+
+    freeTimelines = timeline.next;
+    freeTimelineCount--;
+    timeline.next = null;
+    return timeline;
+  }
+
+  void releaseTimeline(final RequestTimeline timeline) {
+    timeline.reset();
+    if (freeTimelineCount < maxPooled) {
+      timeline.next = freeTimelines;
+      freeTimelines = timeline;
+      freeTimelineCount++;
+    }
+  }
+}
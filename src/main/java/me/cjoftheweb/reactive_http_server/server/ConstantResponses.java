@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.syntax.HttpHeaderNameTooLong;
+import me.cjoftheweb.reactive_http_server.syntax.HttpHeaderValueTooLong;
+import me.cjoftheweb.reactive_http_server.syntax.HttpRequestHeadTooLarge;
+import me.cjoftheweb.reactive_http_server.syntax.HttpRequestTargetTooLong;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+import me.cjoftheweb.reactive_http_server.syntax.TooManyHttpHeaders;
+import me.cjoftheweb.reactive_http_server.syntax.UnsupportedHttpMethod;
+import me.cjoftheweb.reactive_http_server.syntax.UnsupportedHttpVersion;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Responses that never change, encoded once into read-only buffers and written as duplicates, so
+// rejecting a malformed request or answering a health probe involves no encoding work at all.
+final class ConstantResponses {
+  private static final ByteBuffer HEALTHY = encode(HttpStatus.OK, false);
+
+  private static final ByteBuffer CONTINUE =
+      new HttpResponseHeadEncoder()
+          .statusLine(HttpVersion.HTTP_1_1, HttpStatus.CONTINUE)
+          .encode()
+          .asReadOnlyBuffer();
+
+  // lines for chunks smaller than this are encoded on first use and shared from then on
+  private static final int CACHED_CHUNK_SIZES = 16 * 1024;
+  private static final AtomicReferenceArray<ByteBuffer> CHUNK_SIZE_LINES =
+      new AtomicReferenceArray<>(CACHED_CHUNK_SIZES);
+
+  private static final ByteBuffer[] ERRORS = new ByteBuffer[HttpStatus.values().length];
+
+  private static final Map<Class<?>, HttpStatus> PARSE_FAILURE_STATUSES =
+      Map.of(
+          HttpRequestTargetTooLong.class, HttpStatus.URI_TOO_LONG,
+          HttpHeaderNameTooLong.class, HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE,
+          HttpHeaderValueTooLong.class, HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE,
+          HttpRequestHeadTooLarge.class, HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE,
+          TooManyHttpHeaders.class, HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE,
+          UnsupportedHttpMethod.class, HttpStatus.NOT_IMPLEMENTED,
+          UnsupportedHttpVersion.class, HttpStatus.HTTP_VERSION_NOT_SUPPORTED);
+
+  // Resolved once per exception class; a subclass of a listed exception gets its status, and
+  // anything else a parser throws, such as a ParseException, is a 400.
+  private static final ClassValue<HttpStatus> PARSE_FAILURE_STATUS =
+      new ClassValue<>() {
+        @Override
+        protected HttpStatus computeValue(final Class<?> type) {
+          for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            final var status = PARSE_FAILURE_STATUSES.get(current);
+            if (status != null) {
+              return status;
+            }
+          }
+          return HttpStatus.BAD_REQUEST;
+        }
+      };
+
+  static {
+    for (var status : HttpStatus.values()) {
+      if (status.getCode() >= 400) {
+        ERRORS[status.ordinal()] = encode(status, true);
+      }
+    }
+  }
+
+  private ConstantResponses() {}
+
+  private static ByteBuffer encode(final HttpStatus status, final boolean close) {
+    final var encoder =
+        new HttpResponseHeadEncoder()
+            .statusLine(HttpVersion.HTTP_1_1, status)
+            .header("Content-Length", 0);
+    if (close) {
+      encoder.header("Connection", "close");
+    }
+    return encoder.encode().asReadOnlyBuffer();
+  }
+
+  // An empty 200 that keeps an HTTP/1.1 connection open.
+  static ByteBuffer healthy() {
+    return HEALTHY.duplicate();
+  }
+
+  // The interim 100 Continue that asks a client waiting on Expect: 100-continue for the body.
+  static ByteBuffer interimContinue() {
+    return CONTINUE.duplicate();
+  }
+
+  // The line that starts a chunk of the given size, so an event broadcast to many chunked
+  // responses has its framing encoded once as well.
+  static ByteBuffer chunkSizeLine(final int size) {
+    if (size >= CACHED_CHUNK_SIZES) {
+      return encodeChunkSizeLine(size);
+    }
+
+    var line = CHUNK_SIZE_LINES.get(size);
+    if (line == null) {
+      line = encodeChunkSizeLine(size).asReadOnlyBuffer();
+      CHUNK_SIZE_LINES.set(size, line);
+    }
+    return line.duplicate();
+  }
+
+  private static ByteBuffer encodeChunkSizeLine(final int size) {
+    return ByteBuffer.wrap(
+        (Integer.toHexString(size) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  static HttpStatus parseFailureStatus(final Exception exception) {
+    return PARSE_FAILURE_STATUS.get(exception.getClass());
+  }
+
+  // An empty response with the given error status that closes the connection.
+  static ByteBuffer error(final HttpStatus status) {
+    final var response = ERRORS[status.ordinal()];
+    if (response == null) {
+      throw new IllegalArgumentException(String.format("%s is not an error status", status));
+    }
+    return response.duplicate();
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+final class EventLoop implements Runnable {
+  // how often a loop with paused connections checks whether memory has been freed elsewhere
+  private static final long RESUME_POLL_MILLIS = 10;
+
+  private final int index;
+  private final MemoryGovernor memoryGovernor;
+  private final Selector selector;
+  private final Thread thread;
+  private final MpscQueue<Runnable> tasks = new MpscQueue<>();
+  private final List<HttpConnection> pausedConnections = new ArrayList<>();
+  private final List<HttpConnection> pendingFlushes = new ArrayList<>();
+  // when the first task submitted from another thread since the loop last ran its tasks arrived,
+  // made odd so it is never zero, which means no wakeup is pending; the selector is thereby woken
+  // once per batch of tasks rather than once per task
+  private final AtomicLong wakeupRequestedAt = new AtomicLong();
+  private final LongAdder submittedTasks = new LongAdder();
+  private final AtomicLong maxTaskLag = new AtomicLong();
+  private volatile long executedTasks = 0;
+  private volatile boolean running = true;
+
+  EventLoop(final int index, final MemoryGovernor memoryGovernor) throws IOException {
+    this.index = index;
+    this.memoryGovernor = memoryGovernor;
+    this.selector = Selector.open();
+    this.thread = new Thread(this, String.format("reactive-http-server-loop-%d", index));
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  MemoryGovernor getMemoryGovernor() {
+    return memoryGovernor;
+  }
+
+  boolean inEventLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  void execute(final Runnable task) {
+    submittedTasks.increment();
+    tasks.offer(task);
+    if (!inEventLoop()
+        && wakeupRequestedAt.get() == 0
+        && wakeupRequestedAt.compareAndSet(0, System.nanoTime() | 1)) {
+      selector.wakeup();
+    }
+  }
+
+  long getPendingTasks() {
+    return submittedTasks.sum() - executedTasks;
+  }
+
+  // The longest a task submitted from another thread waited for the loop since the last call.
+  long takeMaxTaskLagNanos() {
+    return maxTaskLag.getAndSet(0);
+  }
+
+  SelectionKey register(
+      final SelectableChannel channel, final int interestOps, final SelectionHandler handler)
+      throws ClosedChannelException {
+    return channel.register(selector, interestOps, handler);
+  }
+
+  // The handlers of the channels registered with the loop; the selector's key set is not safe to
+  // read elsewhere, so this is only for the loop's own thread.
+  List<SelectionHandler> getHandlers() {
+    final var handlers = new ArrayList<SelectionHandler>();
+    for (var key : selector.keys()) {
+      handlers.add((SelectionHandler) key.attachment());
+    }
+    return handlers;
+  }
+
+  void shutdown() throws InterruptedException {
+    running = false;
+    selector.wakeup();
+    if (!inEventLoop()) {
+      thread.join();
+    }
+  }
+
+  void pause(final HttpConnection connection) {
+    pausedConnections.add(connection);
+  }
+
+  // Connections queue their writes during an iteration and write them all at its end, so
+  // everything produced for one connection in the meantime leaves in a single gathering write.
+  void flushLater(final HttpConnection connection) {
+    pendingFlushes.add(connection);
+  }
+
+  private void flushPending() {
+    for (var i = 0; i < pendingFlushes.size(); i++) {
+      final var connection = pendingFlushes.get(i);
+      try {
+        connection.flushScheduled();
+      } catch (final IOException | CancelledKeyException exception) {
+        connection.close();
+      }
+    }
+    pendingFlushes.clear();
+  }
+
+  private void resumePausedConnections() {
+    if (pausedConnections.isEmpty() || !memoryGovernor.canResume()) {
+      return;
+    }
+
+    for (var connection : pausedConnections) {
+      connection.resumeReading();
+    }
+    pausedConnections.clear();
+  }
+
+  private void runTasks() {
+    // clearing the flag before draining means a task offered after this point either wakes the
+    // next select or is seen by the drain below
+    final var requestedAt = wakeupRequestedAt.getAndSet(0);
+    if (requestedAt != 0) {
+      maxTaskLag.accumulateAndGet(System.nanoTime() - requestedAt, Math::max);
+    }
+
+    var executed = 0;
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+      executed++;
+    }
+    executedTasks += executed;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (running) {
+        if (!tasks.isEmpty()) {
+          selector.selectNow();
+        } else if (pausedConnections.isEmpty()) {
+          selector.select();
+        } else {
+          selector.select(RESUME_POLL_MILLIS);
+        }
+
+        final var iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          final var key = iterator.next();
+          iterator.remove();
+
+          final var handler = (SelectionHandler) key.attachment();
+          try {
+            handler.onSelected(key);
+          } catch (final IOException | CancelledKeyException exception) {
+            handler.close();
+          }
+        }
+
+        runTasks();
+        resumePausedConnections();
+        flushPending();
+      }
+    } catch (final IOException exception) {
+      throw new IllegalStateException(exception);
+    } finally {
+      for (var key : List.copyOf(selector.keys())) {
+        ((SelectionHandler) key.attachment()).close();
+      }
+
+      try {
+        selector.close();
+      } catch (final IOException ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class HandlerExecutors {
+  private HandlerExecutors() {}
+
+  // Virtual threads are looked up reflectively so the server still builds for and runs on
+  // runtimes that predate them, where every blocked handler falls back to a platform thread.
+  static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (final ReflectiveOperationException exception) {
+      final var threads = new AtomicInteger();
+      return Executors.newCachedThreadPool(
+          runnable -> {
+            final var thread =
+                new Thread(
+                    runnable,
+                    String.format("reactive-http-server-handler-%d", threads.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+  }
+
+  // Async mode keeps each worker's own queue FIFO, which suits independent requests better than
+  // the LIFO order meant for recursive tasks; idle workers steal from the busy ones either way.
+  static ForkJoinPool newWorkStealingPool(final int parallelism) {
+    return new ForkJoinPool(
+        parallelism,
+        pool -> {
+          final var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName(String.format("reactive-http-server-handler-%d", thread.getPoolIndex()));
+          return thread;
+        },
+        null,
+        true);
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+@Name("me.cjoftheweb.reactive_http_server.HandlerPoolStatistics")
+@Label("Handler Pool Statistics")
+@Description("The queues of the work-stealing pool that runs handlers off the event loops")
+@Category({"Reactive HTTP Server", "Event Loop"})
+@Enabled(false)
+@StackTrace(false)
+@Period("1 s")
+final class HandlerPoolStatisticsEvent extends Event {
+  @Label("Queued Submissions")
+  long queuedSubmissions;
+
+  @Label("Queued Tasks")
+  long queuedTasks;
+
+  @Label("Active Threads")
+  int activeThreads;
+
+  @Label("Steals")
+  long steals;
+}
@@ -0,0 +1,1280 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.RequestTimingListener;
+import me.cjoftheweb.reactive_http_server.syntax.HttpRequestHeadParser;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+
+import static me.cjoftheweb.reactive_http_server.server.HttpConnectionState.*;
+
+final class HttpConnection implements SelectionHandler {
+  private static final ByteBuffer CHUNK_END = ascii("\r\n");
+  private static final ByteBuffer LAST_CHUNK = ascii("0\r\n\r\n");
+  // stands in for a read buffer while the connection holds no input of its own; it is never
+  // written to, so every connection can share it
+  private static final ByteBuffer NO_INPUT = ByteBuffer.allocate(0);
+
+  private final HttpServer server;
+  private final EventLoop eventLoop;
+  private final MemoryGovernor memoryGovernor;
+  private final SocketChannel channel;
+  private final TlsChannel tls;
+  private final ConnectionResources resources;
+  private final HttpResponseHeadEncoder encoder;
+  private final ReadSizePredictor readSizePredictor;
+  // only held while a request is in flight, so an idle connection holds neither
+  private HttpRequestHeadParser parser = null;
+  private ByteBuffer readBuffer = NO_INPUT;
+  private final WriteQueue writeQueue;
+  private final RequestTimingListener timingListener;
+  private final boolean timed;
+  // only held from the first byte of a request when something reads the timings; timelines whose
+  // responses are queued wait for them to be flushed
+  private RequestTimeline timeline = null;
+  private RequestTimeline unflushedHead = null;
+  private RequestTimeline unflushedTail = null;
+  private SelectionKey key;
+  private HttpConnectionState state = READING_HEAD;
+  private HttpRequest request;
+  private HttpStatus responseStatus;
+  private ResponseSubscriber responseSubscriber;
+  private BlockingExchange blockingExchange;
+  private RequestBodyStream requestBody;
+  private WebSocketSession webSocket;
+  private long bodyRemaining = 0;
+  private long responseBytes = 0;
+  private long heldBytes = 0;
+  private int requests = 0;
+  private boolean chunked = false;
+  private boolean closeAfterResponse = false;
+  private boolean readingPaused = false;
+  private boolean flushScheduled = false;
+  private boolean writeBlocked = false;
+  private boolean requestLineAdmitted = false;
+
+  HttpConnection(final HttpServer server, final EventLoop eventLoop, final SocketChannel channel) {
+    this.server = server;
+    this.eventLoop = eventLoop;
+    this.memoryGovernor = eventLoop.getMemoryGovernor();
+    this.channel = channel;
+    this.tls =
+        server.isTls()
+            ? new TlsChannel(
+                channel,
+                server.newSslEngine(),
+                server.getTlsBufferPool(eventLoop.getIndex()),
+                server.getTlsTaskExecutor(),
+                () -> runOnLoop(this::onTlsTasksDone))
+            : null;
+    this.resources = server.getConnectionResources(eventLoop.getIndex());
+    this.encoder = resources.getEncoder();
+    this.readSizePredictor = new ReadSizePredictor(server.getReadBufferSize());
+    this.writeQueue =
+        new WriteQueue(server.getWriteBufferLowWatermark(), server.getWriteBufferHighWatermark());
+    this.timingListener = server.getRequestTimingListener();
+    this.timed = timingListener != null || server.getAccessLog() != null;
+  }
+
+  private static ByteBuffer ascii(final String string) {
+    final var bytes = new byte[string.length()];
+    for (var i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) string.charAt(i);
+    }
+    return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+  }
+
+  void register() throws IOException {
+    key = eventLoop.register(channel, SelectionKey.OP_READ, this);
+    memoryGovernor.addConnection(eventLoop.getIndex(), heldBytes);
+  }
+
+  private void updateHeldBytes() {
+    final long held =
+        (readBuffer != resources.getReadBuffer() ? readBuffer.capacity() : 0)
+            + (parser != null ? parser.getRequestHeadSize() : 0)
+            + (requestBody != null ? requestBody.getCapacity() : 0)
+            + (tls != null ? tls.getHeldBytes() : 0);
+    memoryGovernor.add(eventLoop.getIndex(), held - heldBytes);
+    heldBytes = held;
+  }
+
+  private boolean isReadingRequestBody() {
+    return requestBody != null && bodyRemaining > 0;
+  }
+
+  private boolean isReading() {
+    return state == READING_HEAD
+        || state == DISCARDING_BODY
+        || isReadingRequestBody()
+        || (state == WEBSOCKET && !webSocket.isStalled());
+  }
+
+  void resumeReading() {
+    readingPaused = false;
+    if (isReading() && !writeBlocked) {
+      enableRead();
+    }
+  }
+
+  // The selector only reports input still in the socket, so input TLS has already taken off it
+  // is read on the next loop iteration instead.
+  private void enableRead() {
+    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    if (tls != null && tls.hasBufferedInput()) {
+      runOnLoop(this::readBuffered);
+    }
+  }
+
+  private void readBuffered() throws IOException {
+    if (state != CLOSED && (key.interestOps() & SelectionKey.OP_READ) != 0) {
+      read();
+    }
+  }
+
+  private void onTlsTasksDone() throws IOException {
+    if (state == CLOSED) {
+      return;
+    }
+
+    tls.tasksDone();
+    // the handshake picks up where it stopped, which may be a write as much as a read
+    if (isReading() && !readingPaused) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+    read();
+    if (state != CLOSED) {
+      flush();
+    }
+  }
+
+  @Override
+  public void onSelected(final SelectionKey key) throws IOException {
+    if (key.isWritable()) {
+      flush();
+    }
+
+    if (state != CLOSED && key.isReadable()) {
+      read();
+    }
+  }
+
+  private void read() throws IOException {
+    final var borrowed = readBuffer == NO_INPUT;
+    final int read;
+    if (borrowed) {
+      readBuffer = resources.getReadBuffer().clear();
+      try {
+        read = tls != null ? tls.read(readBuffer) : channel.read(readBuffer);
+      } catch (final IOException exception) {
+        readBuffer = NO_INPUT;
+        throw exception;
+      }
+      readBuffer.flip();
+    } else {
+      readBuffer.compact();
+      read = tls != null ? tls.read(readBuffer) : channel.read(readBuffer);
+      readBuffer.flip();
+    }
+
+    if (read < 0) {
+      readBuffer = NO_INPUT;
+      close();
+      return;
+    }
+
+    processInput();
+    final var previousSize = readSizePredictor.getSize();
+    if (read > 0 && readSizePredictor.record(read)) {
+      resizeReadBuffer(previousSize, read);
+    }
+    if (readBuffer == resources.getReadBuffer()) {
+      keepUnprocessedInput();
+    }
+    if (state == CLOSED) {
+      return;
+    }
+    updateHeldBytes();
+
+    if (isReading() && memoryGovernor.shouldPause(heldBytes)) {
+      readingPaused = true;
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      eventLoop.pause(this);
+    }
+
+    if (tls != null && state != CLOSED) {
+      onTlsRead(read);
+    }
+  }
+
+  private void onTlsRead(final int read) {
+    if (tls.isTasksRunning()) {
+      // the socket stays readable while a handshake task runs, so it is not watched until then
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      return;
+    }
+
+    if (tls.hasPendingOutput()) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+    if (read > 0 && tls.hasBufferedInput()) {
+      runOnLoop(this::readBuffered);
+    }
+  }
+
+  // A connection without input of its own only takes the new size the next time it keeps some.
+  private void resizeReadBuffer(final int previousSize, final int lastRead) {
+    final var size = readSizePredictor.getSize();
+    final var event = new ReadBufferResizedEvent();
+    if (event.shouldCommit()) {
+      event.previousSize = previousSize;
+      event.size = size;
+      event.lastRead = lastRead;
+      event.commit();
+    }
+
+    if (readBuffer != NO_INPUT
+        && readBuffer != resources.getReadBuffer()
+        && readBuffer.remaining() <= size) {
+      readBuffer = ByteBuffer.allocate(size).put(readBuffer).flip();
+    }
+  }
+
+  // The shared buffer is read into again by the next connection, so input that could not be
+  // processed yet moves into a buffer of the connection's own.
+  private void keepUnprocessedInput() {
+    if (readBuffer.hasRemaining() && state != CLOSED) {
+      final var size = Math.max(readSizePredictor.getSize(), readBuffer.remaining());
+      readBuffer = ByteBuffer.allocate(size).put(readBuffer).flip();
+    } else {
+      readBuffer = NO_INPUT;
+    }
+  }
+
+  private void processInput() throws IOException {
+    consumeInput();
+    // a buffer emptied between requests or within a head is given up; a body keeps its buffer
+    // so that reading it does not allocate one every time the handler falls behind
+    if (state == READING_HEAD
+        && readBuffer != NO_INPUT
+        && readBuffer != resources.getReadBuffer()
+        && !readBuffer.hasRemaining()) {
+      readBuffer = NO_INPUT;
+    }
+  }
+
+  private void consumeInput() throws IOException {
+    while (readBuffer.hasRemaining()) {
+      switch (state) {
+        case READING_HEAD:
+          if (writeBlocked) {
+            // pipelined requests wait until the responses ahead of them have drained
+            return;
+          }
+
+          if (parser == null) {
+            parser = resources.acquireParser();
+          }
+          if (timed && timeline == null) {
+            timeline = resources.acquireTimeline();
+            timeline.firstByteReceived = System.nanoTime();
+          }
+
+          try {
+            parser.offer(readBuffer);
+          } catch (final Exception exception) {
+            onParseFailure(exception);
+            return;
+          }
+
+          if (timeline != null) {
+            recordParseProgress();
+          }
+
+          if (!requestLineAdmitted && parser.isRequestLineDone()) {
+            requestLineAdmitted = true;
+            if (server.getRateLimitKeyHeader() == null && !isAdmitted(null)) {
+              respondWithError(HttpStatus.TOO_MANY_REQUESTS);
+              return;
+            }
+          }
+
+          if (parser.isDone()) {
+            onRequestHead();
+          }
+          break;
+        case DISCARDING_BODY:
+          final var skipped = (int) Math.min(readBuffer.remaining(), bodyRemaining);
+          readBuffer.position(readBuffer.position() + skipped);
+          bodyRemaining -= skipped;
+          if (bodyRemaining == 0) {
+            dispatch();
+          }
+          break;
+        case READING_BODY:
+          if (!readBody()) {
+            return;
+          }
+          break;
+        case RESPONDING:
+          // a blocking handler can stream its response while it is still reading the body
+          if (!isReadingRequestBody() || !readBody()) {
+            return;
+          }
+          break;
+        case WEBSOCKET:
+          if (!webSocket.onInput(readBuffer)) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            return;
+          }
+          break;
+        case DRAINING:
+          readBuffer.position(readBuffer.limit());
+          break;
+        default:
+          return;
+      }
+    }
+  }
+
+  // Returns false when the handler has to catch up before more of the body can be read.
+  private boolean readBody() {
+    final var limit = readBuffer.limit();
+    readBuffer.limit(readBuffer.position() + (int) Math.min(readBuffer.remaining(), bodyRemaining));
+    final var offered = requestBody.offer(readBuffer);
+    readBuffer.limit(limit);
+    bodyRemaining -= offered;
+
+    if (bodyRemaining == 0) {
+      requestBody.end();
+      if (state == READING_BODY) {
+        awaitHandler();
+      } else {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      }
+    } else if (offered == 0) {
+      // leave the rest in the socket until the handler frees space
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      return false;
+    }
+    return true;
+  }
+
+  // Takes a token from the client's bucket, keyed by the given header value if there is one and by
+  // the client's address otherwise.
+  private boolean isAdmitted(final String key) {
+    final var rateLimiter = server.getRateLimiter();
+    if (rateLimiter == null) {
+      return true;
+    }
+
+    if (key != null) {
+      return rateLimiter.tryAcquire(key);
+    }
+    try {
+      final var address = channel.getRemoteAddress();
+      return rateLimiter.tryAcquire(
+          address instanceof InetSocketAddress
+              ? ((InetSocketAddress) address).getAddress()
+              : address);
+    } catch (final IOException exception) {
+      return true;
+    }
+  }
+
+  private void recordParseProgress() {
+    if (timeline.requestLineParsed == 0 && parser.isRequestLineDone()) {
+      timeline.requestLineParsed = System.nanoTime();
+    }
+    if (timeline.headParsed == 0 && parser.isDone()) {
+      timeline.headParsed = System.nanoTime();
+    }
+  }
+
+  private void onParseFailure(final Exception exception) throws IOException {
+    final var event = new ParseFailureEvent();
+    if (event.shouldCommit()) {
+      event.exception = exception.getClass().getName();
+      event.message = exception.getMessage();
+      event.parserState = parser.getFriendlyStatusReport();
+      event.commit();
+    }
+
+    respondWithError(ConstantResponses.parseFailureStatus(exception));
+  }
+
+  private void onRequestHead() throws IOException {
+    final var headers = parser.getHeaders();
+    final var contentLength = contentLength(headers);
+    request =
+        new HttpRequest(
+            parser.getMethod(),
+            parser.getRequestTarget(),
+            parser.getVersion(),
+            headers,
+            Math.max(contentLength, 0));
+    requests++;
+
+    final var event = new RequestHeadParsedEvent();
+    if (event.shouldCommit()) {
+      event.method = request.getMethod().toString();
+      event.requestTargetLength = request.getRequestTarget().length();
+      event.headerCount = headers.size();
+      event.commit();
+    }
+
+    if (request.getVersion() == HttpVersion.HTTP_1_1) {
+      closeAfterResponse = headers.containsToken("Connection", "close");
+    } else {
+      closeAfterResponse = !headers.containsToken("Connection", "keep-alive");
+    }
+
+    final var keyHeader = server.getRateLimitKeyHeader();
+    if (keyHeader != null && !isAdmitted(headers.get(keyHeader).orElse(null))) {
+      respondWithError(HttpStatus.TOO_MANY_REQUESTS);
+      return;
+    }
+
+    if (headers.contains("Transfer-Encoding")) {
+      respondWithError(HttpStatus.NOT_IMPLEMENTED);
+      return;
+    }
+
+    bodyRemaining = contentLength;
+    if (bodyRemaining < 0) {
+      respondWithError(HttpStatus.BAD_REQUEST);
+      return;
+    }
+
+    if (server.getWebSocketHandler() != null && headers.containsToken("Upgrade", "websocket")) {
+      upgradeToWebSocket();
+      return;
+    }
+
+    if (request.getVersion() == HttpVersion.HTTP_1_1
+        && headers.contains("Expect")
+        && !checkExpectation(headers.get("Expect").get())) {
+      return;
+    }
+
+    if (bodyRemaining == 0 && isHealthCheck()) {
+      if (request.getVersion() == HttpVersion.HTTP_1_1 && !closeAfterResponse) {
+        respond(HttpStatus.OK, ConstantResponses.healthy());
+      } else {
+        respond(new HttpResponse(HttpStatus.OK));
+      }
+      return;
+    }
+
+    final var cached = cachedResponse();
+    if (cached != null) {
+      if (cached.isNotModified(request)) {
+        respond(HttpStatus.NOT_MODIFIED, cached.notModified());
+      } else {
+        respond(HttpStatus.OK, cached.response(request));
+      }
+    } else if (server.getBlockingHandler() != null) {
+      dispatchBlocking();
+    } else if (bodyRemaining > 0) {
+      state = DISCARDING_BODY;
+    } else {
+      dispatch();
+    }
+  }
+
+  // Returns -1 unless every Content-Length value, across repeated fields and comma-separated lists,
+  // is the same run of digits. A proxy in front of or behind this server could otherwise take a
+  // different value than it does and disagree on where the message ends.
+  static long contentLength(final HttpHeaders headers) {
+    var length = 0L;
+    var seen = false;
+    for (var field : headers.getAll("Content-Length")) {
+      for (var element : field.split(",", -1)) {
+        final var value = digits(element.trim());
+        if (value < 0 || (seen && value != length)) {
+          return -1;
+        }
+        length = value;
+        seen = true;
+      }
+    }
+    return length;
+  }
+
+  // Parses 1*DIGIT, returning -1 for anything else or a value too large for a long.
+  private static long digits(final String value) {
+    if (value.isEmpty() || value.length() > 18) {
+      return -1;
+    }
+
+    var result = 0L;
+    for (var i = 0; i < value.length(); i++) {
+      final var c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  private void upgradeToWebSocket() throws IOException {
+    final var headers = request.getHeaders();
+    final var webSocketKey = headers.get("Sec-WebSocket-Key");
+    if (request.getMethod() != HttpMethod.GET
+        || request.getVersion() != HttpVersion.HTTP_1_1
+        || !headers.containsToken("Connection", "upgrade")
+        || webSocketKey.isEmpty()
+        || bodyRemaining != 0) {
+      respondWithError(HttpStatus.BAD_REQUEST);
+      return;
+    }
+
+    if (!headers.get("Sec-WebSocket-Version").map(String::trim).orElse("").equals("13")) {
+      closeAfterResponse = true;
+      respond(
+          new HttpResponse(
+              HttpStatus.UPGRADE_REQUIRED,
+              new HttpHeaders().add("Sec-WebSocket-Version", "13"),
+              ByteBuffer.allocate(0)));
+      return;
+    }
+
+    startResponse(HttpStatus.SWITCHING_PROTOCOLS);
+    queue(
+        encoder
+            .statusLine(HttpVersion.HTTP_1_1, HttpStatus.SWITCHING_PROTOCOLS)
+            .header("Upgrade", "websocket")
+            .header("Connection", "Upgrade")
+            .header("Sec-WebSocket-Accept", WebSocketSession.accept(webSocketKey.get().trim()))
+            .encode());
+    scheduleFlush();
+
+    releaseParser();
+    updateHeldBytes();
+    webSocket =
+        new WebSocketSession(
+            this,
+            eventLoop,
+            server.getWebSocketHandler(),
+            request,
+            server.getMaxWebSocketMessageSize());
+    state = WEBSOCKET;
+    if (!readingPaused) {
+      enableRead();
+    }
+    webSocket.open();
+  }
+
+  // Called by the WebSocket once it reads nothing more, to close when its writes are out.
+  void drainWebSocket() {
+    state = DRAINING;
+    key.interestOps(SelectionKey.OP_READ);
+    scheduleFlush();
+  }
+
+  // Called once a message subscriber asks for more after reading had to stop for it.
+  void resumeWebSocketInput() throws IOException {
+    if (state != WEBSOCKET) {
+      return;
+    }
+
+    if (!readingPaused) {
+      enableRead();
+    }
+    processInput();
+  }
+
+  // Returns false when the request has been answered without reading its body.
+  private boolean checkExpectation(final String expectation) throws IOException {
+    if (!expectation.trim().equalsIgnoreCase("100-continue")) {
+      respondWithError(HttpStatus.EXPECTATION_FAILED);
+      return false;
+    }
+
+    if (bodyRemaining == 0) {
+      return true;
+    }
+
+    final var continueHandler = server.getContinueHandler();
+    if (continueHandler != null) {
+      final Optional<HttpResponse> rejection;
+      try {
+        rejection = continueHandler.check(request);
+      } catch (final Exception exception) {
+        respondWithError(HttpStatus.INTERNAL_SERVER_ERROR);
+        return false;
+      }
+
+      if (rejection.isPresent()) {
+        // the client holds the body back, so the connection is closed rather than waiting for
+        // a body that may never come
+        closeAfterResponse = true;
+        respond(rejection.get());
+        return false;
+      }
+    }
+
+    if (server.getBlockingHandler() == null) {
+      // only blocking handlers read bodies, so rather than asking for a body just to discard it,
+      // the handler answers straight away and the connection is closed
+      bodyRemaining = 0;
+      closeAfterResponse = true;
+      return true;
+    }
+
+    queue(ConstantResponses.interimContinue());
+    scheduleFlush();
+    return true;
+  }
+
+  private boolean isHealthCheck() {
+    final var path = server.getHealthCheckPath();
+    return path != null
+        && (request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD)
+        && request.getRequestTarget().equals(path);
+  }
+
+  // Cached responses are encoded for persistent HTTP/1.1 connections, so only those are served.
+  private ResponseCache.Entry cachedResponse() {
+    final var cache = server.getResponseCache();
+    if (cache == null
+        || bodyRemaining != 0
+        || request.getVersion() != HttpVersion.HTTP_1_1
+        || closeAfterResponse) {
+      return null;
+    }
+    return cache.lookup(request);
+  }
+
+  private void dispatchBlocking() throws IOException {
+    if (bodyRemaining > 0) {
+      requestBody =
+          new RequestBodyStream(
+              server.getReadBufferSize(), () -> runOnLoop(this::onRequestBodySpace));
+      state = READING_BODY;
+    } else {
+      awaitHandler();
+    }
+
+    blockingExchange =
+        new BlockingExchange(this, server.getBlockingHandler(), request, requestBody);
+    try {
+      server.getHandlerExecutor().execute(blockingExchange);
+    } catch (final RejectedExecutionException exception) {
+      blockingExchange = null;
+      requestBody = null;
+      respondWithError(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  private void awaitHandler() {
+    state = HANDLING;
+    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+  }
+
+  private void onRequestBodySpace() throws IOException {
+    if (!isReadingRequestBody()) {
+      return;
+    }
+
+    if (!readingPaused) {
+      enableRead();
+    }
+    processInput();
+  }
+
+  // Called from the handler's thread; a null response means the handler failed before it
+  // started one.
+  void onBlockingResponse(final BlockingExchange exchange, final HttpResponse response) {
+    runOnLoop(
+        () -> {
+          if (exchange != blockingExchange || state == CLOSED) {
+            exchange.abort();
+            return;
+          }
+
+          if (isReadingRequestBody() && (response == null || response.getBody().isPresent())) {
+            // the handler is done without reading the whole body, and the rest can only be
+            // skipped by closing once the response is out
+            requestBody.abort();
+            requestBody = null;
+            closeAfterResponse = true;
+          }
+
+          respondFromHandler(response);
+        });
+  }
+
+  private HttpResponse handle(final HttpRequest request) {
+    try {
+      return server.getHandler().handle(request);
+    } catch (final Exception exception) {
+      return null;
+    }
+  }
+
+  private void dispatch() throws IOException {
+    final var coalescer = server.getRequestCoalescer();
+    final var key = coalescer != null ? RequestCoalescer.key(request, server.isTls()) : null;
+    if (key != null) {
+      dispatchCoalesced(coalescer, key);
+      return;
+    }
+
+    final var executor = server.getHandlerExecutor();
+    if (executor == null) {
+      final var started = timeline != null ? System.nanoTime() : 0;
+      final var response = handle(request);
+      recordHandler(started, timeline != null ? System.nanoTime() : 0);
+      respondFromHandler(response);
+      return;
+    }
+
+    final var dispatched = request;
+    awaitHandler();
+    try {
+      executor.execute(
+          () -> {
+            final var started = System.nanoTime();
+            final var response = handle(dispatched);
+            final var finished = System.nanoTime();
+            runOnLoop(
+                () -> {
+                  if (state == HANDLING && request == dispatched) {
+                    recordHandler(started, finished);
+                    respondFromHandler(response);
+                  }
+                });
+          });
+    } catch (final RejectedExecutionException exception) {
+      respondWithError(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+  }
+
+  private void dispatchCoalesced(final RequestCoalescer coalescer, final String key)
+      throws IOException {
+    final var dispatched = request;
+    final var flight = new CompletableFuture<HttpResponse>();
+    // a request that joins another's flight waits for that handler, so it is timed from joining
+    final var started = timeline != null ? System.nanoTime() : 0;
+    final var joined = coalescer.join(key, flight);
+    if (joined == flight) {
+      final var executor = server.getHandlerExecutor();
+      if (executor == null) {
+        coalescer.land(key, flight, handle(request));
+        recordHandler(started, timeline != null ? System.nanoTime() : 0);
+        respondFromHandler(RequestCoalescer.share(flight.getNow(null)));
+        return;
+      }
+
+      try {
+        executor.execute(() -> coalescer.land(key, flight, handle(dispatched)));
+      } catch (final RejectedExecutionException exception) {
+        coalescer.land(key, flight, new HttpResponse(HttpStatus.SERVICE_UNAVAILABLE));
+      }
+    }
+
+    awaitHandler();
+    joined.thenAccept(
+        response ->
+            runOnLoop(
+                () -> {
+                  if (state == HANDLING && request == dispatched) {
+                    recordHandler(started, timeline != null ? System.nanoTime() : 0);
+                    respondFromHandler(RequestCoalescer.share(response));
+                  } else {
+                    // the request was given up on, by a close or a timeout, while it waited
+                    RequestCoalescer.abandon(response);
+                  }
+                }));
+  }
+
+  private void recordHandler(final long started, final long finished) {
+    if (timeline != null) {
+      timeline.handlerStarted = started;
+      timeline.handlerFinished = finished;
+    }
+  }
+
+  // A null response means the handler failed before it produced one.
+  private void respondFromHandler(final HttpResponse response) throws IOException {
+    if (response == null) {
+      respondWithError(HttpStatus.INTERNAL_SERVER_ERROR);
+      return;
+    }
+
+    final var cache = server.getResponseCache();
+    final var cached = cache != null ? cache.store(request, response) : null;
+    if (cached != null && request.getVersion() == HttpVersion.HTTP_1_1 && !closeAfterResponse) {
+      respond(response.getStatus(), cached.response(request));
+    } else {
+      respond(response);
+    }
+  }
+
+  private void respondWithError(final HttpStatus status) throws IOException {
+    request = null;
+    closeAfterResponse = true;
+    respond(status, ConstantResponses.error(status));
+  }
+
+  private void startResponse(final HttpStatus status) {
+    state = RESPONDING;
+    if (!isReadingRequestBody()) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+    responseStatus = status;
+    responseBytes = 0;
+    if (timeline != null) {
+      timeline.responseStart = writeQueue.getAddedBytes();
+    }
+  }
+
+  // Sends a response that was encoded in full ahead of time.
+  private void respond(final HttpStatus status, final ByteBuffer encoded) throws IOException {
+    startResponse(status);
+    queue(encoded);
+    scheduleFlush();
+    onResponseQueued();
+  }
+
+  private void respond(final HttpStatus status, final ByteBuffer[] encoded) throws IOException {
+    startResponse(status);
+    for (var buffer : encoded) {
+      queue(buffer);
+    }
+    scheduleFlush();
+    onResponseQueued();
+  }
+
+  private void respond(final HttpResponse response) throws IOException {
+    startResponse(response.getStatus());
+
+    final var version = request == null ? HttpVersion.HTTP_1_1 : request.getVersion();
+    final var omitBody = request != null && request.getMethod() == HttpMethod.HEAD;
+    final var body = response.getBody();
+
+    encoder.statusLine(version, response.getStatus()).headers(response.getHeaders());
+    if (body.isPresent()) {
+      encoder.header("Content-Length", body.get().remaining());
+    } else if (version == HttpVersion.HTTP_1_1) {
+      encoder.header("Transfer-Encoding", "chunked");
+    } else {
+      closeAfterResponse = true;
+    }
+
+    if (closeAfterResponse) {
+      encoder.header("Connection", "close");
+    } else if (version == HttpVersion.HTTP_1_0) {
+      encoder.header("Connection", "keep-alive");
+    }
+
+    queue(encoder.encode());
+    scheduleFlush();
+
+    if (body.isPresent() || omitBody) {
+      if (!omitBody) {
+        queue(body.get());
+      }
+      onResponseQueued();
+    } else {
+      chunked = version == HttpVersion.HTTP_1_1;
+      responseSubscriber = new ResponseSubscriber();
+      response.getBodyPublisher().get().subscribe(responseSubscriber);
+    }
+  }
+
+  void queue(final ByteBuffer buffer) {
+    responseBytes += buffer.remaining();
+    writeQueue.add(buffer);
+  }
+
+  private void onResponseChunk(final ResponseSubscriber subscriber, final ByteBuffer chunk)
+      throws IOException {
+    if (subscriber != responseSubscriber) {
+      return;
+    }
+
+    subscriber.awaitingChunk = false;
+    // an empty chunk would terminate a chunked body early, so it is skipped
+    if (chunk.hasRemaining()) {
+      if (chunked) {
+        queue(ConstantResponses.chunkSizeLine(chunk.remaining()));
+        queue(chunk);
+        queue(CHUNK_END.duplicate());
+      } else {
+        queue(chunk);
+      }
+      scheduleFlush();
+    }
+
+    if (writeQueue.isAboveHighWatermark()) {
+      writeBlocked = true;
+    } else {
+      subscriber.requestChunk();
+    }
+  }
+
+  private void onResponseEnd(final ResponseSubscriber subscriber, final Throwable throwable)
+      throws IOException {
+    if (subscriber != responseSubscriber) {
+      return;
+    }
+
+    responseSubscriber = null;
+    if (throwable != null) {
+      // the status line has already been sent, so the only option is to cut the response short
+      close();
+      return;
+    }
+
+    if (chunked) {
+      queue(LAST_CHUNK.duplicate());
+      scheduleFlush();
+    }
+    onResponseQueued();
+  }
+
+  void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      eventLoop.flushLater(this);
+    }
+  }
+
+  void flushScheduled() throws IOException {
+    flushScheduled = false;
+    if (state != CLOSED) {
+      flush();
+    }
+  }
+
+  private void flush() throws IOException {
+    if (webSocket != null) {
+      webSocket.seal();
+    }
+    if (tls != null) {
+      tls.flush();
+      writeQueue.writeTo(tls);
+    } else {
+      writeQueue.writeTo(channel);
+    }
+    if (timingListener != null) {
+      onWritten();
+    }
+
+    if (!writeQueue.isEmpty() || (tls != null && tls.hasPendingOutput())) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    } else if (state == DRAINING && tls != null && !tls.closeOutbound()) {
+      key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    } else {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      if (state == DRAINING) {
+        channel.shutdownOutput();
+      }
+    }
+
+    if (writeBlocked && writeQueue.isBelowLowWatermark()) {
+      writeBlocked = false;
+      if (responseSubscriber != null) {
+        responseSubscriber.requestChunk();
+      } else if (state == READING_HEAD) {
+        resumeInput();
+      }
+    }
+  }
+
+  // Called once the last byte of a response is queued, which lets the next pipelined request be
+  // read while the response is still being written, so their responses can share a write.
+  private void onResponseQueued() throws IOException {
+    final var event = new ResponseWrittenEvent();
+    if (event.shouldCommit()) {
+      event.status = responseStatus.getCode();
+      event.bytesWritten = responseBytes;
+      event.commit();
+    }
+
+    final var accessLog = server.getAccessLog();
+    if (accessLog != null) {
+      accessLog.record(
+          request,
+          responseStatus,
+          responseBytes,
+          timeline != null ? System.nanoTime() - timeline.firstByteReceived : 0);
+    }
+    if (timeline != null) {
+      awaitFlush();
+    }
+
+    if (isReadingRequestBody()) {
+      // the response finished before the handler read the whole body; as the head has already
+      // gone out without Connection: close, the connection is closed without notice
+      requestBody.abort();
+      closeAfterResponse = true;
+    }
+
+    if (closeAfterResponse) {
+      // closing with unread input would reset the connection and could discard the response
+      // before the client reads it, so once it is flushed, stop writing and wait for the client
+      // to close instead
+      state = DRAINING;
+      key.interestOps(SelectionKey.OP_READ);
+      scheduleFlush();
+      return;
+    }
+
+    releaseParser();
+    requestLineAdmitted = false;
+    blockingExchange = null;
+    requestBody = null;
+    updateHeldBytes();
+    request = null;
+    responseStatus = null;
+    bodyRemaining = 0;
+    state = READING_HEAD;
+    if (writeQueue.isAboveHighWatermark()) {
+      writeBlocked = true;
+    } else {
+      resumeInput();
+    }
+  }
+
+  // Puts the request's timings aside until its response has been flushed; the next request takes
+  // another timeline.
+  private void awaitFlush() {
+    if (timingListener == null) {
+      resources.releaseTimeline(timeline);
+      timeline = null;
+      return;
+    }
+
+    if (blockingExchange != null) {
+      timeline.handlerStarted = blockingExchange.getStartedNanos();
+      timeline.handlerFinished = blockingExchange.getFinishedNanos();
+    }
+    timeline.request = request;
+    timeline.status = responseStatus;
+    timeline.responseBytes = responseBytes;
+    timeline.responseEnd = writeQueue.getAddedBytes();
+    if (unflushedTail != null) {
+      unflushedTail.next = timeline;
+    } else {
+      unflushedHead = timeline;
+    }
+    unflushedTail = timeline;
+    timeline = null;
+  }
+
+  // Responses leave in order, so only the oldest waiting one or, once they are all out, the one
+  // still being produced can have had its first byte written.
+  private void onWritten() {
+    final var pending = unflushedHead != null ? unflushedHead : timeline;
+    if (pending == null
+        || pending.responseStart < 0
+        || (pending.firstByteWritten != 0 && pending.responseEnd < 0)) {
+      return;
+    }
+
+    final var written = writeQueue.getWrittenBytes();
+    final var now = System.nanoTime();
+    while (unflushedHead != null && unflushedHead.onWritten(written, now)) {
+      final var completed = unflushedHead;
+      unflushedHead = completed.next;
+      if (unflushedHead == null) {
+        unflushedTail = null;
+      }
+
+      try {
+        timingListener.onRequestCompleted(completed);
+      } catch (final RuntimeException ignored) {
+      }
+      resources.releaseTimeline(completed);
+    }
+    if (unflushedHead == null && timeline != null) {
+      timeline.onWritten(written, now);
+    }
+  }
+
+  private void releaseTimelines() {
+    if (timeline != null) {
+      resources.releaseTimeline(timeline);
+      timeline = null;
+    }
+    while (unflushedHead != null) {
+      final var released = unflushedHead;
+      unflushedHead = released.next;
+      resources.releaseTimeline(released);
+    }
+    unflushedTail = null;
+  }
+
+  private void releaseParser() {
+    if (parser != null) {
+      resources.releaseParser(parser);
+      parser = null;
+    }
+  }
+
+  private void resumeInput() {
+    if (!readingPaused) {
+      enableRead();
+    }
+
+    // pipelined requests that arrived while responding are handled on the next loop iteration
+    // rather than recursively, so a deep pipeline cannot grow the stack
+    if (readBuffer.hasRemaining()) {
+      runOnLoop(this::processInput);
+    }
+  }
+
+  private String remoteAddress() {
+    try {
+      return String.valueOf(channel.getRemoteAddress());
+    } catch (final IOException exception) {
+      return null;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (state == CLOSED) {
+      return;
+    }
+
+    state = CLOSED;
+    if (key != null) {
+      memoryGovernor.removeConnection(eventLoop.getIndex(), heldBytes);
+    }
+    releaseParser();
+    releaseTimelines();
+
+    if (responseSubscriber != null) {
+      responseSubscriber.cancel();
+      responseSubscriber = null;
+    }
+
+    if (blockingExchange != null) {
+      blockingExchange.abort();
+      blockingExchange = null;
+    }
+
+    if (webSocket != null) {
+      webSocket.onClosed(WebSocketSession.ABNORMAL_CLOSURE, "");
+    }
+
+    final var event = new ConnectionClosedEvent();
+    if (event.shouldCommit()) {
+      event.remoteAddress = remoteAddress();
+      event.requests = requests;
+      event.commit();
+    }
+
+    try {
+      if (tls != null) {
+        tls.close();
+      } else {
+        channel.close();
+      }
+    } catch (final IOException ignored) {
+    }
+  }
+
+  void runOnLoop(final IoRunnable runnable) {
+    eventLoop.execute(
+        () -> {
+          try {
+            runnable.run();
+          } catch (final IOException exception) {
+            close();
+          }
+        });
+  }
+
+  private final class ResponseSubscriber implements Flow.Subscriber<ByteBuffer> {
+    private Flow.Subscription subscription;
+    private boolean awaitingChunk = false;
+    private boolean cancelled = false;
+
+    void requestChunk() {
+      if (subscription != null && !awaitingChunk) {
+        awaitingChunk = true;
+        subscription.request(1);
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      if (subscription != null) {
+        subscription.cancel();
+      }
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      runOnLoop(
+          () -> {
+            if (cancelled) {
+              subscription.cancel();
+              return;
+            }
+            this.subscription = subscription;
+            if (!writeQueue.isAboveHighWatermark()) {
+              requestChunk();
+            } else {
+              writeBlocked = true;
+            }
+          });
+    }
+
+    @Override
+    public void onNext(final ByteBuffer item) {
+      runOnLoop(() -> onResponseChunk(this, item));
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      runOnLoop(() -> onResponseEnd(this, throwable));
+    }
+
+    @Override
+    public void onComplete() {
+      runOnLoop(() -> onResponseEnd(this, null));
+    }
+  }
+
+  @FunctionalInterface
+  interface IoRunnable {
+    void run() throws IOException;
+  }
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import jdk.jfr.FlightRecorder;
+import me.cjoftheweb.reactive_http_server.ApplicationProtocolSelector;
+import me.cjoftheweb.reactive_http_server.BlockingHttpHandler;
+import me.cjoftheweb.reactive_http_server.ContinueHandler;
+import me.cjoftheweb.reactive_http_server.HttpHandler;
+import me.cjoftheweb.reactive_http_server.RequestTimingListener;
+import me.cjoftheweb.reactive_http_server.WebSocketHandler;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+public final class HttpServer implements Closeable {
+  private static final Set<HttpServer> RUNNING_SERVERS = ConcurrentHashMap.newKeySet();
+  // free TLS buffers each event loop keeps around for the next busy connection
+  private static final int TLS_POOLED_BUFFERS = 256;
+  // free head parsers and timelines each event loop keeps around for its next busy connections
+  private static final int POOLED_CONNECTION_RESOURCES = 256;
+
+  static {
+    // JFR only schedules periodic hooks that exist when a recording applies its settings, so they
+    // are added once up front rather than whenever a server starts
+    FlightRecorder.addPeriodicEvent(
+        EventLoopStatisticsEvent.class,
+        () -> RUNNING_SERVERS.forEach(HttpServer::emitEventLoopStatistics));
+    FlightRecorder.addPeriodicEvent(
+        HandlerPoolStatisticsEvent.class,
+        () -> RUNNING_SERVERS.forEach(HttpServer::emitHandlerPoolStatistics));
+  }
+
+  private final SocketAddress address;
+  private final HttpHandler handler;
+  private final BlockingHttpHandler blockingHandler;
+  private final Executor configuredHandlerExecutor;
+  private final int handlerParallelism;
+  private final int backlog;
+  private final boolean reusePort;
+  private final int eventLoopCount;
+  private final int readBufferSize;
+  private final int writeBufferLowWatermark;
+  private final int writeBufferHighWatermark;
+  private final int maxRequestTargetLength;
+  private final int maxHeaderNameSize;
+  private final int maxHeaderValueSize;
+  private final int maxRequestHeadSize;
+  private final int maxHeaderCount;
+  private final long maxInFlightBytes;
+  private final String healthCheckPath;
+  private final ResponseCache responseCache;
+  private final RequestCoalescer requestCoalescer;
+  private final RateLimiter rateLimiter;
+  private final String rateLimitKeyHeader;
+  private final ContinueHandler continueHandler;
+  private final WebSocketHandler webSocketHandler;
+  private final long maxWebSocketMessageSize;
+  private final SSLContext sslContext;
+  private final ApplicationProtocolSelector applicationProtocolSelector;
+  private final int tlsSessionCacheSize;
+  private final int tlsSessionTimeoutSeconds;
+  private final Path accessLogPath;
+  private final long accessLogMaxFileBytes;
+  private final int accessLogMaxFiles;
+  private final RequestTimingListener requestTimingListener;
+  private AccessLog accessLog = null;
+  private BufferPool[] tlsBufferPools = null;
+  private ConnectionResources[] connectionResources = null;
+  private MemoryGovernor memoryGovernor = null;
+  private EventLoop[] eventLoops = null;
+  private ServerSocketChannel[] serverSocketChannels = null;
+  private Path boundSocketFile = null;
+  private Executor handlerExecutor = null;
+  private ExecutorService ownedHandlerExecutor = null;
+
+  private HttpServer(final Builder builder) {
+    this.address = builder.address;
+    this.handler = builder.handler;
+    this.blockingHandler = builder.blockingHandler;
+    this.configuredHandlerExecutor = builder.handlerExecutor;
+    this.handlerParallelism = builder.handlerParallelism;
+    this.backlog = builder.backlog;
+    this.reusePort = builder.reusePort;
+    this.eventLoopCount = builder.eventLoopCount;
+    this.readBufferSize = builder.readBufferSize;
+    this.writeBufferLowWatermark = builder.writeBufferLowWatermark;
+    this.writeBufferHighWatermark = builder.writeBufferHighWatermark;
+    this.maxRequestTargetLength = builder.maxRequestTargetLength;
+    this.maxHeaderNameSize = builder.maxHeaderNameSize;
+    this.maxHeaderValueSize = builder.maxHeaderValueSize;
+    this.maxRequestHeadSize = builder.maxRequestHeadSize;
+    this.maxHeaderCount = builder.maxHeaderCount;
+    this.maxInFlightBytes = builder.maxInFlightBytes;
+    this.healthCheckPath = builder.healthCheckPath;
+    this.responseCache =
+        builder.responseCacheBytes > 0
+            ? new ResponseCache(builder.responseCacheBytes, builder.sslContext != null)
+            : null;
+    this.requestCoalescer = builder.coalesceRequests ? new RequestCoalescer() : null;
+    this.rateLimiter =
+        builder.rateLimit > 0 ? new RateLimiter(builder.rateLimit, builder.rateLimitBurst) : null;
+    this.rateLimitKeyHeader = builder.rateLimitKeyHeader;
+    this.continueHandler = builder.continueHandler;
+    this.webSocketHandler = builder.webSocketHandler;
+    this.maxWebSocketMessageSize = builder.maxWebSocketMessageSize;
+    this.sslContext = builder.sslContext;
+    this.applicationProtocolSelector = builder.applicationProtocolSelector;
+    this.tlsSessionCacheSize = builder.tlsSessionCacheSize;
+    this.tlsSessionTimeoutSeconds = builder.tlsSessionTimeoutSeconds;
+    this.accessLogPath = builder.accessLogPath;
+    this.accessLogMaxFileBytes = builder.accessLogMaxFileBytes;
+    this.accessLogMaxFiles = builder.accessLogMaxFiles;
+    this.requestTimingListener = builder.requestTimingListener;
+  }
+
+  public static Builder builder(final HttpHandler handler) {
+    return new Builder(handler, null);
+  }
+
+  // Parsing stays on the event loops, while every request is handled on a thread of its own
+  // that may block: a virtual thread where the runtime has them.
+  public static Builder builder(final BlockingHttpHandler handler) {
+    return new Builder(null, handler);
+  }
+
+  public synchronized void start() throws IOException {
+    if (eventLoops != null) {
+      throw new IllegalStateException("Server has already been started");
+    }
+
+    final var capacity = maxInFlightBytes > 0 ? maxInFlightBytes : Long.MAX_VALUE;
+    memoryGovernor = new MemoryGovernor(capacity, eventLoopCount);
+    if (handlerParallelism > 0) {
+      ownedHandlerExecutor = HandlerExecutors.newWorkStealingPool(handlerParallelism);
+    } else if (blockingHandler != null && configuredHandlerExecutor == null) {
+      ownedHandlerExecutor = HandlerExecutors.newThreadPerTaskExecutor();
+    }
+    handlerExecutor =
+        ownedHandlerExecutor != null ? ownedHandlerExecutor : configuredHandlerExecutor;
+    if (sslContext != null) {
+      startTls();
+    }
+    serverSocketChannels = new ServerSocketChannel[reusePort ? eventLoopCount : 1];
+    eventLoops = new EventLoop[eventLoopCount];
+    try {
+      bind();
+
+      connectionResources = new ConnectionResources[eventLoopCount];
+      for (var i = 0; i < eventLoopCount; i++) {
+        eventLoops[i] = new EventLoop(i, memoryGovernor);
+        connectionResources[i] = new ConnectionResources(this, POOLED_CONNECTION_RESOURCES);
+      }
+
+      if (reusePort) {
+        // every loop accepts from its own socket and keeps what it accepts, so the kernel's
+        // balancing of new connections across the sockets is the only distribution
+        for (var i = 0; i < eventLoopCount; i++) {
+          new Acceptor(this, serverSocketChannels[i], new EventLoop[] {eventLoops[i]})
+              .register(eventLoops[i]);
+        }
+      } else {
+        new Acceptor(this, serverSocketChannels[0], eventLoops).register(eventLoops[0]);
+      }
+
+      if (accessLogPath != null) {
+        accessLog = new AccessLog(accessLogPath, accessLogMaxFileBytes, accessLogMaxFiles);
+        accessLog.start();
+      }
+
+      for (var eventLoop : eventLoops) {
+        eventLoop.start();
+      }
+
+      RUNNING_SERVERS.add(this);
+    } catch (final IOException | RuntimeException exception) {
+      closeServerSocketChannels();
+      throw exception;
+    }
+  }
+
+  private void startTls() {
+    // resumed sessions skip the key exchange, which is most of the handshake's cost, so the cache
+    // is bounded in size and age rather than left to the JDK's defaults
+    final var sessionContext = sslContext.getServerSessionContext();
+    sessionContext.setSessionCacheSize(tlsSessionCacheSize);
+    sessionContext.setSessionTimeout(tlsSessionTimeoutSeconds);
+
+    final var session = sslContext.createSSLEngine().getSession();
+    final var bufferSize =
+        Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+    tlsBufferPools = new BufferPool[eventLoopCount];
+    for (var i = 0; i < eventLoopCount; i++) {
+      tlsBufferPools[i] = new BufferPool(bufferSize, TLS_POOLED_BUFFERS);
+    }
+  }
+
+  private void bind() throws IOException {
+    if (address instanceof UnixDomainSocketAddress) {
+      if (reusePort) {
+        throw new UnsupportedOperationException("SO_REUSEPORT requires a TCP address");
+      }
+
+      final var serverSocketChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      serverSocketChannels[0] = serverSocketChannel;
+      serverSocketChannel.bind(address, backlog);
+      serverSocketChannel.configureBlocking(false);
+      // binding creates the socket file, which is left behind on close unless it is removed
+      boundSocketFile = ((UnixDomainSocketAddress) address).getPath();
+      return;
+    }
+
+    var bindAddress = address;
+    for (var i = 0; i < serverSocketChannels.length; i++) {
+      final var serverSocketChannel = ServerSocketChannel.open();
+      serverSocketChannels[i] = serverSocketChannel;
+
+      if (reusePort) {
+        if (!serverSocketChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+          throw new UnsupportedOperationException("SO_REUSEPORT is not supported on this platform");
+        }
+        serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+      }
+
+      serverSocketChannel.bind(bindAddress, backlog);
+      serverSocketChannel.configureBlocking(false);
+      // an ephemeral port is only chosen once, the remaining sockets join the first one
+      bindAddress = serverSocketChannel.getLocalAddress();
+    }
+  }
+
+  private void closeServerSocketChannels() throws IOException {
+    IOException failure = null;
+    for (var serverSocketChannel : serverSocketChannels) {
+      if (serverSocketChannel == null) {
+        continue;
+      }
+
+      try {
+        serverSocketChannel.close();
+      } catch (final IOException exception) {
+        failure = exception;
+      }
+    }
+
+    if (boundSocketFile != null) {
+      try {
+        Files.deleteIfExists(boundSocketFile);
+      } catch (final IOException exception) {
+        failure = exception;
+      }
+      boundSocketFile = null;
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void emitEventLoopStatistics() {
+    for (var eventLoop : eventLoops) {
+      final var event = new EventLoopStatisticsEvent();
+      event.eventLoop = eventLoop.getIndex();
+      event.pendingTasks = eventLoop.getPendingTasks();
+      event.maxTaskLag = eventLoop.takeMaxTaskLagNanos();
+      event.commit();
+    }
+  }
+
+  private void emitHandlerPoolStatistics() {
+    if (!(handlerExecutor instanceof ForkJoinPool)) {
+      return;
+    }
+
+    final var pool = (ForkJoinPool) handlerExecutor;
+    final var event = new HandlerPoolStatisticsEvent();
+    event.queuedSubmissions = pool.getQueuedSubmissionCount();
+    event.queuedTasks = pool.getQueuedTaskCount();
+    event.activeThreads = pool.getActiveThreadCount();
+    event.steals = pool.getStealCount();
+    event.commit();
+  }
+
+  public synchronized SocketAddress getLocalAddress() throws IOException {
+    if (serverSocketChannels == null) {
+      throw new IllegalStateException("Server has not been started");
+    }
+
+    return serverSocketChannels[0].getLocalAddress();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (eventLoops == null) {
+      return;
+    }
+
+    RUNNING_SERVERS.remove(this);
+    try {
+      for (var eventLoop : eventLoops) {
+        if (eventLoop != null) {
+          eventLoop.shutdown();
+        }
+      }
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (ownedHandlerExecutor != null) {
+        ownedHandlerExecutor.shutdown();
+      }
+      if (accessLog != null) {
+        try {
+          accessLog.close();
+        } catch (final InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      closeServerSocketChannels();
+    }
+  }
+
+  // Access log lines lost because the ring was full or the file could not be written.
+  public long getDroppedAccessLogRecords() {
+    return accessLog != null ? accessLog.getDropped() : 0;
+  }
+
+  MemoryGovernor getMemoryGovernor() {
+    return memoryGovernor;
+  }
+
+  HttpHandler getHandler() {
+    return handler;
+  }
+
+  BlockingHttpHandler getBlockingHandler() {
+    return blockingHandler;
+  }
+
+  Executor getHandlerExecutor() {
+    return handlerExecutor;
+  }
+
+  int getReadBufferSize() {
+    return readBufferSize;
+  }
+
+  int getWriteBufferLowWatermark() {
+    return writeBufferLowWatermark;
+  }
+
+  int getWriteBufferHighWatermark() {
+    return writeBufferHighWatermark;
+  }
+
+  int getMaxRequestTargetLength() {
+    return maxRequestTargetLength;
+  }
+
+  int getMaxHeaderNameSize() {
+    return maxHeaderNameSize;
+  }
+
+  int getMaxHeaderValueSize() {
+    return maxHeaderValueSize;
+  }
+
+  int getMaxRequestHeadSize() {
+    return maxRequestHeadSize;
+  }
+
+  int getMaxHeaderCount() {
+    return maxHeaderCount;
+  }
+
+  String getHealthCheckPath() {
+    return healthCheckPath;
+  }
+
+  ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  RequestCoalescer getRequestCoalescer() {
+    return requestCoalescer;
+  }
+
+  RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  String getRateLimitKeyHeader() {
+    return rateLimitKeyHeader;
+  }
+
+  ContinueHandler getContinueHandler() {
+    return continueHandler;
+  }
+
+  WebSocketHandler getWebSocketHandler() {
+    return webSocketHandler;
+  }
+
+  long getMaxWebSocketMessageSize() {
+    return maxWebSocketMessageSize;
+  }
+
+  AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  RequestTimingListener getRequestTimingListener() {
+    return requestTimingListener;
+  }
+
+  boolean isTls() {
+    return sslContext != null;
+  }
+
+  SSLEngine newSslEngine() {
+    final var engine = sslContext.createSSLEngine();
+    engine.setUseClientMode(false);
+    engine.setHandshakeApplicationProtocolSelector(
+        (sslEngine, offered) ->
+            applicationProtocolSelector != null
+                ? applicationProtocolSelector.select(offered)
+                : offered.contains("http/1.1") ? "http/1.1" : "");
+    return engine;
+  }
+
+  BufferPool getTlsBufferPool(final int eventLoop) {
+    return tlsBufferPools[eventLoop];
+  }
+
+  EventLoop getEventLoop(final int index) {
+    return eventLoops[index];
+  }
+
+  ConnectionResources getConnectionResources(final int eventLoop) {
+    return connectionResources[eventLoop];
+  }
+
+  // Handshake tasks are short bursts of CPU and must not wait behind blocking handlers.
+  Executor getTlsTaskExecutor() {
+    return ForkJoinPool.commonPool();
+  }
+
+  public static final class Builder {
+    private final HttpHandler handler;
+    private final BlockingHttpHandler blockingHandler;
+    private Executor handlerExecutor = null;
+    private int handlerParallelism = 0;
+    private SocketAddress address = new InetSocketAddress(8080);
+    private int backlog = 1024;
+    private boolean reusePort = false;
+    private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+    private int readBufferSize = 8192;
+    private int writeBufferLowWatermark = 32 * 1024;
+    private int writeBufferHighWatermark = 64 * 1024;
+    private int maxRequestTargetLength = 8000;
+    private int maxHeaderNameSize = 256;
+    private int maxHeaderValueSize = 8192;
+    private int maxRequestHeadSize = 64 * 1024;
+    private int maxHeaderCount = 100;
+    private long maxInFlightBytes = Runtime.getRuntime().maxMemory() / 2;
+    private String healthCheckPath = null;
+    private long responseCacheBytes = 0;
+    private boolean coalesceRequests = false;
+    private double rateLimit = 0;
+    private int rateLimitBurst = 0;
+    private String rateLimitKeyHeader = null;
+    private ContinueHandler continueHandler = null;
+    private WebSocketHandler webSocketHandler = null;
+    private long maxWebSocketMessageSize = 16 * 1024 * 1024;
+    private SSLContext sslContext = null;
+    private ApplicationProtocolSelector applicationProtocolSelector = null;
+    private int tlsSessionCacheSize = 10_000;
+    private int tlsSessionTimeoutSeconds = 3600;
+    private Path accessLogPath = null;
+    private long accessLogMaxFileBytes = 0;
+    private int accessLogMaxFiles = 0;
+    private RequestTimingListener requestTimingListener = null;
+
+    private Builder(final HttpHandler handler, final BlockingHttpHandler blockingHandler) {
+      this.handler = handler;
+      this.blockingHandler = blockingHandler;
+    }
+
+    public Builder address(final SocketAddress address) {
+      this.address = address;
+      return this;
+    }
+
+    public Builder port(final int port) {
+      return address(new InetSocketAddress(port));
+    }
+
+    public Builder unixDomainSocket(final Path path) {
+      return address(UnixDomainSocketAddress.of(path));
+    }
+
+    public Builder backlog(final int backlog) {
+      this.backlog = backlog;
+      return this;
+    }
+
+    // Binds one socket per event loop with SO_REUSEPORT so the kernel spreads new connections
+    // across the loops instead of a single acceptor handing them out.
+    public Builder reusePort(final boolean reusePort) {
+      this.reusePort = reusePort;
+      return this;
+    }
+
+    public Builder eventLoops(final int eventLoopCount) {
+      if (eventLoopCount < 1) {
+        throw new IllegalArgumentException("At least one event loop is required");
+      }
+      this.eventLoopCount = eventLoopCount;
+      return this;
+    }
+
+    // The largest read buffer a connection grows to. Each starts smaller and follows the sizes of
+    // its recent reads, so idle keep-alive connections hold little while uploads still get this.
+    public Builder readBufferSize(final int readBufferSize) {
+      if (readBufferSize < 1) {
+        throw new IllegalArgumentException("The read buffer size must be positive");
+      }
+      this.readBufferSize = readBufferSize;
+      return this;
+    }
+
+    // Once more than the high watermark is waiting for a slow client, a streamed response is asked
+    // for no more chunks and pipelined requests wait, until the queue drains to the low watermark.
+    public Builder writeBufferWatermarks(final int lowWatermark, final int highWatermark) {
+      if (lowWatermark < 0 || highWatermark < lowWatermark) {
+        throw new IllegalArgumentException(
+            "The write buffer watermarks must satisfy 0 <= low <= high");
+      }
+      this.writeBufferLowWatermark = lowWatermark;
+      this.writeBufferHighWatermark = highWatermark;
+      return this;
+    }
+
+    public Builder maxRequestTargetLength(final int maxRequestTargetLength) {
+      this.maxRequestTargetLength = maxRequestTargetLength;
+      return this;
+    }
+
+    public Builder maxHeaderNameSize(final int maxHeaderNameSize) {
+      this.maxHeaderNameSize = maxHeaderNameSize;
+      return this;
+    }
+
+    public Builder maxHeaderValueSize(final int maxHeaderValueSize) {
+      this.maxHeaderValueSize = maxHeaderValueSize;
+      return this;
+    }
+
+    public Builder maxRequestHeadSize(final int maxRequestHeadSize) {
+      this.maxRequestHeadSize = maxRequestHeadSize;
+      return this;
+    }
+
+    public Builder maxHeaderCount(final int maxHeaderCount) {
+      this.maxHeaderCount = maxHeaderCount;
+      return this;
+    }
+
+    // Bounds the bytes held by read buffers and partially parsed requests across all connections;
+    // zero disables the bound.
+    public Builder maxInFlightBytes(final long maxInFlightBytes) {
+      this.maxInFlightBytes = maxInFlightBytes;
+      return this;
+    }
+
+    // Runs handlers off the event loops on the given executor, which is left running on close.
+    // Blocking handlers default to a thread per request and handlers otherwise run on the loops.
+    public Builder handlerExecutor(final Executor handlerExecutor) {
+      this.handlerExecutor = handlerExecutor;
+      this.handlerParallelism = 0;
+      return this;
+    }
+
+    // Runs handlers off the event loops on a work-stealing pool owned by the server, so a
+    // CPU-heavy request no longer stalls the other connections of its loop.
+    public Builder workStealingHandlers(final int parallelism) {
+      if (parallelism < 1) {
+        throw new IllegalArgumentException("At least one handler thread is required");
+      }
+      this.handlerParallelism = parallelism;
+      this.handlerExecutor = null;
+      return this;
+    }
+
+    // Answers GET and HEAD requests for the path with an empty 200 without calling the handler.
+    public Builder healthCheck(final String path) {
+      this.healthCheckPath = path;
+      return this;
+    }
+
+    // Caches responses to GET requests that allow shared caching with max-age or s-maxage, up to
+    // the given number of bytes off the heap, and answers conditional requests for them with a
+    // 304. Zero, the default, disables the cache.
+    public Builder responseCache(final long maxBytes) {
+      this.responseCacheBytes = maxBytes;
+      return this;
+    }
+
+    // Answers GET requests for a target the handler is already working on with the response it
+    // produces rather than calling it again; requests with Authorization or Cookie are left out.
+    public Builder coalesceRequests(final boolean coalesceRequests) {
+      this.coalesceRequests = coalesceRequests;
+      return this;
+    }
+
+    // Limits each client IP address to the given rate with bursts of up to the given number of
+    // requests. Requests over the limit are checked as soon as their request line is parsed and
+    // answered with a 429 that closes the connection.
+    public Builder rateLimit(final double requestsPerSecond, final int burst) {
+      if (requestsPerSecond <= 0 || burst < 1) {
+        throw new IllegalArgumentException("The rate and the burst must be positive");
+      }
+      this.rateLimit = requestsPerSecond;
+      this.rateLimitBurst = burst;
+      return this;
+    }
+
+    // Limits clients by the value of the given request header, such as an API key, instead of by
+    // address. The limit is then checked once the whole head is parsed; requests without the
+    // header fall back to their address.
+    public Builder rateLimitKey(final String header) {
+      this.rateLimitKeyHeader = header;
+      return this;
+    }
+
+    // Checks requests with Expect: 100-continue before their body is sent. Without one, every
+    // such request a blocking handler serves is told to continue.
+    public Builder continueHandler(final ContinueHandler continueHandler) {
+      this.continueHandler = continueHandler;
+      return this;
+    }
+
+    // Accepts WebSocket upgrades on any target and hands the connections to the handler.
+    public Builder webSocketHandler(final WebSocketHandler webSocketHandler) {
+      this.webSocketHandler = webSocketHandler;
+      return this;
+    }
+
+    // Closes a WebSocket with 1009 once a message grows past this many bytes; zero disables it.
+    public Builder maxWebSocketMessageSize(final long maxWebSocketMessageSize) {
+      this.maxWebSocketMessageSize = maxWebSocketMessageSize;
+      return this;
+    }
+
+    // Terminates TLS on every connection with engines from the given context.
+    public Builder tls(final SSLContext sslContext) {
+      this.sslContext = sslContext;
+      return this;
+    }
+
+    // Without a selector, http/1.1 is chosen when the client offers it and ALPN is left out
+    // otherwise.
+    public Builder applicationProtocolSelector(
+        final ApplicationProtocolSelector applicationProtocolSelector) {
+      this.applicationProtocolSelector = applicationProtocolSelector;
+      return this;
+    }
+
+    // Bounds the sessions kept for resumption; this configures the context's server session
+    // cache, so it applies to everything else sharing the context too.
+    public Builder tlsSessionCache(final int size, final int timeoutSeconds) {
+      this.tlsSessionCacheSize = size;
+      this.tlsSessionTimeoutSeconds = timeoutSeconds;
+      return this;
+    }
+
+    // Logs every response to the given file from a background thread, rotating it once it would
+    // grow past 64 MiB and keeping five older files.
+    public Builder accessLog(final Path path) {
+      return accessLog(path, 64 * 1024 * 1024, 5);
+    }
+
+    // Rotating at zero bytes is never rotating; keeping zero files deletes the full one instead.
+    public Builder accessLog(final Path path, final long maxFileBytes, final int maxFiles) {
+      this.accessLogPath = path;
+      this.accessLogMaxFileBytes = maxFileBytes;
+      this.accessLogMaxFiles = maxFiles;
+      return this;
+    }
+
+    public Builder requestTimingListener(final RequestTimingListener requestTimingListener) {
+      this.requestTimingListener = requestTimingListener;
+      return this;
+    }
+
+    public HttpServer build() {
+      return new HttpServer(this);
+    }
+  }
+}
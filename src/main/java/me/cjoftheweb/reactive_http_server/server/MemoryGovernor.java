@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class MemoryGovernor {
+  // each stripe owns a whole cache line, so event loops updating their own stripes never contend
+  private static final int STRIPE_WIDTH = 8;
+  private static final int BYTES = 0;
+  private static final int CONNECTIONS = 1;
+
+  private final long capacity;
+  private final long pauseThreshold;
+  private final long resumeThreshold;
+  private final AtomicLongArray stripes;
+  private final int stripeCount;
+  private final AtomicLong shedConnections = new AtomicLong();
+
+  MemoryGovernor(final long capacity, final int stripeCount) {
+    this.capacity = capacity;
+    this.pauseThreshold = capacity / 10 * 9;
+    this.resumeThreshold = capacity / 4 * 3;
+    this.stripeCount = stripeCount;
+    this.stripes = new AtomicLongArray(stripeCount * STRIPE_WIDTH);
+  }
+
+  private long sum(final int field) {
+    var sum = 0L;
+    for (var i = 0; i < stripeCount; i++) {
+      sum += stripes.get(i * STRIPE_WIDTH + field);
+    }
+    return sum;
+  }
+
+  void add(final int stripe, final long bytes) {
+    stripes.getAndAdd(stripe * STRIPE_WIDTH + BYTES, bytes);
+  }
+
+  void addConnection(final int stripe, final long bytes) {
+    stripes.getAndIncrement(stripe * STRIPE_WIDTH + CONNECTIONS);
+    add(stripe, bytes);
+  }
+
+  void removeConnection(final int stripe, final long bytes) {
+    stripes.getAndDecrement(stripe * STRIPE_WIDTH + CONNECTIONS);
+    add(stripe, -bytes);
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+
+  long getUsedBytes() {
+    return sum(BYTES);
+  }
+
+  long getConnections() {
+    return sum(CONNECTIONS);
+  }
+
+  long getShedConnections() {
+    return shedConnections.get();
+  }
+
+  boolean isUnderPressure() {
+    return getUsedBytes() >= pauseThreshold;
+  }
+
+  boolean canResume() {
+    return getUsedBytes() < resumeThreshold;
+  }
+
+  // Only connections holding more than their fair share are paused, so the many small ones can
+  // keep finishing requests and hand their memory back.
+  boolean shouldPause(final long heldBytes) {
+    final var used = getUsedBytes();
+    if (used < pauseThreshold) {
+      return false;
+    }
+
+    final var connections = getConnections();
+    return connections > 0 && heldBytes > used / connections;
+  }
+
+  boolean shouldShed(final long connectionBytes) {
+    if (getUsedBytes() + connectionBytes <= pauseThreshold) {
+      return false;
+    }
+
+    shedConnections.incrementAndGet();
+    return true;
+  }
+}
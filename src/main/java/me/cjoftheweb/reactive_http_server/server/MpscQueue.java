@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// An unbounded queue for many producers and a single consumer. Offering is one atomic exchange on
+// the tail and polling only reads the next link, so producers never retry against each other the
+// way they do in a ConcurrentLinkedQueue.
+final class MpscQueue<T> {
+  private final AtomicReference<Node<T>> tail;
+  private Node<T> head;
+
+  MpscQueue() {
+    head = new Node<>(null);
+    tail = new AtomicReference<>(head);
+  }
+
+  void offer(final T value) {
+    final var node = new Node<>(value);
+    tail.getAndSet(node).next = node;
+  }
+
+  // May only be called by the consumer. A producer that has swapped the tail but not linked its
+  // node yet is not visible, which is why producers signal the consumer after offering.
+  T poll() {
+    final var next = head.next;
+    if (next == null) {
+      return null;
+    }
+
+    final var value = next.value;
+    next.value = null;
+    head = next;
+    return value;
+  }
+
+  boolean isEmpty() {
+    return head.next == null;
+  }
+
+  private static final class Node<T> {
+    private T value;
+    private volatile Node<T> next = null;
+
+    Node(final T value) {
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hands one streamed body to every request of a coalesced flight. The body's publisher is
+// subscribed once, on the first subscription, and the chunks it sends are kept so each subscriber
+// reads them at its own pace. The publisher is asked for another chunk only once a subscriber
+// that wants more has caught up with everything received so far, so the fastest reader sets the
+// pace and a slow one only holds on to chunks that are already in memory. A chunk is let go once
+// every reader has passed it, so each of the flight's requests holds a place from the start, and
+// a subscriber without one is turned away once reading has begun rather than replay the body. A
+// request that goes away before subscribing gives its place back, and a reader that falls too far
+// behind the fastest one is cut off, so a slow or absent reader cannot hold on to the whole body.
+final class MulticastPublisher implements Flow.Publisher<ByteBuffer>, Flow.Subscriber<ByteBuffer> {
+  // the most chunks kept for a reader behind the fastest one
+  static final int MAX_HELD_CHUNKS = 256;
+
+  private final Flow.Publisher<ByteBuffer> upstream;
+  // the chunks not yet read by every subscriber, the first of them being chunk number released
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private final List<Subscription> subscriptions = new ArrayList<>();
+  // requests for upstream chunks are made in a loop rather than recursively, as a publisher may
+  // answer them with onNext straight away
+  private final AtomicInteger upstreamWork = new AtomicInteger();
+  private Flow.Subscription upstreamSubscription;
+  private int released = 0;
+  // places held for requests of the flight that have yet to subscribe
+  private int readers;
+  private boolean subscribed = false;
+  private boolean started = false;
+  private boolean awaitingChunk = false;
+  private boolean done = false;
+  private Throwable failure;
+
+  MulticastPublisher(final Flow.Publisher<ByteBuffer> upstream, final int readers) {
+    this.upstream = upstream;
+    this.readers = readers;
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+    final var subscription = new Subscription(subscriber);
+    final boolean first;
+    synchronized (this) {
+      if (readers == 0 && started) {
+        subscription.cancelled = true;
+      } else {
+        readers = Math.max(readers - 1, 0);
+        subscriptions.add(subscription);
+      }
+      first = !subscribed;
+      subscribed = true;
+    }
+
+    subscriber.onSubscribe(subscription);
+    if (subscription.cancelled) {
+      subscriber.onError(new IllegalStateException("The body has already been partly read"));
+      return;
+    }
+    if (first) {
+      upstream.subscribe(this);
+    }
+  }
+
+  // Gives back the place of a request of the flight that will not subscribe after all.
+  void leave() {
+    synchronized (this) {
+      readers = Math.max(readers - 1, 0);
+      release();
+    }
+    cancelIfUnread();
+  }
+
+  @Override
+  public void onSubscribe(final Flow.Subscription subscription) {
+    synchronized (this) {
+      upstreamSubscription = subscription;
+    }
+    requestUpstream();
+  }
+
+  @Override
+  public void onNext(final ByteBuffer item) {
+    final List<Subscription> subscriptions;
+    synchronized (this) {
+      chunks.add(item);
+      awaitingChunk = false;
+      subscriptions = List.copyOf(this.subscriptions);
+      if (chunks.size() > MAX_HELD_CHUNKS) {
+        // requests yet to subscribe are too late to read from the start, and readers this far
+        // behind are told so rather than kept up with
+        readers = 0;
+        started = true;
+        for (var subscription : subscriptions) {
+          if (received() - subscription.index > MAX_HELD_CHUNKS) {
+            subscription.behind = true;
+            this.subscriptions.remove(subscription);
+          }
+        }
+        release();
+      }
+    }
+    subscriptions.forEach(Subscription::drain);
+    cancelIfUnread();
+  }
+
+  @Override
+  public void onError(final Throwable throwable) {
+    terminate(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    terminate(null);
+  }
+
+  private void terminate(final Throwable throwable) {
+    final List<Subscription> subscriptions;
+    synchronized (this) {
+      done = true;
+      failure = throwable;
+      subscriptions = List.copyOf(this.subscriptions);
+    }
+    subscriptions.forEach(Subscription::drain);
+  }
+
+  private void requestUpstream() {
+    if (upstreamWork.getAndIncrement() != 0) {
+      return;
+    }
+
+    do {
+      final Flow.Subscription subscription;
+      synchronized (this) {
+        if (upstreamSubscription == null || awaitingChunk || done || !isChunkWanted()) {
+          continue;
+        }
+        awaitingChunk = true;
+        subscription = upstreamSubscription;
+      }
+      subscription.request(1);
+    } while (upstreamWork.decrementAndGet() != 0);
+  }
+
+  private boolean isChunkWanted() {
+    for (var subscription : subscriptions) {
+      if (!subscription.cancelled
+          && subscription.requested.get() > 0
+          && subscription.index == received()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int received() {
+    return released + chunks.size();
+  }
+
+  // Lets go of the chunks every subscriber has read, unless a request of the flight has yet to
+  // subscribe and read them.
+  private void release() {
+    if (readers > 0) {
+      return;
+    }
+
+    var lowest = received();
+    for (var subscription : subscriptions) {
+      if (!subscription.cancelled) {
+        lowest = Math.min(lowest, subscription.index);
+      }
+    }
+    if (lowest > released) {
+      chunks.subList(0, lowest - released).clear();
+      released = lowest;
+    }
+  }
+
+  // The number of chunks kept for subscribers that have yet to read them.
+  synchronized int getHeldChunks() {
+    return chunks.size();
+  }
+
+  private void onCancel() {
+    synchronized (this) {
+      subscriptions.removeIf(candidate -> candidate.cancelled);
+      release();
+    }
+    cancelIfUnread();
+  }
+
+  // Cancels the body once no request of the flight is left to read it.
+  private void cancelIfUnread() {
+    final Flow.Subscription subscription;
+    synchronized (this) {
+      if (!subscriptions.isEmpty() || readers > 0 || upstreamSubscription == null || done) {
+        return;
+      }
+      done = true;
+      failure = new CancellationException("Every subscriber cancelled");
+      subscription = upstreamSubscription;
+    }
+    subscription.cancel();
+  }
+
+  private final class Subscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    // only advanced by the thread that holds work, under the publisher's lock
+    private volatile int index = 0;
+    private volatile boolean cancelled = false;
+    // set under the publisher's lock once the reader has fallen too far behind to keep up with
+    private boolean behind = false;
+    private boolean terminated = false;
+
+    Subscription(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Demand must be positive"));
+        return;
+      }
+
+      requested.getAndAccumulate(
+          n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        onCancel();
+      }
+    }
+
+    void drain() {
+      if (work.getAndIncrement() != 0) {
+        return;
+      }
+
+      do {
+        while (!cancelled && !terminated) {
+          final ByteBuffer chunk;
+          final boolean complete;
+          final Throwable error;
+          synchronized (MulticastPublisher.this) {
+            chunk =
+                !behind && index < received() && requested.get() > 0
+                    ? chunks.get(index - released)
+                    : null;
+            complete = behind || (done && index == received());
+            error =
+                behind
+                    ? new IllegalStateException("Fell too far behind the other readers")
+                    : failure;
+            if (chunk != null) {
+              index++;
+              started = true;
+              release();
+            }
+          }
+
+          if (chunk != null) {
+            requested.decrementAndGet();
+            subscriber.onNext(chunk.duplicate());
+          } else if (complete) {
+            terminated = true;
+            if (error != null) {
+              subscriber.onError(error);
+            } else {
+              subscriber.onComplete();
+            }
+          } else {
+            break;
+          }
+        }
+      } while (work.decrementAndGet() != 0);
+
+      requestUpstream();
+    }
+  }
+}
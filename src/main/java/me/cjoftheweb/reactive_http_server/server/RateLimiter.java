@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// A token bucket per client, kept as the single timestamp of the generic cell rate algorithm: the
+// time at which the client's bucket will be full again. A request is admitted by moving that time
+// one interval further with a compare-and-set, unless it would end up more than a burst ahead of
+// now. A bucket whose time has passed is full and so no different from a missing one, which lets
+// a full stripe of the table drop such buckets without losing anything. A new client finding its
+// stripe full looks at a few buckets, carrying on from where the last one left off, and takes the
+// place of one that has refilled or, failing that, the one that will refill soonest. Clients that
+// fill the table so cannot lock everyone else out; the client evicted merely starts afresh.
+final class RateLimiter {
+  private static final int STRIPES = 16;
+  static final int MAX_CLIENTS = 64 * 1024;
+  // buckets looked at to make room for a new client
+  private static final int EVICTION_SAMPLES = 8;
+
+  private final long intervalNanos;
+  private final long burstNanos;
+  private final LongSupplier nanoClock;
+  private final List<Stripe> stripes = new ArrayList<>(STRIPES);
+  private final LongAdder rejected = new LongAdder();
+
+  RateLimiter(final double requestsPerSecond, final int burst) {
+    this(requestsPerSecond, burst, System::nanoTime);
+  }
+
+  RateLimiter(final double requestsPerSecond, final int burst, final LongSupplier nanoClock) {
+    this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    this.burstNanos = intervalNanos * burst;
+    this.nanoClock = nanoClock;
+    for (var i = 0; i < STRIPES; i++) {
+      stripes.add(new Stripe());
+    }
+  }
+
+  boolean tryAcquire(final Object client) {
+    final var now = nanoClock.getAsLong();
+    final var hash = client.hashCode();
+    final var stripe = stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+
+    while (true) {
+      var bucket = stripe.buckets.get(client);
+      if (bucket == null) {
+        if (stripe.buckets.size() >= MAX_CLIENTS / STRIPES) {
+          stripe.evict(now);
+        }
+        final var created = new AtomicLong(now);
+        bucket = stripe.buckets.putIfAbsent(client, created);
+        if (bucket == null) {
+          bucket = created;
+        }
+      }
+
+      final var admitted = take(bucket, now);
+      // a bucket evicted while it was taken from has lost the token, so it is taken again from
+      // the one that replaced it
+      if (stripe.buckets.get(client) == bucket) {
+        if (!admitted) {
+          rejected.increment();
+        }
+        return admitted;
+      }
+    }
+  }
+
+  private boolean take(final AtomicLong bucket, final long now) {
+    while (true) {
+      final var fullAt = bucket.get();
+      final var from = fullAt - now > 0 ? fullAt : now;
+      if (from + intervalNanos - now > burstNanos) {
+        return false;
+      }
+      if (bucket.compareAndSet(fullAt, from + intervalNanos)) {
+        return true;
+      }
+    }
+  }
+
+  long getRejected() {
+    return rejected.sum();
+  }
+
+  int getTrackedClients() {
+    var tracked = 0;
+    for (var stripe : stripes) {
+      tracked += stripe.buckets.size();
+    }
+    return tracked;
+  }
+
+  private static final class Stripe {
+    private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+    // where the last eviction stopped, so that evictions sweep the whole stripe in turn
+    private Iterator<Map.Entry<Object, AtomicLong>> sweep = Collections.emptyIterator();
+
+    // Drops the first refilled bucket among the next few, or else the one of them that refills
+    // soonest. A bucket is only dropped if it has not been taken from since it was looked at.
+    synchronized void evict(final long now) {
+      Map.Entry<Object, AtomicLong> soonest = null;
+      var soonestFullAt = 0L;
+      for (var i = 0; i < EVICTION_SAMPLES; i++) {
+        if (!sweep.hasNext()) {
+          sweep = buckets.entrySet().iterator();
+          if (!sweep.hasNext()) {
+            return;
+          }
+        }
+
+        final var entry = sweep.next();
+        final var fullAt = entry.getValue().get();
+        if (fullAt - now <= 0) {
+          soonest = entry;
+          soonestFullAt = fullAt;
+          break;
+        }
+        if (soonest == null || fullAt - soonestFullAt < 0) {
+          soonest = entry;
+          soonestFullAt = fullAt;
+        }
+      }
+
+      if (soonest != null && soonest.getValue().get() == soonestFullAt) {
+        buckets.remove(soonest.getKey(), soonest.getValue());
+      }
+    }
+  }
+}
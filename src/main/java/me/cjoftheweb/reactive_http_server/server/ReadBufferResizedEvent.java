@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("me.cjoftheweb.reactive_http_server.ReadBufferResized")
+@Label("Read Buffer Resized")
+@Description("The size a connection's recent reads predict for its read buffer changed")
+@Category({"Reactive HTTP Server", "Connection"})
+@Enabled(false)
+@StackTrace(false)
+final class ReadBufferResizedEvent extends Event {
+  @Label("Previous Size")
+  @DataAmount
+  int previousSize;
+
+  @Label("Size")
+  @DataAmount
+  int size;
+
+  @Label("Last Read")
+  @DataAmount
+  int lastRead;
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+// Predicts how much the next read will bring from what the last ones did. A read that fills the
+// buffer grows it straight away, while it only shrinks after two reads in a row would have fit
+// the next smaller size, so a single short read does not throw away a size an upload needs.
+final class ReadSizePredictor {
+  static final int MIN_SIZE = 128;
+  static final int INITIAL_SIZE = 1024;
+  private static final int GROW_STEPS = 2;
+
+  // the sizes double from the smallest up to the largest, which is the maximum itself
+  private final int maxSize;
+  private final int largest;
+  private int index = 0;
+  private boolean shrinkPending = false;
+
+  ReadSizePredictor(final int maxSize) {
+    var largest = 0;
+    for (var size = MIN_SIZE; size < maxSize; size *= 2) {
+      largest++;
+    }
+
+    this.maxSize = maxSize;
+    this.largest = largest;
+    while (index < largest && sizeAt(index + 1) <= INITIAL_SIZE) {
+      index++;
+    }
+  }
+
+  private int sizeAt(final int index) {
+    return index == largest ? maxSize : MIN_SIZE << index;
+  }
+
+  static int initialSize(final int maxSize) {
+    return maxSize <= MIN_SIZE ? maxSize : Math.min(INITIAL_SIZE, maxSize);
+  }
+
+  int getSize() {
+    return sizeAt(index);
+  }
+
+  // Returns whether the predicted size changed.
+  boolean record(final int read) {
+    final var previous = index;
+    if (read >= sizeAt(index)) {
+      index = Math.min(index + GROW_STEPS, largest);
+      shrinkPending = false;
+    } else if (index > 0 && read <= sizeAt(index - 1)) {
+      if (shrinkPending) {
+        index--;
+      }
+      shrinkPending = !shrinkPending;
+    } else {
+      shrinkPending = false;
+    }
+    return index != previous;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A bounded pipe from the event loop to a blocking handler. The loop offers what fits and stops
+// reading the connection when it is full; the first read that frees space calls onSpace so the
+// loop can start reading again. It waits on a lock condition rather than a monitor, so a handler
+// on a virtual thread that waits for the body does not pin its carrier thread.
+final class RequestBodyStream extends InputStream {
+  private final byte[] buffer;
+  private final Runnable onSpace;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private int start = 0;
+  private int size = 0;
+  private boolean ended = false;
+  private boolean aborted = false;
+  private boolean full = false;
+
+  RequestBodyStream(final int capacity, final Runnable onSpace) {
+    this.buffer = new byte[capacity];
+    this.onSpace = onSpace;
+  }
+
+  int getCapacity() {
+    return buffer.length;
+  }
+
+  int offer(final ByteBuffer source) {
+    lock.lock();
+    try {
+      final var offered = Math.min(source.remaining(), buffer.length - size);
+      var end = (start + size) % buffer.length;
+      var remaining = offered;
+      while (remaining > 0) {
+        final var length = Math.min(remaining, buffer.length - end);
+        source.get(buffer, end, length);
+        end = (end + length) % buffer.length;
+        remaining -= length;
+      }
+
+      size += offered;
+      full = source.hasRemaining();
+      changed.signalAll();
+      return offered;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void end() {
+    lock.lock();
+    try {
+      ended = true;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void abort() {
+    lock.lock();
+    try {
+      aborted = true;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Called with the lock held.
+  private boolean awaitInput() throws IOException {
+    try {
+      while (size == 0 && !ended && !aborted) {
+        changed.await();
+      }
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    if (aborted) {
+      throw new IOException("Connection closed before the request body was read");
+    }
+    return size > 0;
+  }
+
+  @Override
+  public int read() throws IOException {
+    final var single = new byte[1];
+    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+
+    final int read;
+    final boolean wasFull;
+    lock.lock();
+    try {
+      if (!awaitInput()) {
+        return -1;
+      }
+
+      read = Math.min(length, Math.min(size, buffer.length - start));
+      System.arraycopy(buffer, start, bytes, offset, read);
+      start = (start + read) % buffer.length;
+      size -= read;
+      wasFull = full;
+      full = false;
+    } finally {
+      lock.unlock();
+    }
+
+    if (wasFull) {
+      onSpace.run();
+    }
+    return read;
+  }
+
+  @Override
+  public int available() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
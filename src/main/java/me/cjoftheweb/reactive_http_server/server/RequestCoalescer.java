@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Lets identical GET requests that arrive while the handler is already working on one share its
+// response instead of each calling the handler. The first request for a key starts a flight and
+// calls the handler; the others join the flight and are answered when it lands.
+final class RequestCoalescer {
+  // request headers the handler may choose a representation by, so requests share a flight only
+  // when they agree on them
+  private static final List<String> NEGOTIATION_HEADERS =
+      List.of("Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language");
+
+  private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+  private static final class Flight {
+    private final CompletableFuture<HttpResponse> response;
+    // the requests waiting on the flight, only changed while it is in the map
+    private int readers = 1;
+
+    Flight(final CompletableFuture<HttpResponse> response) {
+      this.response = response;
+    }
+  }
+
+  // Returns null for requests that must not share a response: anything but a GET, or a request
+  // whose credentials may make its response personal. Otherwise the key names the target on its
+  // Host along with the representation asked for.
+  static String key(final HttpRequest request, final boolean secure) {
+    final var headers = request.getHeaders();
+    if (request.getMethod() != HttpMethod.GET
+        || headers.contains("Authorization")
+        || headers.contains("Cookie")) {
+      return null;
+    }
+
+    final var key =
+        new StringBuilder(ResponseCache.host(request, secure))
+            .append(' ')
+            .append(normalize(request.getRequestTarget()));
+    for (var name : NEGOTIATION_HEADERS) {
+      key.append('\n');
+      for (var value : headers.getAll(name)) {
+        key.append(value).append(',');
+      }
+    }
+    return key.toString();
+  }
+
+  // Decodes percent-encoded unreserved characters and upper-cases the hex digits of the others,
+  // as RFC 3986 allows, so equivalent spellings of a target share a flight.
+  static String normalize(final String target) {
+    if (target.indexOf('%') < 0) {
+      return target;
+    }
+
+    final var normalized = new StringBuilder(target.length());
+    for (var i = 0; i < target.length(); i++) {
+      final var c = target.charAt(i);
+      final var high = c == '%' && i + 2 < target.length() ? hex(target.charAt(i + 1)) : -1;
+      final var low = high >= 0 ? hex(target.charAt(i + 2)) : -1;
+      if (low < 0) {
+        normalized.append(c);
+        continue;
+      }
+
+      final var decoded = (char) (high << 4 | low);
+      if (isUnreserved(decoded)) {
+        normalized.append(decoded);
+      } else {
+        normalized
+            .append('%')
+            .append(Character.toUpperCase(target.charAt(i + 1)))
+            .append(Character.toUpperCase(target.charAt(i + 2)));
+      }
+      i += 2;
+    }
+    return normalized.toString();
+  }
+
+  private static int hex(final char c) {
+    return Character.digit(c, 16);
+  }
+
+  private static boolean isUnreserved(final char c) {
+    return (c >= 'A' && c <= 'Z')
+        || (c >= 'a' && c <= 'z')
+        || (c >= '0' && c <= '9')
+        || c == '-'
+        || c == '.'
+        || c == '_'
+        || c == '~';
+  }
+
+  // Returns the flight already in progress for the key, or the given one, which the caller then
+  // leads by calling the handler and landing it.
+  CompletableFuture<HttpResponse> join(
+      final String key, final CompletableFuture<HttpResponse> flight) {
+    return inFlight.compute(
+            key,
+            (ignored, inProgress) -> {
+              if (inProgress == null) {
+                return new Flight(flight);
+              }
+              inProgress.readers++;
+              return inProgress;
+            })
+        .response;
+  }
+
+  // Ends the flight, so a later request calls the handler again, and hands everyone who joined
+  // it the response; a null response means the handler failed. A streamed body is read once for
+  // all of them, each of them holding a place in it from the start.
+  void land(
+      final String key, final CompletableFuture<HttpResponse> flight, final HttpResponse response) {
+    // once the flight is out of the map no one else can join it, so its count is final
+    final var landing = inFlight.get(key);
+    final var readers =
+        landing != null && landing.response == flight && inFlight.remove(key, landing)
+            ? landing.readers
+            : 1;
+    if (response == null || response.getBody().isPresent()) {
+      flight.complete(response);
+    } else {
+      flight.complete(
+          new HttpResponse(
+              response.getStatus(),
+              response.getHeaders(),
+              new MulticastPublisher(response.getBodyPublisher().get(), readers)));
+    }
+  }
+
+  // A landed response for one of the requests of its flight, with a body of its own to consume.
+  static HttpResponse share(final HttpResponse response) {
+    if (response == null || response.getBody().isEmpty()) {
+      return response;
+    }
+    return new HttpResponse(
+        response.getStatus(), response.getHeaders(), response.getBody().get().duplicate());
+  }
+
+  // Gives back the place in a landed response's streamed body held for a request of its flight
+  // that is no longer waiting for it, so the body is not kept for a reader that never comes.
+  static void abandon(final HttpResponse response) {
+    final var body = response != null ? response.getBodyPublisher().orElse(null) : null;
+    if (body instanceof MulticastPublisher) {
+      ((MulticastPublisher) body).leave();
+    }
+  }
+}
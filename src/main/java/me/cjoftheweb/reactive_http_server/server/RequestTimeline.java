@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.RequestTimings;
+
+// The timings of one request on a connection. A connection holds one from the first byte of a
+// request until its response is flushed; pipelined responses still being written wait in a list
+// linked through next, which also links the free timelines an event loop keeps for reuse, so
+// recording allocates nothing once the loop has as many as its busy connections need.
+final class RequestTimeline implements RequestTimings {
+  HttpRequest request;
+  HttpStatus status;
+  long responseBytes;
+  long firstByteReceived;
+  long requestLineParsed;
+  long headParsed;
+  long handlerStarted;
+  long handlerFinished;
+  long firstByteWritten;
+  long lastByteFlushed;
+  // the connection's written byte counts at which the response starts and ends
+  long responseStart;
+  long responseEnd;
+  RequestTimeline next;
+
+  RequestTimeline() {
+    reset();
+  }
+
+  void reset() {
+    request = null;
+    status = null;
+    responseBytes = 0;
+    firstByteReceived = 0;
+    requestLineParsed = 0;
+    headParsed = 0;
+    handlerStarted = 0;
+    handlerFinished = 0;
+    firstByteWritten = 0;
+    lastByteFlushed = 0;
+    responseStart = -1;
+    responseEnd = -1;
+    next = null;
+  }
+
+  // Returns true once the last byte of the response has been written.
+  boolean onWritten(final long written, final long now) {
+    if (firstByteWritten == 0 && responseStart >= 0 && written > responseStart) {
+      firstByteWritten = now;
+    }
+    if (responseEnd >= 0 && written >= responseEnd) {
+      lastByteFlushed = now;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public HttpRequest getRequest() {
+    return request;
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return status;
+  }
+
+  @Override
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  @Override
+  public long getFirstByteReceived() {
+    return firstByteReceived;
+  }
+
+  @Override
+  public long getRequestLineParsed() {
+    return requestLineParsed;
+  }
+
+  @Override
+  public long getHeadParsed() {
+    return headParsed;
+  }
+
+  @Override
+  public long getHandlerStarted() {
+    return handlerStarted;
+  }
+
+  @Override
+  public long getHandlerFinished() {
+    return handlerFinished;
+  }
+
+  @Override
+  public long getFirstByteWritten() {
+    return firstByteWritten;
+  }
+
+  @Override
+  public long getLastByteFlushed() {
+    return lastByteFlushed;
+  }
+}
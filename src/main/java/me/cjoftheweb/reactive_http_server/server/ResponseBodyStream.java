@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// The response side of a blocking handler. Writes fill a chunk that is published to the
+// connection once full, and a writer blocks until the connection has asked for the next chunk,
+// so a slow client holds back the handler instead of growing a queue. The writer waits on a lock
+// condition rather than a monitor, which would pin the carrier of a virtual thread.
+final class ResponseBodyStream extends OutputStream
+    implements Flow.Publisher<ByteBuffer>, Flow.Subscription {
+  static final int CHUNK_SIZE = 8192;
+
+  private final HttpStatus status;
+  private final HttpHeaders headers;
+  private final Consumer<HttpResponse> commit;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private byte[] chunk = new byte[CHUNK_SIZE];
+  private int count = 0;
+  private boolean committed = false;
+  private boolean closed = false;
+  private Flow.Subscriber<? super ByteBuffer> subscriber = null;
+  private long demand = 0;
+  private boolean cancelled = false;
+
+  ResponseBodyStream(
+      final HttpStatus status, final HttpHeaders headers, final Consumer<HttpResponse> commit) {
+    this.status = status;
+    this.headers = headers;
+    this.commit = commit;
+  }
+
+  boolean isCommitted() {
+    return committed;
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private void commitStreaming() {
+    if (!committed) {
+      committed = true;
+      commit.accept(new HttpResponse(status, headers, this));
+    }
+  }
+
+  private Flow.Subscriber<? super ByteBuffer> awaitSubscriber(final boolean demanded)
+      throws IOException {
+    lock.lock();
+    try {
+      while (!cancelled && (subscriber == null || (demanded && demand == 0))) {
+        changed.await();
+      }
+
+      if (cancelled) {
+        throw new IOException("Connection closed before the response was written");
+      }
+      if (demanded) {
+        demand--;
+      }
+      return subscriber;
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void emit() throws IOException {
+    commitStreaming();
+    if (count == 0) {
+      return;
+    }
+
+    awaitSubscriber(true).onNext(ByteBuffer.wrap(chunk, 0, count));
+    chunk = new byte[CHUNK_SIZE];
+    count = 0;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    ensureOpen();
+    chunk[count++] = (byte) b;
+    if (count == chunk.length) {
+      emit();
+    }
+  }
+
+  @Override
+  public void write(final byte[] bytes, int offset, int length) throws IOException {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    ensureOpen();
+    while (length > 0) {
+      final var copied = Math.min(length, chunk.length - count);
+      System.arraycopy(bytes, offset, chunk, count, copied);
+      count += copied;
+      offset += copied;
+      length -= copied;
+      if (count == chunk.length) {
+        emit();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    emit();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  // The response only completes once the handler has returned, so a handler that fails inside a
+  // try-with-resources block cannot pass off a truncated body as a complete one.
+  void finish() throws IOException {
+    closed = true;
+    if (!committed) {
+      committed = true;
+      commit.accept(new HttpResponse(status, headers, ByteBuffer.wrap(chunk, 0, count)));
+      return;
+    }
+
+    emit();
+    awaitSubscriber(false).onComplete();
+  }
+
+  // Cuts a committed response short, which makes the connection close.
+  void fail(final Throwable throwable) {
+    closed = true;
+    try {
+      awaitSubscriber(false).onError(throwable);
+    } catch (final IOException ignored) {
+    }
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+    // the writer only sees the subscriber once it has been given its subscription, so no other
+    // signal can reach it first
+    subscriber.onSubscribe(this);
+    lock.lock();
+    try {
+      this.subscriber = subscriber;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void request(final long n) {
+    lock.lock();
+    try {
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    lock.lock();
+    try {
+      cancelled = true;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Keeps fully encoded 200 responses to GET requests that allow shared caching for a while, in
+// direct buffers written as duplicates, with an Age header added as they are served. Entries are
+// found by request target and by Host, less the scheme's default port, as one server may answer for
+// several hosts. The cache is split into segments by resource, each with its own lock and share of
+// the byte bound, evicting with a segmented LRU: new entries go on probation and are only protected
+// once hit again, so a scan of one-off targets cannot flush the entries that are actually reused.
+final class ResponseCache {
+  private static final int SEGMENTS = 16;
+  // what an entry costs beyond its encoded bytes, roughly
+  private static final int ENTRY_OVERHEAD = 256;
+  // headers a 304 carries over from the response it stands for
+  private static final List<String> NOT_MODIFIED_HEADERS =
+      List.of(
+          "Cache-Control", "Content-Location", "Date", "ETag", "Expires", "Last-Modified", "Vary");
+
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final boolean secure;
+  private final LongSupplier nanoClock;
+
+  ResponseCache(final long maxBytes, final boolean secure) {
+    this(maxBytes, secure, System::nanoTime);
+  }
+
+  ResponseCache(final long maxBytes, final boolean secure, final LongSupplier nanoClock) {
+    this.secure = secure;
+    this.nanoClock = nanoClock;
+    for (var i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(maxBytes / SEGMENTS);
+    }
+  }
+
+  private Segment segment(final String target) {
+    final var hash = target.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+  }
+
+  private static boolean isCacheableRequest(final HttpRequest request) {
+    final var headers = request.getHeaders();
+    return !headers.contains("Authorization")
+        && !headers.containsToken("Cache-Control", "no-cache")
+        && !headers.containsToken("Cache-Control", "no-store")
+        && !headers.containsToken("Pragma", "no-cache");
+  }
+
+  // Returns how long the response may be served from the cache, or zero when it must not be.
+  static long freshnessNanos(final HttpResponse response) {
+    final var headers = response.getHeaders();
+    if (response.getStatus() != HttpStatus.OK
+        || response.getBody().isEmpty()
+        || headers.contains("Set-Cookie")
+        || headers.containsToken("Vary", "*")) {
+      return 0;
+    }
+
+    long maxAge = -1;
+    long sharedMaxAge = -1;
+    for (var value : headers.getAll("Cache-Control")) {
+      for (var element : value.split(",")) {
+        final var directive = element.trim().toLowerCase();
+        if (directive.equals("no-store")
+            || directive.equals("no-cache")
+            || directive.equals("private")) {
+          return 0;
+        } else if (directive.startsWith("max-age=")) {
+          maxAge = seconds(directive.substring("max-age=".length()));
+        } else if (directive.startsWith("s-maxage=")) {
+          sharedMaxAge = seconds(directive.substring("s-maxage=".length()));
+        }
+      }
+    }
+    return TimeUnit.SECONDS.toNanos(Math.max(0, sharedMaxAge >= 0 ? sharedMaxAge : maxAge));
+  }
+
+  private static long seconds(final String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException exception) {
+      return -1;
+    }
+  }
+
+  private static String[] varyNames(final HttpHeaders headers) {
+    return headers.getAll("Vary").stream()
+        .flatMap(value -> List.of(value.split(",")).stream())
+        .map(String::trim)
+        .filter(name -> !name.isEmpty())
+        .toArray(String[]::new);
+  }
+
+  // The Host a request is for, lower-cased and without the default port of the connection's
+  // scheme, or an empty string.
+  static String host(final HttpRequest request, final boolean secure) {
+    final var defaultPort = secure ? ":443" : ":80";
+    return request
+        .getHeaders()
+        .get("Host")
+        .map(value -> value.trim().toLowerCase(Locale.ROOT))
+        .map(
+            value ->
+                value.endsWith(defaultPort)
+                    ? value.substring(0, value.length() - defaultPort.length())
+                    : value)
+        .orElse("");
+  }
+
+  // The Host and request target, which together name the resource responses are cached for.
+  private String resource(final HttpRequest request) {
+    return host(request, secure) + ' ' + request.getRequestTarget();
+  }
+
+  private static String key(
+      final String resource, final HttpRequest request, final String[] varyNames) {
+    if (varyNames == null || varyNames.length == 0) {
+      return resource;
+    }
+
+    final var key = new StringBuilder(resource);
+    for (var name : varyNames) {
+      key.append('\n');
+      for (var value : request.getHeaders().getAll(name)) {
+        key.append(value).append(',');
+      }
+    }
+    return key.toString();
+  }
+
+  // Returns the fresh entry for a GET or HEAD request, or null.
+  Entry lookup(final HttpRequest request) {
+    if ((request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD)
+        || !isCacheableRequest(request)) {
+      return null;
+    }
+    final var resource = resource(request);
+    return segment(resource).lookup(resource, request, nanoClock.getAsLong());
+  }
+
+  // Caches the handler's response to a GET request if it may be, and returns the new entry.
+  Entry store(final HttpRequest request, final HttpResponse response) {
+    if (request.getMethod() != HttpMethod.GET || !isCacheableRequest(request)) {
+      return null;
+    }
+
+    // a response that was already cached upstream has used up part of its freshness
+    final var age =
+        Math.max(
+            0, response.getHeaders().get("Age").map(value -> seconds(value.trim())).orElse(0L));
+    final var freshness = freshnessNanos(response) - TimeUnit.SECONDS.toNanos(age);
+    if (freshness <= 0) {
+      return null;
+    }
+
+    final var varyNames = varyNames(response.getHeaders());
+    final var resource = resource(request);
+    final var now = nanoClock.getAsLong();
+    final var entry =
+        new Entry(
+            resource,
+            key(resource, request, varyNames),
+            varyNames,
+            response,
+            now + freshness,
+            now - TimeUnit.SECONDS.toNanos(age),
+            nanoClock);
+    return segment(entry.target).store(entry) ? entry : null;
+  }
+
+  long getUsedBytes() {
+    var used = 0L;
+    for (var segment : segments) {
+      synchronized (segment) {
+        used += segment.probationBytes + segment.protectedBytes;
+      }
+    }
+    return used;
+  }
+
+  static final class Entry {
+    private final String target;
+    private final String key;
+    private final String[] varyNames;
+    private final ByteBuffer response;
+    private final int headLength;
+    private final ByteBuffer notModified;
+    // when the response was stored, less any Age it already had
+    private final long storedAt;
+    private final LongSupplier nanoClock;
+    private final String entityTag;
+    private final ZonedDateTime lastModified;
+    private final long expiresAt;
+    private final long size;
+
+    private Entry(
+        final String target,
+        final String key,
+        final String[] varyNames,
+        final HttpResponse response,
+        final long expiresAt,
+        final long storedAt,
+        final LongSupplier nanoClock) {
+      this.target = target;
+      this.key = key;
+      this.varyNames = varyNames;
+      this.expiresAt = expiresAt;
+      this.storedAt = storedAt;
+      this.nanoClock = nanoClock;
+
+      final var headers = response.getHeaders();
+      final var body = response.getBody().get().duplicate();
+      final var encoder =
+          new HttpResponseHeadEncoder().statusLine(HttpVersion.HTTP_1_1, response.getStatus());
+      for (var i = 0; i < headers.size(); i++) {
+        if (!headers.getName(i).equalsIgnoreCase("Age")) {
+          encoder.header(headers.getName(i), headers.getValue(i));
+        }
+      }
+      final var head = encoder.header("Content-Length", body.remaining()).encode();
+      this.headLength = head.remaining();
+      this.response =
+          ByteBuffer.allocateDirect(headLength + body.remaining())
+              .put(head)
+              .put(body)
+              .flip()
+              .asReadOnlyBuffer();
+
+      final var notModified =
+          new HttpResponseHeadEncoder().statusLine(HttpVersion.HTTP_1_1, HttpStatus.NOT_MODIFIED);
+      for (var i = 0; i < headers.size(); i++) {
+        final var name = headers.getName(i);
+        if (NOT_MODIFIED_HEADERS.stream().anyMatch(name::equalsIgnoreCase)) {
+          notModified.header(name, headers.getValue(i));
+        }
+      }
+      this.notModified = notModified.encode().asReadOnlyBuffer();
+
+      this.entityTag = headers.get("ETag").map(Entry::weak).orElse(null);
+      this.lastModified = headers.get("Last-Modified").map(Entry::date).orElse(null);
+      this.size =
+          this.response.capacity()
+              + this.notModified.capacity()
+              + 2L * key.length()
+              + ENTRY_OVERHEAD;
+    }
+
+    private static String weak(final String entityTag) {
+      final var trimmed = entityTag.trim();
+      return trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+    }
+
+    private static ZonedDateTime date(final String value) {
+      try {
+        return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+      } catch (final DateTimeParseException exception) {
+        return null;
+      }
+    }
+
+    // Whether a conditional request can be answered with a 304. If-Modified-Since is only
+    // considered without an If-None-Match, which takes precedence.
+    boolean isNotModified(final HttpRequest request) {
+      final var headers = request.getHeaders();
+      final var ifNoneMatch = headers.getAll("If-None-Match");
+      if (!ifNoneMatch.isEmpty()) {
+        if (entityTag == null) {
+          return false;
+        }
+        for (var value : ifNoneMatch) {
+          for (var element : value.split(",")) {
+            final var tag = element.trim();
+            if (tag.equals("*") || weak(tag).equals(entityTag)) {
+              return true;
+            }
+          }
+        }
+        return false;
+      }
+
+      final var ifModifiedSince = headers.get("If-Modified-Since").map(Entry::date);
+      return lastModified != null
+          && ifModifiedSince.isPresent()
+          && !lastModified.isAfter(ifModifiedSince.get());
+    }
+
+    // The whole encoded response, or only its head for a HEAD request, as the head up to its
+    // final line break, the Age header and the rest.
+    ByteBuffer[] response(final HttpRequest request) {
+      final var end = request.getMethod() == HttpMethod.HEAD ? headLength : response.capacity();
+      return withAge(response, headLength - 2, end);
+    }
+
+    ByteBuffer[] notModified() {
+      return withAge(notModified, notModified.capacity() - 2, notModified.capacity());
+    }
+
+    private ByteBuffer[] withAge(final ByteBuffer encoded, final int headEnd, final int end) {
+      final var age = TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong() - storedAt);
+      return new ByteBuffer[] {
+        encoded.duplicate().limit(headEnd),
+        ByteBuffer.wrap(("Age: " + age + "\r\n").getBytes(StandardCharsets.ISO_8859_1)),
+        encoded.duplicate().limit(end).position(headEnd)
+      };
+    }
+  }
+
+  private static final class VaryNames {
+    private String[] names;
+    private int entries = 0;
+
+    VaryNames(final String[] names) {
+      this.names = names;
+    }
+  }
+
+  private static final class Segment {
+    private final long capacity;
+    private final long protectedCapacity;
+    // both in access order, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protectedEntries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    // the request headers each target's responses vary on, kept while it has entries
+    private final Map<String, VaryNames> varyNames = new HashMap<>();
+    private long probationBytes = 0;
+    private long protectedBytes = 0;
+
+    Segment(final long capacity) {
+      this.capacity = capacity;
+      this.protectedCapacity = capacity / 5 * 4;
+    }
+
+    synchronized Entry lookup(final String resource, final HttpRequest request, final long now) {
+      final var vary = varyNames.get(resource);
+      if (vary == null) {
+        return null;
+      }
+
+      final var key = key(resource, request, vary.names);
+      final var entry = protectedEntries.get(key);
+      if (entry != null) {
+        if (entry.expiresAt - now > 0) {
+          return entry;
+        }
+        protectedEntries.remove(key);
+        protectedBytes -= entry.size;
+        release(entry);
+        return null;
+      }
+
+      // a second hit is what earns an entry on probation its place in the protected segment
+      final var probationary = probation.remove(key);
+      if (probationary == null) {
+        return null;
+      }
+      probationBytes -= probationary.size;
+      if (probationary.expiresAt - now > 0) {
+        protect(probationary);
+        return probationary;
+      }
+      release(probationary);
+      return null;
+    }
+
+    synchronized boolean store(final Entry entry) {
+      // anything larger than the probation segment would only push everything else out
+      if (entry.size > capacity - protectedCapacity) {
+        return false;
+      }
+
+      remove(entry.key);
+      final var vary = varyNames.computeIfAbsent(entry.target, target -> new VaryNames(null));
+      vary.names = entry.varyNames;
+      vary.entries++;
+
+      probation.put(entry.key, entry);
+      probationBytes += entry.size;
+      evict();
+      return true;
+    }
+
+    private void remove(final String key) {
+      var entry = probation.remove(key);
+      if (entry != null) {
+        probationBytes -= entry.size;
+        release(entry);
+      }
+      entry = protectedEntries.remove(key);
+      if (entry != null) {
+        protectedBytes -= entry.size;
+        release(entry);
+      }
+    }
+
+    private void protect(final Entry entry) {
+      protectedEntries.put(entry.key, entry);
+      protectedBytes += entry.size;
+      // the protected segment overflows back into probation rather than out of the cache
+      while (protectedBytes > protectedCapacity) {
+        final var eldest = protectedEntries.entrySet().iterator().next().getValue();
+        protectedEntries.remove(eldest.key);
+        protectedBytes -= eldest.size;
+        probation.put(eldest.key, eldest);
+        probationBytes += eldest.size;
+      }
+      evict();
+    }
+
+    private void evict() {
+      while (probationBytes + protectedBytes > capacity && !probation.isEmpty()) {
+        final var eldest = probation.entrySet().iterator().next().getValue();
+        probation.remove(eldest.key);
+        probationBytes -= eldest.size;
+        release(eldest);
+      }
+    }
+
+    private void release(final Entry entry) {
+      final var vary = varyNames.get(entry.target);
+      if (vary != null && --vary.entries == 0) {
+        varyNames.remove(entry.target);
+      }
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.BlockingHttpHandler;
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponder;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Forwards every request to one upstream server over a pool of persistent HTTP/1.1 connections.
+// It runs as a blocking handler, so each side of an exchange blocks on the other: the request
+// body is read from the client only as fast as the upstream takes it, and the response body only
+// as fast as the client takes it, with no more than a buffer of either in memory at a time.
+public final class ReverseProxy implements BlockingHttpHandler, AutoCloseable {
+  // Upstreams commonly drop idle connections after five seconds or more, so a connection that
+  // has waited this long is closed instead of risking a request on it.
+  private static final long MAX_IDLE_NANOS = TimeUnit.SECONDS.toNanos(4);
+
+  private static final Set<String> HOP_BY_HOP_HEADERS =
+      Set.of(
+          "connection",
+          "keep-alive",
+          "proxy-connection",
+          "te",
+          "trailer",
+          "transfer-encoding",
+          "upgrade",
+          "expect");
+
+  private final InetSocketAddress upstream;
+  private final int maxIdleConnections;
+  private final int timeoutMillis;
+  private final ConcurrentLinkedDeque<UpstreamConnection> idle = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private final LongAdder opened = new LongAdder();
+  private volatile boolean closed = false;
+
+  public ReverseProxy(final InetSocketAddress upstream) {
+    this(upstream, 16, 30_000);
+  }
+
+  public ReverseProxy(
+      final InetSocketAddress upstream, final int maxIdleConnections, final int timeoutMillis) {
+    if (maxIdleConnections < 0 || timeoutMillis < 0) {
+      throw new IllegalArgumentException("Connection limits cannot be negative");
+    }
+    this.upstream = upstream;
+    this.maxIdleConnections = maxIdleConnections;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public int getIdleConnectionCount() {
+    return idleCount.get();
+  }
+
+  public long getOpenedConnectionCount() {
+    return opened.sum();
+  }
+
+  @Override
+  public void handle(
+      final HttpRequest request, final InputStream body, final HttpResponder responder)
+      throws Exception {
+    final var length = request.getContentLength();
+    final var head = encodeRequestHead(request);
+
+    UpstreamConnection connection = null;
+    HttpResponseHeadParser response;
+    var fresh = false;
+    while (true) {
+      try {
+        connection = fresh ? connect() : acquire();
+        response = connection.exchange(head, body, length);
+        break;
+      } catch (final SocketTimeoutException exception) {
+        discard(connection);
+        responder.respond(HttpStatus.GATEWAY_TIMEOUT, new HttpHeaders());
+        return;
+      } catch (final IOException exception) {
+        // a pooled connection the upstream has since closed fails before any of the response
+        // arrives, and the request is replayed on a new one as long as it had no body to lose
+        final var stale =
+            !fresh
+                && connection != null
+                && connection.isReused()
+                && !connection.hasReceived()
+                && length == 0;
+        discard(connection);
+        if (!stale) {
+          responder.respond(HttpStatus.BAD_GATEWAY, new HttpHeaders());
+          return;
+        }
+        fresh = true;
+      }
+    }
+
+    // upgrades are not proxied, and a status this server cannot send is a bad gateway
+    final var code = response.getStatusCode();
+    final var status = HttpStatus.fromCode(code);
+    if (status.isEmpty() || code == HttpStatus.SWITCHING_PROTOCOLS.getCode()) {
+      discard(connection);
+      responder.respond(HttpStatus.BAD_GATEWAY, new HttpHeaders());
+      return;
+    }
+
+    final var headers = response.getHeaders();
+    final long bodyLength;
+    try {
+      bodyLength = responseBodyLength(request, code, headers);
+    } catch (final IllegalArgumentException exception) {
+      discard(connection);
+      responder.respond(HttpStatus.BAD_GATEWAY, new HttpHeaders());
+      return;
+    }
+
+    final var reusable = bodyLength != -2 && isPersistent(response);
+    final var out = responder.respond(status.get(), forwardedHeaders(headers));
+    try {
+      if (bodyLength == -1) {
+        connection.copyChunkedBody(out);
+      } else if (bodyLength == -2) {
+        connection.copyUntilClosed(out);
+      } else {
+        connection.copyBody(out, bodyLength);
+      }
+    } catch (final IOException exception) {
+      // the response is cut short rather than finished, which closes the client's connection
+      discard(connection);
+      throw exception;
+    }
+
+    if (reusable) {
+      release(connection);
+    } else {
+      discard(connection);
+    }
+  }
+
+  // The length of the response body, or -1 if it is chunked and -2 if it runs until the upstream
+  // closes the connection. Chunked is the only transfer coding the proxy can decode, so any other
+  // is refused rather than passed on as if it were the body.
+  private static long responseBodyLength(
+      final HttpRequest request, final int code, final HttpHeaders headers) {
+    if (request.getMethod() == HttpMethod.HEAD || code == 204 || code == 304) {
+      return 0;
+    } else if (headers.contains("Transfer-Encoding")) {
+      final var codings = String.join(",", headers.getAll("Transfer-Encoding")).split(",", -1);
+      if (codings.length != 1 || !codings[0].trim().equalsIgnoreCase("chunked")) {
+        throw new IllegalArgumentException(
+            String.format("Unsupported transfer coding %s", String.join(",", codings)));
+      }
+      return -1;
+    }
+
+    if (!headers.contains("Content-Length")) {
+      return -2;
+    }
+
+    // held to the same rule as a request's length, as reading the body at a length the upstream
+    // did not mean would leave a pooled connection out of step
+    final var length = HttpConnection.contentLength(headers);
+    if (length < 0) {
+      throw new IllegalArgumentException("Ambiguous Content-Length");
+    }
+    return length;
+  }
+
+  private static boolean isPersistent(final HttpResponseHeadParser response) {
+    final var headers = response.getHeaders();
+    if (response.getVersion() == HttpVersion.HTTP_1_1) {
+      return !headers.containsToken("Connection", "close");
+    }
+    return headers.containsToken("Connection", "keep-alive");
+  }
+
+  private static boolean isHopByHop(final HttpHeaders headers, final String name) {
+    return HOP_BY_HOP_HEADERS.contains(name.toLowerCase())
+        || headers.containsToken("Connection", name);
+  }
+
+  // The framing and persistence headers belong to each hop, so the server adds its own to the
+  // response on the way back.
+  private static HttpHeaders forwardedHeaders(final HttpHeaders headers) {
+    final var forwarded = new HttpHeaders();
+    for (var i = 0; i < headers.size(); i++) {
+      final var name = headers.getName(i);
+      if (!isHopByHop(headers, name) && !name.equalsIgnoreCase("Content-Length")) {
+        forwarded.add(headers.getName(i), headers.getValue(i));
+      }
+    }
+    return forwarded;
+  }
+
+  private byte[] encodeRequestHead(final HttpRequest request) {
+    final var headers = request.getHeaders();
+    final var head =
+        new StringBuilder(256)
+            .append(request.getMethod())
+            .append(' ')
+            .append(request.getRequestTarget())
+            .append(" HTTP/1.1\r\n");
+
+    // the body is framed by the length the server checked rather than whatever the client sent
+    for (var i = 0; i < headers.size(); i++) {
+      final var name = headers.getName(i);
+      if (!isHopByHop(headers, name) && !name.equalsIgnoreCase("Content-Length")) {
+        head.append(name).append(": ").append(headers.getValue(i)).append("\r\n");
+      }
+    }
+    if (request.getContentLength() > 0 || headers.contains("Content-Length")) {
+      head.append("Content-Length: ").append(request.getContentLength()).append("\r\n");
+    }
+
+    // HTTP/1.0 clients may leave out the Host header an HTTP/1.1 upstream insists on
+    if (!headers.contains("Host")) {
+      head.append("Host: ")
+          .append(upstream.getHostString())
+          .append(':')
+          .append(upstream.getPort())
+          .append("\r\n");
+    }
+    return head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private UpstreamConnection connect() throws IOException {
+    final var connection = new UpstreamConnection(upstream, timeoutMillis);
+    opened.increment();
+    return connection;
+  }
+
+  private UpstreamConnection acquire() throws IOException {
+    final var now = System.nanoTime();
+    UpstreamConnection connection;
+    while ((connection = idle.pollFirst()) != null) {
+      idleCount.decrementAndGet();
+      if (now - connection.getIdleSince() < MAX_IDLE_NANOS) {
+        return connection;
+      }
+      discard(connection);
+    }
+    return connect();
+  }
+
+  // The most recently used connection is handed out first, so under light load the same few stay
+  // warm and the rest age out.
+  private void release(final UpstreamConnection connection) {
+    if (closed || !connection.isIdle()) {
+      discard(connection);
+      return;
+    } else if (idleCount.incrementAndGet() > maxIdleConnections) {
+      idleCount.decrementAndGet();
+      discard(connection);
+      return;
+    }
+
+    connection.markIdle(System.nanoTime());
+    idle.offerFirst(connection);
+    if (closed && idle.remove(connection)) {
+      idleCount.decrementAndGet();
+      discard(connection);
+    }
+  }
+
+  private static void discard(final UpstreamConnection connection) {
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (final IOException ignored) {
+      }
+    }
+  }
+
+  // Closes the idle connections; connections in use are closed as their exchanges finish.
+  @Override
+  public void close() {
+    closed = true;
+    UpstreamConnection connection;
+    while ((connection = idle.pollFirst()) != null) {
+      idleCount.decrementAndGet();
+      discard(connection);
+    }
+  }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+
+// TLS over a non-blocking socket, driven by the connection's reads and writes. Records are read
+// into and written from direct buffers taken from the event loop's pool only while they hold data,
+// so an idle connection holds none. A record is decrypted straight into the caller's buffer when
+// it fits and into a pooled buffer otherwise. Delegated handshake tasks run on another executor;
+// until they are done the channel neither reads nor writes, and the connection is told through
+// the callback it was given.
+final class TlsChannel implements ByteChannel, GatheringByteChannel {
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+  private static final ByteBuffer[] NO_DATA = {EMPTY};
+
+  private final SocketChannel channel;
+  private final SSLEngine engine;
+  private final BufferPool pool;
+  private final Executor taskExecutor;
+  private final Runnable onTasksDone;
+  // each is either null or flipped for reading, holding what is still to be used
+  private ByteBuffer netIn = null;
+  private ByteBuffer appIn = null;
+  private ByteBuffer netOut = null;
+  private boolean tasksRunning = false;
+  private boolean inputClosed = false;
+
+  TlsChannel(
+      final SocketChannel channel,
+      final SSLEngine engine,
+      final BufferPool pool,
+      final Executor taskExecutor,
+      final Runnable onTasksDone) {
+    this.channel = channel;
+    this.engine = engine;
+    this.pool = pool;
+    this.taskExecutor = taskExecutor;
+    this.onTasksDone = onTasksDone;
+  }
+
+  boolean isTasksRunning() {
+    return tasksRunning;
+  }
+
+  // Called on the loop once the callback has fired.
+  void tasksDone() {
+    tasksRunning = false;
+  }
+
+  // Whether input has already been taken off the socket, which the selector will not report.
+  boolean hasBufferedInput() {
+    return appIn != null || (netIn != null && netIn.hasRemaining());
+  }
+
+  boolean hasPendingOutput() {
+    return netOut != null;
+  }
+
+  long getHeldBytes() {
+    return (long) pool.getBufferSize()
+        * ((netIn != null ? 1 : 0) + (appIn != null ? 1 : 0) + (netOut != null ? 1 : 0));
+  }
+
+  @Override
+  public int read(final ByteBuffer dst) throws IOException {
+    if (tasksRunning || !handshake()) {
+      return inputClosed && appIn == null ? -1 : 0;
+    }
+
+    final var start = dst.position();
+    while (dst.hasRemaining()) {
+      if (appIn != null) {
+        transferAppIn(dst);
+      } else if (!unwrap(dst) || (isHandshaking() && !handshake())) {
+        break;
+      }
+    }
+
+    final var read = dst.position() - start;
+    return read == 0 && inputClosed && appIn == null ? -1 : read;
+  }
+
+  @Override
+  public int write(final ByteBuffer src) throws IOException {
+    return (int) write(new ByteBuffer[] {src}, 0, 1);
+  }
+
+  @Override
+  public long write(final ByteBuffer[] srcs, final int offset, final int length)
+      throws IOException {
+    if (tasksRunning || !flushNetOut() || !handshake()) {
+      return 0;
+    }
+
+    // the engine gathers as many of the buffers as fit into each record
+    var total = 0L;
+    while (true) {
+      final var result = wrap(srcs, offset, length);
+      total += result.bytesConsumed();
+      if (!flushNetOut() || result.bytesConsumed() == 0 || result.getStatus() != Status.OK) {
+        return total;
+      }
+    }
+  }
+
+  @Override
+  public long write(final ByteBuffer[] srcs) throws IOException {
+    return write(srcs, 0, srcs.length);
+  }
+
+  // Writes out what has already been encrypted and whatever the handshake has to send next.
+  void flush() throws IOException {
+    if (flushNetOut() && !tasksRunning && isHandshaking()) {
+      handshake();
+    }
+  }
+
+  // Sends close_notify, returning true once it has been written.
+  boolean closeOutbound() throws IOException {
+    engine.closeOutbound();
+    while (!engine.isOutboundDone()) {
+      if (!flushNetOut()) {
+        return false;
+      }
+      wrap(NO_DATA, 0, 1);
+    }
+    return flushNetOut();
+  }
+
+  private boolean flushNetOut() throws IOException {
+    if (netOut == null) {
+      return true;
+    }
+
+    channel.write(netOut);
+    if (netOut.hasRemaining()) {
+      return false;
+    }
+    pool.release(netOut);
+    netOut = null;
+    return true;
+  }
+
+  private boolean isHandshaking() {
+    final var status = engine.getHandshakeStatus();
+    return status != HandshakeStatus.NOT_HANDSHAKING && status != HandshakeStatus.FINISHED;
+  }
+
+  // Takes the handshake as far as it can go without waiting, returning true once it no longer
+  // stands in the way of application data.
+  private boolean handshake() throws IOException {
+    while (true) {
+      switch (engine.getHandshakeStatus()) {
+        case NEED_TASK:
+          runTasks();
+          return false;
+        case NEED_WRAP:
+          if (!flushNetOut()) {
+            return false;
+          }
+          wrap(NO_DATA, 0, 1);
+          if (!flushNetOut()) {
+            return false;
+          }
+          break;
+        case NEED_UNWRAP:
+        case NEED_UNWRAP_AGAIN:
+          if (!unwrap(EMPTY)) {
+            return false;
+          }
+          break;
+        default:
+          return true;
+      }
+    }
+  }
+
+  private void runTasks() {
+    tasksRunning = true;
+    taskExecutor.execute(
+        () -> {
+          Runnable task;
+          while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+          }
+          onTasksDone.run();
+        });
+  }
+
+  // Decrypts the next record, returning false if no whole record could be read for now.
+  private boolean unwrap(final ByteBuffer dst) throws IOException {
+    while (true) {
+      if ((netIn == null || !netIn.hasRemaining()) && !fill()) {
+        return false;
+      }
+
+      var result = engine.unwrap(netIn, dst);
+      if (result.getStatus() == Status.BUFFER_OVERFLOW && appIn != null) {
+        // the record waits until what was decrypted before it has been read
+        return false;
+      } else if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+        appIn = pool.acquire();
+        result = engine.unwrap(netIn, appIn);
+        appIn.flip();
+        if (!appIn.hasRemaining()) {
+          releaseAppIn();
+        }
+      }
+      if (!netIn.hasRemaining()) {
+        pool.release(netIn);
+        netIn = null;
+      }
+
+      switch (result.getStatus()) {
+        case OK:
+          return true;
+        case CLOSED:
+          inputClosed = true;
+          return false;
+        case BUFFER_UNDERFLOW:
+          if (!fill()) {
+            return false;
+          }
+          break;
+        default:
+          throw new SSLException("Record does not fit a pooled buffer");
+      }
+    }
+  }
+
+  private boolean fill() throws IOException {
+    if (inputClosed) {
+      return false;
+    }
+
+    if (netIn == null) {
+      netIn = pool.acquire().flip();
+    }
+    netIn.compact();
+    final var read = channel.read(netIn);
+    netIn.flip();
+
+    if (!netIn.hasRemaining()) {
+      pool.release(netIn);
+      netIn = null;
+    }
+    if (read < 0) {
+      inputClosed = true;
+      return false;
+    }
+    return read > 0;
+  }
+
+  private SSLEngineResult wrap(final ByteBuffer[] srcs, final int offset, final int length)
+      throws IOException {
+    netOut = pool.acquire();
+    final var result = engine.wrap(srcs, offset, length, netOut);
+    netOut.flip();
+    if (!netOut.hasRemaining()) {
+      pool.release(netOut);
+      netOut = null;
+    }
+    return result;
+  }
+
+  private void transferAppIn(final ByteBuffer dst) {
+    final var count = Math.min(appIn.remaining(), dst.remaining());
+    final var limit = appIn.limit();
+    appIn.limit(appIn.position() + count);
+    dst.put(appIn);
+    appIn.limit(limit);
+    if (!appIn.hasRemaining()) {
+      releaseAppIn();
+    }
+  }
+
+  private void releaseAppIn() {
+    pool.release(appIn);
+    appIn = null;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  // Returns the pooled buffers and closes the socket; called on the loop.
+  @Override
+  public void close() throws IOException {
+    for (var buffer : new ByteBuffer[] {netIn, appIn, netOut}) {
+      if (buffer != null) {
+        pool.release(buffer);
+      }
+    }
+    netIn = null;
+    appIn = null;
+    netOut = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadParser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+// A persistent HTTP/1.1 connection to an upstream server, carrying one exchange at a time for the
+// handler thread that took it from the pool. Bodies pass through a fixed buffer in both
+// directions, so a slow reader on either side blocks the writer on the other.
+final class UpstreamConnection implements Closeable {
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int MAX_LINE_LENGTH = 4096;
+
+  private final Socket socket;
+  private final InputStream input;
+  private final OutputStream output;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final ByteBuffer readBuffer = ByteBuffer.wrap(buffer).limit(0);
+  private final byte[] transfer = new byte[BUFFER_SIZE];
+  private final HttpResponseHeadParser parser = new HttpResponseHeadParser();
+  private int exchanges = 0;
+  private boolean received = false;
+  private long idleSince = 0;
+
+  UpstreamConnection(final InetSocketAddress address, final int timeoutMillis)
+      throws IOException {
+    socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(timeoutMillis);
+      socket.connect(address, timeoutMillis);
+      input = socket.getInputStream();
+      output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    } catch (final IOException exception) {
+      socket.close();
+      throw exception;
+    }
+  }
+
+  boolean isReused() {
+    return exchanges > 1;
+  }
+
+  // Whether any of the response to the current exchange has arrived.
+  boolean hasReceived() {
+    return received;
+  }
+
+  // A connection can go back to the pool once its response has been read to the end and nothing
+  // follows it.
+  boolean isIdle() {
+    return !readBuffer.hasRemaining() && !socket.isClosed();
+  }
+
+  void markIdle(final long now) {
+    idleSince = now;
+  }
+
+  long getIdleSince() {
+    return idleSince;
+  }
+
+  // Sends the request and reads up to the end of the final response head, skipping any interim
+  // responses other than 101 Switching Protocols.
+  HttpResponseHeadParser exchange(final byte[] head, final InputStream body, final long length)
+      throws IOException {
+    exchanges++;
+    received = false;
+
+    output.write(head);
+    var remaining = length;
+    while (remaining > 0) {
+      final var read = body.read(transfer, 0, (int) Math.min(transfer.length, remaining));
+      if (read < 0) {
+        throw new EOFException("The request body ended early");
+      }
+      output.write(transfer, 0, read);
+      remaining -= read;
+    }
+    output.flush();
+
+    do {
+      parser.reset();
+      while (!parser.isDone()) {
+        ensureReadable();
+        try {
+          parser.offer(readBuffer);
+        } catch (final Exception exception) {
+          throw new IOException("Invalid response from upstream", exception);
+        }
+      }
+    } while (parser.getStatusCode() < 200 && parser.getStatusCode() != 101);
+
+    return parser;
+  }
+
+  void copyBody(final OutputStream out, final long length) throws IOException {
+    var remaining = length;
+    while (remaining > 0) {
+      ensureReadable();
+      final var count = (int) Math.min(readBuffer.remaining(), remaining);
+      out.write(buffer, readBuffer.position(), count);
+      readBuffer.position(readBuffer.position() + count);
+      remaining -= count;
+    }
+  }
+
+  void copyChunkedBody(final OutputStream out) throws IOException {
+    while (true) {
+      final var line = readLine();
+      final var extension = line.indexOf(';');
+      final long size;
+      try {
+        size = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+      } catch (final NumberFormatException exception) {
+        throw new IOException(String.format("Invalid chunk size line %s", line), exception);
+      }
+
+      if (size < 0) {
+        throw new IOException(String.format("Invalid chunk size line %s", line));
+      } else if (size == 0) {
+        // trailers are dropped along with the chunked framing
+        while (!readLine().isEmpty()) {}
+        return;
+      }
+
+      copyBody(out, size);
+      if (!readLine().isEmpty()) {
+        throw new IOException("Chunk was not followed by a line break");
+      }
+    }
+  }
+
+  void copyUntilClosed(final OutputStream out) throws IOException {
+    while (readBuffer.hasRemaining() || fill()) {
+      out.write(buffer, readBuffer.position(), readBuffer.remaining());
+      readBuffer.position(readBuffer.limit());
+    }
+  }
+
+  private String readLine() throws IOException {
+    final var line = new StringBuilder();
+    while (true) {
+      ensureReadable();
+      final var next = readBuffer.get();
+      if (next == '\n') {
+        if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+          line.setLength(line.length() - 1);
+        }
+        return line.toString();
+      } else if (line.length() >= MAX_LINE_LENGTH) {
+        throw new IOException("Line from upstream was too long");
+      }
+      line.append((char) (next & 0xFF));
+    }
+  }
+
+  private void ensureReadable() throws IOException {
+    if (!readBuffer.hasRemaining() && !fill()) {
+      throw new EOFException("Upstream closed the connection mid-response");
+    }
+  }
+
+  private boolean fill() throws IOException {
+    final var read = input.read(buffer, 0, buffer.length);
+    if (read < 0) {
+      return false;
+    }
+    readBuffer.limit(read).position(0);
+    received = true;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+}
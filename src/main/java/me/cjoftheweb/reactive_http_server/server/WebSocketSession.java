@@ -0,0 +1,548 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.WebSocket;
+import me.cjoftheweb.reactive_http_server.WebSocketHandler;
+import me.cjoftheweb.reactive_http_server.syntax.ParseException;
+import me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameEncoder;
+import me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameParser;
+import me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameTooLarge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameParser.*;
+
+// The WebSocket side of an upgraded HttpConnection, which still owns the read buffer, the write
+// queue and the selection key.
+final class WebSocketSession implements WebSocket {
+  static final int NORMAL_CLOSURE = 1000;
+  static final int PROTOCOL_ERROR = 1002;
+  static final int NO_STATUS = 1005;
+  static final int ABNORMAL_CLOSURE = 1006;
+  static final int INVALID_PAYLOAD = 1007;
+  static final int MESSAGE_TOO_BIG = 1009;
+  static final int INTERNAL_ERROR = 1011;
+
+  private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+  // frames with payloads up to this size are copied into a batch buffer that is written in one
+  // piece; larger payloads are queued as they are behind their header
+  private static final int COPY_THRESHOLD = 1024;
+  private static final int MIN_BATCH_SIZE = 256;
+  private static final int MAX_BATCH_SIZE = 64 * 1024;
+
+  private final HttpConnection connection;
+  private final EventLoop eventLoop;
+  private final WebSocketHandler handler;
+  private final HttpRequest request;
+  private final long maxMessageSize;
+  private final WebSocketFrameParser parser;
+  private byte[] control = null;
+  private int controlLength = 0;
+  private Message message = null;
+  private long messageLength = 0;
+  // checks the text message being read, or null while the message is binary or skipped
+  private Utf8Check text = null;
+  private Utf8Check utf8 = null;
+  private ByteBuffer batch = null;
+  private int batchSize = MIN_BATCH_SIZE;
+  private boolean stalled = false;
+  private boolean closeSent = false;
+  private boolean finished = false;
+
+  WebSocketSession(
+      final HttpConnection connection,
+      final EventLoop eventLoop,
+      final WebSocketHandler handler,
+      final HttpRequest request,
+      final long maxMessageSize) {
+    this.connection = connection;
+    this.eventLoop = eventLoop;
+    this.handler = handler;
+    this.request = request;
+    this.maxMessageSize = maxMessageSize;
+    this.parser = new WebSocketFrameParser(maxMessageSize);
+  }
+
+  // The Sec-WebSocket-Accept value that answers a Sec-WebSocket-Key.
+  static String accept(final String key) {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-1");
+      return Base64.getEncoder()
+          .encodeToString(digest.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII)));
+    } catch (final NoSuchAlgorithmException exception) {
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  void open() throws IOException {
+    try {
+      handler.onOpen(this);
+    } catch (final RuntimeException exception) {
+      fail(INTERNAL_ERROR, "");
+    }
+  }
+
+  boolean isStalled() {
+    return stalled;
+  }
+
+  // Returns false when a message's subscriber has to catch up before more can be read.
+  boolean onInput(final ByteBuffer buffer) throws IOException {
+    stalled = false;
+    while (!finished) {
+      if (!parser.isHeaderDone()) {
+        if (!buffer.hasRemaining()) {
+          return true;
+        }
+
+        try {
+          parser.offer(buffer);
+        } catch (final ParseException exception) {
+          fail(PROTOCOL_ERROR, "Malformed frame");
+          return true;
+        } catch (final WebSocketFrameTooLarge exception) {
+          fail(MESSAGE_TOO_BIG, "Message too big");
+          return true;
+        }
+
+        if (!parser.isHeaderDone() || !onFrameStart()) {
+          return true;
+        }
+      }
+
+      if (!parser.isDone()) {
+        if (!buffer.hasRemaining()) {
+          return true;
+        }
+
+        if (parser.isControlFrame()) {
+          final var payload = parser.readPayload(buffer);
+          final var length = payload.remaining();
+          payload.get(control, controlLength, length);
+          controlLength += length;
+        } else {
+          final var cancelled = message.cancelled;
+          if (!cancelled && (message.subscriber == null || message.demand.get() == 0)) {
+            stalled = true;
+            return false;
+          }
+
+          final var payload = parser.readPayload(buffer);
+          if (text != null && !text.next(payload)) {
+            fail(INVALID_PAYLOAD, "Invalid UTF-8");
+            return true;
+          }
+          if (!cancelled) {
+            message.demand.decrementAndGet();
+            if (!message.next(payload)) {
+              return true;
+            }
+          }
+        }
+
+        if (!parser.isDone()) {
+          continue;
+        }
+      }
+
+      if (!onFrameEnd()) {
+        stalled = true;
+        return false;
+      }
+      parser.reset();
+    }
+    return true;
+  }
+
+  private boolean onFrameStart() throws IOException {
+    if (!parser.isMasked()) {
+      fail(PROTOCOL_ERROR, "Unmasked frame");
+      return false;
+    }
+
+    switch (parser.getOpcode()) {
+      case CONTINUATION:
+        if (message == null) {
+          fail(PROTOCOL_ERROR, "Unexpected continuation frame");
+          return false;
+        }
+        break;
+      case TEXT:
+      case BINARY:
+        if (message != null) {
+          fail(PROTOCOL_ERROR, "Expected a continuation frame");
+          return false;
+        }
+
+        message = new Message();
+        messageLength = 0;
+        text = null;
+        if (closeSent) {
+          // messages that arrive during the closing handshake are skipped
+          message.cancelled = true;
+        } else {
+          if (parser.getOpcode() == TEXT) {
+            if (utf8 == null) {
+              utf8 = new Utf8Check();
+            }
+            text = utf8;
+            text.reset();
+          }
+          try {
+            handler.onMessage(this, parser.getOpcode() == TEXT, message);
+          } catch (final RuntimeException exception) {
+            fail(INTERNAL_ERROR, "");
+            return false;
+          }
+        }
+        break;
+      default:
+        if (control == null) {
+          control = new byte[MAX_CONTROL_PAYLOAD_LENGTH];
+        }
+        controlLength = 0;
+        return true;
+    }
+
+    messageLength += parser.getPayloadLength();
+    if (maxMessageSize > 0 && messageLength > maxMessageSize) {
+      fail(MESSAGE_TOO_BIG, "Message too big");
+      return false;
+    }
+    return true;
+  }
+
+  // Returns false when a message is complete but nobody has subscribed to it yet.
+  private boolean onFrameEnd() throws IOException {
+    switch (parser.getOpcode()) {
+      case PING:
+        if (!closeSent) {
+          sendFrame(PONG, ByteBuffer.wrap(Arrays.copyOf(control, controlLength)));
+        }
+        break;
+      case PONG:
+        break;
+      case CLOSE:
+        onCloseFrame();
+        break;
+      default:
+        if (parser.isFin()) {
+          if (text != null && !text.isComplete()) {
+            fail(INVALID_PAYLOAD, "Invalid UTF-8");
+            return true;
+          }
+          if (!message.cancelled) {
+            if (message.subscriber == null) {
+              return false;
+            }
+            message.complete();
+          }
+          message = null;
+          text = null;
+        }
+    }
+    return true;
+  }
+
+  private void onCloseFrame() throws IOException {
+    if (controlLength == 1) {
+      fail(PROTOCOL_ERROR, "Malformed close frame");
+      return;
+    }
+
+    var code = NO_STATUS;
+    var reason = "";
+    if (controlLength >= 2) {
+      code = (control[0] & 0xff) << 8 | (control[1] & 0xff);
+      reason = new String(control, 2, controlLength - 2, StandardCharsets.UTF_8);
+    }
+
+    if (!closeSent) {
+      sendClose(code == NO_STATUS ? NORMAL_CLOSURE : code, "");
+    }
+    finish(code, reason);
+  }
+
+  private void fail(final int code, final String reason) throws IOException {
+    if (!closeSent) {
+      sendClose(code, reason);
+    }
+    finish(code, reason);
+  }
+
+  // Stops reading and tells the handler, then lets the connection close once its writes are out.
+  private void finish(final int code, final String reason) throws IOException {
+    onClosed(code, reason);
+    connection.drainWebSocket();
+  }
+
+  void onClosed(final int code, final String reason) {
+    if (finished) {
+      return;
+    }
+
+    finished = true;
+    if (message != null && !message.cancelled && message.subscriber != null) {
+      message.cancelled = true;
+      message.subscriber.onError(new IOException("The WebSocket closed during a message"));
+    }
+    message = null;
+    text = null;
+
+    try {
+      handler.onClose(this, code, reason);
+    } catch (final RuntimeException ignored) {
+    }
+  }
+
+  @Override
+  public HttpRequest getRequest() {
+    return request;
+  }
+
+  @Override
+  public void sendText(final String text) {
+    send(TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Override
+  public void sendBinary(final ByteBuffer data) {
+    send(BINARY, data.duplicate());
+  }
+
+  @Override
+  public void close(final int code, final String reason) {
+    if (!eventLoop.inEventLoop()) {
+      connection.runOnLoop(() -> close(code, reason));
+      return;
+    }
+
+    if (!closeSent && !finished) {
+      sendClose(code, reason);
+    }
+  }
+
+  private void send(final int opcode, final ByteBuffer payload) {
+    if (!eventLoop.inEventLoop()) {
+      connection.runOnLoop(() -> send(opcode, payload));
+      return;
+    }
+
+    // frames sent after the close are dropped, as the client no longer reads them
+    if (!closeSent && !finished) {
+      sendFrame(opcode, payload);
+    }
+  }
+
+  private void sendClose(final int code, final String reason) {
+    final var reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+    final var length = Math.min(reasonBytes.length, MAX_CONTROL_PAYLOAD_LENGTH - 2);
+    final var payload = ByteBuffer.allocate(2 + length).putShort((short) code);
+    payload.put(reasonBytes, 0, length).flip();
+
+    closeSent = true;
+    if (message != null && !message.cancelled && message.subscriber != null) {
+      message.cancelled = true;
+      message.subscriber.onError(new IOException("The WebSocket closed during a message"));
+    }
+    sendFrame(CLOSE, payload);
+  }
+
+  private void sendFrame(final int opcode, final ByteBuffer payload) {
+    final var length = payload.remaining();
+    final var copied = length <= COPY_THRESHOLD;
+    final var needed = WebSocketFrameEncoder.headerLength(length) + (copied ? length : 0);
+
+    if (batch != null && batch.remaining() < needed) {
+      seal();
+      batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+    }
+    if (batch == null) {
+      batch = ByteBuffer.allocate(Math.max(batchSize, needed));
+    }
+
+    WebSocketFrameEncoder.putHeader(batch, true, opcode, length);
+    if (copied) {
+      batch.put(payload);
+    } else {
+      seal();
+      connection.queue(payload);
+    }
+    connection.scheduleFlush();
+  }
+
+  // Queues the frames batched so far, which happens before every write, and lets go of the batch
+  // so idle connections hold none.
+  void seal() {
+    if (batch != null) {
+      connection.queue(batch.flip());
+      batch = null;
+    }
+  }
+
+  // Decodes a text message as its frames are read, only to see that it is valid UTF-8. The bytes
+  // of a character split across frames or reads are held back until the rest of it arrives.
+  private static final class Utf8Check {
+    private final CharsetDecoder decoder =
+        StandardCharsets.UTF_8
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharBuffer chars = CharBuffer.allocate(256);
+    private final ByteBuffer partial = ByteBuffer.allocate(4);
+
+    void reset() {
+      decoder.reset();
+      partial.clear();
+    }
+
+    // Returns false when the bytes so far are not valid UTF-8.
+    boolean next(final ByteBuffer payload) {
+      final var bytes = payload.duplicate();
+      // finish a held back character a byte at a time, since it needs at most three more
+      while (partial.position() > 0 && bytes.hasRemaining()) {
+        partial.put(bytes.get());
+        partial.flip();
+        if (!decode(partial)) {
+          return false;
+        }
+        partial.compact();
+      }
+
+      if (partial.position() > 0) {
+        return true;
+      }
+      if (!decode(bytes)) {
+        return false;
+      }
+      partial.put(bytes);
+      return true;
+    }
+
+    // Returns false when the message ended in the middle of a character.
+    boolean isComplete() {
+      return partial.position() == 0;
+    }
+
+    private boolean decode(final ByteBuffer bytes) {
+      while (true) {
+        final var result = decoder.decode(bytes, chars, false);
+        chars.clear();
+        if (result.isError()) {
+          return false;
+        }
+        if (result.isUnderflow()) {
+          return true;
+        }
+      }
+    }
+  }
+
+  // The payload of one message, published on the event loop as its frames are read.
+  private final class Message implements Flow.Publisher<ByteBuffer>, Flow.Subscription {
+    private final AtomicLong demand = new AtomicLong();
+    private volatile Flow.Subscriber<? super ByteBuffer> subscriber = null;
+    private volatile boolean cancelled = false;
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+      if (this.subscriber != null) {
+        subscriber.onSubscribe(
+            new Flow.Subscription() {
+              @Override
+              public void request(final long n) {}
+
+              @Override
+              public void cancel() {}
+            });
+        subscriber.onError(new IllegalStateException("A message can only be read once"));
+        return;
+      }
+
+      this.subscriber = subscriber;
+      subscriber.onSubscribe(this);
+      resume();
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        cancel();
+        connection.runOnLoop(
+            () ->
+                subscriber.onError(
+                    new IllegalArgumentException("Demand must be positive (rule 3.9)")));
+        return;
+      }
+
+      final var previous =
+          demand.getAndAccumulate(
+              n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      if (previous == 0) {
+        resume();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      resume();
+    }
+
+    private void resume() {
+      connection.runOnLoop(
+          () -> {
+            if (stalled) {
+              connection.resumeWebSocketInput();
+            }
+          });
+    }
+
+    // Returns false when the subscriber failed, which closes the WebSocket.
+    private boolean next(final ByteBuffer chunk) throws IOException {
+      try {
+        subscriber.onNext(chunk);
+        return true;
+      } catch (final RuntimeException exception) {
+        cancelled = true;
+        fail(INTERNAL_ERROR, "");
+        return false;
+      }
+    }
+
+    private void complete() {
+      try {
+        subscriber.onComplete();
+      } catch (final RuntimeException ignored) {
+      }
+    }
+  }
+}
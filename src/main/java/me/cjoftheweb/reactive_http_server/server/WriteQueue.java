@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+// The buffers waiting to go out on a connection, kept in a ring so they can be handed to a
+// gathering write as they are: a response head, a small body and the framing around its chunks
+// leave in one system call. The queued byte count is measured against the high and low
+// watermarks that hold back the publisher of a response when the socket is slow.
+final class WriteQueue {
+  private final int lowWatermark;
+  private final int highWatermark;
+  private ByteBuffer[] buffers = new ByteBuffer[8];
+  private int head = 0;
+  private int size = 0;
+  private long queuedBytes = 0;
+  private long addedBytes = 0;
+
+  WriteQueue(final int lowWatermark, final int highWatermark) {
+    this.lowWatermark = lowWatermark;
+    this.highWatermark = highWatermark;
+  }
+
+  void add(final ByteBuffer buffer) {
+    if (!buffer.hasRemaining()) {
+      return;
+    }
+
+    if (size == buffers.length) {
+      final var grown = new ByteBuffer[buffers.length * 2];
+      for (var i = 0; i < size; i++) {
+        grown[i] = buffers[(head + i) & (buffers.length - 1)];
+      }
+      buffers = grown;
+      head = 0;
+    }
+    buffers[(head + size) & (buffers.length - 1)] = buffer;
+    size++;
+    queuedBytes += buffer.remaining();
+    addedBytes += buffer.remaining();
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  long getQueuedBytes() {
+    return queuedBytes;
+  }
+
+  // The bytes ever added and ever written, which place a response within the connection's output.
+  long getAddedBytes() {
+    return addedBytes;
+  }
+
+  long getWrittenBytes() {
+    return addedBytes - queuedBytes;
+  }
+
+  boolean isAboveHighWatermark() {
+    return queuedBytes > highWatermark;
+  }
+
+  boolean isBelowLowWatermark() {
+    return queuedBytes <= lowWatermark;
+  }
+
+  // Writes until the queue is empty or the channel takes no more, returning the bytes written.
+  long writeTo(final GatheringByteChannel channel) throws IOException {
+    var total = 0L;
+    while (size > 0) {
+      // only the buffers up to the end of the array are contiguous; the rest go next time round
+      final var count = Math.min(size, buffers.length - head);
+      final var written = channel.write(buffers, head, count);
+      total += written;
+      queuedBytes -= written;
+
+      var completed = 0;
+      while (completed < count && !buffers[head].hasRemaining()) {
+        buffers[head] = null;
+        head = (head + 1) & (buffers.length - 1);
+        size--;
+        completed++;
+      }
+      if (completed < count) {
+        break;
+      }
+    }
+    return total;
+  }
+}
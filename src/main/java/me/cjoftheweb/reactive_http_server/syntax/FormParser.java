@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static me.cjoftheweb.reactive_http_server.syntax.FormParserState.*;
+
+// Parses an application/x-www-form-urlencoded body or query string as it arrives. Names and values
+// are percent-decoded into one scratch array, and each field is three offsets into it in a flat int
+// table, so a parser that is reset and reused only allocates when a form outgrows the last one.
+public class FormParser implements Parser {
+  private static final int NAME_START = 0;
+  private static final int VALUE_START = 1;
+  private static final int VALUE_END = 2;
+  private static final int FIELD_STRIDE = 3;
+
+  private final int maxFieldCount;
+  private final int maxFormSize;
+  private byte[] scratch = new byte[256];
+  private int scratchLength = 0;
+  private int[] fields = new int[16 * FIELD_STRIDE];
+  private int fieldCount = 0;
+  private int fieldStart = 0;
+  private int valueStart = -1;
+  private int firstHexDigit = 0;
+  private int offset = 0;
+  private FormParserState state = PARSING_NAME;
+  private FormParserState escapedState = null;
+  private FormParserState failedState = null;
+
+  public FormParser() {
+    this(0, 0);
+  }
+
+  public FormParser(final int maxFieldCount, final int maxFormSize) {
+    this.maxFieldCount = maxFieldCount;
+    this.maxFormSize = maxFormSize;
+  }
+
+  private static int hexDigit(final byte b) {
+    if (b >= '0' && b <= '9') {
+      return b - '0';
+    } else if (b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    } else if (b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    }
+    return -1;
+  }
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(FormParser.class);
+    }
+  }
+
+  private void fail() {
+    failedState = state;
+    state = ERROR;
+  }
+
+  private void throwParseException(final String message) throws ParseException {
+    fail();
+    throw new ParseException(
+        String.format("%s %s", message, failedState.getFriendlyStatusReport()), offset);
+  }
+
+  @Override
+  public void offer(ByteBuffer buffer) throws ParseException, TooManyFormFields, FormTooLarge {
+    ensureValid();
+
+    while (buffer.hasRemaining()) {
+      if (state == DONE) {
+        return;
+      }
+
+      if (maxFormSize > 0 && offset >= maxFormSize) {
+        fail();
+        throw new FormTooLarge(maxFormSize);
+      }
+
+      byte nextByte = buffer.get();
+
+      switch (state) {
+        case PARSING_NAME:
+        case PARSING_VALUE:
+          switch (nextByte) {
+            case '&':
+              endField();
+              state = PARSING_NAME;
+              break;
+            case '=':
+              if (state == PARSING_NAME) {
+                valueStart = scratchLength;
+                state = PARSING_VALUE;
+              } else {
+                write(nextByte);
+              }
+              break;
+            case '+':
+              write((byte) ' ');
+              break;
+            case '%':
+              escapedState = state;
+              state = AWAITING_FIRST_HEX_DIGIT;
+              break;
+            default:
+              write(nextByte);
+          }
+          break;
+        case AWAITING_FIRST_HEX_DIGIT:
+          firstHexDigit = hexDigit(nextByte);
+          if (firstHexDigit < 0) {
+            throwParseException(String.format("Unexpected character %c", nextByte));
+          }
+          state = AWAITING_SECOND_HEX_DIGIT;
+          break;
+        case AWAITING_SECOND_HEX_DIGIT:
+          final var secondHexDigit = hexDigit(nextByte);
+          if (secondHexDigit < 0) {
+            throwParseException(String.format("Unexpected character %c", nextByte));
+          }
+          write((byte) (firstHexDigit << 4 | secondHexDigit));
+          state = escapedState;
+          break;
+      }
+
+      offset++;
+    }
+  }
+
+  // Ends the form, since neither a body nor a query string marks the end of its last field.
+  public void finish() throws ParseException, TooManyFormFields {
+    ensureValid();
+
+    switch (state) {
+      case PARSING_NAME:
+      case PARSING_VALUE:
+        endField();
+        state = DONE;
+        break;
+      case DONE:
+        break;
+      default:
+        throwParseException("Unexpected end of form");
+    }
+  }
+
+  private void write(final byte b) {
+    if (scratchLength == scratch.length) {
+      scratch = Arrays.copyOf(scratch, scratch.length * 2);
+    }
+    scratch[scratchLength++] = b;
+  }
+
+  private void endField() throws TooManyFormFields {
+    // empty fields, as between two ampersands, are skipped
+    if (scratchLength == fieldStart && valueStart < 0) {
+      return;
+    }
+
+    if (maxFieldCount > 0 && fieldCount >= maxFieldCount) {
+      fail();
+      throw new TooManyFormFields(maxFieldCount);
+    }
+
+    final var index = fieldCount * FIELD_STRIDE;
+    if (index == fields.length) {
+      fields = Arrays.copyOf(fields, fields.length * 2);
+    }
+    fields[index + NAME_START] = fieldStart;
+    fields[index + VALUE_START] = valueStart < 0 ? scratchLength : valueStart;
+    fields[index + VALUE_END] = scratchLength;
+    fieldCount++;
+
+    fieldStart = scratchLength;
+    valueStart = -1;
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PARSING_NAME;
+    escapedState = null;
+    failedState = null;
+    offset = 0;
+    scratchLength = 0;
+    fieldCount = 0;
+    fieldStart = 0;
+    valueStart = -1;
+  }
+
+  public String getFriendlyStatusReport() {
+    return (state == ERROR && failedState != null ? failedState : state).getFriendlyStatusReport();
+  }
+
+  // The number of fields parsed so far, which excludes a field still being parsed. Names and
+  // values are only read for these, as the slots past them may hold fields from before a reset.
+  public int size() {
+    ensureValid();
+    return fieldCount;
+  }
+
+  public String getName(final int index) {
+    ensureValid();
+    Objects.checkIndex(index, fieldCount);
+    final var start = fields[index * FIELD_STRIDE + NAME_START];
+    final var end = fields[index * FIELD_STRIDE + VALUE_START];
+    return new String(scratch, start, end - start, StandardCharsets.UTF_8);
+  }
+
+  public String getValue(final int index) {
+    ensureValid();
+    Objects.checkIndex(index, fieldCount);
+    final var start = fields[index * FIELD_STRIDE + VALUE_START];
+    final var end = fields[index * FIELD_STRIDE + VALUE_END];
+    return new String(scratch, start, end - start, StandardCharsets.UTF_8);
+  }
+
+  private boolean nameEquals(final int index, final byte[] name) {
+    final var start = fields[index * FIELD_STRIDE + NAME_START];
+    final var end = fields[index * FIELD_STRIDE + VALUE_START];
+    return Arrays.equals(scratch, start, end, name, 0, name.length);
+  }
+
+  public Optional<String> get(final String name) {
+    ensureValid();
+    final var bytes = name.getBytes(StandardCharsets.UTF_8);
+    for (var i = 0; i < fieldCount; i++) {
+      if (nameEquals(i, bytes)) {
+        return Optional.of(getValue(i));
+      }
+    }
+    return Optional.empty();
+  }
+
+  public List<String> getAll(final String name) {
+    ensureValid();
+    final var bytes = name.getBytes(StandardCharsets.UTF_8);
+    final var values = new ArrayList<String>();
+    for (var i = 0; i < fieldCount; i++) {
+      if (nameEquals(i, bytes)) {
+        values.add(getValue(i));
+      }
+    }
+    return values;
+  }
+}
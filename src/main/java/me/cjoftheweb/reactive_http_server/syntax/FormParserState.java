@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+enum FormParserState {
+  PARSING_NAME("while parsing a field name"),
+  PARSING_VALUE("while parsing a field value"),
+  AWAITING_FIRST_HEX_DIGIT("after a percent sign"),
+  AWAITING_SECOND_HEX_DIGIT("after the first digit of a percent-encoded byte"),
+  DONE("after the end of the form"),
+  ERROR("after an error occured");
+
+  private final String friendlyStatusReport;
+
+  FormParserState(String friendlyStatusReport) {
+    this.friendlyStatusReport = friendlyStatusReport;
+  }
+
+  String getFriendlyStatusReport() {
+    return this.friendlyStatusReport;
+  }
+}
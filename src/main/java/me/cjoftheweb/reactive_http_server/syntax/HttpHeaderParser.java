@@ -27,6 +27,7 @@ class HttpHeaderParser implements Parser {
   private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(256);
   private int offset = 0;
   private HttpHeaderParserState state = PARSING_NAME;
+  private HttpHeaderParserState failedState = null;
   private String key = null;
   private String value = null;
 
@@ -56,10 +57,15 @@ class HttpHeaderParser implements Parser {
     }
   }
 
-  private void throwParseException(final String message) throws ParseException {
+  private void fail() {
+    failedState = state;
     state = ERROR;
+  }
+
+  private void throwParseException(final String message) throws ParseException {
+    fail();
     throw new ParseException(
-        String.format("%s %s", message, state.getFriendlyStatusReport()), offset);
+        String.format("%s %s", message, failedState.getFriendlyStatusReport()), offset);
   }
 
   @Override
@@ -123,13 +129,13 @@ class HttpHeaderParser implements Parser {
           switch (state) {
             case PARSING_NAME:
               if (maxHeaderNameSize > 0 && byteArrayOutputStream.size() > maxHeaderNameSize) {
-                state = ERROR;
+                fail();
                 throw new HttpHeaderNameTooLong(maxHeaderNameSize);
               }
               break;
             case PARSING_VALUE:
               if (maxHeaderValueSize > 0 && byteArrayOutputStream.size() > maxHeaderValueSize) {
-                state = ERROR;
+                fail();
                 throw new HttpHeaderValueTooLong(maxHeaderValueSize);
               }
               break;
@@ -153,11 +159,17 @@ class HttpHeaderParser implements Parser {
   @Override
   public void reset() {
     state = PARSING_NAME;
+    offset = 0;
+    failedState = null;
     byteArrayOutputStream.reset();
     key = null;
     value = null;
   }
 
+  String getFriendlyStatusReport() {
+    return (state == ERROR && failedState != null ? failedState : state).getFriendlyStatusReport();
+  }
+
   public String getKey() {
     ensureValid();
     return key;
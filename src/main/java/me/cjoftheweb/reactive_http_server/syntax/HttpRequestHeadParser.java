@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.syntax.HttpRequestHeadParserState.*;
+
+public class HttpRequestHeadParser implements Parser {
+  private final HttpRequestLineParser requestLineParser;
+  private final HttpHeaderParser headerParser;
+  private final int maxRequestHeadSize;
+  private final int maxHeaderCount;
+  private HttpHeaders headers = new HttpHeaders();
+  private int requestHeadSize = 0;
+  private HttpRequestHeadParserState state = PARSING_REQUEST_LINE;
+  private String failedStatusReport = null;
+  private boolean yieldAfterRequestLine = false;
+
+  public HttpRequestHeadParser() {
+    this(0, 0, 0, 0, 0);
+  }
+
+  public HttpRequestHeadParser(
+      final int maxRequestTargetLength, final int maxHeaderNameSize, final int maxHeaderValueSize) {
+    this(maxRequestTargetLength, maxHeaderNameSize, maxHeaderValueSize, 0, 0);
+  }
+
+  public HttpRequestHeadParser(
+      final int maxRequestTargetLength,
+      final int maxHeaderNameSize,
+      final int maxHeaderValueSize,
+      final int maxRequestHeadSize,
+      final int maxHeaderCount) {
+    this.requestLineParser = new HttpRequestLineParser(maxRequestTargetLength);
+    this.headerParser = new HttpHeaderParser(maxHeaderNameSize, maxHeaderValueSize);
+    this.maxRequestHeadSize = maxRequestHeadSize;
+    this.maxHeaderCount = maxHeaderCount;
+  }
+
+  // Makes offer return as soon as the request line is complete, leaving the headers in the buffer
+  // for the next offer, so the caller can turn a request away before any header is parsed.
+  public HttpRequestHeadParser yieldAfterRequestLine(final boolean yieldAfterRequestLine) {
+    this.yieldAfterRequestLine = yieldAfterRequestLine;
+    return this;
+  }
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(HttpRequestHeadParser.class);
+    }
+  }
+
+  private void fail(final String friendlyStatusReport) {
+    failedStatusReport = friendlyStatusReport;
+    state = ERROR;
+  }
+
+  @Override
+  public void offer(ByteBuffer buffer)
+      throws ParseException, UnsupportedHttpVersion, UnsupportedHttpMethod,
+          HttpRequestTargetTooLong, HttpHeaderNameTooLong, HttpHeaderValueTooLong,
+          HttpRequestHeadTooLarge, TooManyHttpHeaders {
+    ensureValid();
+
+    // the sub-parsers only ever see as many bytes as the head may still grow by, so an oversized
+    // head is rejected as soon as its first excess byte arrives rather than after buffering it
+    final var limit = buffer.limit();
+    final var start = buffer.position();
+    if (maxRequestHeadSize > 0 && limit - start > maxRequestHeadSize - requestHeadSize) {
+      buffer.limit(start + maxRequestHeadSize - requestHeadSize);
+    }
+
+    final boolean truncated;
+    try {
+      parse(buffer);
+    } finally {
+      requestHeadSize += buffer.position() - start;
+      truncated = buffer.limit() < limit && !buffer.hasRemaining();
+      buffer.limit(limit);
+    }
+
+    if (state != DONE && truncated) {
+      fail(getFriendlyStatusReport());
+      throw new HttpRequestHeadTooLarge(maxRequestHeadSize);
+    }
+  }
+
+  private void parse(ByteBuffer buffer)
+      throws ParseException, UnsupportedHttpVersion, UnsupportedHttpMethod,
+          HttpRequestTargetTooLong, HttpHeaderNameTooLong, HttpHeaderValueTooLong,
+          TooManyHttpHeaders {
+    while (buffer.hasRemaining()) {
+      switch (state) {
+        case PARSING_REQUEST_LINE:
+          try {
+            requestLineParser.offer(buffer);
+          } catch (final Exception exception) {
+            fail(requestLineParser.getFriendlyStatusReport());
+            throw exception;
+          }
+
+          if (requestLineParser.isDone()) {
+            state = AWAITING_HEADER;
+            if (yieldAfterRequestLine) {
+              return;
+            }
+          }
+          break;
+        case AWAITING_HEADER:
+          if (buffer.get(buffer.position()) == '\r') {
+            buffer.get();
+            state = AWAITING_LINE_FEED;
+          } else if (maxHeaderCount > 0 && headers.size() >= maxHeaderCount) {
+            fail(state.getFriendlyStatusReport());
+            throw new TooManyHttpHeaders(maxHeaderCount);
+          } else {
+            state = PARSING_HEADER;
+          }
+          break;
+        case PARSING_HEADER:
+          try {
+            headerParser.offer(buffer);
+          } catch (final Exception exception) {
+            fail(headerParser.getFriendlyStatusReport());
+            throw exception;
+          }
+
+          if (headerParser.isDone()) {
+            headers.add(headerParser.getKey(), headerParser.getValue());
+            headerParser.reset();
+            state = AWAITING_HEADER;
+          }
+          break;
+        case AWAITING_LINE_FEED:
+          if (buffer.get() != '\n') {
+            fail(state.getFriendlyStatusReport());
+            throw new ParseException(
+                String.format("Unexpected character %s", failedStatusReport),
+                buffer.position() - 1);
+          }
+          state = DONE;
+          break;
+        default:
+          return;
+      }
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PARSING_REQUEST_LINE;
+    failedStatusReport = null;
+    requestHeadSize = 0;
+    requestLineParser.reset();
+    headerParser.reset();
+    headers = new HttpHeaders();
+  }
+
+  public String getFriendlyStatusReport() {
+    if (state == ERROR && failedStatusReport != null) {
+      return failedStatusReport;
+    }
+
+    switch (state) {
+      case PARSING_REQUEST_LINE:
+        return requestLineParser.getFriendlyStatusReport();
+      case PARSING_HEADER:
+        return headerParser.getFriendlyStatusReport();
+      default:
+        return state.getFriendlyStatusReport();
+    }
+  }
+
+  public boolean isRequestLineDone() {
+    return state != PARSING_REQUEST_LINE && state != ERROR;
+  }
+
+  public int getRequestHeadSize() {
+    return requestHeadSize;
+  }
+
+  public HttpMethod getMethod() {
+    ensureValid();
+    return requestLineParser.getMethod();
+  }
+
+  public String getRequestTarget() {
+    ensureValid();
+    return requestLineParser.getRequestTarget();
+  }
+
+  public HttpVersion getVersion() {
+    ensureValid();
+    return requestLineParser.getVersion();
+  }
+
+  public HttpHeaders getHeaders() {
+    ensureValid();
+    return headers;
+  }
+}
@@ -32,6 +32,7 @@ class HttpRequestLineParser implements Parser {
   private String requestTarget = null;
   private HttpVersion version = null;
   private HttpRequestLineParserState state = PARSING_METHOD;
+  private HttpRequestLineParserState failedState = null;
 
   HttpRequestLineParser() {
     this.maxRequestTargetLength = 0;
@@ -47,10 +48,15 @@ class HttpRequestLineParser implements Parser {
     }
   }
 
-  private void throwParseException(final String message) throws ParseException {
+  private void fail() {
+    failedState = state;
     state = ERROR;
+  }
+
+  private void throwParseException(final String message) throws ParseException {
+    fail();
     throw new ParseException(
-        String.format("%s %s", message, state.getFriendlyStatusReport()), offset);
+        String.format("%s %s", message, failedState.getFriendlyStatusReport()), offset);
   }
 
   @Override
@@ -79,7 +85,7 @@ class HttpRequestLineParser implements Parser {
                   HttpMethod.fromMethodString(httpMethod)
                       .orElseThrow(
                           () -> {
-                            state = ERROR;
+                            fail();
                             return new UnsupportedHttpMethod(httpMethod);
                           });
               break;
@@ -108,7 +114,7 @@ class HttpRequestLineParser implements Parser {
                 HttpVersion.fromVersionString(httpVersion)
                     .orElseThrow(
                         () -> {
-                          state = ERROR;
+                          fail();
                           return new UnsupportedHttpVersion(httpVersion);
                         });
             state = state.next();
@@ -127,7 +133,7 @@ class HttpRequestLineParser implements Parser {
               byteArrayOutputStream.write(nextByte);
               if (byteArrayOutputStream.size() > HttpMethod.maxLength) {
                 final String unsupportedMethod = byteArrayOutputStream.toString();
-                state = ERROR;
+                fail();
                 throw new UnsupportedHttpMethod(unsupportedMethod);
               }
               break;
@@ -135,7 +141,7 @@ class HttpRequestLineParser implements Parser {
               byteArrayOutputStream.write(nextByte);
               if (maxRequestTargetLength > 0
                   && byteArrayOutputStream.size() > maxRequestTargetLength) {
-                state = ERROR;
+                fail();
                 throw new HttpRequestTargetTooLong(maxRequestTargetLength);
               }
               break;
@@ -143,7 +149,7 @@ class HttpRequestLineParser implements Parser {
               byteArrayOutputStream.write(nextByte);
               if (byteArrayOutputStream.size() > HttpVersion.maxLength) {
                 final String unsupportedVersion = byteArrayOutputStream.toString();
-                state = ERROR;
+                fail();
                 throw new UnsupportedHttpVersion(unsupportedVersion);
               }
               break;
@@ -169,12 +175,18 @@ class HttpRequestLineParser implements Parser {
   @Override
   public void reset() {
     state = PARSING_METHOD;
+    offset = 0;
+    failedState = null;
     byteArrayOutputStream.reset();
     method = null;
     requestTarget = null;
     version = null;
   }
 
+  String getFriendlyStatusReport() {
+    return (state == ERROR && failedState != null ? failedState : state).getFriendlyStatusReport();
+  }
+
   HttpMethod getMethod() {
     ensureValid();
     return method;
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class HttpResponseHeadEncoder {
+  private byte[] bytes = new byte[256];
+  private int size = 0;
+
+  private void ensureCapacity(final int extra) {
+    if (size + extra > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+    }
+  }
+
+  private void writeByte(final int b) {
+    ensureCapacity(1);
+    bytes[size++] = (byte) b;
+  }
+
+  private void writeString(final String string) {
+    ensureCapacity(string.length());
+    for (var i = 0; i < string.length(); i++) {
+      final char c = string.charAt(i);
+      if (c == '\r' || c == '\n' || c > 0xFF) {
+        size = 0;
+        throw new IllegalArgumentException(
+            String.format("Illegal character in response head: %s", string));
+      }
+      bytes[size++] = (byte) c;
+    }
+  }
+
+  private void writeLong(final long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative numbers cannot be encoded");
+    }
+
+    var digits = 1;
+    for (var rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+
+    ensureCapacity(digits);
+    var rest = value;
+    for (var i = size + digits - 1; i >= size; i--) {
+      bytes[i] = (byte) ('0' + rest % 10);
+      rest /= 10;
+    }
+    size += digits;
+  }
+
+  private void writeLineEnd() {
+    writeByte('\r');
+    writeByte('\n');
+  }
+
+  public HttpResponseHeadEncoder statusLine(final HttpVersion version, final HttpStatus status) {
+    writeString(version.getVersionString());
+    writeByte(' ');
+    writeLong(status.getCode());
+    writeByte(' ');
+    writeString(status.getReasonPhrase());
+    writeLineEnd();
+    return this;
+  }
+
+  public HttpResponseHeadEncoder header(final String name, final String value) {
+    writeString(name);
+    writeByte(':');
+    writeByte(' ');
+    writeString(value);
+    writeLineEnd();
+    return this;
+  }
+
+  public HttpResponseHeadEncoder header(final String name, final long value) {
+    writeString(name);
+    writeByte(':');
+    writeByte(' ');
+    writeLong(value);
+    writeLineEnd();
+    return this;
+  }
+
+  public HttpResponseHeadEncoder headers(final HttpHeaders headers) {
+    for (var i = 0; i < headers.size(); i++) {
+      header(headers.getName(i), headers.getValue(i));
+    }
+    return this;
+  }
+
+  public ByteBuffer encode() {
+    writeLineEnd();
+    final var buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, size));
+    size = 0;
+    return buffer;
+  }
+}
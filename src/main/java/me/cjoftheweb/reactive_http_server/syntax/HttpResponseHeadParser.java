@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadParserState.*;
+
+// The head of a response read back from an upstream server. Like the request head parser it stops
+// right after the blank line, leaving any body in the buffer.
+public class HttpResponseHeadParser implements Parser {
+  private final HttpStatusLineParser statusLineParser = new HttpStatusLineParser();
+  private final HttpHeaderParser headerParser;
+  private HttpHeaders headers = new HttpHeaders();
+  private HttpResponseHeadParserState state = PARSING_STATUS_LINE;
+  private String failedStatusReport = null;
+
+  public HttpResponseHeadParser() {
+    this(0, 0);
+  }
+
+  public HttpResponseHeadParser(final int maxHeaderNameSize, final int maxHeaderValueSize) {
+    this.headerParser = new HttpHeaderParser(maxHeaderNameSize, maxHeaderValueSize);
+  }
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(HttpResponseHeadParser.class);
+    }
+  }
+
+  private void fail(final String friendlyStatusReport) {
+    failedStatusReport = friendlyStatusReport;
+    state = ERROR;
+  }
+
+  @Override
+  public void offer(ByteBuffer buffer)
+      throws ParseException, UnsupportedHttpVersion, HttpHeaderNameTooLong,
+          HttpHeaderValueTooLong {
+    ensureValid();
+
+    while (buffer.hasRemaining()) {
+      switch (state) {
+        case PARSING_STATUS_LINE:
+          try {
+            statusLineParser.offer(buffer);
+          } catch (final Exception exception) {
+            fail(statusLineParser.getFriendlyStatusReport());
+            throw exception;
+          }
+
+          if (statusLineParser.isDone()) {
+            state = AWAITING_HEADER;
+          }
+          break;
+        case AWAITING_HEADER:
+          if (buffer.get(buffer.position()) == '\r') {
+            buffer.get();
+            state = AWAITING_LINE_FEED;
+          } else {
+            state = PARSING_HEADER;
+          }
+          break;
+        case PARSING_HEADER:
+          try {
+            headerParser.offer(buffer);
+          } catch (final Exception exception) {
+            fail(headerParser.getFriendlyStatusReport());
+            throw exception;
+          }
+
+          if (headerParser.isDone()) {
+            headers.add(headerParser.getKey(), headerParser.getValue());
+            headerParser.reset();
+            state = AWAITING_HEADER;
+          }
+          break;
+        case AWAITING_LINE_FEED:
+          if (buffer.get() != '\n') {
+            fail(state.getFriendlyStatusReport());
+            throw new ParseException(
+                String.format("Unexpected character %s", failedStatusReport),
+                buffer.position() - 1);
+          }
+          state = DONE;
+          break;
+        default:
+          return;
+      }
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PARSING_STATUS_LINE;
+    failedStatusReport = null;
+    statusLineParser.reset();
+    headerParser.reset();
+    headers = new HttpHeaders();
+  }
+
+  public String getFriendlyStatusReport() {
+    if (state == ERROR && failedStatusReport != null) {
+      return failedStatusReport;
+    }
+
+    switch (state) {
+      case PARSING_STATUS_LINE:
+        return statusLineParser.getFriendlyStatusReport();
+      case PARSING_HEADER:
+        return headerParser.getFriendlyStatusReport();
+      default:
+        return state.getFriendlyStatusReport();
+    }
+  }
+
+  public HttpVersion getVersion() {
+    ensureValid();
+    return statusLineParser.getVersion();
+  }
+
+  public int getStatusCode() {
+    ensureValid();
+    return statusLineParser.getStatusCode();
+  }
+
+  public String getReasonPhrase() {
+    ensureValid();
+    return statusLineParser.getReasonPhrase();
+  }
+
+  public HttpHeaders getHeaders() {
+    ensureValid();
+    return headers;
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.syntax.HttpStatusLineParserState.*;
+
+// The first line of a response, such as "HTTP/1.1 200 OK". The reason phrase may be empty and
+// may contain spaces, and an upstream that leaves out the space before an empty one is tolerated.
+class HttpStatusLineParser implements Parser {
+  static final int MAX_REASON_PHRASE_LENGTH = 1024;
+
+  private final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(32);
+  private int offset = 0;
+  private HttpVersion version = null;
+  private int statusCode = 0;
+  private int statusCodeDigits = 0;
+  private String reasonPhrase = null;
+  private HttpStatusLineParserState state = PARSING_VERSION;
+  private HttpStatusLineParserState failedState = null;
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(HttpStatusLineParser.class);
+    }
+  }
+
+  private void fail() {
+    failedState = state;
+    state = ERROR;
+  }
+
+  private void throwParseException(final String message) throws ParseException {
+    fail();
+    throw new ParseException(
+        String.format("%s %s", message, failedState.getFriendlyStatusReport()), offset);
+  }
+
+  private void endStatusCode() throws ParseException {
+    if (statusCodeDigits != 3) {
+      throwParseException("Status code must have three digits");
+    }
+  }
+
+  @Override
+  public void offer(ByteBuffer buffer) throws ParseException, UnsupportedHttpVersion {
+    ensureValid();
+
+    while (buffer.hasRemaining()) {
+      if (state == DONE) {
+        return;
+      }
+
+      byte nextByte = buffer.get();
+
+      switch (nextByte) {
+        case ' ':
+          switch (state) {
+            case PARSING_VERSION:
+              final String httpVersion = byteArrayOutputStream.toString();
+              if (httpVersion.isEmpty()) {
+                throwParseException("Empty version");
+              }
+
+              version =
+                  HttpVersion.fromVersionString(httpVersion)
+                      .orElseThrow(
+                          () -> {
+                            fail();
+                            return new UnsupportedHttpVersion(httpVersion);
+                          });
+              byteArrayOutputStream.reset();
+              state = state.next();
+              break;
+            case PARSING_STATUS_CODE:
+              endStatusCode();
+              state = state.next();
+              break;
+            case PARSING_REASON_PHRASE:
+              byteArrayOutputStream.write(nextByte);
+              break;
+            default:
+              throwParseException("Unexpected space");
+          }
+          break;
+        case '\r':
+          switch (state) {
+            case PARSING_STATUS_CODE:
+              endStatusCode();
+              reasonPhrase = "";
+              state = AWAITING_LINE_FEED;
+              break;
+            case PARSING_REASON_PHRASE:
+              reasonPhrase = byteArrayOutputStream.toString();
+              byteArrayOutputStream.reset();
+              state = state.next();
+              break;
+            default:
+              throwParseException("Unexpected carriage return");
+          }
+          break;
+        case '\n':
+          if (state != AWAITING_LINE_FEED) {
+            throwParseException("Unexpected line feed");
+          } else {
+            state = state.next();
+          }
+          break;
+        default:
+          switch (state) {
+            case PARSING_VERSION:
+              byteArrayOutputStream.write(nextByte);
+              if (byteArrayOutputStream.size() > HttpVersion.maxLength) {
+                final String unsupportedVersion = byteArrayOutputStream.toString();
+                fail();
+                throw new UnsupportedHttpVersion(unsupportedVersion);
+              }
+              break;
+            case PARSING_STATUS_CODE:
+              if (nextByte < '0' || nextByte > '9' || statusCodeDigits == 3) {
+                throwParseException(String.format("Unexpected character %c", nextByte));
+              }
+              statusCode = statusCode * 10 + nextByte - '0';
+              statusCodeDigits++;
+              break;
+            case PARSING_REASON_PHRASE:
+              byteArrayOutputStream.write(nextByte);
+              if (byteArrayOutputStream.size() > MAX_REASON_PHRASE_LENGTH) {
+                throwParseException("Reason phrase too long");
+              }
+              break;
+            default:
+              throwParseException(String.format("Unexpected character %c", nextByte));
+          }
+      }
+
+      offset++;
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PARSING_VERSION;
+    offset = 0;
+    failedState = null;
+    byteArrayOutputStream.reset();
+    version = null;
+    statusCode = 0;
+    statusCodeDigits = 0;
+    reasonPhrase = null;
+  }
+
+  String getFriendlyStatusReport() {
+    return (state == ERROR && failedState != null ? failedState : state).getFriendlyStatusReport();
+  }
+
+  HttpVersion getVersion() {
+    ensureValid();
+    return version;
+  }
+
+  int getStatusCode() {
+    ensureValid();
+    return statusCode;
+  }
+
+  String getReasonPhrase() {
+    ensureValid();
+    return reasonPhrase;
+  }
+}
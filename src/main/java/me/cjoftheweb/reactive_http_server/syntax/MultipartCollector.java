@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Collects the parts of a multipart body, keeping small parts in memory and writing any part larger
+// than the spill threshold straight to a temporary file. Closing the collector deletes the files.
+public class MultipartCollector implements MultipartListener, Closeable {
+  private final int spillThreshold;
+  private final Path directory;
+  private final List<Part> parts = new ArrayList<>();
+  private Part part = null;
+  private byte[] content = null;
+  private FileChannel channel = null;
+
+  public MultipartCollector(final int spillThreshold, final Path directory) {
+    this.spillThreshold = spillThreshold;
+    this.directory = directory;
+  }
+
+  @Override
+  public void onPartStart(final HttpHeaders headers) {
+    part = new Part(headers);
+    content = new byte[0];
+    parts.add(part);
+  }
+
+  @Override
+  public void onPartData(final ByteBuffer data) throws IOException {
+    if (channel == null && part.size + data.remaining() > spillThreshold) {
+      part.file = Files.createTempFile(directory, "part", ".tmp");
+      channel = FileChannel.open(part.file, WRITE);
+      write(ByteBuffer.wrap(content, 0, (int) part.size));
+      content = null;
+    }
+
+    final var length = data.remaining();
+    if (channel != null) {
+      write(data);
+    } else {
+      if (part.size + length > content.length) {
+        content = Arrays.copyOf(content, (int) Math.min(spillThreshold, (part.size + length) * 2));
+      }
+      data.get(content, (int) part.size, length);
+    }
+    part.size += length;
+  }
+
+  private void write(final ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
+  @Override
+  public void onPartEnd() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    } else {
+      part.content = ByteBuffer.wrap(content, 0, (int) part.size).slice().asReadOnlyBuffer();
+    }
+    content = null;
+    part = null;
+  }
+
+  public List<Part> getParts() {
+    return parts;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+    for (final var part : parts) {
+      if (part.file != null) {
+        Files.deleteIfExists(part.file);
+      }
+    }
+  }
+
+  public static final class Part {
+    private final HttpHeaders headers;
+    private long size = 0;
+    private ByteBuffer content = null;
+    private Path file = null;
+
+    private Part(final HttpHeaders headers) {
+      this.headers = headers;
+    }
+
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    // Empty when the part was spilled to a file.
+    public Optional<ByteBuffer> getContent() {
+      return Optional.ofNullable(content).map(ByteBuffer::duplicate);
+    }
+
+    public Optional<Path> getFile() {
+      return Optional.ofNullable(file);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Optional;
+
+import static me.cjoftheweb.reactive_http_server.syntax.MultipartParserState.*;
+
+public class MultipartParser implements Parser {
+  private static final int MAX_BOUNDARY_LENGTH = 70;
+
+  private final MultipartListener listener;
+  private final HttpHeaderParser headerParser;
+  private final int maxHeaderCount;
+  // the delimiter is the boundary preceded by CRLF and two dashes, and the Boyer-Moore-Horspool
+  // skip table is built once for it
+  private final byte[] delimiter;
+  private final int[] skip = new int[256];
+  // the tail of the previous buffer that could still be the start of a delimiter
+  private final byte[] carry;
+  private int carryLength;
+  private HttpHeaders headers;
+  private MultipartParserState state;
+  private String failedStatusReport = null;
+
+  public MultipartParser(final String boundary, final MultipartListener listener) {
+    this(boundary, listener, 0, 0, 0);
+  }
+
+  public MultipartParser(
+      final String boundary,
+      final MultipartListener listener,
+      final int maxHeaderNameSize,
+      final int maxHeaderValueSize,
+      final int maxHeaderCount) {
+    if (boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH) {
+      throw new IllegalArgumentException(
+          String.format("Boundary must be between 1 and %d characters", MAX_BOUNDARY_LENGTH));
+    }
+
+    this.listener = listener;
+    this.headerParser = new HttpHeaderParser(maxHeaderNameSize, maxHeaderValueSize);
+    this.maxHeaderCount = maxHeaderCount;
+    this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    this.carry = new byte[delimiter.length];
+
+    Arrays.fill(skip, delimiter.length);
+    for (var i = 0; i < delimiter.length - 1; i++) {
+      skip[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+    }
+
+    reset();
+  }
+
+  // Extracts the boundary parameter from a multipart Content-Type header value.
+  public static Optional<String> boundary(final String contentType) {
+    final var parameters = contentType.split(";");
+    if (!parameters[0].trim().toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+      return Optional.empty();
+    }
+
+    for (var i = 1; i < parameters.length; i++) {
+      final var parameter = parameters[i].trim();
+      final var equals = parameter.indexOf('=');
+      if (equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase("boundary")) {
+        var value = parameter.substring(equals + 1).trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+          value = value.substring(1, value.length() - 1);
+        }
+        return value.isEmpty() || value.length() > MAX_BOUNDARY_LENGTH
+            ? Optional.empty()
+            : Optional.of(value);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(MultipartParser.class);
+    }
+  }
+
+  private void fail(final String friendlyStatusReport) {
+    failedStatusReport = friendlyStatusReport;
+    state = ERROR;
+  }
+
+  private void throwParseException(final String message, final ByteBuffer buffer)
+      throws ParseException {
+    fail(state.getFriendlyStatusReport());
+    throw new ParseException(
+        String.format("%s %s", message, failedStatusReport), buffer.position() - 1);
+  }
+
+  @Override
+  public void offer(final ByteBuffer buffer)
+      throws ParseException, HttpHeaderNameTooLong, HttpHeaderValueTooLong, TooManyHttpHeaders,
+          IOException {
+    ensureValid();
+
+    try {
+      parse(buffer);
+    } catch (final IOException exception) {
+      fail(state.getFriendlyStatusReport());
+      throw exception;
+    }
+  }
+
+  private void parse(final ByteBuffer buffer)
+      throws ParseException, HttpHeaderNameTooLong, HttpHeaderValueTooLong, TooManyHttpHeaders,
+          IOException {
+    while (buffer.hasRemaining()) {
+      switch (state) {
+        case PREAMBLE:
+        case BODY:
+          if (scan(buffer, state == BODY)) {
+            if (state == BODY) {
+              listener.onPartEnd();
+            }
+            state = AFTER_BOUNDARY;
+          }
+          break;
+        case AFTER_BOUNDARY:
+          switch (buffer.get()) {
+            case '-':
+              state = AWAITING_CLOSING_DASH;
+              break;
+            case '\r':
+              state = AWAITING_BOUNDARY_LINE_FEED;
+              break;
+            case ' ':
+            case '\t':
+              // transport padding
+              break;
+            default:
+              throwParseException("Unexpected character", buffer);
+          }
+          break;
+        case AWAITING_CLOSING_DASH:
+          if (buffer.get() != '-') {
+            throwParseException("Unexpected character", buffer);
+          }
+          state = DONE;
+          break;
+        case AWAITING_BOUNDARY_LINE_FEED:
+          if (buffer.get() != '\n') {
+            throwParseException("Unexpected character", buffer);
+          }
+          headers = new HttpHeaders();
+          state = AWAITING_HEADER;
+          break;
+        case AWAITING_HEADER:
+          if (buffer.get(buffer.position()) == '\r') {
+            buffer.get();
+            state = AWAITING_HEADERS_LINE_FEED;
+          } else if (maxHeaderCount > 0 && headers.size() >= maxHeaderCount) {
+            fail(state.getFriendlyStatusReport());
+            throw new TooManyHttpHeaders(maxHeaderCount);
+          } else {
+            state = PARSING_HEADER;
+          }
+          break;
+        case PARSING_HEADER:
+          try {
+            headerParser.offer(buffer);
+          } catch (final Exception exception) {
+            fail(headerParser.getFriendlyStatusReport());
+            throw exception;
+          }
+
+          if (headerParser.isDone()) {
+            headers.add(headerParser.getKey(), headerParser.getValue());
+            headerParser.reset();
+            state = AWAITING_HEADER;
+          }
+          break;
+        case AWAITING_HEADERS_LINE_FEED:
+          if (buffer.get() != '\n') {
+            throwParseException("Unexpected character", buffer);
+          }
+          state = BODY;
+          listener.onPartStart(headers);
+          break;
+        default:
+          // the epilogue is ignored
+          buffer.position(buffer.limit());
+          return;
+      }
+    }
+  }
+
+  private byte byteAt(final ByteBuffer buffer, final int index) {
+    return index < carryLength ? carry[index] : buffer.get(buffer.position() + index - carryLength);
+  }
+
+  // Searches the carried bytes followed by the rest of the buffer for the delimiter, passing
+  // everything before it to the listener when emit is set. Returns whether the delimiter was found,
+  // in which case the buffer is left just after it; otherwise the buffer is consumed and any tail
+  // that could begin a delimiter is carried over to the next offer.
+  private boolean scan(final ByteBuffer buffer, final boolean emit) throws IOException {
+    final var length = carryLength + buffer.remaining();
+    final var last = delimiter.length - 1;
+
+    var index = 0;
+    while (index + last < length) {
+      var i = last;
+      while (i >= 0 && byteAt(buffer, index + i) == delimiter[i]) {
+        i--;
+      }
+      if (i < 0) {
+        if (emit) {
+          emit(buffer, index);
+        }
+        buffer.position(buffer.position() + index + delimiter.length - carryLength);
+        carryLength = 0;
+        return true;
+      }
+      index += skip[byteAt(buffer, index + last) & 0xff];
+    }
+
+    // only a tail that matches a prefix of the delimiter needs to be held back
+    var held = Math.max(0, length - last);
+    while (held < length && !isDelimiterPrefix(buffer, held, length)) {
+      held++;
+    }
+    if (emit) {
+      emit(buffer, held);
+    }
+
+    final var carried = Math.max(0, carryLength - held);
+    System.arraycopy(carry, carryLength - carried, carry, 0, carried);
+    final var fromBuffer = length - held - carried;
+    buffer.position(buffer.limit() - fromBuffer);
+    buffer.get(carry, carried, fromBuffer);
+    carryLength = carried + fromBuffer;
+    return false;
+  }
+
+  private boolean isDelimiterPrefix(final ByteBuffer buffer, final int from, final int length) {
+    for (var i = from; i < length; i++) {
+      if (byteAt(buffer, i) != delimiter[i - from]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void emit(final ByteBuffer buffer, final int end) throws IOException {
+    final var fromCarry = Math.min(end, carryLength);
+    if (fromCarry > 0) {
+      listener.onPartData(ByteBuffer.wrap(carry, 0, fromCarry));
+    }
+    if (end > carryLength) {
+      listener.onPartData(buffer.slice(buffer.position(), end - carryLength));
+    }
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PREAMBLE;
+    failedStatusReport = null;
+    headers = null;
+    headerParser.reset();
+    // the first delimiter may open the body without a preceding CRLF
+    carry[0] = '\r';
+    carry[1] = '\n';
+    carryLength = 2;
+  }
+
+  public String getFriendlyStatusReport() {
+    if (state == ERROR && failedStatusReport != null) {
+      return failedStatusReport;
+    }
+    return state == PARSING_HEADER
+        ? headerParser.getFriendlyStatusReport()
+        : state.getFriendlyStatusReport();
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+enum MultipartParserState {
+  PREAMBLE("while skipping the preamble"),
+  AFTER_BOUNDARY("after a boundary"),
+  AWAITING_CLOSING_DASH("after the first dash of a closing boundary"),
+  AWAITING_BOUNDARY_LINE_FEED("after the carriage return ending a boundary"),
+  AWAITING_HEADER("at the start of a part header field line"),
+  PARSING_HEADER("while parsing a part header field"),
+  AWAITING_HEADERS_LINE_FEED("after the carriage return ending the part headers"),
+  BODY("while reading a part body"),
+  DONE("after the closing boundary"),
+  ERROR("after an error occured");
+
+  private final String friendlyStatusReport;
+
+  MultipartParserState(String friendlyStatusReport) {
+    this.friendlyStatusReport = friendlyStatusReport;
+  }
+
+  String getFriendlyStatusReport() {
+    return this.friendlyStatusReport;
+  }
+}
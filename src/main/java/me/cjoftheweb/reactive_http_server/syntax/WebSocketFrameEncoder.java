@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import java.nio.ByteBuffer;
+
+// Writes the headers of unmasked RFC 6455 frames, as a server sends them.
+public final class WebSocketFrameEncoder {
+  private WebSocketFrameEncoder() {}
+
+  public static int headerLength(final long payloadLength) {
+    return payloadLength < 126 ? 2 : payloadLength <= 0xffff ? 4 : 10;
+  }
+
+  public static ByteBuffer putHeader(
+      final ByteBuffer buffer, final boolean fin, final int opcode, final long payloadLength) {
+    buffer.put((byte) ((fin ? 0x80 : 0) | opcode));
+    if (payloadLength < 126) {
+      buffer.put((byte) payloadLength);
+    } else if (payloadLength <= 0xffff) {
+      buffer.put((byte) 126).putShort((short) payloadLength);
+    } else {
+      buffer.put((byte) 127).putLong(payloadLength);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameParserState.*;
+
+// Parses RFC 6455 frames. Offering a buffer parses a frame header and stops at its payload, which
+// is then taken with readPayload as slices of the offered buffers, unmasked in place.
+public class WebSocketFrameParser implements Parser {
+  public static final int CONTINUATION = 0x0;
+  public static final int TEXT = 0x1;
+  public static final int BINARY = 0x2;
+  public static final int CLOSE = 0x8;
+  public static final int PING = 0x9;
+  public static final int PONG = 0xa;
+
+  private static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+
+  private final long maxPayloadLength;
+  private final byte[] header = new byte[14];
+  private int headerLength = 0;
+  private int headerNeeded = 2;
+  private boolean fin = false;
+  private int opcode = 0;
+  private boolean masked = false;
+  private int mask = 0;
+  private long payloadLength = 0;
+  private long payloadRead = 0;
+  private WebSocketFrameParserState state = PARSING_HEADER;
+  private String failedStatusReport = null;
+
+  public WebSocketFrameParser() {
+    this(0);
+  }
+
+  public WebSocketFrameParser(final long maxPayloadLength) {
+    this.maxPayloadLength = maxPayloadLength;
+  }
+
+  // Unmasks the bytes between from and to, which start the given number of bytes into the payload,
+  // eight at a time with the mask repeated and rotated to line up with the first of them.
+  static void unmask(
+      final ByteBuffer buffer, final int from, final int to, final int mask, final long offset) {
+    var wideMask = (mask & 0xffffffffL) << 32 | (mask & 0xffffffffL);
+    wideMask = Long.rotateLeft(wideMask, (int) (offset & 3) * 8);
+    if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+      wideMask = Long.reverseBytes(wideMask);
+    }
+
+    var i = from;
+    for (; i + 8 <= to; i += 8) {
+      buffer.putLong(i, buffer.getLong(i) ^ wideMask);
+    }
+
+    var rest = (int) ((offset + i - from) & 3);
+    for (; i < to; i++) {
+      buffer.put(i, (byte) (buffer.get(i) ^ (mask >>> (24 - rest * 8))));
+      rest = (rest + 1) & 3;
+    }
+  }
+
+  private void ensureValid() {
+    if (state == ERROR) {
+      throw new InvalidParserException(WebSocketFrameParser.class);
+    }
+  }
+
+  private void throwParseException(final String message, final int offset)
+      throws ParseException {
+    failedStatusReport = state.getFriendlyStatusReport();
+    state = ERROR;
+    throw new ParseException(String.format("%s %s", message, failedStatusReport), offset);
+  }
+
+  @Override
+  public void offer(final ByteBuffer buffer) throws ParseException, WebSocketFrameTooLarge {
+    ensureValid();
+
+    while (state == PARSING_HEADER && buffer.hasRemaining()) {
+      final var length = Math.min(headerNeeded - headerLength, buffer.remaining());
+      buffer.get(header, headerLength, length);
+      headerLength += length;
+
+      if (headerLength < headerNeeded) {
+        return;
+      }
+
+      if (headerLength == 2) {
+        parseFirstBytes(buffer);
+        if (headerNeeded > 2) {
+          continue;
+        }
+      }
+      parseRest(buffer);
+    }
+  }
+
+  private void parseFirstBytes(final ByteBuffer buffer) throws ParseException {
+    final var offset = buffer.position() - 2;
+    fin = (header[0] & 0x80) != 0;
+    opcode = header[0] & 0x0f;
+    masked = (header[1] & 0x80) != 0;
+
+    if ((header[0] & 0x70) != 0) {
+      throwParseException("Unexpected reserved bits", offset);
+    }
+
+    switch (opcode) {
+      case CONTINUATION:
+      case TEXT:
+      case BINARY:
+        break;
+      case CLOSE:
+      case PING:
+      case PONG:
+        if (!fin) {
+          throwParseException("Fragmented control frame", offset);
+        } else if ((header[1] & 0x7f) > MAX_CONTROL_PAYLOAD_LENGTH) {
+          throwParseException("Control frame payload too long", offset + 1);
+        }
+        break;
+      default:
+        throwParseException(String.format("Unexpected opcode %d", opcode), offset);
+    }
+
+    final var length = header[1] & 0x7f;
+    headerNeeded = 2 + (length == 126 ? 2 : length == 127 ? 8 : 0) + (masked ? 4 : 0);
+  }
+
+  private void parseRest(final ByteBuffer buffer) throws ParseException, WebSocketFrameTooLarge {
+    final var lengthBytes = headerNeeded - 2 - (masked ? 4 : 0);
+    if (lengthBytes == 0) {
+      payloadLength = header[1] & 0x7f;
+    } else {
+      payloadLength = 0;
+      for (var i = 2; i < 2 + lengthBytes; i++) {
+        payloadLength = payloadLength << 8 | (header[i] & 0xff);
+      }
+      if (payloadLength < 0) {
+        throwParseException("Payload length out of range", buffer.position() - 1);
+      }
+    }
+
+    if (masked) {
+      final var i = headerNeeded - 4;
+      mask =
+          (header[i] & 0xff) << 24
+              | (header[i + 1] & 0xff) << 16
+              | (header[i + 2] & 0xff) << 8
+              | (header[i + 3] & 0xff);
+    }
+
+    if (maxPayloadLength > 0 && payloadLength > maxPayloadLength) {
+      failedStatusReport = state.getFriendlyStatusReport();
+      state = ERROR;
+      throw new WebSocketFrameTooLarge(maxPayloadLength);
+    }
+
+    state = payloadLength > 0 ? READING_PAYLOAD : DONE;
+  }
+
+  // Takes as much of the payload as the buffer holds, unmasked, as a slice of the buffer.
+  public ByteBuffer readPayload(final ByteBuffer buffer) {
+    ensureValid();
+
+    final var length = (int) Math.min(buffer.remaining(), payloadLength - payloadRead);
+    final var start = buffer.position();
+    if (masked) {
+      unmask(buffer, start, start + length, mask, payloadRead);
+    }
+    buffer.position(start + length);
+    payloadRead += length;
+    if (payloadRead == payloadLength) {
+      state = DONE;
+    }
+    return buffer.slice(start, length);
+  }
+
+  @Override
+  public boolean isValid() {
+    return state != ERROR;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state == DONE;
+  }
+
+  public boolean isHeaderDone() {
+    return state == READING_PAYLOAD || state == DONE;
+  }
+
+  @Override
+  public void reset() {
+    state = PARSING_HEADER;
+    failedStatusReport = null;
+    headerLength = 0;
+    headerNeeded = 2;
+    fin = false;
+    opcode = 0;
+    masked = false;
+    mask = 0;
+    payloadLength = 0;
+    payloadRead = 0;
+  }
+
+  public String getFriendlyStatusReport() {
+    return state == ERROR && failedStatusReport != null
+        ? failedStatusReport
+        : state.getFriendlyStatusReport();
+  }
+
+  public boolean isFin() {
+    ensureValid();
+    return fin;
+  }
+
+  public int getOpcode() {
+    ensureValid();
+    return opcode;
+  }
+
+  public boolean isControlFrame() {
+    ensureValid();
+    return opcode >= CLOSE;
+  }
+
+  public boolean isMasked() {
+    ensureValid();
+    return masked;
+  }
+
+  public long getPayloadLength() {
+    ensureValid();
+    return payloadLength;
+  }
+}
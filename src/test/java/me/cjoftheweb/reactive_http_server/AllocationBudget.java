@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public final class AllocationBudget {
+  // enough iterations for the JIT to compile the hot path and apply escape analysis, so the
+  // budget is checked against steady-state allocation rather than the interpreter's
+  private static final int WARMUP_ITERATIONS = 50_000;
+  private static final int MEASURED_ITERATIONS = 20_000;
+
+  private AllocationBudget() {}
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    final var threadMXBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(
+        threadMXBean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported(),
+        "Thread allocation counters are not supported by this JVM");
+    return (com.sun.management.ThreadMXBean) threadMXBean;
+  }
+
+  public static long allocatedBytes(final Thread thread) {
+    return threadMXBean().getThreadAllocatedBytes(thread.getId());
+  }
+
+  public static void assertWithinBudget(
+      final String operation, final long budget, final long bytesPerOperation) {
+    assertTrue(
+        bytesPerOperation <= budget,
+        String.format(
+            "%s allocated %d bytes per operation, over its budget of %d bytes",
+            operation, bytesPerOperation, budget));
+  }
+
+  public static void assertWithinBudget(
+      final String operation, final long budget, final Operation body) throws Exception {
+    for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+      body.run();
+    }
+
+    final var thread = Thread.currentThread();
+    final var before = allocatedBytes(thread);
+    for (var i = 0; i < MEASURED_ITERATIONS; i++) {
+      body.run();
+    }
+    final var after = allocatedBytes(thread);
+
+    assertWithinBudget(operation, budget, (after - before) / MEASURED_ITERATIONS);
+  }
+
+  @FunctionalInterface
+  public interface Operation {
+    void run() throws Exception;
+  }
+}
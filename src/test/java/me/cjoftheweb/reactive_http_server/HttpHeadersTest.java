@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpHeadersTest {
+  @Test
+  void testGetIsCaseInsensitive() {
+    var headers = new HttpHeaders().add("Content-Type", "text/plain");
+
+    assertEquals(Optional.of("text/plain"), headers.get("content-type"));
+    assertEquals(Optional.of("text/plain"), headers.get("CONTENT-TYPE"));
+    assertEquals(Optional.empty(), headers.get("Content-Length"));
+    assertTrue(headers.contains("content-TYPE"));
+  }
+
+  @Test
+  void testRepeatedHeaders() {
+    var headers = new HttpHeaders().add("Accept", "text/html").add("accept", "text/plain");
+
+    assertEquals(2, headers.size());
+    assertEquals(Optional.of("text/html"), headers.get("Accept"));
+    assertEquals(List.of("text/html", "text/plain"), headers.getAll("ACCEPT"));
+    assertEquals("accept", headers.getName(1));
+    assertEquals("text/plain", headers.getValue(1));
+  }
+
+  @Test
+  void testContainsToken() {
+    var headers = new HttpHeaders().add("Connection", "keep-alive, Upgrade");
+
+    assertTrue(headers.containsToken("connection", "upgrade"));
+    assertTrue(headers.containsToken("Connection", "Keep-Alive"));
+    assertFalse(headers.containsToken("Connection", "close"));
+    assertFalse(headers.containsToken("Upgrade", "keep-alive"));
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server;
+
+import me.cjoftheweb.reactive_http_server.ServerSentEventBroadcaster.SlowConsumerPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerSentEventBroadcasterTest {
+  private static final class Recorder implements Flow.Subscriber<ByteBuffer> {
+    private final List<String> events = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+    private boolean complete = false;
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(final ByteBuffer item) {
+      events.add(StandardCharsets.UTF_8.decode(item).toString());
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      complete = true;
+    }
+  }
+
+  private static String event(final String data) {
+    return "data: " + data + "\n\n";
+  }
+
+  private static void publish(final ServerSentEventBroadcaster broadcaster, final int count) {
+    for (var i = 0; i < count; i++) {
+      broadcaster.publish(ServerSentEvent.of(String.valueOf(i)));
+    }
+  }
+
+  @Test
+  void testEncoding() {
+    assertEquals(
+        "id: 7\nevent: update\ndata: first\ndata: second\ndata: \n\n",
+        StandardCharsets.UTF_8
+            .decode(ServerSentEvent.of("7", "update", "first\r\nsecond\n").getEncoded())
+            .toString());
+    assertEquals(
+        event(""), StandardCharsets.UTF_8.decode(ServerSentEvent.of("").getEncoded()).toString());
+    assertThrows(IllegalArgumentException.class, () -> ServerSentEvent.of("a\nb", null, "data"));
+  }
+
+  @Test
+  void testEventsFollowDemand() {
+    var broadcaster = new ServerSentEventBroadcaster(16, SlowConsumerPolicy.DROP);
+    var first = new Recorder();
+    var second = new Recorder();
+    broadcaster.subscribe(first);
+    broadcaster.subscribe(second);
+
+    first.subscription.request(Long.MAX_VALUE);
+    publish(broadcaster, 3);
+    assertEquals(List.of(event("0"), event("1"), event("2")), first.events);
+    assertEquals(List.of(), second.events);
+
+    second.subscription.request(2);
+    assertEquals(List.of(event("0"), event("1")), second.events);
+
+    second.subscription.cancel();
+    assertEquals(1, broadcaster.getSubscriberCount());
+
+    broadcaster.close();
+    assertTrue(first.complete);
+    assertEquals(0, broadcaster.getSubscriberCount());
+  }
+
+  @Test
+  void testDropPolicy() {
+    var broadcaster = new ServerSentEventBroadcaster(2, SlowConsumerPolicy.DROP);
+    var recorder = new Recorder();
+    broadcaster.subscribe(recorder);
+
+    publish(broadcaster, 5);
+    recorder.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(List.of(event("0"), event("1")), recorder.events);
+    assertEquals(3, broadcaster.getDroppedEvents());
+  }
+
+  @Test
+  void testCoalescePolicy() {
+    var broadcaster = new ServerSentEventBroadcaster(2, SlowConsumerPolicy.COALESCE);
+    var recorder = new Recorder();
+    broadcaster.subscribe(recorder);
+
+    publish(broadcaster, 5);
+    recorder.subscription.request(Long.MAX_VALUE);
+
+    assertEquals(List.of(event("4")), recorder.events);
+    assertEquals(4, broadcaster.getDroppedEvents());
+  }
+
+  @Test
+  void testDisconnectPolicy() {
+    var broadcaster = new ServerSentEventBroadcaster(2, SlowConsumerPolicy.DISCONNECT);
+    var slow = new Recorder();
+    var fast = new Recorder();
+    broadcaster.subscribe(slow);
+    broadcaster.subscribe(fast);
+    fast.subscription.request(Long.MAX_VALUE);
+
+    publish(broadcaster, 3);
+
+    assertNotNull(slow.error);
+    assertEquals(3, fast.events.size());
+    assertEquals(1, broadcaster.getSubscriberCount());
+    assertEquals(1, broadcaster.getDisconnectedSubscribers());
+  }
+}
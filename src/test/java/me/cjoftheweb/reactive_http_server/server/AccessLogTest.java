@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogTest {
+  private Path directory;
+  private HttpServer server;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    directory = Files.createTempDirectory("access-log");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (var file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private void start(final Path path, final long maxFileBytes, final int maxFiles)
+      throws IOException {
+    server =
+        HttpServer.builder(
+                request ->
+                    new HttpResponse(
+                        HttpStatus.OK,
+                        new HttpHeaders(),
+                        ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII))))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .accessLog(path, maxFileBytes, maxFiles)
+            .build();
+    server.start();
+  }
+
+  @Test
+  void testLinesAreWritten() throws Exception {
+    var path = directory.resolve("access.log");
+    start(path, 0, 0);
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /first?a=b HTTP/1.1\r\n\r\nPOST /second HTTP/1.1\r\n\r\n");
+      client.readResponse();
+      client.readResponse();
+      client.send("BREW / HTTP/1.1\r\n\r\n").readResponse();
+    }
+    server.close();
+    server = null;
+
+    var lines = Files.readAllLines(path);
+    assertEquals(3, lines.size());
+    assertTrue(
+        lines.get(0).matches("\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z "
+            + "GET /first\\?a=b HTTP/1\\.1 200 \\d+ \\d+us"),
+        lines.get(0));
+    assertTrue(lines.get(1).contains(" POST /second HTTP/1.1 200 "), lines.get(1));
+    assertTrue(lines.get(2).contains(" - - - 501 "), lines.get(2));
+  }
+
+  @Test
+  void testRotation() throws Exception {
+    var path = directory.resolve("access.log");
+    start(path, 200, 2);
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      for (var i = 0; i < 12; i++) {
+        client.send("GET / HTTP/1.1\r\n\r\n").readResponse();
+        // give the writer a chance to write each line in a batch of its own
+        Thread.sleep(20);
+      }
+    }
+    server.close();
+    server = null;
+
+    assertTrue(Files.size(path) <= 200);
+    assertTrue(Files.size(directory.resolve("access.log.1")) <= 200);
+    assertTrue(Files.exists(directory.resolve("access.log.2")));
+    assertFalse(Files.exists(directory.resolve("access.log.3")));
+  }
+
+  @Test
+  void testRingCountsDropsWhenFull() {
+    var ring = new AccessLogRing(4, 8);
+    for (var i = 0; i < 4; i++) {
+      assertTrue(ring.offer(HttpMethod.GET.ordinal(), 1, "/" + i, 200, i, 1000, 10));
+    }
+    assertFalse(ring.offer(HttpMethod.GET.ordinal(), 1, "/full", 200, 0, 1000, 10));
+    assertEquals(1, ring.getDropped());
+
+    var record = ring.newRecord();
+    assertTrue(ring.poll(record));
+    assertEquals(HttpMethod.GET.ordinal(), record.method);
+    assertEquals(HttpVersion.HTTP_1_1.ordinal(), record.version);
+    assertEquals(200, record.status);
+    assertEquals("/0", new String(record.target, 0, record.targetLength));
+
+    // the freed slot takes the next record, whose target is cut to the slot's length
+    assertTrue(ring.offer(-1, -1, "/a-long-target", 404, 0, 1000, 10));
+    for (var i = 1; i < 4; i++) {
+      assertTrue(ring.poll(record));
+      assertEquals(i, record.bytes);
+    }
+    assertTrue(ring.poll(record));
+    assertEquals(-1, record.method);
+    assertEquals(404, record.status);
+    assertEquals("/a-long-", new String(record.target, 0, record.targetLength));
+    assertFalse(ring.poll(record));
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.BlockingHttpHandler;
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockingHandlerTest {
+  private HttpServer server;
+
+  private void start(final BlockingHttpHandler handler) throws IOException {
+    server =
+        HttpServer.builder(handler)
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .readBufferSize(1024)
+            .build();
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  void testRequestBodyAndFixedLengthResponse() throws Exception {
+    start(
+        (request, body, responder) -> {
+          var echo = new String(body.readAllBytes(), StandardCharsets.ISO_8859_1);
+          try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+            stream.write(
+                (request.getRequestTarget() + " " + echo).getBytes(StandardCharsets.ISO_8859_1));
+          }
+        });
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client.send("POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello").readResponse();
+
+      assertEquals(200, response.status);
+      assertEquals("11", response.headers.get("content-length"));
+      assertEquals("/echo hello", response.body);
+
+      assertEquals("/next ", client.send("GET /next HTTP/1.1\r\n\r\n").readResponse().body);
+    }
+  }
+
+  @Test
+  void testExpectContinue() throws Exception {
+    server =
+        HttpServer.builder(
+                (request, body, responder) -> {
+                  try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+                    body.transferTo(stream);
+                  }
+                })
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .continueHandler(
+                request ->
+                    Long.parseLong(request.getHeaders().get("Content-Length").orElseThrow()) > 1000
+                        ? Optional.of(new HttpResponse(HttpStatus.PAYLOAD_TOO_LARGE))
+                        : Optional.empty())
+            .build();
+    server.start();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("PUT / HTTP/1.1\r\nContent-Length: 5\r\nExpect: 100-continue\r\n\r\n");
+      assertEquals(100, client.readResponse().status);
+
+      var response = client.send("hello").readResponse();
+      assertEquals(200, response.status);
+      assertEquals("hello", response.body);
+
+      client.send("PUT / HTTP/1.1\r\nContent-Length: 5000000000\r\nExpect: 100-Continue\r\n\r\n");
+      response = client.readResponse();
+      assertEquals(413, response.status);
+      assertEquals("close", response.headers.get("connection"));
+      assertTrue(client.isClosedByServer());
+    }
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client.send("PUT / HTTP/1.1\r\nContent-Length: 5\r\nExpect: gzip\r\n\r\n").readResponse();
+      assertEquals(417, response.status);
+    }
+  }
+
+  @Test
+  void testLargeBodiesStreamBothWays() throws Exception {
+    start(
+        (request, body, responder) -> {
+          // the body is many times the pipe to the handler, which in turn sends it back in chunks
+          try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+            body.transferTo(stream);
+          }
+        });
+
+    var content = "0123456789abcdef".repeat(10_000);
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send(
+          String.format(
+              "PUT / HTTP/1.1\r\nContent-Length: %d\r\n\r\n%s", content.length(), content));
+      var response = client.readResponse();
+
+      assertEquals("chunked", response.headers.get("transfer-encoding"));
+      assertEquals(content, response.body);
+    }
+  }
+
+  @Test
+  void testHandlersRunOffTheEventLoopAndMayBlock() throws Exception {
+    var requests = 20;
+    var blocked = new CountDownLatch(requests);
+    start(
+        (request, body, responder) -> {
+          // every handler waits for all the others, which only works if none holds up the loop
+          blocked.countDown();
+          blocked.await(5, TimeUnit.SECONDS);
+          try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+            stream.write(Thread.currentThread().getName().getBytes(StandardCharsets.ISO_8859_1));
+          }
+        });
+
+    var clients = new ArrayList<TestClient>();
+    try {
+      for (var i = 0; i < requests; i++) {
+        clients.add(new TestClient(server.getLocalAddress()).send("GET / HTTP/1.1\r\n\r\n"));
+      }
+      for (var client : clients) {
+        var response = client.readResponse();
+
+        assertEquals(200, response.status);
+        assertFalse(response.body.startsWith("reactive-http-server-loop-"));
+      }
+      assertEquals(0, blocked.getCount());
+    } finally {
+      for (var client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  @Test
+  void testHandlerFailures() throws Exception {
+    start(
+        (request, body, responder) -> {
+          try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+            stream.write(new byte[request.getRequestTarget().equals("/started") ? 10_000 : 10]);
+            throw new IllegalStateException("Handler failed");
+          }
+        });
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response = client.send("GET / HTTP/1.1\r\n\r\n").readResponse();
+
+      assertEquals(500, response.status);
+      assertTrue(client.isClosedByServer());
+    }
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      // the status line is already out, so the response can only be cut short
+      assertThrows(
+          IOException.class,
+          () -> client.send("GET /started HTTP/1.1\r\n\r\n").readResponse());
+    }
+  }
+
+  @Test
+  void testUnreadBodyClosesTheConnection() throws Exception {
+    start(
+        (request, body, responder) ->
+            responder.respond(HttpStatus.NO_CONTENT, new HttpHeaders()).close());
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client
+              .send(String.format("POST / HTTP/1.1\r\nContent-Length: %d\r\n\r\n", 100_000))
+              .send("a".repeat(2000))
+              .readResponse();
+
+      assertEquals(204, response.status);
+      assertEquals("close", response.headers.get("connection"));
+    }
+  }
+
+  @Test
+  void testResponseStreamSubscribesBeforeSignallingFailure() throws Exception {
+    var stream = new ResponseBodyStream(HttpStatus.OK, new HttpHeaders(), response -> {});
+    var signals = new ArrayList<String>();
+    var failing = new Thread(() -> stream.fail(new IOException("handler failed")));
+    stream.subscribe(
+        new Flow.Subscriber<>() {
+          @Override
+          public void onSubscribe(final Flow.Subscription subscription) {
+            // a failure racing the subscription waits for it to be handed over
+            failing.start();
+            try {
+              failing.join(200);
+            } catch (final InterruptedException exception) {
+              throw new AssertionError(exception);
+            }
+            synchronized (signals) {
+              signals.add("subscribe");
+            }
+          }
+
+          @Override
+          public void onNext(final ByteBuffer item) {}
+
+          @Override
+          public void onError(final Throwable throwable) {
+            synchronized (signals) {
+              signals.add("error");
+            }
+          }
+
+          @Override
+          public void onComplete() {}
+        });
+    failing.join();
+
+    assertEquals(List.of("subscribe", "error"), signals);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import me.cjoftheweb.reactive_http_server.syntax.HttpRequestHeadParser;
+import me.cjoftheweb.reactive_http_server.syntax.HttpResponseHeadEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantResponsesTest {
+  private static Exception parseFailure(final String head) {
+    var parser = new HttpRequestHeadParser(16, 16, 16, 1024, 4);
+    return assertThrows(
+        Exception.class,
+        () -> parser.offer(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1))));
+  }
+
+  @Test
+  void testParseFailuresAreMappedByType() {
+    assertEquals(
+        HttpStatus.BAD_REQUEST, ConstantResponses.parseFailureStatus(parseFailure("GET  ")));
+    assertEquals(
+        HttpStatus.NOT_IMPLEMENTED, ConstantResponses.parseFailureStatus(parseFailure("BREW ")));
+    assertEquals(
+        HttpStatus.HTTP_VERSION_NOT_SUPPORTED,
+        ConstantResponses.parseFailureStatus(parseFailure("GET / HTTP/2.0\r\n")));
+    assertEquals(
+        HttpStatus.URI_TOO_LONG,
+        ConstantResponses.parseFailureStatus(parseFailure("GET /" + "a".repeat(16))));
+    assertEquals(
+        HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE,
+        ConstantResponses.parseFailureStatus(
+            parseFailure("GET / HTTP/1.1\r\nKey: " + "a".repeat(17))));
+    assertEquals(
+        HttpStatus.BAD_REQUEST,
+        ConstantResponses.parseFailureStatus(new IllegalStateException("unexpected")));
+  }
+
+  @Test
+  void testErrorsMatchTheEncoder() {
+    for (var status : HttpStatus.values()) {
+      if (status.getCode() < 400) {
+        assertThrows(IllegalArgumentException.class, () -> ConstantResponses.error(status));
+        continue;
+      }
+
+      var expected =
+          new HttpResponseHeadEncoder()
+              .statusLine(HttpVersion.HTTP_1_1, status)
+              .headers(new HttpHeaders())
+              .header("Content-Length", 0)
+              .header("Connection", "close")
+              .encode();
+      assertEquals(expected, ConstantResponses.error(status));
+    }
+  }
+
+  @Test
+  void testDuplicatesAreIndependent() {
+    var first = ConstantResponses.error(HttpStatus.BAD_REQUEST);
+    first.position(first.limit());
+
+    var second = ConstantResponses.error(HttpStatus.BAD_REQUEST);
+    assertEquals(0, second.position());
+    assertTrue(second.isReadOnly());
+    assertTrue(
+        StandardCharsets.ISO_8859_1
+            .decode(ConstantResponses.healthy())
+            .toString()
+            .startsWith("HTTP/1.1 200 OK\r\n"));
+  }
+
+  @Test
+  void testChunkSizeLines() {
+    var line = ConstantResponses.chunkSizeLine(1000);
+    assertEquals("3e8\r\n", StandardCharsets.US_ASCII.decode(line).toString());
+    assertEquals(
+        "3e8\r\n",
+        StandardCharsets.US_ASCII.decode(ConstantResponses.chunkSizeLine(1000)).toString());
+    assertEquals(
+        "100000\r\n",
+        StandardCharsets.US_ASCII.decode(ConstantResponses.chunkSizeLine(0x100000)).toString());
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLoopTest {
+  @Test
+  void testMpscQueueKeepsEachProducersOrder() throws Exception {
+    var queue = new MpscQueue<long[]>();
+    var producers = 4;
+    var perProducer = 100_000;
+
+    List<Thread> threads = new ArrayList<>();
+    for (var producer = 0; producer < producers; producer++) {
+      final var id = producer;
+      var thread =
+          new Thread(
+              () -> {
+                for (var i = 0; i < perProducer; i++) {
+                  queue.offer(new long[] {id, i});
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+
+    var next = new long[producers];
+    var received = 0;
+    while (received < producers * perProducer) {
+      var item = queue.poll();
+      if (item == null) {
+        Thread.onSpinWait();
+        continue;
+      }
+      assertEquals(next[(int) item[0]]++, item[1]);
+      received++;
+    }
+
+    for (var thread : threads) {
+      thread.join();
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void testTasksFromOtherThreadsWakeTheLoop() throws Exception {
+    var eventLoop = new EventLoop(0, new MemoryGovernor(Long.MAX_VALUE, 1));
+    eventLoop.start();
+    try {
+      var done = new CountDownLatch(1000);
+      var ranOnLoop = new boolean[] {true};
+      for (var i = 0; i < 1000; i++) {
+        eventLoop.execute(
+            () -> {
+              ranOnLoop[0] &= eventLoop.inEventLoop();
+              done.countDown();
+            });
+      }
+
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      assertTrue(ranOnLoop[0]);
+      // the executed count is published once the whole batch has run
+      var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (eventLoop.getPendingTasks() != 0 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      assertEquals(0, eventLoop.getPendingTasks());
+      assertTrue(eventLoop.takeMaxTaskLagNanos() > 0);
+      assertEquals(0, eventLoop.takeMaxTaskLagNanos());
+    } finally {
+      eventLoop.shutdown();
+    }
+  }
+}
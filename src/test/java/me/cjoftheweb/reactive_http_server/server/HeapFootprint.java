@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// Estimates the heap an object holds on its own: itself and everything it reaches, leaving out
+// the given shared objects, anything held in static fields, enum constants, and the JDK's socket
+// and selection key, which cost the same in any server. The layout is HotSpot's with compressed
+// references: 12-byte object headers, 16-byte array headers, 4-byte references and 8-byte
+// alignment. JDK objects other than those and byte buffers cannot be looked into, so meeting
+// one fails the estimate rather than leaving it out.
+final class HeapFootprint {
+  private final Set<Object> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final Set<Class<?>> seenClasses = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  HeapFootprint(final Object... shared) {
+    Collections.addAll(excluded, shared);
+  }
+
+  long of(final Object root) throws IllegalAccessException {
+    final var visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    final var pending = new ArrayDeque<Object>();
+    pending.push(root);
+
+    var total = 0L;
+    while (!pending.isEmpty()) {
+      final var object = pending.pop();
+      if (excluded.contains(object)
+          || object instanceof Enum
+          || object instanceof Channel
+          || object instanceof SelectionKey
+          || !visited.add(object)) {
+        continue;
+      }
+      total += sizeOf(object, pending);
+    }
+    return total;
+  }
+
+  private long sizeOf(final Object object, final ArrayDeque<Object> pending)
+      throws IllegalAccessException {
+    final var type = object.getClass();
+    if (type.isArray()) {
+      final var length = Array.getLength(object);
+      if (!type.getComponentType().isPrimitive()) {
+        for (var i = 0; i < length; i++) {
+          final var element = Array.get(object, i);
+          if (element != null) {
+            pending.push(element);
+          }
+        }
+      }
+      return align(16 + (long) length * width(type.getComponentType()));
+    }
+
+    if (object instanceof ByteBuffer) {
+      final var buffer = (ByteBuffer) object;
+      if (buffer.hasArray()) {
+        pending.push(buffer.array());
+      }
+      return 48;
+    }
+
+    if (type.getModule() == Object.class.getModule()) {
+      throw new IllegalStateException("Cannot look into " + type.getName());
+    }
+
+    var size = 12L;
+    for (var current = type; current != Object.class; current = current.getSuperclass()) {
+      excludeStatics(current);
+      for (var field : current.getDeclaredFields()) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        size += width(field.getType());
+        if (!field.getType().isPrimitive()) {
+          field.setAccessible(true);
+          final var value = field.get(object);
+          if (value != null) {
+            pending.push(value);
+          }
+        }
+      }
+    }
+    return align(size);
+  }
+
+  private void excludeStatics(final Class<?> type) throws IllegalAccessException {
+    if (!seenClasses.add(type)) {
+      return;
+    }
+    for (var field : type.getDeclaredFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+        field.setAccessible(true);
+        final var value = field.get(null);
+        if (value != null) {
+          excluded.add(value);
+        }
+      }
+    }
+  }
+
+  private static int width(final Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    } else if (type == int.class || type == float.class || !type.isPrimitive()) {
+      return 4;
+    } else if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return 1;
+  }
+
+  private static long align(final long size) {
+    return (size + 7) & ~7;
+  }
+}
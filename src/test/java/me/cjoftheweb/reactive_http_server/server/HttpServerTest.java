@@ -0,0 +1,705 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHandler;
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.ServerSentEvent;
+import me.cjoftheweb.reactive_http_server.ServerSentEventBroadcaster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class HttpServerTest {
+  private HttpServer server;
+
+  private HttpServer start(final HttpHandler handler) throws IOException {
+    server =
+        HttpServer.builder(handler)
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(2)
+            .build();
+    server.start();
+    return server;
+  }
+
+  private static HttpResponse text(final String body) {
+    return new HttpResponse(
+        HttpStatus.OK,
+        new HttpHeaders().add("Content-Type", "text/plain"),
+        ByteBuffer.wrap(body.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  void testGet() throws Exception {
+    start(request -> text(request.getMethod() + " " + request.getRequestTarget()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response = client.send("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n").readResponse();
+
+      assertEquals(200, response.status);
+      assertEquals("text/plain", response.headers.get("content-type"));
+      assertEquals("GET /hello", response.body);
+    }
+  }
+
+  @Test
+  void testKeepAliveAndPipelining() throws Exception {
+    start(request -> text(request.getRequestTarget()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /first HTTP/1.1\r\n\r\nGET /second HTTP/1.1\r\n\r\n");
+      assertEquals("/first", client.readResponse().body);
+      assertEquals("/second", client.readResponse().body);
+
+      client.send("GET /third HTTP/1.1\r\n\r\n");
+      assertEquals("/third", client.readResponse().body);
+    }
+  }
+
+  @Test
+  void testConnectionClose() throws Exception {
+    start(request -> text("bye"));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response = client.send("GET / HTTP/1.1\r\nConnection: close\r\n\r\n").readResponse();
+
+      assertEquals("close", response.headers.get("connection"));
+      assertTrue(client.isClosedByServer());
+    }
+  }
+
+  @Test
+  void testHttp10ClosesByDefault() throws Exception {
+    start(request -> text("old"));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      assertEquals("old", client.send("GET / HTTP/1.0\r\n\r\n").readResponse().body);
+      assertTrue(client.isClosedByServer());
+    }
+  }
+
+  @Test
+  void testRequestBodyIsSkipped() throws Exception {
+    start(request -> text(request.getRequestTarget()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("POST /upload HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello");
+      client.send("GET /next HTTP/1.1\r\n\r\n");
+
+      assertEquals("/upload", client.readResponse().body);
+      assertEquals("/next", client.readResponse().body);
+    }
+  }
+
+  @Test
+  void testAmbiguousContentLengthIsRejected() throws Exception {
+    start(request -> text(request.getRequestTarget()));
+
+    for (var head :
+        new String[] {
+          "Content-Length: +5\r\n",
+          "Content-Length: 5, 6\r\n",
+          "Content-Length: 5\r\nContent-Length: 6\r\n",
+          "Content-Length: \r\n"
+        }) {
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var response = client.send("POST / HTTP/1.1\r\n" + head + "\r\nhello!").readResponse();
+        assertEquals(400, response.status, head);
+        assertTrue(client.isClosedByServer());
+      }
+    }
+  }
+
+  @Test
+  void testRepeatedEqualContentLengthIsAccepted() throws Exception {
+    start(request -> text(request.getRequestTarget()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("POST /upload HTTP/1.1\r\nContent-Length: 5, 5\r\nContent-Length: 5\r\n\r\n");
+      client.send("helloGET /next HTTP/1.1\r\n\r\n");
+
+      assertEquals("/upload", client.readResponse().body);
+      assertEquals("/next", client.readResponse().body);
+    }
+  }
+
+  @Test
+  void testExpectContinueIsAnsweredWithoutTheBody() throws Exception {
+    start(request -> text(request.getRequestTarget()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client
+              .send("POST /upload HTTP/1.1\r\nContent-Length: 5\r\nExpect: 100-continue\r\n\r\n")
+              .readResponse();
+
+      // the handler never sees bodies, so none is asked for
+      assertEquals(200, response.status);
+      assertEquals("/upload", response.body);
+      assertEquals("close", response.headers.get("connection"));
+      assertTrue(client.isClosedByServer());
+    }
+  }
+
+  @Test
+  void testStreamingResponse() throws Exception {
+    start(
+        request -> {
+          final Flow.Publisher<ByteBuffer> publisher =
+              subscriber -> {
+                var submissionPublisher = new SubmissionPublisher<ByteBuffer>();
+                submissionPublisher.subscribe(subscriber);
+                for (var part : new String[] {"stream", "ing ", "", "body"}) {
+                  submissionPublisher.submit(ByteBuffer.wrap(part.getBytes()));
+                }
+                submissionPublisher.close();
+              };
+          return new HttpResponse(HttpStatus.OK, new HttpHeaders(), publisher);
+        });
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response = client.send("GET / HTTP/1.1\r\n\r\n").readResponse();
+
+      assertEquals("chunked", response.headers.get("transfer-encoding"));
+      assertEquals("streaming body", response.body);
+
+      assertEquals("streaming body", client.send("GET / HTTP/1.1\r\n\r\n").readResponse().body);
+    }
+  }
+
+  @Test
+  void testHeadOmitsBody() throws Exception {
+    start(request -> text("not sent"));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("HEAD / HTTP/1.1\r\n\r\nGET / HTTP/1.1\r\n\r\n");
+
+      var head = client.readResponse();
+      assertEquals("8", head.headers.get("content-length"));
+
+      // the body of the HEAD response would otherwise be read as the start of this response
+      assertEquals(200, client.readResponse().status);
+    }
+  }
+
+  @Test
+  void testParseErrors() throws Exception {
+    start(request -> text("unreachable"));
+
+    var requests =
+        new String[] {
+          "GET  HTTP/1.1\r\n\r\n",
+          "BREW / HTTP/1.1\r\n\r\n",
+          "GET / HTTP/2.0\r\n\r\n",
+          String.format("GET /%s HTTP/1.1\r\n\r\n", "a".repeat(8000)),
+          String.format("GET / HTTP/1.1\r\nKey: %s\r\n\r\n", "a".repeat(8193)),
+        };
+    var statuses = new int[] {400, 501, 505, 414, 431};
+
+    for (var i = 0; i < requests.length; i++) {
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var response = client.send(requests[i]).readResponse();
+
+        assertEquals(statuses[i], response.status);
+        assertEquals("close", response.headers.get("connection"));
+        assertTrue(client.isClosedByServer());
+      }
+    }
+  }
+
+  @Test
+  void testHealthCheck() throws Exception {
+    server =
+        HttpServer.builder(request -> text("handled"))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .healthCheck("/healthz")
+            .build();
+    server.start();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /healthz HTTP/1.1\r\n\r\nHEAD /healthz HTTP/1.1\r\n\r\n");
+      for (var i = 0; i < 2; i++) {
+        var response = client.readResponse();
+        assertEquals(200, response.status);
+        assertEquals("0", response.headers.get("content-length"));
+        assertNull(response.headers.get("connection"));
+      }
+
+      assertEquals("handled", client.send("GET /other HTTP/1.1\r\n\r\n").readResponse().body);
+
+      var closing = client.send("GET /healthz HTTP/1.0\r\n\r\n").readResponse();
+      assertEquals(200, closing.status);
+      assertEquals("close", closing.headers.get("connection"));
+      assertTrue(client.isClosedByServer());
+    }
+  }
+
+  @Test
+  void testServerSentEvents() throws Exception {
+    var broadcaster =
+        new ServerSentEventBroadcaster(
+            16, ServerSentEventBroadcaster.SlowConsumerPolicy.DISCONNECT);
+    start(request -> broadcaster.response());
+
+    try (var first = new TestClient(server.getLocalAddress());
+        var second = new TestClient(server.getLocalAddress())) {
+      first.send("GET /events HTTP/1.1\r\n\r\n");
+      second.send("GET /events HTTP/1.1\r\n\r\n");
+      while (broadcaster.getSubscriberCount() < 2) {
+        Thread.sleep(1);
+      }
+
+      broadcaster.publish(ServerSentEvent.of("1", null, "hello"));
+      broadcaster.publish(ServerSentEvent.of("world"));
+      broadcaster.close();
+
+      for (var client : List.of(first, second)) {
+        var response = client.readResponse();
+        assertEquals("text/event-stream", response.headers.get("content-type"));
+        assertEquals("id: 1\ndata: hello\n\ndata: world\n\n", response.body);
+      }
+    }
+  }
+
+  @Test
+  void testResponseCache() throws Exception {
+    var handled = new AtomicLong();
+    server =
+        HttpServer.builder(
+                request -> {
+                  handled.incrementAndGet();
+                  return new HttpResponse(
+                      HttpStatus.OK,
+                      new HttpHeaders().add("Cache-Control", "max-age=60").add("ETag", "\"v1\""),
+                      ByteBuffer.wrap(request.getRequestTarget().getBytes()));
+                })
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .responseCache(1 << 20)
+            .build();
+    server.start();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      for (var i = 0; i < 3; i++) {
+        assertEquals("/cached", client.send("GET /cached HTTP/1.1\r\n\r\n").readResponse().body);
+      }
+      assertEquals(1, handled.get());
+
+      var notModified =
+          client.send("GET /cached HTTP/1.1\r\nIf-None-Match: \"v1\"\r\n\r\n").readResponse();
+      assertEquals(304, notModified.status);
+      assertEquals("\"v1\"", notModified.headers.get("etag"));
+      assertEquals(1, handled.get());
+
+      // a client that insists on a fresh response bypasses the cache
+      client.send("GET /cached HTTP/1.1\r\nCache-Control: no-cache\r\n\r\n").readResponse();
+      assertEquals(2, handled.get());
+    }
+  }
+
+  @Test
+  void testIdenticalRequestsShareOneHandlerCall() throws Exception {
+    var handled = new AtomicLong();
+    var release = new CountDownLatch(1);
+    server =
+        HttpServer.builder(
+                request -> {
+                  handled.incrementAndGet();
+                  release.await(5, TimeUnit.SECONDS);
+                  final Flow.Publisher<ByteBuffer> publisher =
+                      subscriber -> {
+                        var submissionPublisher = new SubmissionPublisher<ByteBuffer>();
+                        submissionPublisher.subscribe(subscriber);
+                        for (var part : new String[] {"shared ", "body"}) {
+                          submissionPublisher.submit(ByteBuffer.wrap(part.getBytes()));
+                        }
+                        submissionPublisher.close();
+                      };
+                  return new HttpResponse(HttpStatus.OK, new HttpHeaders(), publisher);
+                })
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(2)
+            .workStealingHandlers(1)
+            .coalesceRequests(true)
+            .build();
+    server.start();
+
+    var clients = new ArrayList<TestClient>();
+    try {
+      for (var i = 0; i < 8; i++) {
+        var client = new TestClient(server.getLocalAddress());
+        clients.add(client);
+        client.send("GET /%70opular HTTP/1.1\r\n\r\n".replace("%70", i % 2 == 0 ? "%70" : "p"));
+      }
+      // the first request is being handled once the handler is entered
+      while (handled.get() == 0) {
+        Thread.sleep(1);
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (var client : clients) {
+        assertEquals("shared body", client.readResponse().body);
+      }
+      assertEquals(1, handled.get());
+
+      // once it has landed, the next request calls the handler again
+      assertEquals(
+          "shared body", clients.get(0).send("GET /popular HTTP/1.1\r\n\r\n").readResponse().body);
+      assertEquals(2, handled.get());
+    } finally {
+      for (var client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  @Test
+  void testRateLimit() throws Exception {
+    var handled = new AtomicLong();
+    server =
+        HttpServer.builder(
+                request -> {
+                  handled.incrementAndGet();
+                  return text("ok");
+                })
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .rateLimit(0.001, 2)
+            .build();
+    server.start();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET / HTTP/1.1\r\n\r\nGET / HTTP/1.1\r\n\r\n");
+      assertEquals(200, client.readResponse().status);
+      assertEquals(200, client.readResponse().status);
+    }
+
+    // the limit applies to the address rather than the connection
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client.send("GET / HTTP/1.1\r\nContent-Length: 100000\r\n\r\n").readResponse();
+      assertEquals(429, response.status);
+      assertTrue(client.isClosedByServer());
+    }
+    assertEquals(2, handled.get());
+  }
+
+  @Test
+  void testRateLimitByHeader() throws Exception {
+    server =
+        HttpServer.builder(request -> text("ok"))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .rateLimit(0.001, 1)
+            .rateLimitKey("X-Api-Key")
+            .build();
+    server.start();
+
+    for (var key : new String[] {"a", "b"}) {
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var request = String.format("GET / HTTP/1.1\r\nX-Api-Key: %s\r\n\r\n", key);
+        assertEquals(200, client.send(request).readResponse().status);
+        assertEquals(429, client.send(request).readResponse().status);
+      }
+    }
+  }
+
+  @Test
+  void testHandlerFailure() throws Exception {
+    start(
+        request -> {
+          throw new IllegalStateException("handler failure");
+        });
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      assertEquals(500, client.send("GET / HTTP/1.1\r\n\r\n").readResponse().status);
+      assertTrue(client.isClosedByServer());
+    }
+  }
+
+  @Test
+  void testAggregateHeadLimits() throws Exception {
+    server =
+        HttpServer.builder(request -> text("unreachable"))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .maxHeaderCount(10)
+            .maxRequestHeadSize(1024)
+            .build();
+    server.start();
+
+    var manyHeaders = new StringBuilder("GET / HTTP/1.1\r\n");
+    for (var i = 0; i < 11; i++) {
+      manyHeaders.append("Header-").append(i).append(": value\r\n");
+    }
+    var largeHead =
+        String.format("GET / HTTP/1.1\r\nA: %s\r\nB: %s\r\n", "a".repeat(600), "b".repeat(600));
+
+    for (var request : new String[] {manyHeaders.toString(), largeHead}) {
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var response = client.send(request).readResponse();
+
+        assertEquals(431, response.status);
+        assertTrue(client.isClosedByServer());
+      }
+    }
+  }
+
+  @Test
+  void testConnectionsAreShedWhenMemoryRunsOut() throws Exception {
+    server =
+        HttpServer.builder(request -> text("served"))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .readBufferSize(1000)
+            .maxInFlightBytes(3000)
+            .build();
+    server.start();
+
+    try (var first = new TestClient(server.getLocalAddress());
+        var second = new TestClient(server.getLocalAddress())) {
+      // idle connections hold nothing, so these two hold the heads they are still sending
+      first.send(String.format("GET / HTTP/1.1\r\nA: %s", "a".repeat(900)));
+      second.send(String.format("GET / HTTP/1.1\r\nB: %s", "b".repeat(900)));
+      awaitUsedBytes(1800);
+
+      // a read buffer for a third would take the server past 90% of its budget
+      try (var third = new TestClient(server.getLocalAddress())) {
+        var response = third.readResponse();
+
+        assertEquals(503, response.status);
+        assertEquals("close", response.headers.get("connection"));
+        assertEquals(1, server.getMemoryGovernor().getShedConnections());
+      }
+
+      assertEquals("served", first.send("\r\n\r\n").readResponse().body);
+      assertEquals("served", second.send("\r\n\r\n").readResponse().body);
+    }
+  }
+
+  private void awaitUsedBytes(final long usedBytes) throws InterruptedException {
+    for (var i = 0; i < 500 && server.getMemoryGovernor().getUsedBytes() < usedBytes; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(server.getMemoryGovernor().getUsedBytes() >= usedBytes);
+  }
+
+  @Test
+  void testBusiestConnectionIsPausedUntilMemoryIsFreed() throws Exception {
+    server =
+        HttpServer.builder(request -> text(request.getRequestTarget()))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .readBufferSize(1000)
+            .maxInFlightBytes(10_000)
+            .build();
+    server.start();
+
+    try (var small = new TestClient(server.getLocalAddress());
+        var large = new TestClient(server.getLocalAddress())) {
+      small.send(String.format("GET /small HTTP/1.1\r\nA: %s", "a".repeat(3000)));
+      awaitUsedBytes(3000);
+
+      // reading this takes the server to its 90% threshold, and as the connection then holds
+      // more than the average it is paused before the rest of its head is read
+      large.send(String.format("GET /large HTTP/1.1\r\nB: %s", "b".repeat(6500)));
+      awaitUsedBytes(9000);
+
+      large.send("\r\n\r\n");
+      Thread.sleep(200);
+      assertFalse(large.hasPendingInput());
+
+      // finishing the smaller request frees enough memory for the paused one to resume
+      assertEquals("/small", small.send("\r\n\r\n").readResponse().body);
+      assertEquals("/large", large.readResponse().body);
+    }
+  }
+
+  @Test
+  void testReusePortSpreadsConnectionsAcrossLoops() throws Exception {
+    try (var channel = ServerSocketChannel.open()) {
+      assumeTrue(channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT));
+    }
+
+    server =
+        HttpServer.builder(request -> text(Thread.currentThread().getName()))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(4)
+            .reusePort(true)
+            .build();
+    server.start();
+
+    final var loops = new HashSet<String>();
+    for (var i = 0; i < 32; i++) {
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var response = client.send("GET / HTTP/1.1\r\n\r\n").readResponse();
+
+        assertEquals(200, response.status);
+        loops.add(response.body);
+      }
+    }
+
+    // each loop accepts on its own socket, so the kernel decides which loop serves a connection
+    assertTrue(loops.size() > 1);
+    assertTrue(loops.stream().allMatch(name -> name.startsWith("reactive-http-server-loop-")));
+  }
+
+  @Test
+  void testUnixDomainSocket() throws Exception {
+    var directory = Files.createTempDirectory("reactive-http-server");
+    var path = directory.resolve("server.sock");
+    try {
+      server = HttpServer.builder(request -> text("local")).unixDomainSocket(path).build();
+      server.start();
+      assertEquals(UnixDomainSocketAddress.of(path), server.getLocalAddress());
+
+      try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+        channel.connect(server.getLocalAddress());
+        channel.write(
+            ByteBuffer.wrap("GET / HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes()));
+        var response =
+            new String(
+                Channels.newInputStream(channel).readAllBytes(), StandardCharsets.ISO_8859_1);
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(response.endsWith("\r\n\r\nlocal"));
+      }
+
+      server.close();
+      server = null;
+      assertFalse(Files.exists(path));
+    } finally {
+      Files.deleteIfExists(path);
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  void testWorkStealingHandlersDoNotStallTheLoop() throws Exception {
+    var fastServed = new CountDownLatch(1);
+    server =
+        HttpServer.builder(
+                request -> {
+                  if (request.getRequestTarget().equals("/slow")) {
+                    // only returns once a request on the same loop has been served meanwhile
+                    fastServed.await(5, TimeUnit.SECONDS);
+                  }
+                  return text(Thread.currentThread().getName());
+                })
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .workStealingHandlers(2)
+            .build();
+    server.start();
+
+    try (var slow = new TestClient(server.getLocalAddress());
+        var fast = new TestClient(server.getLocalAddress())) {
+      slow.send("GET /slow HTTP/1.1\r\n\r\n");
+
+      assertTrue(
+          fast.send("GET /fast HTTP/1.1\r\n\r\n")
+              .readResponse()
+              .body
+              .startsWith("reactive-http-server-handler-"));
+      fastServed.countDown();
+      assertEquals(200, slow.readResponse().status);
+    }
+  }
+
+  @Test
+  void testSlowClientHoldsBackTheResponsePublisher() throws Exception {
+    final var chunks = 8192;
+    final var chunkSize = 8192;
+    final var requested = new AtomicLong();
+    final Flow.Publisher<ByteBuffer> publisher =
+        subscriber ->
+            subscriber.onSubscribe(
+                new Flow.Subscription() {
+                  private long sent = 0;
+
+                  @Override
+                  public void request(final long n) {
+                    requested.addAndGet(n);
+                    for (var i = 0; i < n && sent < chunks; i++) {
+                      sent++;
+                      subscriber.onNext(ByteBuffer.allocate(chunkSize));
+                      if (sent == chunks) {
+                        subscriber.onComplete();
+                      }
+                    }
+                  }
+
+                  @Override
+                  public void cancel() {}
+                });
+    server =
+        HttpServer.builder(request -> new HttpResponse(HttpStatus.OK, new HttpHeaders(), publisher))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .writeBufferWatermarks(16 * 1024, 64 * 1024)
+            .build();
+    server.start();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET / HTTP/1.1\r\n\r\n");
+
+      // once the socket buffers are full, the publisher is asked for nothing more
+      var previous = -1L;
+      while (previous != requested.get()) {
+        previous = requested.get();
+        Thread.sleep(200);
+      }
+      assertTrue(previous < chunks);
+
+      assertEquals(chunks * chunkSize, client.readResponse().body.length());
+      // the last chunk can be followed by a request that completion answers, but no more
+      assertTrue(requested.get() >= chunks);
+      assertTrue(requested.get() <= chunks + 1);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdleConnectionFootprintTest {
+  private static final int CONNECTIONS = 1000;
+  // well under a kilobyte, so a million idle connections fit in half a gigabyte of heap on top
+  // of what the JDK keeps for their sockets
+  private static final long IDLE_BUDGET = 512;
+
+  private HttpServer server;
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private static HttpResponse hello() {
+    return new HttpResponse(
+        HttpStatus.OK,
+        new HttpHeaders().add("Content-Type", "text/plain"),
+        ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private List<HttpConnection> connections() throws Exception {
+    var eventLoop = server.getEventLoop(0);
+    var handlers = new CompletableFuture<List<SelectionHandler>>();
+    eventLoop.execute(() -> handlers.complete(eventLoop.getHandlers()));
+
+    var connections = new ArrayList<HttpConnection>();
+    for (var handler : handlers.get(5, TimeUnit.SECONDS)) {
+      if (handler instanceof HttpConnection) {
+        connections.add((HttpConnection) handler);
+      }
+    }
+    return connections;
+  }
+
+  private void assertIdleFootprint(final HttpServer.Builder builder) throws Exception {
+    server =
+        builder
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .build();
+    server.start();
+
+    var clients = new ArrayList<TestClient>();
+    try {
+      for (var i = 0; i < CONNECTIONS; i++) {
+        var client = new TestClient(server.getLocalAddress());
+        clients.add(client);
+        // pipelined requests leave input behind the first, which has to be given up as well
+        client.send("GET /a HTTP/1.1\r\nAccept: */*\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+        assertEquals(200, client.readResponse().status);
+        assertEquals(200, client.readResponse().status);
+      }
+
+      var connections = connections();
+      assertEquals(CONNECTIONS, connections.size());
+      var resources = server.getConnectionResources(0);
+      var footprint =
+          new HeapFootprint(
+              server,
+              server.getEventLoop(0),
+              server.getMemoryGovernor(),
+              server.getRequestTimingListener(),
+              resources,
+              resources.getEncoder());
+
+      var total = 0L;
+      for (var connection : connections) {
+        var bytes = footprint.of(connection);
+        assertTrue(bytes <= IDLE_BUDGET, bytes + " bytes held by an idle connection");
+        total += bytes;
+      }
+      assertEquals(0, resources.getOutstandingParsers());
+      assertEquals(0, server.getMemoryGovernor().getUsedBytes());
+      assertTrue(total / CONNECTIONS <= IDLE_BUDGET);
+    } finally {
+      for (var client : clients) {
+        client.close();
+      }
+    }
+  }
+
+  @Test
+  void testIdleConnectionsHoldNoParserOrReadBuffer() throws Exception {
+    assertIdleFootprint(HttpServer.builder(request -> hello()));
+  }
+
+  @Test
+  void testIdleConnectionsWithTimingsStayWithinBudget() throws Exception {
+    assertIdleFootprint(
+        HttpServer.builder(request -> hello()).requestTimingListener(timings -> {}));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryGovernorTest {
+  @Test
+  void testStripesAreSummed() {
+    var memoryGovernor = new MemoryGovernor(1000, 4);
+
+    memoryGovernor.addConnection(0, 100);
+    memoryGovernor.addConnection(3, 200);
+    memoryGovernor.add(3, 50);
+
+    assertEquals(350, memoryGovernor.getUsedBytes());
+    assertEquals(2, memoryGovernor.getConnections());
+
+    memoryGovernor.removeConnection(3, 250);
+
+    assertEquals(100, memoryGovernor.getUsedBytes());
+    assertEquals(1, memoryGovernor.getConnections());
+  }
+
+  @Test
+  void testPressure() {
+    var memoryGovernor = new MemoryGovernor(1000, 1);
+
+    memoryGovernor.add(0, 899);
+    assertFalse(memoryGovernor.isUnderPressure());
+
+    memoryGovernor.add(0, 1);
+    assertTrue(memoryGovernor.isUnderPressure());
+    assertFalse(memoryGovernor.canResume());
+
+    memoryGovernor.add(0, -151);
+    assertFalse(memoryGovernor.isUnderPressure());
+    assertTrue(memoryGovernor.canResume());
+  }
+
+  @Test
+  void testOnlyConnectionsAboveTheirShareArePaused() {
+    var memoryGovernor = new MemoryGovernor(1000, 2);
+
+    memoryGovernor.addConnection(0, 100);
+    memoryGovernor.addConnection(1, 100);
+    memoryGovernor.addConnection(1, 700);
+
+    // 900 bytes over 3 connections is an average of 300
+    assertFalse(memoryGovernor.shouldPause(100));
+    assertTrue(memoryGovernor.shouldPause(700));
+
+    memoryGovernor.removeConnection(1, 700);
+    assertFalse(memoryGovernor.shouldPause(700));
+  }
+
+  @Test
+  void testShedding() {
+    var memoryGovernor = new MemoryGovernor(1000, 1);
+
+    memoryGovernor.add(0, 800);
+
+    assertFalse(memoryGovernor.shouldShed(100));
+    assertTrue(memoryGovernor.shouldShed(101));
+    assertEquals(1, memoryGovernor.getShedConnections());
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+  private long now = 0;
+
+  @Test
+  void testBurstsAndRefill() {
+    var rateLimiter = new RateLimiter(10, 3, () -> now);
+
+    for (var i = 0; i < 3; i++) {
+      assertTrue(rateLimiter.tryAcquire("client"));
+    }
+    assertFalse(rateLimiter.tryAcquire("client"));
+    assertTrue(rateLimiter.tryAcquire("other"));
+
+    // one token comes back every 100 ms
+    now += TimeUnit.MILLISECONDS.toNanos(100);
+    assertTrue(rateLimiter.tryAcquire("client"));
+    assertFalse(rateLimiter.tryAcquire("client"));
+
+    now += TimeUnit.SECONDS.toNanos(10);
+    for (var i = 0; i < 3; i++) {
+      assertTrue(rateLimiter.tryAcquire("client"));
+    }
+    assertFalse(rateLimiter.tryAcquire("client"));
+    assertEquals(3, rateLimiter.getRejected());
+  }
+
+  @Test
+  void testTheTableIsBounded() {
+    var rateLimiter = new RateLimiter(1, 1, () -> now);
+
+    for (var i = 0; i < RateLimiter.MAX_CLIENTS * 2; i++) {
+      rateLimiter.tryAcquire(i);
+      if (i % 1000 == 0) {
+        now += TimeUnit.SECONDS.toNanos(1);
+      }
+    }
+    assertTrue(rateLimiter.getTrackedClients() <= RateLimiter.MAX_CLIENTS);
+
+    // clients whose buckets have refilled are dropped to make room
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertTrue(rateLimiter.tryAcquire("new"));
+    assertFalse(rateLimiter.tryAcquire("new"));
+  }
+
+  @Test
+  void testAFullStripeMakesRoomForNewClients() {
+    var rateLimiter = new RateLimiter(1, 1, () -> now);
+
+    // multiples of the stripe count whose high half has none of the low four bits set all land
+    // in the first stripe
+    var perStripe = RateLimiter.MAX_CLIENTS / 16;
+    var newClient = 1 << 20;
+    for (var i = 0; i < perStripe; i++) {
+      now = i;
+      assertTrue(rateLimiter.tryAcquire(i * 16));
+    }
+    assertEquals(perStripe, rateLimiter.getTrackedClients());
+
+    // none has refilled, so the first of those looked at, which refills soonest, makes room
+    assertTrue(rateLimiter.tryAcquire(newClient));
+    assertFalse(rateLimiter.tryAcquire(newClient));
+    assertEquals(perStripe, rateLimiter.getTrackedClients());
+    assertTrue(rateLimiter.tryAcquire(0));
+    assertFalse(rateLimiter.tryAcquire(100 * 16));
+    assertEquals(2, rateLimiter.getRejected());
+
+    // once the buckets refill, one of them makes room
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertTrue(rateLimiter.tryAcquire(newClient + 16));
+    assertEquals(perStripe, rateLimiter.getTrackedClients());
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadSizePredictorTest {
+  @Test
+  void testInitialSize() {
+    assertEquals(1024, new ReadSizePredictor(8192).getSize());
+    assertEquals(1000, new ReadSizePredictor(1000).getSize());
+    assertEquals(64, new ReadSizePredictor(64).getSize());
+
+    assertEquals(1024, ReadSizePredictor.initialSize(8192));
+    assertEquals(1000, ReadSizePredictor.initialSize(1000));
+    assertEquals(64, ReadSizePredictor.initialSize(64));
+  }
+
+  @Test
+  void testFullReadsGrowUpToTheMaximum() {
+    var predictor = new ReadSizePredictor(10000);
+
+    assertTrue(predictor.record(1024));
+    assertEquals(4096, predictor.getSize());
+
+    assertTrue(predictor.record(4096));
+    assertEquals(10000, predictor.getSize());
+
+    assertFalse(predictor.record(10000));
+    assertEquals(10000, predictor.getSize());
+  }
+
+  @Test
+  void testOnlyConsecutiveSmallReadsShrink() {
+    var predictor = new ReadSizePredictor(8192);
+
+    assertFalse(predictor.record(100));
+    assertFalse(predictor.record(700));
+    assertFalse(predictor.record(100));
+    assertTrue(predictor.record(100));
+    assertEquals(512, predictor.getSize());
+
+    for (var i = 0; i < 10; i++) {
+      predictor.record(10);
+    }
+    assertEquals(ReadSizePredictor.MIN_SIZE, predictor.getSize());
+  }
+}
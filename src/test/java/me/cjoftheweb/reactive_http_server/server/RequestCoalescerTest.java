@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+  private static HttpRequest request(
+      final HttpMethod method, final String target, final String... headers) {
+    var requestHeaders = new HttpHeaders();
+    for (var i = 0; i < headers.length; i += 2) {
+      requestHeaders.add(headers[i], headers[i + 1]);
+    }
+    return new HttpRequest(method, target, HttpVersion.HTTP_1_1, requestHeaders);
+  }
+
+  private static String key(final String target, final String... headers) {
+    return RequestCoalescer.key(request(HttpMethod.GET, target, headers), false);
+  }
+
+  // Records what it receives and requests only when told to.
+  private static final class RecordingSubscriber implements Flow.Subscriber<ByteBuffer> {
+    private final List<Byte> received = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private boolean complete = false;
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(final ByteBuffer item) {
+      received.add(item.get());
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      complete = true;
+    }
+  }
+
+  // Publishes the given number of one-byte chunks synchronously as they are requested.
+  private static Flow.Publisher<ByteBuffer> counting(final int chunks, final AtomicLong requested) {
+    return subscriber ->
+        subscriber.onSubscribe(
+            new Flow.Subscription() {
+              private int sent = 0;
+
+              @Override
+              public void request(final long n) {
+                requested.addAndGet(n);
+                for (var i = 0; i < n && sent < chunks; i++) {
+                  subscriber.onNext(ByteBuffer.wrap(new byte[] {(byte) sent++}));
+                }
+                if (sent == chunks) {
+                  subscriber.onComplete();
+                }
+              }
+
+              @Override
+              public void cancel() {}
+            });
+  }
+
+  @Test
+  void testKeys() {
+    assertEquals(key("/a~b%2Fc%3F"), key("/%61%7eb%2fc%3F"));
+    assertEquals("/a~b%2Fc%3F", RequestCoalescer.normalize("/%61%7eb%2fc%3F"));
+    assertEquals("/100%", RequestCoalescer.normalize("/100%"));
+    assertEquals("/%zz", RequestCoalescer.normalize("/%zz"));
+
+    assertNull(RequestCoalescer.key(request(HttpMethod.POST, "/"), false));
+    assertNull(key("/", "Cookie", "session=1"));
+  }
+
+  @Test
+  void testKeysTellHostsAndRepresentationsApart() {
+    assertEquals(key("/", "Host", "a.example"), key("/", "Host", "A.example:80"));
+    assertNotEquals(key("/", "Host", "a.example"), key("/", "Host", "b.example"));
+    assertNotEquals(key("/", "Host", "a.example"), key("/"));
+    assertEquals(
+        key("/", "Host", "a.example"),
+        RequestCoalescer.key(request(HttpMethod.GET, "/", "Host", "a.example:443"), true));
+
+    assertEquals(key("/", "Accept", "text/html"), key("/", "Accept", "text/html"));
+    assertNotEquals(key("/", "Accept", "text/html"), key("/", "Accept", "application/json"));
+    assertNotEquals(key("/", "Accept-Encoding", "gzip"), key("/"));
+    assertNotEquals(key("/", "Accept", "a"), key("/", "Accept-Language", "a"));
+  }
+
+  @Test
+  void testFlightsAreSharedUntilTheyLand() {
+    var coalescer = new RequestCoalescer();
+    var first = new CompletableFuture<HttpResponse>();
+    var second = new CompletableFuture<HttpResponse>();
+
+    assertSame(first, coalescer.join("/", first));
+    assertSame(first, coalescer.join("/", second));
+
+    var response = new HttpResponse(HttpStatus.OK, new HttpHeaders(), ByteBuffer.wrap(new byte[4]));
+    coalescer.land("/", first, response);
+    assertSame(response, first.getNow(null));
+
+    var shared = RequestCoalescer.share(first.getNow(null));
+    shared.getBody().get().position(4);
+    assertEquals(4, RequestCoalescer.share(first.getNow(null)).getBody().get().remaining());
+
+    // a request after landing starts a new flight
+    assertSame(second, coalescer.join("/", second));
+  }
+
+  @Test
+  void testMulticastFollowsEachSubscribersDemand() {
+    var requested = new AtomicLong();
+    var publisher = new MulticastPublisher(counting(10_000, requested), 2);
+    var fast = new RecordingSubscriber();
+    var slow = new RecordingSubscriber();
+    publisher.subscribe(fast);
+    publisher.subscribe(slow);
+
+    fast.subscription.request(3);
+    assertEquals(3, fast.received.size());
+    assertEquals(3, requested.get());
+    assertTrue(slow.received.isEmpty());
+
+    // the slow subscriber catches up from the chunks already received
+    slow.subscription.request(2);
+    assertEquals(List.of((byte) 0, (byte) 1), slow.received);
+    assertEquals(3, requested.get());
+
+    // a synchronous publisher answering many requests does not grow the stack
+    fast.subscription.request(MulticastPublisher.MAX_HELD_CHUNKS - 3);
+    assertEquals(MulticastPublisher.MAX_HELD_CHUNKS, fast.received.size());
+    assertFalse(slow.complete);
+
+    slow.subscription.request(MulticastPublisher.MAX_HELD_CHUNKS - 2);
+    assertEquals(MulticastPublisher.MAX_HELD_CHUNKS, slow.received.size());
+    assertEquals(0, publisher.getHeldChunks());
+
+    fast.subscription.cancel();
+    slow.subscription.request(Long.MAX_VALUE);
+    assertEquals(10_000, slow.received.size());
+    assertTrue(slow.complete);
+    assertNull(slow.error);
+  }
+
+  @Test
+  void testMulticastCutsOffAReaderTooFarBehind() {
+    var publisher = new MulticastPublisher(counting(10_000, new AtomicLong()), 2);
+    var fast = new RecordingSubscriber();
+    var slow = new RecordingSubscriber();
+    publisher.subscribe(fast);
+    publisher.subscribe(slow);
+
+    slow.subscription.request(1);
+    fast.subscription.request(Long.MAX_VALUE);
+    assertEquals(10_000, fast.received.size());
+    assertTrue(fast.complete);
+    assertTrue(slow.error instanceof IllegalStateException);
+    assertEquals(1, slow.received.size());
+    assertEquals(0, publisher.getHeldChunks());
+  }
+
+  @Test
+  void testMulticastLetsGoOfChunksEveryoneHasRead() {
+    var publisher = new MulticastPublisher(counting(400, new AtomicLong()), 2);
+    var fast = new RecordingSubscriber();
+    var slow = new RecordingSubscriber();
+    publisher.subscribe(fast);
+    publisher.subscribe(slow);
+
+    fast.subscription.request(250);
+    slow.subscription.request(150);
+    assertEquals(100, publisher.getHeldChunks());
+
+    // a subscriber without a place cannot replay the chunks let go of
+    var late = new RecordingSubscriber();
+    publisher.subscribe(late);
+    assertTrue(late.error instanceof IllegalStateException);
+    assertTrue(late.received.isEmpty());
+
+    fast.subscription.request(Long.MAX_VALUE);
+    slow.subscription.request(Long.MAX_VALUE);
+    assertTrue(fast.complete);
+    assertTrue(slow.complete);
+    assertEquals(400, slow.received.size());
+    assertEquals(0, publisher.getHeldChunks());
+  }
+
+  @Test
+  void testMulticastKeepsChunksForReadersYetToSubscribe() {
+    var publisher = new MulticastPublisher(counting(10, new AtomicLong()), 2);
+    var first = new RecordingSubscriber();
+    publisher.subscribe(first);
+    first.subscription.request(Long.MAX_VALUE);
+    assertEquals(10, publisher.getHeldChunks());
+
+    var second = new RecordingSubscriber();
+    publisher.subscribe(second);
+    second.subscription.request(Long.MAX_VALUE);
+    assertEquals(10, second.received.size());
+    assertTrue(second.complete);
+    assertEquals(0, publisher.getHeldChunks());
+  }
+
+  @Test
+  void testAFollowerThatGoesAwayGivesBackItsPlace() {
+    var coalescer = new RequestCoalescer();
+    var flight = new CompletableFuture<HttpResponse>();
+    coalescer.join("/", flight);
+    coalescer.join("/", new CompletableFuture<>());
+    coalescer.land(
+        "/",
+        flight,
+        new HttpResponse(HttpStatus.OK, new HttpHeaders(), counting(10, new AtomicLong())));
+
+    var leader = new RecordingSubscriber();
+    var body = (MulticastPublisher) flight.getNow(null).getBodyPublisher().get();
+    body.subscribe(leader);
+    leader.subscription.request(5);
+    // the follower's place keeps what the leader has read
+    assertEquals(5, body.getHeldChunks());
+
+    RequestCoalescer.abandon(RequestCoalescer.share(flight.getNow(null)));
+    assertEquals(0, body.getHeldChunks());
+    leader.subscription.request(Long.MAX_VALUE);
+    assertTrue(leader.complete);
+    assertEquals(0, body.getHeldChunks());
+  }
+
+  @Test
+  void testLandedStreamsAreMulticast() {
+    var coalescer = new RequestCoalescer();
+    var flight = new CompletableFuture<HttpResponse>();
+    coalescer.join("/", flight);
+    coalescer.join("/", new CompletableFuture<>());
+    coalescer.land(
+        "/",
+        flight,
+        new HttpResponse(HttpStatus.OK, new HttpHeaders(), counting(2, new AtomicLong())));
+
+    for (var i = 0; i < 2; i++) {
+      var subscriber = new RecordingSubscriber();
+      RequestCoalescer.share(flight.getNow(null)).getBodyPublisher().get().subscribe(subscriber);
+      subscriber.subscription.request(Long.MAX_VALUE);
+      assertEquals(List.of((byte) 0, (byte) 1), subscriber.received);
+      assertTrue(subscriber.complete);
+    }
+  }
+}
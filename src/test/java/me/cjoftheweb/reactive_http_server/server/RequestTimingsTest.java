@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.RequestTimings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTimingsTest {
+  private final BlockingQueue<Snapshot> completed = new LinkedBlockingQueue<>();
+  private HttpServer server;
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  // the listener is handed reused timings, so it copies them the way a tracer would
+  private static final class Snapshot {
+    final String target;
+    final int status;
+    final long[] phases;
+
+    Snapshot(final RequestTimings timings) {
+      target = timings.getRequest() != null ? timings.getRequest().getRequestTarget() : null;
+      status = timings.getStatus().getCode();
+      phases =
+          new long[] {
+            timings.getFirstByteReceived(),
+            timings.getRequestLineParsed(),
+            timings.getHeadParsed(),
+            timings.getHandlerStarted(),
+            timings.getHandlerFinished(),
+            timings.getFirstByteWritten(),
+            timings.getLastByteFlushed()
+          };
+    }
+
+    void assertInOrder() {
+      for (var i = 0; i < phases.length; i++) {
+        assertTrue(phases[i] != 0, "phase " + i);
+        if (i > 0) {
+          assertTrue(phases[i] - phases[i - 1] >= 0, "phase " + i);
+        }
+      }
+    }
+  }
+
+  private void start(final HttpServer.Builder builder) throws Exception {
+    server =
+        builder
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .requestTimingListener(timings -> completed.add(new Snapshot(timings)))
+            .build();
+    server.start();
+  }
+
+  private Snapshot next() throws InterruptedException {
+    var snapshot = completed.poll(5, TimeUnit.SECONDS);
+    assertNotNull(snapshot);
+    return snapshot;
+  }
+
+  private static HttpResponse hello() {
+    return new HttpResponse(
+        HttpStatus.OK,
+        new HttpHeaders(),
+        ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Test
+  void testPhasesAreRecordedInOrder() throws Exception {
+    start(HttpServer.builder(request -> hello()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /first HTTP/1.1\r\n\r\n").readResponse();
+      client.send("GET /second HTTP/1.1\r\n\r\n").readResponse();
+    }
+
+    var first = next();
+    assertEquals("/first", first.target);
+    assertEquals(200, first.status);
+    first.assertInOrder();
+    var second = next();
+    assertEquals("/second", second.target);
+    second.assertInOrder();
+    assertTrue(second.phases[0] - first.phases[6] >= 0);
+  }
+
+  @Test
+  void testSlowHandlerIsToldApartFromParsing() throws Exception {
+    start(
+        HttpServer.builder(
+                request -> {
+                  Thread.sleep(50);
+                  return hello();
+                })
+            .workStealingHandlers(1));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /slow HTTP/1.1\r\n\r\n").readResponse();
+    }
+
+    var slow = next();
+    slow.assertInOrder();
+    assertTrue(slow.phases[4] - slow.phases[3] >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertTrue(slow.phases[2] - slow.phases[0] < TimeUnit.MILLISECONDS.toNanos(50));
+  }
+
+  @Test
+  void testPipelinedRequestsAreReportedInOrder() throws Exception {
+    start(HttpServer.builder(request -> hello()));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\nBREW / HTTP/1.1\r\n\r\n");
+      client.readResponse();
+      client.readResponse();
+      client.readResponse();
+    }
+
+    assertEquals("/a", next().target);
+    assertEquals("/b", next().target);
+    var failed = next();
+    assertNull(failed.target);
+    assertEquals(501, failed.status);
+    assertEquals(0, failed.phases[3]);
+    assertTrue(failed.phases[6] != 0);
+  }
+
+  @Test
+  void testBlockingHandlerIsTimed() throws Exception {
+    start(
+        HttpServer.builder(
+            (request, body, responder) -> {
+              try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+                stream.write("hello".getBytes(StandardCharsets.US_ASCII));
+              }
+            }));
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      assertEquals("hello", client.send("GET / HTTP/1.1\r\n\r\n").readResponse().body);
+    }
+
+    next().assertInOrder();
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpMethod;
+import me.cjoftheweb.reactive_http_server.HttpRequest;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+  private long now = 0;
+
+  private ResponseCache cache(final long maxBytes) {
+    return new ResponseCache(maxBytes, false, () -> now);
+  }
+
+  private static HttpRequest get(final String target, final String... headers) {
+    var requestHeaders = new HttpHeaders();
+    for (var i = 0; i < headers.length; i += 2) {
+      requestHeaders.add(headers[i], headers[i + 1]);
+    }
+    return new HttpRequest(HttpMethod.GET, target, HttpVersion.HTTP_1_1, requestHeaders);
+  }
+
+  private static HttpResponse ok(final String body, final String... headers) {
+    var responseHeaders = new HttpHeaders();
+    for (var i = 0; i < headers.length; i += 2) {
+      responseHeaders.add(headers[i], headers[i + 1]);
+    }
+    return new HttpResponse(
+        HttpStatus.OK,
+        responseHeaders,
+        ByteBuffer.wrap(body.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  private static String ascii(final ByteBuffer... buffers) {
+    var ascii = new StringBuilder();
+    for (var buffer : buffers) {
+      ascii.append(StandardCharsets.ISO_8859_1.decode(buffer));
+    }
+    return ascii.toString();
+  }
+
+  @Test
+  void testFreshness() {
+    assertEquals(
+        TimeUnit.SECONDS.toNanos(5),
+        ResponseCache.freshnessNanos(ok("", "Cache-Control", "public, max-age=5")));
+    assertEquals(
+        TimeUnit.SECONDS.toNanos(2),
+        ResponseCache.freshnessNanos(ok("", "Cache-Control", "max-age=5, s-maxage=2")));
+
+    for (var cacheControl : new String[] {"max-age=5, private", "no-store", "no-cache", "x=1"}) {
+      assertEquals(0, ResponseCache.freshnessNanos(ok("", "Cache-Control", cacheControl)));
+    }
+    assertEquals(
+        0,
+        ResponseCache.freshnessNanos(
+            ok("", "Cache-Control", "max-age=5", "Set-Cookie", "session=1")));
+    assertEquals(
+        0, ResponseCache.freshnessNanos(ok("", "Cache-Control", "max-age=5", "Vary", "*")));
+    assertEquals(
+        0,
+        ResponseCache.freshnessNanos(
+            new HttpResponse(
+                HttpStatus.NOT_FOUND,
+                new HttpHeaders().add("Cache-Control", "max-age=5"),
+                ByteBuffer.allocate(0))));
+  }
+
+  @Test
+  void testEntriesAreEncodedAndExpire() {
+    var cache = cache(1 << 20);
+    var entry = cache.store(get("/a"), ok("body", "Cache-Control", "max-age=1"));
+
+    assertEquals(
+        "HTTP/1.1 200 OK\r\nCache-Control: max-age=1\r\nContent-Length: 4\r\nAge: 0\r\n\r\nbody",
+        ascii(entry.response(get("/a"))));
+    assertTrue(entry.response(get("/a"))[0].isDirect());
+    assertTrue(entry.response(get("/a"))[2].isDirect());
+    assertEquals(
+        "HTTP/1.1 200 OK\r\nCache-Control: max-age=1\r\nContent-Length: 4\r\nAge: 0\r\n\r\n",
+        ascii(
+            entry.response(
+                new HttpRequest(HttpMethod.HEAD, "/a", HttpVersion.HTTP_1_1, new HttpHeaders()))));
+
+    assertSame(entry, cache.lookup(get("/a")));
+    assertNull(cache.lookup(get("/b")));
+    assertNull(cache.lookup(get("/a", "Cache-Control", "no-cache")));
+    assertNull(
+        cache.store(get("/a", "Authorization", "Basic x"), ok("", "Cache-Control", "max-age=1")));
+
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertNull(cache.lookup(get("/a")));
+    assertEquals(0, cache.getUsedBytes());
+  }
+
+  @Test
+  void testVariantsAreCachedSeparately() {
+    var cache = cache(1 << 20);
+    cache.store(
+        get("/", "Accept-Encoding", "gzip"),
+        ok("compressed", "Cache-Control", "max-age=60", "Vary", "Accept-Encoding"));
+    cache.store(
+        get("/"), ok("plain", "Cache-Control", "max-age=60", "Vary", "Accept-Encoding"));
+
+    assertTrue(
+        ascii(cache.lookup(get("/", "Accept-Encoding", "gzip")).response(get("/")))
+            .endsWith("compressed"));
+    assertTrue(ascii(cache.lookup(get("/")).response(get("/"))).endsWith("plain"));
+    assertNull(cache.lookup(get("/", "Accept-Encoding", "br")));
+  }
+
+  @Test
+  void testHostsAreCachedSeparately() {
+    var cache = cache(1 << 20);
+    cache.store(get("/", "Host", "a.example"), ok("a", "Cache-Control", "max-age=60"));
+    cache.store(get("/", "Host", "b.example"), ok("b", "Cache-Control", "max-age=60"));
+
+    assertTrue(
+        ascii(cache.lookup(get("/", "Host", "A.example:80")).response(get("/"))).endsWith("a"));
+    assertTrue(
+        ascii(cache.lookup(get("/", "Host", "b.example")).response(get("/"))).endsWith("b"));
+    assertNull(cache.lookup(get("/", "Host", "c.example")));
+    assertNull(cache.lookup(get("/")));
+    assertEquals(
+        "a.example:8080", ResponseCache.host(get("/", "Host", " a.example:8080 "), false));
+    assertEquals("a.example:80", ResponseCache.host(get("/", "Host", "a.example:80"), true));
+  }
+
+  @Test
+  void testTlsHostsDropTheirDefaultPort() {
+    var cache = new ResponseCache(1 << 20, true, () -> now);
+    cache.store(get("/", "Host", "a.example"), ok("a", "Cache-Control", "max-age=60"));
+
+    assertNotNull(cache.lookup(get("/", "Host", "a.example:443")));
+    assertNull(cache.lookup(get("/", "Host", "a.example:80")));
+  }
+
+  @Test
+  void testServedEntriesCarryTheirAge() {
+    var cache = cache(1 << 20);
+    var entry = cache.store(get("/"), ok("body", "Cache-Control", "max-age=60"));
+
+    now += TimeUnit.MILLISECONDS.toNanos(2500);
+    assertTrue(ascii(entry.response(get("/"))).contains("\r\nAge: 2\r\n\r\n"));
+    assertTrue(ascii(entry.notModified()).endsWith("\r\nAge: 2\r\n\r\n"));
+
+    // an upstream's Age is replaced by one that counts from it, and uses up freshness
+    var aged =
+        cache.store(
+            get("/aged"), ok("body", "Cache-Control", "max-age=60", "Age", "10"));
+    var response = ascii(aged.response(get("/aged")));
+    assertTrue(response.contains("\r\nAge: 10\r\n\r\n"));
+    assertEquals(response.indexOf("Age:"), response.lastIndexOf("Age:"));
+    now += TimeUnit.SECONDS.toNanos(50);
+    assertNull(cache.lookup(get("/aged")));
+    assertNull(
+        cache.store(get("/stale"), ok("body", "Cache-Control", "max-age=60", "Age", "60")));
+  }
+
+  @Test
+  void testConditionalRequests() {
+    var cache = cache(1 << 20);
+    var entry =
+        cache.store(
+            get("/"),
+            ok(
+                "body",
+                "Cache-Control",
+                "max-age=60",
+                "ETag",
+                "W/\"v1\"",
+                "Last-Modified",
+                "Tue, 15 Nov 1994 12:45:26 GMT",
+                "Content-Type",
+                "text/plain"));
+
+    assertTrue(entry.isNotModified(get("/", "If-None-Match", "\"v0\", \"v1\"")));
+    assertTrue(entry.isNotModified(get("/", "If-None-Match", "*")));
+    assertFalse(entry.isNotModified(get("/", "If-None-Match", "\"v2\"")));
+    // If-None-Match takes precedence over If-Modified-Since
+    assertFalse(
+        entry.isNotModified(
+            get(
+                "/",
+                "If-None-Match",
+                "\"v2\"",
+                "If-Modified-Since",
+                "Tue, 15 Nov 1994 12:45:26 GMT")));
+    assertTrue(
+        entry.isNotModified(get("/", "If-Modified-Since", "Wed, 16 Nov 1994 00:00:00 GMT")));
+    assertFalse(
+        entry.isNotModified(get("/", "If-Modified-Since", "Mon, 14 Nov 1994 00:00:00 GMT")));
+    assertFalse(entry.isNotModified(get("/", "If-Modified-Since", "yesterday")));
+    assertFalse(entry.isNotModified(get("/")));
+
+    assertEquals(
+        "HTTP/1.1 304 Not Modified\r\nCache-Control: max-age=60\r\nETag: W/\"v1\"\r\n"
+            + "Last-Modified: Tue, 15 Nov 1994 12:45:26 GMT\r\nAge: 0\r\n\r\n",
+        ascii(entry.notModified()));
+  }
+
+  @Test
+  void testReusedEntriesSurviveAScan() {
+    // 16 segments of 64 KB, of which 12.8 KB is probation
+    var cache = cache(16 * 64 * 1024);
+    var body = "a".repeat(4000);
+    cache.store(get("/hot"), ok(body, "Cache-Control", "max-age=60"));
+    assertNotNull(cache.lookup(get("/hot")));
+
+    for (var i = 0; i < 1000; i++) {
+      cache.store(get("/scan/" + i), ok(body, "Cache-Control", "max-age=60"));
+    }
+
+    assertNotNull(cache.lookup(get("/hot")));
+    assertTrue(cache.getUsedBytes() <= 16 * 64 * 1024);
+    assertNull(cache.store(get("/large"), ok("a".repeat(20000), "Cache-Control", "max-age=60")));
+  }
+}
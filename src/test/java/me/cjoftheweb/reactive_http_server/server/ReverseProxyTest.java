@@ -0,0 +1,232 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.BlockingHttpHandler;
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReverseProxyTest {
+  private HttpServer upstream;
+  private HttpServer server;
+  private ReverseProxy proxy;
+
+  private HttpServer start(final BlockingHttpHandler handler) throws IOException {
+    final var started =
+        HttpServer.builder(handler)
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .build();
+    started.start();
+    return started;
+  }
+
+  private void startProxy(final InetSocketAddress address) throws IOException {
+    proxy = new ReverseProxy(address, 4, 5_000);
+    server = start(proxy);
+  }
+
+  private void startUpstream() throws IOException {
+    upstream =
+        start(
+            (request, body, responder) -> {
+              var headers =
+                  new HttpHeaders()
+                      .add("X-Upstream", "yes")
+                      .add("X-Saw-Secret", request.getHeaders().get("X-Secret").orElse("no"));
+              try (var stream = responder.respond(HttpStatus.CREATED, headers)) {
+                var target = request.getRequestTarget() + " ";
+                stream.write(target.getBytes(StandardCharsets.US_ASCII));
+                body.transferTo(stream);
+              }
+            });
+    startProxy((InetSocketAddress) upstream.getLocalAddress());
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+    if (proxy != null) {
+      proxy.close();
+    }
+    if (upstream != null) {
+      upstream.close();
+    }
+  }
+
+  @Test
+  void testForwardsOverPooledConnections() throws Exception {
+    startUpstream();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      for (var i = 0; i < 3; i++) {
+        var response =
+            client
+                .send("POST /echo HTTP/1.1\r\nHost: app\r\nContent-Length: 5\r\n\r\nhello")
+                .readResponse();
+
+        assertEquals(201, response.status);
+        assertEquals("yes", response.headers.get("x-upstream"));
+        assertEquals("/echo hello", response.body);
+      }
+    }
+
+    assertEquals(1, proxy.getOpenedConnectionCount());
+    assertEquals(1, proxy.getIdleConnectionCount());
+  }
+
+  @Test
+  void testHopByHopHeadersStayOnTheirHop() throws Exception {
+    startUpstream();
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET / HTTP/1.1\r\nHost: app\r\nConnection: X-Secret\r\nX-Secret: 1\r\n\r\n");
+      var response = client.readResponse();
+
+      assertEquals("no", response.headers.get("x-saw-secret"));
+    }
+  }
+
+  @Test
+  void testLargeBodiesStreamBothWays() throws Exception {
+    startUpstream();
+
+    var content = "0123456789abcdef".repeat(40_000);
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send(
+          String.format(
+              "PUT /big HTTP/1.1\r\nHost: app\r\nContent-Length: %d\r\n\r\n%s",
+              content.length(), content));
+      var response = client.readResponse();
+
+      assertEquals("chunked", response.headers.get("transfer-encoding"));
+      assertEquals("/big " + content, response.body);
+    }
+
+    assertEquals(1, proxy.getIdleConnectionCount());
+  }
+
+  @Test
+  void testResponseUntilClose() throws Exception {
+    try (var raw = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      var thread =
+          new Thread(
+              () -> {
+                try (var socket = raw.accept()) {
+                  socket.getInputStream().read(new byte[1024]);
+                  socket
+                      .getOutputStream()
+                      .write(
+                          "HTTP/1.0 200 OK\r\nX-Raw: 1\r\n\r\nuntil close"
+                              .getBytes(StandardCharsets.US_ASCII));
+                } catch (final IOException ignored) {
+                }
+              });
+      thread.start();
+      startProxy((InetSocketAddress) raw.getLocalSocketAddress());
+
+      try (var client = new TestClient(server.getLocalAddress())) {
+        var response = client.send("GET / HTTP/1.1\r\n\r\n").readResponse();
+
+        assertEquals(200, response.status);
+        assertEquals("1", response.headers.get("x-raw"));
+        assertEquals("until close", response.body);
+      }
+      thread.join();
+    }
+
+    assertEquals(0, proxy.getIdleConnectionCount());
+  }
+
+  // Proxies one GET to an upstream that answers with the given bytes, returning the status.
+  private int proxyRaw(final String response) throws Exception {
+    try (var raw = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      var thread =
+          new Thread(
+              () -> {
+                try (var socket = raw.accept()) {
+                  socket.getInputStream().read(new byte[1024]);
+                  socket.getOutputStream().write(response.getBytes(StandardCharsets.US_ASCII));
+                } catch (final IOException ignored) {
+                }
+              });
+      thread.start();
+      startProxy((InetSocketAddress) raw.getLocalSocketAddress());
+
+      try (var client = new TestClient(server.getLocalAddress())) {
+        return client.send("GET / HTTP/1.1\r\n\r\n").readResponse().status;
+      } finally {
+        thread.join();
+        assertEquals(0, proxy.getIdleConnectionCount());
+        server.close();
+        proxy.close();
+        server = null;
+        proxy = null;
+      }
+    }
+  }
+
+  @Test
+  void testOtherTransferCodingsAreABadGateway() throws Exception {
+    assertEquals(
+        502,
+        proxyRaw("HTTP/1.1 200 OK\r\nTransfer-Encoding: gzip, chunked\r\n\r\n0\r\n\r\n"));
+  }
+
+  @Test
+  void testAmbiguousContentLengthsAreABadGateway() throws Exception {
+    for (var lengths :
+        new String[] {
+          "Content-Length: +5\r\n",
+          "Content-Length: 5\r\nContent-Length: 6\r\n",
+          "Content-Length: 5, 6\r\n",
+          "Content-Length: 0x5\r\n"
+        }) {
+      assertEquals(502, proxyRaw("HTTP/1.1 200 OK\r\n" + lengths + "\r\nhello!"), lengths);
+    }
+    assertEquals(
+        200,
+        proxyRaw(
+            "HTTP/1.1 200 OK\r\nConnection: close\r\n"
+                + "Content-Length: 5\r\nContent-Length: 5, 5\r\n\r\nhello"));
+  }
+
+  @Test
+  void testUnreachableUpstreamIsABadGateway() throws Exception {
+    InetSocketAddress address;
+    try (var closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      address = (InetSocketAddress) closed.getLocalSocketAddress();
+    }
+    startProxy(address);
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      assertEquals(502, client.send("GET / HTTP/1.1\r\n\r\n").readResponse().status);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static me.cjoftheweb.reactive_http_server.AllocationBudget.allocatedBytes;
+import static me.cjoftheweb.reactive_http_server.AllocationBudget.assertWithinBudget;
+
+@Tag("allocation")
+class ServerAllocationTest {
+  // bytes allocated on the event loop per keep-alive request, from the read to the last byte of
+  // the response, with the same rules for changing it as the parser budgets
+  private static final long REQUEST_BUDGET = 1536;
+  private static final int WARMUP_REQUESTS = 20_000;
+  private static final int MEASURED_REQUESTS = 10_000;
+  private static final String REQUEST =
+      "GET /index.html HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n";
+
+  private static Thread eventLoopThread() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("reactive-http-server-loop-0"))
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static void exchange(final TestClient client, final int requests) throws Exception {
+    for (var i = 0; i < requests; i++) {
+      client.send(REQUEST).readResponse();
+    }
+  }
+
+  private static HttpServer.Builder builder() {
+    var response =
+        new HttpResponse(
+            HttpStatus.OK,
+            new HttpHeaders().add("Content-Type", "text/plain"),
+            ByteBuffer.wrap("Hello, world!".getBytes()).asReadOnlyBuffer());
+    return HttpServer.builder(request -> response)
+        .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+        .eventLoops(1);
+  }
+
+  private static void measure(final String name, final HttpServer server) throws Exception {
+    server.start();
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var eventLoop = eventLoopThread();
+      exchange(client, WARMUP_REQUESTS);
+
+      var before = allocatedBytes(eventLoop);
+      exchange(client, MEASURED_REQUESTS);
+      var after = allocatedBytes(eventLoop);
+
+      assertWithinBudget(name, REQUEST_BUDGET, (after - before) / MEASURED_REQUESTS);
+    } finally {
+      server.close();
+    }
+  }
+
+  @Test
+  void testKeepAliveRequest() throws Exception {
+    measure("Keep-alive request", builder().build());
+  }
+
+  // recording a response only fills a preallocated slot, so the budget is the same
+  @Test
+  void testKeepAliveRequestWithAccessLog() throws Exception {
+    var file = Files.createTempFile("access", ".log");
+    try {
+      measure("Keep-alive request with access log", builder().accessLog(file).build());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  void testKeepAliveRequestWithTimingListener() throws Exception {
+    var total = new long[1];
+    measure(
+        "Keep-alive request with timing listener",
+        builder()
+            .requestTimingListener(
+                timings ->
+                    total[0] += timings.getLastByteFlushed() - timings.getFirstByteReceived())
+            .build());
+  }
+}
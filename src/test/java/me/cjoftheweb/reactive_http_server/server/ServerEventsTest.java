@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerEventsTest {
+  private static final String PREFIX = "me.cjoftheweb.reactive_http_server.";
+
+  private static List<RecordedEvent> record(final Recording recording) throws Exception {
+    return record(
+        recording,
+        HttpServer.builder(request -> new HttpResponse(HttpStatus.NO_CONTENT))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .build());
+  }
+
+  private static List<RecordedEvent> record(final Recording recording, final HttpServer server)
+      throws Exception {
+    recording.start();
+    server.start();
+    try (var client = new TestClient(server.getLocalAddress())) {
+      client.send("GET /events HTTP/1.1\r\nHost: localhost\r\nAccept: */*\r\n\r\n").readResponse();
+      client.send("GET / HTTP/1.1\r\nBad : header\r\n\r\n").readResponse();
+    } finally {
+      // closing the server waits for the event loops, so every event has been committed
+      server.close();
+      recording.stop();
+    }
+
+    var file = Files.createTempFile("reactive-http-server", ".jfr");
+    try {
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file).stream()
+          .filter(event -> event.getEventType().getName().startsWith(PREFIX))
+          .collect(Collectors.toList());
+    } finally {
+      Files.delete(file);
+      recording.close();
+    }
+  }
+
+  private static RecordedEvent find(final List<RecordedEvent> events, final String name) {
+    return events.stream()
+        .filter(event -> event.getEventType().getName().equals(PREFIX + name))
+        .findFirst()
+        .orElseThrow(() -> new AssertionError(String.format("No %s event recorded", name)));
+  }
+
+  @Test
+  void testEventsAreDisabledByDefault() throws Exception {
+    assertTrue(record(new Recording()).isEmpty());
+  }
+
+  @Test
+  void testLifecycleEvents() throws Exception {
+    var recording = new Recording();
+    for (var name :
+        List.of(
+            "ConnectionAccepted",
+            "RequestHeadParsed",
+            "ParseFailure",
+            "ResponseWritten",
+            "ConnectionClosed")) {
+      recording.enable(PREFIX + name);
+    }
+
+    var events = record(recording);
+
+    assertEquals(0, find(events, "ConnectionAccepted").getInt("eventLoop"));
+
+    var requestHeadParsed = find(events, "RequestHeadParsed");
+    assertEquals("GET", requestHeadParsed.getString("method"));
+    assertEquals(7, requestHeadParsed.getInt("requestTargetLength"));
+    assertEquals(2, requestHeadParsed.getInt("headerCount"));
+
+    var parseFailure = find(events, "ParseFailure");
+    assertEquals(
+        "me.cjoftheweb.reactive_http_server.syntax.ParseException",
+        parseFailure.getString("exception"));
+    assertTrue(parseFailure.getString("parserState").contains("header field name"));
+
+    var responseWritten = find(events, "ResponseWritten");
+    assertEquals(204, responseWritten.getInt("status"));
+    assertTrue(responseWritten.getLong("bytesWritten") > 0);
+
+    assertEquals(1, find(events, "ConnectionClosed").getInt("requests"));
+  }
+
+  @Test
+  void testReadBufferResizedEvent() throws Exception {
+    var recording = new Recording();
+    recording.enable(PREFIX + "ReadBufferResized");
+
+    // two short requests in a row shrink the initial read buffer
+    var readBufferResized = find(record(recording), "ReadBufferResized");
+    assertEquals(ReadSizePredictor.INITIAL_SIZE, readBufferResized.getInt("previousSize"));
+    assertEquals(ReadSizePredictor.INITIAL_SIZE / 2, readBufferResized.getInt("size"));
+    assertTrue(readBufferResized.getInt("lastRead") > 0);
+  }
+
+  @Test
+  void testStatisticsEvents() throws Exception {
+    var recording = new Recording();
+    for (var name : List.of("EventLoopStatistics", "HandlerPoolStatistics")) {
+      recording.enable(PREFIX + name).withPeriod(Duration.ofMillis(50));
+    }
+
+    var events =
+        record(
+            recording,
+            HttpServer.builder(
+                    request -> {
+                      // keeps the recording running across several periods
+                      Thread.sleep(300);
+                      return new HttpResponse(HttpStatus.NO_CONTENT);
+                    })
+                .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .eventLoops(1)
+                .workStealingHandlers(1)
+                .build());
+
+    var eventLoopStatistics = find(events, "EventLoopStatistics");
+    assertEquals(0, eventLoopStatistics.getInt("eventLoop"));
+    assertTrue(eventLoopStatistics.getLong("pendingTasks") >= 0);
+    assertFalse(eventLoopStatistics.getDuration("maxTaskLag").isNegative());
+
+    assertTrue(find(events, "HandlerPoolStatistics").getLong("queuedSubmissions") >= 0);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class TestClient implements Closeable {
+  private final Socket socket;
+  private final InputStream inputStream;
+
+  TestClient(final SocketAddress address) throws IOException {
+    this(connect(address));
+  }
+
+  TestClient(final Socket socket) throws IOException {
+    this.socket = socket;
+    this.socket.setSoTimeout(5000);
+    this.inputStream = new BufferedInputStream(socket.getInputStream());
+  }
+
+  private static Socket connect(final SocketAddress address) throws IOException {
+    final var socket = new Socket();
+    socket.connect(address, 5000);
+    return socket;
+  }
+
+  TestClient send(final String request) throws IOException {
+    socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+    socket.getOutputStream().flush();
+    return this;
+  }
+
+  private String readLine() throws IOException {
+    final var line = new StringBuilder();
+    int c;
+    while ((c = inputStream.read()) != '\n') {
+      if (c < 0) {
+        throw new IOException("Connection closed while reading a line");
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  private byte[] readBytes(final int length) throws IOException {
+    final var bytes = inputStream.readNBytes(length);
+    if (bytes.length != length) {
+      throw new IOException("Connection closed while reading the body");
+    }
+    return bytes;
+  }
+
+  Response readResponse() throws IOException {
+    final var statusLine = readLine().split(" ", 3);
+    final Map<String, String> headers = new LinkedHashMap<>();
+    String line;
+    while (!(line = readLine()).isEmpty()) {
+      final var separator = line.indexOf(':');
+      headers.put(
+          line.substring(0, separator).toLowerCase(), line.substring(separator + 1).trim());
+    }
+
+    final var status = Integer.parseInt(statusLine[1]);
+    final var body = new ByteArrayOutputStream();
+    if (status < 200 || status == 204 || status == 304) {
+      // never has a body
+    } else if (headers.containsKey("content-length")) {
+      body.writeBytes(readBytes(Integer.parseInt(headers.get("content-length"))));
+    } else if ("chunked".equals(headers.get("transfer-encoding"))) {
+      int size;
+      while ((size = Integer.parseInt(readLine(), 16)) > 0) {
+        body.writeBytes(readBytes(size));
+        readLine();
+      }
+      readLine();
+    } else {
+      body.writeBytes(inputStream.readAllBytes());
+    }
+
+    return new Response(status, headers, body.toString(StandardCharsets.ISO_8859_1));
+  }
+
+  boolean hasPendingInput() throws IOException {
+    return inputStream.available() > 0;
+  }
+
+  boolean isClosedByServer() throws IOException {
+    return inputStream.read() < 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  static final class Response {
+    final int status;
+    final Map<String, String> headers;
+    final String body;
+
+    Response(final int status, final Map<String, String> headers, final String body) {
+      this.status = status;
+      this.headers = headers;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TlsTest {
+  private static final char[] PASSWORD = "changeit".toCharArray();
+
+  private HttpServer server;
+
+  // The self-signed certificate for localhost is both the server's key and the client's trust.
+  private static SSLContext context() throws Exception {
+    final var keyStore = KeyStore.getInstance("PKCS12");
+    try (var stream = TlsTest.class.getResourceAsStream("localhost.p12")) {
+      keyStore.load(stream, PASSWORD);
+    }
+
+    final var keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, PASSWORD);
+    final var trustManagers =
+        TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trustManagers.init(keyStore);
+
+    final var context = SSLContext.getInstance("TLS");
+    context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+    return context;
+  }
+
+  private void start(final HttpServer.Builder builder) throws Exception {
+    server =
+        builder
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .readBufferSize(1024)
+            .tls(context())
+            .build();
+    server.start();
+  }
+
+  private void start() throws Exception {
+    start(
+        HttpServer.builder(
+            (request, body, responder) -> {
+              var echo = new String(body.readAllBytes(), StandardCharsets.ISO_8859_1);
+              try (var stream = responder.respond(HttpStatus.OK, new HttpHeaders())) {
+                var content = request.getRequestTarget().equals("/big") ? "x".repeat(200_000) : "";
+                stream.write((request.getRequestTarget() + " " + echo + content).getBytes());
+              }
+            }));
+  }
+
+  private SSLSocket connect(final SSLContext context, final String... protocols)
+      throws IOException {
+    final var address = (InetSocketAddress) server.getLocalAddress();
+    final var factory = context.getSocketFactory();
+    final var socket = (SSLSocket) factory.createSocket(address.getAddress(), address.getPort());
+    if (protocols.length > 0) {
+      socket.setEnabledProtocols(protocols);
+    }
+    return socket;
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  void testRequestsOverTls() throws Exception {
+    start();
+
+    try (var client = new TestClient(connect(context()))) {
+      var response =
+          client.send("POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello").readResponse();
+      assertEquals(200, response.status);
+      assertEquals("/echo hello", response.body);
+
+      // pipelined, with a response many records long
+      client.send("GET /big HTTP/1.1\r\n\r\nGET /next HTTP/1.1\r\n\r\n");
+      assertEquals("/big " + "x".repeat(200_000), client.readResponse().body);
+      assertEquals("/next ", client.readResponse().body);
+    }
+  }
+
+  @Test
+  void testLargeRequestBody() throws Exception {
+    start();
+
+    var content = "0123456789abcdef".repeat(20_000);
+    try (var client = new TestClient(connect(context()))) {
+      client.send(
+          String.format(
+              "PUT / HTTP/1.1\r\nContent-Length: %d\r\n\r\n%s", content.length(), content));
+      assertEquals("/ " + content, client.readResponse().body);
+    }
+  }
+
+  @Test
+  void testApplicationProtocols() throws Exception {
+    start();
+
+    var context = context();
+    try (var socket = connect(context)) {
+      var parameters = socket.getSSLParameters();
+      parameters.setApplicationProtocols(new String[] {"h2", "http/1.1"});
+      socket.setSSLParameters(parameters);
+      socket.startHandshake();
+      assertEquals("http/1.1", socket.getApplicationProtocol());
+    }
+
+    try (var socket = connect(context)) {
+      var parameters = socket.getSSLParameters();
+      parameters.setApplicationProtocols(new String[] {"h2"});
+      socket.setSSLParameters(parameters);
+      socket.startHandshake();
+      assertEquals("", socket.getApplicationProtocol());
+    }
+  }
+
+  @Test
+  void testApplicationProtocolSelector() throws Exception {
+    start(
+        HttpServer.builder((request, body, responder) -> {})
+            .applicationProtocolSelector(offered -> offered.contains("acme") ? "acme" : null));
+
+    var context = context();
+    try (var socket = connect(context)) {
+      var parameters = socket.getSSLParameters();
+      parameters.setApplicationProtocols(new String[] {"http/1.1", "acme"});
+      socket.setSSLParameters(parameters);
+      socket.startHandshake();
+      assertEquals("acme", socket.getApplicationProtocol());
+    }
+
+    try (var socket = connect(context)) {
+      var parameters = socket.getSSLParameters();
+      parameters.setApplicationProtocols(new String[] {"http/1.1"});
+      socket.setSSLParameters(parameters);
+      assertThrows(IOException.class, socket::startHandshake);
+    }
+  }
+
+  @Test
+  void testSessionResumption() throws Exception {
+    start();
+
+    var context = context();
+    byte[] sessionId;
+    try (var client = new TestClient(connect(context, "TLSv1.2"))) {
+      assertEquals(200, client.send("GET / HTTP/1.1\r\n\r\n").readResponse().status);
+    }
+    try (var socket = connect(context, "TLSv1.2")) {
+      socket.startHandshake();
+      sessionId = socket.getSession().getId();
+    }
+    try (var socket = connect(context, "TLSv1.2")) {
+      socket.startHandshake();
+      assertArrayEquals(sessionId, socket.getSession().getId());
+    }
+  }
+
+  @Test
+  void testIdleConnectionsHoldNoTlsBuffers() throws Exception {
+    start();
+
+    try (var client = new TestClient(connect(context()))) {
+      assertEquals(200, client.send("GET /big HTTP/1.1\r\n\r\n").readResponse().status);
+
+      // the loop returns the buffers once the last record is out, just after the client has it
+      var pool = server.getTlsBufferPool(0);
+      for (var i = 0; i < 100 && pool.getOutstanding() > 0; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, pool.getOutstanding());
+    }
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import me.cjoftheweb.reactive_http_server.HttpResponse;
+import me.cjoftheweb.reactive_http_server.HttpStatus;
+import me.cjoftheweb.reactive_http_server.WebSocket;
+import me.cjoftheweb.reactive_http_server.WebSocketHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketTest {
+  private static final String HANDSHAKE =
+      "GET /chat HTTP/1.1\r\n"
+          + "Host: localhost\r\n"
+          + "Upgrade: websocket\r\n"
+          + "Connection: Upgrade\r\n"
+          + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+          + "Sec-WebSocket-Version: 13\r\n"
+          + "\r\n";
+
+  private HttpServer server;
+  private final List<String> closes = new CopyOnWriteArrayList<>();
+
+  // Echoes each message once it has been read in full, asking for one chunk at a time.
+  private class Echo implements WebSocketHandler {
+    @Override
+    public void onMessage(
+        final WebSocket webSocket, final boolean text, final Flow.Publisher<ByteBuffer> message) {
+      message.subscribe(
+          new Flow.Subscriber<>() {
+            private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+              this.subscription = subscription;
+              subscription.request(1);
+            }
+
+            @Override
+            public void onNext(final ByteBuffer chunk) {
+              while (chunk.hasRemaining()) {
+                content.write(chunk.get());
+              }
+              subscription.request(1);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {}
+
+            @Override
+            public void onComplete() {
+              if (text) {
+                webSocket.sendText(content.toString(StandardCharsets.UTF_8));
+              } else {
+                webSocket.sendBinary(ByteBuffer.wrap(content.toByteArray()));
+              }
+            }
+          });
+    }
+
+    @Override
+    public void onClose(final WebSocket webSocket, final int code, final String reason) {
+      closes.add(code + " " + reason);
+    }
+  }
+
+  private static final class Frame {
+    final int opcode;
+    final byte[] payload;
+
+    Frame(final int opcode, final byte[] payload) {
+      this.opcode = opcode;
+      this.payload = payload;
+    }
+
+    String text() {
+      return new String(payload, StandardCharsets.UTF_8);
+    }
+  }
+
+  private void start(final WebSocketHandler handler) throws IOException {
+    server =
+        HttpServer.builder(request -> new HttpResponse(HttpStatus.NOT_FOUND))
+            .address(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .eventLoops(1)
+            .webSocketHandler(handler)
+            .maxWebSocketMessageSize(100_000)
+            .build();
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private Socket connect() throws IOException {
+    final var socket = new Socket();
+    socket.connect(server.getLocalAddress(), 5000);
+    socket.setSoTimeout(5000);
+    socket.getOutputStream().write(HANDSHAKE.getBytes(StandardCharsets.ISO_8859_1));
+
+    final var head = readHead(socket);
+    assertTrue(head.startsWith("HTTP/1.1 101 Switching Protocols\r\n"), head);
+    assertTrue(head.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo=\r\n"), head);
+    return socket;
+  }
+
+  private static String readHead(final Socket socket) throws IOException {
+    final var head = new StringBuilder();
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      final var c = socket.getInputStream().read();
+      if (c < 0) {
+        throw new IOException("Connection closed while reading the head");
+      }
+      head.append((char) c);
+    }
+    return head.toString();
+  }
+
+  private static void send(
+      final OutputStream output, final boolean fin, final int opcode, final byte[] payload)
+      throws IOException {
+    final var mask = new byte[] {0x12, 0x34, 0x56, 0x78};
+    final var frame = new ByteArrayOutputStream();
+    frame.write((fin ? 0x80 : 0) | opcode);
+    if (payload.length < 126) {
+      frame.write(0x80 | payload.length);
+    } else {
+      frame.write(0x80 | 126);
+      frame.write(payload.length >> 8);
+      frame.write(payload.length);
+    }
+    frame.write(mask);
+    for (var i = 0; i < payload.length; i++) {
+      frame.write(payload[i] ^ mask[i % 4]);
+    }
+    output.write(frame.toByteArray());
+  }
+
+  private static Frame read(final Socket socket) throws IOException {
+    final var input = new DataInputStream(socket.getInputStream());
+    final var first = input.readUnsignedByte();
+    long length = input.readUnsignedByte();
+    assertEquals(0, length & 0x80, "server frames are unmasked");
+    if (length == 126) {
+      length = input.readUnsignedShort();
+    } else if (length == 127) {
+      length = input.readLong();
+    }
+    final var payload = new byte[(int) length];
+    input.readFully(payload);
+    assertEquals(0x80, first & 0x80, "server frames are not fragmented");
+    return new Frame(first & 0x0f, payload);
+  }
+
+  @Test
+  void testEchoAndFragmentedMessages() throws Exception {
+    start(new Echo());
+
+    try (var socket = connect()) {
+      var output = socket.getOutputStream();
+      send(output, true, 0x1, "hello".getBytes(StandardCharsets.UTF_8));
+      assertEquals("hello", read(socket).text());
+
+      var large = new byte[20_000];
+      for (var i = 0; i < large.length; i++) {
+        large[i] = (byte) i;
+      }
+      send(output, false, 0x2, new byte[] {1, 2, 3});
+      send(output, true, 0x9, "ping".getBytes(StandardCharsets.UTF_8));
+      send(output, false, 0x0, new byte[0]);
+      send(output, true, 0x0, large);
+
+      var pong = read(socket);
+      assertEquals(0xa, pong.opcode);
+      assertEquals("ping", pong.text());
+
+      var echo = read(socket);
+      assertEquals(0x2, echo.opcode);
+      assertEquals(3 + large.length, echo.payload.length);
+      assertEquals(3, echo.payload[2]);
+      assertEquals(large[large.length - 1], echo.payload[echo.payload.length - 1]);
+
+      send(output, true, 0x8, new byte[] {0x03, (byte) 0xe8, 'b', 'y', 'e'});
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1000, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+    assertEquals(List.of("1000 bye"), closes);
+  }
+
+  @Test
+  void testFramesSentTogetherArriveInOrder() throws Exception {
+    start(
+        new Echo() {
+          @Override
+          public void onOpen(final WebSocket webSocket) {
+            for (var i = 0; i < 100; i++) {
+              webSocket.sendText("message " + i);
+            }
+            webSocket.sendBinary(ByteBuffer.allocate(5000));
+            webSocket.sendText("last");
+          }
+        });
+
+    try (var socket = connect()) {
+      for (var i = 0; i < 100; i++) {
+        assertEquals("message " + i, read(socket).text());
+      }
+      assertEquals(5000, read(socket).payload.length);
+      assertEquals("last", read(socket).text());
+    }
+  }
+
+  @Test
+  void testSendFromAnotherThread() throws Exception {
+    var opened = new CompletableFuture<WebSocket>();
+    start(
+        new Echo() {
+          @Override
+          public void onOpen(final WebSocket webSocket) {
+            opened.complete(webSocket);
+          }
+        });
+
+    try (var socket = connect()) {
+      opened.get().sendText("pushed");
+      assertEquals("pushed", read(socket).text());
+
+      opened.get().close(1001, "going away");
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1001, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+      assertEquals("going away", new String(close.payload, 2, close.payload.length - 2));
+
+      send(socket.getOutputStream(), true, 0x8, new byte[] {0x03, (byte) 0xe9});
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  void testReadingWaitsForDemand() throws Exception {
+    var subscription = new CompletableFuture<Flow.Subscription>();
+    var received = new ByteArrayOutputStream();
+    start(
+        (webSocket, text, message) ->
+            message.subscribe(
+                new Flow.Subscriber<>() {
+                  @Override
+                  public void onSubscribe(final Flow.Subscription s) {
+                    subscription.complete(s);
+                  }
+
+                  @Override
+                  public void onNext(final ByteBuffer chunk) {
+                    while (chunk.hasRemaining()) {
+                      received.write(chunk.get());
+                    }
+                  }
+
+                  @Override
+                  public void onError(final Throwable throwable) {}
+
+                  @Override
+                  public void onComplete() {
+                    webSocket.sendText(String.valueOf(received.size()));
+                  }
+                }));
+
+    try (var socket = connect()) {
+      send(socket.getOutputStream(), true, 0x2, new byte[50_000]);
+      send(socket.getOutputStream(), true, 0x9, new byte[0]);
+
+      // the ping behind the unread message is not answered until the message has been read
+      Thread.sleep(100);
+      assertEquals(0, socket.getInputStream().available());
+
+      subscription.get().request(Long.MAX_VALUE);
+      assertEquals("50000", read(socket).text());
+      assertEquals(0xa, read(socket).opcode);
+    }
+  }
+
+  @Test
+  void testProtocolErrorsCloseTheConnection() throws Exception {
+    start(new Echo());
+
+    try (var socket = connect()) {
+      // clients must mask their frames
+      socket.getOutputStream().write(new byte[] {(byte) 0x81, 0x00});
+
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1002, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+
+    try (var socket = connect()) {
+      send(socket.getOutputStream(), true, 0x2, new byte[60_000]);
+      send(socket.getOutputStream(), true, 0x2, new byte[60_000]);
+      assertEquals(60_000, read(socket).payload.length);
+      assertEquals(60_000, read(socket).payload.length);
+
+      send(socket.getOutputStream(), false, 0x2, new byte[60_000]);
+      send(socket.getOutputStream(), true, 0x0, new byte[60_000]);
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1009, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+    }
+  }
+
+  @Test
+  void testInvalidUtf8ClosesTheConnection() throws Exception {
+    start(new Echo());
+
+    try (var socket = connect()) {
+      // a character split across fragments is put back together
+      var euro = "\u20ac".getBytes(StandardCharsets.UTF_8);
+      send(socket.getOutputStream(), false, 0x1, new byte[] {'a', euro[0]});
+      send(socket.getOutputStream(), true, 0x0, new byte[] {euro[1], euro[2]});
+      assertEquals("a\u20ac", read(socket).text());
+
+      // the lead byte of a three byte sequence, then a byte that cannot continue it
+      send(socket.getOutputStream(), false, 0x1, new byte[] {'a', (byte) 0xe2});
+      send(socket.getOutputStream(), true, 0x0, new byte[] {'b', 'c'});
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1007, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+      assertEquals(-1, socket.getInputStream().read());
+    }
+
+    try (var socket = connect()) {
+      // a message that ends in the middle of a character
+      send(socket.getOutputStream(), false, 0x1, new byte[] {'a'});
+      send(socket.getOutputStream(), true, 0x0, new byte[] {(byte) 0xf0, (byte) 0x9f});
+      var close = read(socket);
+      assertEquals(0x8, close.opcode);
+      assertEquals(1007, (close.payload[0] & 0xff) << 8 | (close.payload[1] & 0xff));
+    }
+  }
+
+  @Test
+  void testInvalidUpgrades() throws Exception {
+    start(new Echo());
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client.send(HANDSHAKE.replace("Version: 13", "Version: 8")).readResponse();
+
+      assertEquals(426, response.status);
+      assertEquals("13", response.headers.get("sec-websocket-version"));
+    }
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      var response =
+          client.send(HANDSHAKE.replace("Sec-WebSocket-Key", "X-Key")).readResponse();
+
+      assertEquals(400, response.status);
+    }
+
+    try (var client = new TestClient(server.getLocalAddress())) {
+      assertEquals(404, client.send("GET /chat HTTP/1.1\r\n\r\n").readResponse().status);
+    }
+  }
+}
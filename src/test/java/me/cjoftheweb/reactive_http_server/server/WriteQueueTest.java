@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteQueueTest {
+  // Takes at most a limited number of bytes per write, like a socket with a full send buffer.
+  private static final class LimitedChannel implements GatheringByteChannel {
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private int limit;
+    private int writes = 0;
+
+    LimitedChannel(final int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] sources, final int offset, final int length) {
+      writes++;
+      var total = 0;
+      for (var i = offset; i < offset + length && total < limit; i++) {
+        while (sources[i].hasRemaining() && total < limit) {
+          written.write(sources[i].get());
+          total++;
+        }
+      }
+      return total;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] sources) {
+      return write(sources, 0, sources.length);
+    }
+
+    @Override
+    public int write(final ByteBuffer source) {
+      return (int) write(new ByteBuffer[] {source});
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+
+    String getWritten() {
+      return written.toString(StandardCharsets.ISO_8859_1);
+    }
+  }
+
+  private static ByteBuffer ascii(final String string) {
+    return ByteBuffer.wrap(string.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  @Test
+  void testBuffersAreGatheredIntoOneWrite() throws Exception {
+    var queue = new WriteQueue(0, 1024);
+    var channel = new LimitedChannel(Integer.MAX_VALUE);
+    for (var part : new String[] {"HTTP/1.1 200 OK\r\n\r\n", "", "a", "b", "c"}) {
+      queue.add(ascii(part));
+    }
+
+    assertEquals(22, queue.getQueuedBytes());
+    assertEquals(22, queue.writeTo(channel));
+    assertEquals(1, channel.writes);
+    assertEquals("HTTP/1.1 200 OK\r\n\r\nabc", channel.getWritten());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  void testPartialWritesKeepTheRestQueued() throws Exception {
+    var queue = new WriteQueue(0, 1024);
+    var channel = new LimitedChannel(5);
+    // more buffers than the initial ring holds
+    for (var i = 0; i < 20; i++) {
+      queue.add(ascii(String.format("%02d,", i)));
+    }
+
+    assertEquals(5, queue.writeTo(channel));
+    assertFalse(queue.isEmpty());
+    assertEquals(55, queue.getQueuedBytes());
+
+    for (var i = 20; i < 24; i++) {
+      queue.add(ascii(String.format("%02d,", i)));
+    }
+    channel.limit = Integer.MAX_VALUE;
+    assertEquals(67, queue.writeTo(channel));
+    assertTrue(queue.isEmpty());
+
+    var expected = new StringBuilder();
+    for (var i = 0; i < 24; i++) {
+      expected.append(String.format("%02d,", i));
+    }
+    assertEquals(expected.toString(), channel.getWritten());
+  }
+
+  @Test
+  void testWatermarks() throws Exception {
+    var queue = new WriteQueue(2, 4);
+    queue.add(ascii("abcd"));
+    assertFalse(queue.isAboveHighWatermark());
+    assertFalse(queue.isBelowLowWatermark());
+
+    queue.add(ascii("e"));
+    assertTrue(queue.isAboveHighWatermark());
+
+    queue.writeTo(new LimitedChannel(3));
+    assertFalse(queue.isAboveHighWatermark());
+    assertTrue(queue.isBelowLowWatermark());
+  }
+}
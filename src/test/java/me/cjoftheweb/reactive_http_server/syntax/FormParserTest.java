@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormParserTest {
+  private static final String FORM =
+      "name=J%C3%BCrgen+Smith&empty=&&flag&tag=a&tag=b%3Dc&q=1+1%3d2";
+
+  private static ByteBuffer bytes(final String string) {
+    return ByteBuffer.wrap(string.getBytes());
+  }
+
+  private void assertFields(final FormParser formParser) {
+    assertEquals(6, formParser.size());
+    assertEquals("name", formParser.getName(0));
+    assertEquals("J\u00fcrgen Smith", formParser.getValue(0));
+    assertEquals(Optional.of(""), formParser.get("empty"));
+    assertEquals(Optional.of(""), formParser.get("flag"));
+    assertEquals(List.of("a", "b=c"), formParser.getAll("tag"));
+    assertEquals(Optional.of("1 1=2"), formParser.get("q"));
+    assertEquals(Optional.empty(), formParser.get("missing"));
+  }
+
+  @Test
+  void testParse() throws Exception {
+    var formParser = new FormParser();
+    var byteBuffer = bytes(FORM);
+
+    formParser.offer(byteBuffer);
+    assertFalse(formParser.isDone());
+    assertEquals(5, formParser.size());
+    formParser.finish();
+
+    assertFalse(byteBuffer.hasRemaining());
+    assertTrue(formParser.isDone());
+    assertTrue(formParser.isValid());
+    assertFields(formParser);
+  }
+
+  @Test
+  void testParseByteByByte() throws Exception {
+    var formParser = new FormParser();
+
+    for (final var b : FORM.getBytes()) {
+      formParser.offer(ByteBuffer.wrap(new byte[] {b}));
+    }
+    formParser.finish();
+
+    assertFields(formParser);
+  }
+
+  @Test
+  void testReset() throws Exception {
+    var formParser = new FormParser();
+    formParser.offer(bytes(FORM + "&" + "x".repeat(1000) + "=1"));
+    formParser.finish();
+
+    formParser.reset();
+    formParser.offer(bytes("a=1"));
+    formParser.finish();
+
+    assertEquals(1, formParser.size());
+    assertEquals(Optional.of("1"), formParser.get("a"));
+    // the fields from before the reset are gone, not just uncounted
+    assertThrows(IndexOutOfBoundsException.class, () -> formParser.getName(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> formParser.getValue(1));
+  }
+
+  @Test
+  void testManyFields() throws Exception {
+    var formParser = new FormParser();
+    var form = new StringBuilder();
+    for (var i = 0; i < 1000; i++) {
+      form.append("field").append(i).append('=').append(i).append('&');
+    }
+
+    formParser.offer(bytes(form.toString()));
+    formParser.finish();
+
+    assertEquals(1000, formParser.size());
+    assertEquals(Optional.of("999"), formParser.get("field999"));
+  }
+
+  @Test
+  void testInvalidPercentEncoding() {
+    var formParser = new FormParser();
+
+    var exception = assertThrows(ParseException.class, () -> formParser.offer(bytes("a=%G1")));
+
+    assertEquals(
+        "Unexpected character G after a percent sign at character 3", exception.getMessage());
+    assertFalse(formParser.isValid());
+    assertEquals("after a percent sign", formParser.getFriendlyStatusReport());
+    assertThrows(InvalidParserException.class, () -> formParser.offer(bytes("")));
+    assertThrows(InvalidParserException.class, formParser::size);
+  }
+
+  @Test
+  void testTruncatedPercentEncoding() throws Exception {
+    var formParser = new FormParser();
+    formParser.offer(bytes("a=%4"));
+
+    assertThrows(ParseException.class, formParser::finish);
+    assertFalse(formParser.isValid());
+  }
+
+  @Test
+  void testTooManyFields() throws Exception {
+    var formParser = new FormParser(2, 0);
+
+    formParser.offer(bytes("a=1&b=2&c=3"));
+    var exception = assertThrows(TooManyFormFields.class, formParser::finish);
+
+    assertEquals(2, exception.getMaxFieldCount());
+    assertFalse(formParser.isValid());
+  }
+
+  @Test
+  void testFormTooLarge() throws Exception {
+    var formParser = new FormParser(0, 8);
+    formParser.offer(bytes("a=123456"));
+
+    var exception = assertThrows(FormTooLarge.class, () -> formParser.offer(bytes("7")));
+
+    assertEquals(8, exception.getMaxFormSize());
+    assertFalse(formParser.isValid());
+  }
+}
@@ -21,6 +21,7 @@ import org.junit.jupiter.api.Test;
 import java.nio.ByteBuffer;
 
 import static me.cjoftheweb.reactive_http_server.syntax.HttpHeaderParser.trimTrailingSpace;
+import static me.cjoftheweb.reactive_http_server.syntax.TestHelpers.assertContainsInsensitive;
 import static org.junit.jupiter.api.Assertions.*;
 
 class HttpHeaderParserTest {
@@ -223,4 +224,17 @@ class HttpHeaderParserTest {
 
     assertInvalidParser(httpHeaderParser);
   }
+
+  @Test
+  void testFriendlyStatusReportAfterFailure() {
+    var httpHeaderParser = new HttpHeaderParser();
+    var byteBuffer = ByteBuffer.wrap("Key: \r\n".getBytes());
+
+    var ex = assertThrows(ParseException.class, () -> httpHeaderParser.offer(byteBuffer));
+    assertContainsInsensitive("header field value", ex.getMessage());
+    assertContainsInsensitive("header field value", httpHeaderParser.getFriendlyStatusReport());
+
+    httpHeaderParser.reset();
+    assertContainsInsensitive("header field name", httpHeaderParser.getFriendlyStatusReport());
+  }
 }
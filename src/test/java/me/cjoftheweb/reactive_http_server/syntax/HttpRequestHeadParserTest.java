@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.HttpMethod.GET;
+import static me.cjoftheweb.reactive_http_server.HttpMethod.POST;
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_0;
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_1;
+import static me.cjoftheweb.reactive_http_server.syntax.TestHelpers.assertContainsInsensitive;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpRequestHeadParserTest {
+  private void assertInvalidParser(final HttpRequestHeadParser httpRequestHeadParser) {
+    assertFalse(httpRequestHeadParser.isValid());
+
+    assertThrows(
+        InvalidParserException.class, () -> httpRequestHeadParser.offer(ByteBuffer.allocate(0)));
+    assertThrows(InvalidParserException.class, httpRequestHeadParser::getMethod);
+    assertThrows(InvalidParserException.class, httpRequestHeadParser::getRequestTarget);
+    assertThrows(InvalidParserException.class, httpRequestHeadParser::getVersion);
+    assertThrows(InvalidParserException.class, httpRequestHeadParser::getHeaders);
+  }
+
+  @Test
+  void testParse() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer =
+        ByteBuffer.wrap(
+            "GET /index.html HTTP/1.1\r\nHost: example.com\r\nAccept: */*\r\n\r\n".getBytes());
+
+    httpRequestHeadParser.offer(byteBuffer);
+
+    assertFalse(byteBuffer.hasRemaining());
+    assertTrue(httpRequestHeadParser.isDone());
+    assertTrue(httpRequestHeadParser.isValid());
+
+    assertEquals(GET, httpRequestHeadParser.getMethod());
+    assertEquals("/index.html", httpRequestHeadParser.getRequestTarget());
+    assertEquals(HTTP_1_1, httpRequestHeadParser.getVersion());
+    assertEquals(2, httpRequestHeadParser.getHeaders().size());
+    assertEquals("example.com", httpRequestHeadParser.getHeaders().get("host").orElseThrow());
+    assertEquals("*/*", httpRequestHeadParser.getHeaders().get("Accept").orElseThrow());
+  }
+
+  @Test
+  void testParseWithoutHeaders() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.0\r\n\r\n".getBytes());
+
+    httpRequestHeadParser.offer(byteBuffer);
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(HTTP_1_0, httpRequestHeadParser.getVersion());
+    assertEquals(0, httpRequestHeadParser.getHeaders().size());
+  }
+
+  @Test
+  void testParseFragmented() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var bytes = "POST /form HTTP/1.1\r\nContent-Length: 0\r\n\r\n".getBytes();
+
+    for (var b : bytes) {
+      assertFalse(httpRequestHeadParser.isDone());
+      httpRequestHeadParser.offer(ByteBuffer.wrap(new byte[] {b}));
+    }
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(POST, httpRequestHeadParser.getMethod());
+    assertEquals("0", httpRequestHeadParser.getHeaders().get("content-length").orElseThrow());
+  }
+
+  @Test
+  void testParseExtraBytes() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: a\r\n\r\nGET".getBytes());
+
+    httpRequestHeadParser.offer(byteBuffer);
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(3, byteBuffer.remaining());
+  }
+
+  @Test
+  void testReset() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+
+    httpRequestHeadParser.offer(
+        ByteBuffer.wrap("GET / HTTP/1.1\r\nKey1: Value1\r\n\r\n".getBytes()));
+    var headers = httpRequestHeadParser.getHeaders();
+
+    httpRequestHeadParser.reset();
+    httpRequestHeadParser.offer(
+        ByteBuffer.wrap("POST /test HTTP/1.0\r\nKey2: Value2\r\n\r\n".getBytes()));
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(POST, httpRequestHeadParser.getMethod());
+    assertEquals("/test", httpRequestHeadParser.getRequestTarget());
+    assertEquals(HTTP_1_0, httpRequestHeadParser.getVersion());
+    assertEquals("Value2", httpRequestHeadParser.getHeaders().get("Key2").orElseThrow());
+    assertFalse(httpRequestHeadParser.getHeaders().contains("Key1"));
+
+    // headers handed out before the reset are left untouched
+    assertEquals("Value1", headers.get("Key1").orElseThrow());
+  }
+
+  @Test
+  void testBadRequestLine() {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer = ByteBuffer.wrap("GET  HTTP/1.1\r\n\r\n".getBytes());
+
+    assertThrows(ParseException.class, () -> httpRequestHeadParser.offer(byteBuffer));
+    assertContainsInsensitive("request target", httpRequestHeadParser.getFriendlyStatusReport());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testBadHeader() {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.1\r\nKey : Value\r\n\r\n".getBytes());
+
+    assertThrows(ParseException.class, () -> httpRequestHeadParser.offer(byteBuffer));
+    assertContainsInsensitive("header field name", httpRequestHeadParser.getFriendlyStatusReport());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testLongHeaderValue() {
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 4);
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.1\r\nKey: Value\r\n\r\n".getBytes());
+
+    var ex =
+        assertThrows(
+            HttpHeaderValueTooLong.class, () -> httpRequestHeadParser.offer(byteBuffer));
+    assertEquals(4, ex.getMaxHeaderValueLength());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testMissingFinalLineFeed() {
+    var httpRequestHeadParser = new HttpRequestHeadParser();
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.1\r\n\rX".getBytes());
+
+    assertThrows(ParseException.class, () -> httpRequestHeadParser.offer(byteBuffer));
+    assertContainsInsensitive("carriage return", httpRequestHeadParser.getFriendlyStatusReport());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testTooManyHeaders() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 0, 0, 2);
+
+    httpRequestHeadParser.offer(ByteBuffer.wrap("GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\n".getBytes()));
+    assertFalse(httpRequestHeadParser.isDone());
+
+    // the third header field is rejected on its first byte
+    var byteBuffer = ByteBuffer.wrap("C: 3\r\n\r\n".getBytes());
+    var ex = assertThrows(TooManyHttpHeaders.class, () -> httpRequestHeadParser.offer(byteBuffer));
+    assertEquals(2, ex.getMaxHeaderCount());
+    assertEquals(0, byteBuffer.position());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testYieldAfterRequestLine() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 0, 64, 0);
+    httpRequestHeadParser.yieldAfterRequestLine(true);
+    var byteBuffer = ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: example.com\r\n\r\n".getBytes());
+
+    httpRequestHeadParser.offer(byteBuffer);
+    assertTrue(httpRequestHeadParser.isRequestLineDone());
+    assertFalse(httpRequestHeadParser.isDone());
+    assertEquals("/", httpRequestHeadParser.getRequestTarget());
+    assertEquals(0, httpRequestHeadParser.getHeaders().size());
+    assertEquals(16, byteBuffer.position());
+
+    httpRequestHeadParser.offer(byteBuffer);
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(1, httpRequestHeadParser.getHeaders().size());
+
+    httpRequestHeadParser.reset();
+    assertFalse(httpRequestHeadParser.isRequestLineDone());
+  }
+
+  @Test
+  void testMaxHeaderCountAllowsExactCount() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 0, 0, 2);
+
+    httpRequestHeadParser.offer(
+        ByteBuffer.wrap("GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\n\r\n".getBytes()));
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(2, httpRequestHeadParser.getHeaders().size());
+  }
+
+  @Test
+  void testRequestHeadTooLarge() throws Exception {
+    var request = "GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\n\r\n";
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 0, request.length() - 1, 0);
+
+    var first = ByteBuffer.wrap(request.substring(0, 20).getBytes());
+    httpRequestHeadParser.offer(first);
+    assertFalse(first.hasRemaining());
+    assertEquals(20, httpRequestHeadParser.getRequestHeadSize());
+
+    var second = ByteBuffer.wrap(request.substring(20).getBytes());
+    var ex =
+        assertThrows(HttpRequestHeadTooLarge.class, () -> httpRequestHeadParser.offer(second));
+    assertEquals(request.length() - 1, ex.getMaxRequestHeadSize());
+
+    // nothing past the limit was consumed
+    assertEquals(1, second.remaining());
+    assertEquals(request.length() - 1, httpRequestHeadParser.getRequestHeadSize());
+
+    assertInvalidParser(httpRequestHeadParser);
+  }
+
+  @Test
+  void testRequestHeadAtMaxSize() throws Exception {
+    var request = "GET / HTTP/1.1\r\nA: 1\r\n\r\nGET / HTTP/1.1\r\n";
+    var headSize = request.indexOf("\r\n\r\n") + 4;
+    var httpRequestHeadParser = new HttpRequestHeadParser(0, 0, 0, headSize, 0);
+    var byteBuffer = ByteBuffer.wrap(request.getBytes());
+
+    httpRequestHeadParser.offer(byteBuffer);
+
+    assertTrue(httpRequestHeadParser.isDone());
+    assertEquals(headSize, httpRequestHeadParser.getRequestHeadSize());
+    assertEquals(headSize, byteBuffer.position());
+
+    httpRequestHeadParser.reset();
+    assertEquals(0, httpRequestHeadParser.getRequestHeadSize());
+  }
+}
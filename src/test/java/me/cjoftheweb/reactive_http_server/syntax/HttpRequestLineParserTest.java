@@ -28,6 +28,7 @@ import static me.cjoftheweb.reactive_http_server.HttpMethod.GET;
 import static me.cjoftheweb.reactive_http_server.HttpMethod.POST;
 import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_0;
 import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_1;
+import static me.cjoftheweb.reactive_http_server.syntax.TestHelpers.assertContainsInsensitive;
 import static org.junit.jupiter.api.Assertions.*;
 
 class HttpRequestLineParserTest {
@@ -319,4 +320,17 @@ class HttpRequestLineParserTest {
     assertEquals("/test", httpRequestLineParser.getRequestTarget());
     assertEquals(HTTP_1_0, httpRequestLineParser.getVersion());
   }
+
+  @Test
+  void testFriendlyStatusReportAfterFailure() {
+    var httpRequestLineParser = new HttpRequestLineParser();
+    var byteBuffer = ByteBuffer.wrap("GET  HTTP/1.1\r\n".getBytes());
+
+    var ex = assertThrows(ParseException.class, () -> httpRequestLineParser.offer(byteBuffer));
+    assertContainsInsensitive("request target", ex.getMessage());
+    assertContainsInsensitive("request target", httpRequestLineParser.getFriendlyStatusReport());
+
+    httpRequestLineParser.reset();
+    assertContainsInsensitive("method", httpRequestLineParser.getFriendlyStatusReport());
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static me.cjoftheweb.reactive_http_server.HttpStatus.NOT_FOUND;
+import static me.cjoftheweb.reactive_http_server.HttpStatus.OK;
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_0;
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_1;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpResponseHeadEncoderTest {
+  private static String decode(final ByteBuffer buffer) {
+    return StandardCharsets.ISO_8859_1.decode(buffer).toString();
+  }
+
+  @Test
+  void testEncode() {
+    var encoder = new HttpResponseHeadEncoder();
+    var headers = new HttpHeaders().add("Content-Type", "text/plain");
+
+    var buffer =
+        encoder.statusLine(HTTP_1_1, OK).headers(headers).header("Content-Length", 1234).encode();
+
+    assertEquals(
+        "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 1234\r\n\r\n",
+        decode(buffer));
+  }
+
+  @Test
+  void testEncoderIsReusable() {
+    var encoder = new HttpResponseHeadEncoder();
+
+    var first = encoder.statusLine(HTTP_1_1, OK).header("Content-Length", 0).encode();
+    var second = encoder.statusLine(HTTP_1_0, NOT_FOUND).encode();
+
+    assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n", decode(first));
+    assertEquals("HTTP/1.0 404 Not Found\r\n\r\n", decode(second));
+  }
+
+  @Test
+  void testEncodeLargeHead() {
+    var encoder = new HttpResponseHeadEncoder();
+    var value = "x".repeat(1000);
+
+    var buffer = encoder.statusLine(HTTP_1_1, OK).header("Large", value).encode();
+
+    assertEquals(String.format("HTTP/1.1 200 OK\r\nLarge: %s\r\n\r\n", value), decode(buffer));
+  }
+
+  @Test
+  void testRejectsHeaderInjection() {
+    var encoder = new HttpResponseHeadEncoder();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> encoder.statusLine(HTTP_1_1, OK).header("Key", "value\r\nInjected: true"));
+
+    // the encoder starts over after a rejected head
+    assertEquals("HTTP/1.1 200 OK\r\n\r\n", decode(encoder.statusLine(HTTP_1_1, OK).encode()));
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_1;
+import static me.cjoftheweb.reactive_http_server.syntax.TestHelpers.assertContainsInsensitive;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpResponseHeadParserTest {
+  @Test
+  void testParse() throws Exception {
+    var httpResponseHeadParser = new HttpResponseHeadParser();
+    var byteBuffer =
+        ByteBuffer.wrap(
+            "HTTP/1.1 200 OK\r\nContent-Length: 5\r\nServer: upstream\r\n\r\nhello".getBytes());
+
+    httpResponseHeadParser.offer(byteBuffer);
+
+    assertTrue(httpResponseHeadParser.isDone());
+    assertEquals(5, byteBuffer.remaining());
+
+    assertEquals(HTTP_1_1, httpResponseHeadParser.getVersion());
+    assertEquals(200, httpResponseHeadParser.getStatusCode());
+    assertEquals("OK", httpResponseHeadParser.getReasonPhrase());
+    assertEquals(2, httpResponseHeadParser.getHeaders().size());
+    assertEquals("5", httpResponseHeadParser.getHeaders().get("content-length").orElseThrow());
+  }
+
+  @Test
+  void testSplitAcrossBuffers() throws Exception {
+    var httpResponseHeadParser = new HttpResponseHeadParser();
+    var head = "HTTP/1.1 302 Found\r\nLocation: /next\r\n\r\n".getBytes();
+
+    for (var i = 0; i < head.length; i += 3) {
+      assertFalse(httpResponseHeadParser.isDone());
+      httpResponseHeadParser.offer(ByteBuffer.wrap(head, i, Math.min(3, head.length - i)));
+    }
+
+    assertTrue(httpResponseHeadParser.isDone());
+    assertEquals(302, httpResponseHeadParser.getStatusCode());
+    assertEquals("/next", httpResponseHeadParser.getHeaders().get("Location").orElseThrow());
+  }
+
+  @Test
+  void testHeaderValueTooLong() {
+    var httpResponseHeadParser = new HttpResponseHeadParser(0, 8);
+    assertThrows(
+        HttpHeaderValueTooLong.class,
+        () ->
+            httpResponseHeadParser.offer(
+                ByteBuffer.wrap("HTTP/1.1 200 OK\r\nServer: upstream-server\r\n\r\n".getBytes())));
+
+    assertFalse(httpResponseHeadParser.isValid());
+    assertContainsInsensitive("header", httpResponseHeadParser.getFriendlyStatusReport());
+    assertThrows(InvalidParserException.class, httpResponseHeadParser::getHeaders);
+  }
+
+  @Test
+  void testMissingLineFeed() {
+    var httpResponseHeadParser = new HttpResponseHeadParser();
+    var ex =
+        assertThrows(
+            ParseException.class,
+            () ->
+                httpResponseHeadParser.offer(
+                    ByteBuffer.wrap("HTTP/1.1 200 OK\r\n\rX".getBytes())));
+    assertEquals(18, ex.getOffset());
+    assertThrows(InvalidParserException.class, httpResponseHeadParser::getStatusCode);
+  }
+
+  @Test
+  void testReset() throws Exception {
+    var httpResponseHeadParser = new HttpResponseHeadParser();
+    var byteBuffer =
+        ByteBuffer.wrap(
+            "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nLocation: /1\r\n\r\n"
+                .getBytes());
+
+    httpResponseHeadParser.offer(byteBuffer);
+    assertEquals(100, httpResponseHeadParser.getStatusCode());
+    assertEquals(0, httpResponseHeadParser.getHeaders().size());
+
+    httpResponseHeadParser.reset();
+    httpResponseHeadParser.offer(byteBuffer);
+    assertTrue(httpResponseHeadParser.isDone());
+    assertEquals(201, httpResponseHeadParser.getStatusCode());
+    assertEquals(1, httpResponseHeadParser.getHeaders().size());
+  }
+}
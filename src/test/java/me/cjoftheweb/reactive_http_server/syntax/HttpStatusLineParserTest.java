@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_0;
+import static me.cjoftheweb.reactive_http_server.HttpVersion.HTTP_1_1;
+import static me.cjoftheweb.reactive_http_server.syntax.TestHelpers.assertContainsInsensitive;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpStatusLineParserTest {
+  private void assertInvalidParser(final HttpStatusLineParser httpStatusLineParser) {
+    assertFalse(httpStatusLineParser.isValid());
+
+    assertThrows(
+        InvalidParserException.class, () -> httpStatusLineParser.offer(ByteBuffer.allocate(0)));
+    assertThrows(InvalidParserException.class, httpStatusLineParser::getVersion);
+    assertThrows(InvalidParserException.class, httpStatusLineParser::getStatusCode);
+    assertThrows(InvalidParserException.class, httpStatusLineParser::getReasonPhrase);
+  }
+
+  @Test
+  void testParse() throws Exception {
+    var httpStatusLineParser = new HttpStatusLineParser();
+    var byteBuffer = ByteBuffer.wrap("HTTP/1.1 404 Not Found\r\nServer".getBytes());
+
+    httpStatusLineParser.offer(byteBuffer);
+
+    assertTrue(httpStatusLineParser.isDone());
+    assertTrue(httpStatusLineParser.isValid());
+    assertEquals("Server", new String(byteBuffer.array(), byteBuffer.position(), 6));
+
+    assertEquals(HTTP_1_1, httpStatusLineParser.getVersion());
+    assertEquals(404, httpStatusLineParser.getStatusCode());
+    assertEquals("Not Found", httpStatusLineParser.getReasonPhrase());
+  }
+
+  @Test
+  void testEmptyReasonPhrase() throws Exception {
+    for (var line : new String[] {"HTTP/1.0 204 \r\n", "HTTP/1.0 204\r\n"}) {
+      var httpStatusLineParser = new HttpStatusLineParser();
+      httpStatusLineParser.offer(ByteBuffer.wrap(line.getBytes()));
+
+      assertTrue(httpStatusLineParser.isDone());
+      assertEquals(HTTP_1_0, httpStatusLineParser.getVersion());
+      assertEquals(204, httpStatusLineParser.getStatusCode());
+      assertEquals("", httpStatusLineParser.getReasonPhrase());
+    }
+  }
+
+  @Test
+  void testByteByByte() throws Exception {
+    var httpStatusLineParser = new HttpStatusLineParser();
+    for (var b : "HTTP/1.1 200 OK\r\n".getBytes()) {
+      assertFalse(httpStatusLineParser.isDone());
+      httpStatusLineParser.offer(ByteBuffer.wrap(new byte[] {b}));
+    }
+
+    assertTrue(httpStatusLineParser.isDone());
+    assertEquals(200, httpStatusLineParser.getStatusCode());
+    assertEquals("OK", httpStatusLineParser.getReasonPhrase());
+  }
+
+  @Test
+  void testInvalidStatusCodes() {
+    var lines = new String[] {"HTTP/1.1 20 OK\r\n", "HTTP/1.1 2000 OK\r\n", "HTTP/1.1 2x0 OK\r\n"};
+    for (var line : lines) {
+      var httpStatusLineParser = new HttpStatusLineParser();
+      var ex =
+          assertThrows(
+              ParseException.class,
+              () -> httpStatusLineParser.offer(ByteBuffer.wrap(line.getBytes())));
+      assertContainsInsensitive("status code", ex.getMessage());
+
+      assertInvalidParser(httpStatusLineParser);
+    }
+  }
+
+  @Test
+  void testUnsupportedVersion() {
+    var httpStatusLineParser = new HttpStatusLineParser();
+    var ex =
+        assertThrows(
+            UnsupportedHttpVersion.class,
+            () -> httpStatusLineParser.offer(ByteBuffer.wrap("HTTP/2 200 OK\r\n".getBytes())));
+    assertEquals("HTTP/2", ex.getHttpVersion());
+
+    assertInvalidParser(httpStatusLineParser);
+  }
+
+  @Test
+  void testReset() throws Exception {
+    var httpStatusLineParser = new HttpStatusLineParser();
+    assertThrows(
+        ParseException.class,
+        () -> httpStatusLineParser.offer(ByteBuffer.wrap("HTTP/1.1  200\r\n".getBytes())));
+
+    httpStatusLineParser.reset();
+    httpStatusLineParser.offer(ByteBuffer.wrap("HTTP/1.1 503 Busy Now\r\n".getBytes()));
+
+    assertTrue(httpStatusLineParser.isDone());
+    assertEquals(503, httpStatusLineParser.getStatusCode());
+    assertEquals("Busy Now", httpStatusLineParser.getReasonPhrase());
+  }
+}
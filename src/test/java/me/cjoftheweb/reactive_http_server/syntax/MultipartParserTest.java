@@ -0,0 +1,240 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import me.cjoftheweb.reactive_http_server.HttpHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartParserTest {
+  private static final String BODY =
+      "preamble\r\n"
+          + "--xyz\r\n"
+          + "Content-Disposition: form-data; name=\"a\"\r\n"
+          + "\r\n"
+          + "first\r\n-- --xy\r\n--xy"
+          + "\r\n--xyz \t\r\n"
+          + "Content-Disposition: form-data; name=\"b\"; filename=\"b.txt\"\r\n"
+          + "Content-Type: text/plain\r\n"
+          + "\r\n"
+          + "--xyz\r\nsecond\r\n"
+          + "\r\n--xyz\r\n"
+          + "Content-Disposition: form-data; name=\"c\"\r\n"
+          + "\r\n"
+          + "\r\n--xyz--\r\n"
+          + "epilogue";
+
+  private static final class Recorder implements MultipartListener {
+    private final List<HttpHeaders> headers = new ArrayList<>();
+    private final List<String> contents = new ArrayList<>();
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    private final List<ByteBuffer> slices = new ArrayList<>();
+
+    @Override
+    public void onPartStart(final HttpHeaders headers) {
+      this.headers.add(headers);
+    }
+
+    @Override
+    public void onPartData(final ByteBuffer data) {
+      slices.add(data.duplicate());
+      while (data.hasRemaining()) {
+        content.write(data.get());
+      }
+    }
+
+    @Override
+    public void onPartEnd() {
+      contents.add(content.toString(StandardCharsets.ISO_8859_1));
+      content.reset();
+    }
+  }
+
+  private static ByteBuffer bytes(final String string) {
+    return ByteBuffer.wrap(string.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private void assertParts(final Recorder recorder) {
+    assertEquals(List.of("first\r\n-- --xy\r\n--xy", "--xyz\r\nsecond\r\n", ""), recorder.contents);
+    assertEquals(3, recorder.headers.size());
+    assertEquals(
+        "form-data; name=\"a\"", recorder.headers.get(0).get("Content-Disposition").orElseThrow());
+    assertEquals("text/plain", recorder.headers.get(1).get("Content-Type").orElseThrow());
+    assertEquals(1, recorder.headers.get(2).size());
+  }
+
+  @Test
+  void testParse() throws Exception {
+    final var recorder = new Recorder();
+    final var parser = new MultipartParser("xyz", recorder);
+    final var buffer = bytes(BODY);
+
+    parser.offer(buffer);
+
+    assertFalse(buffer.hasRemaining());
+    assertTrue(parser.isDone());
+    assertTrue(parser.isValid());
+    assertParts(recorder);
+  }
+
+  @Test
+  void testPartDataIsSlicedFromTheOfferedBuffer() throws Exception {
+    final var recorder = new Recorder();
+    final var buffer = bytes(BODY);
+
+    new MultipartParser("xyz", recorder).offer(buffer);
+
+    assertTrue(recorder.slices.stream().allMatch(slice -> slice.array() == buffer.array()));
+  }
+
+  @Test
+  void testParseEverySplit() throws Exception {
+    final var body = BODY.getBytes(StandardCharsets.ISO_8859_1);
+    for (var split = 0; split <= body.length; split++) {
+      final var recorder = new Recorder();
+      final var parser = new MultipartParser("xyz", recorder);
+
+      parser.offer(ByteBuffer.wrap(body, 0, split));
+      parser.offer(ByteBuffer.wrap(body, split, body.length - split));
+
+      assertTrue(parser.isDone());
+      assertParts(recorder);
+    }
+  }
+
+  @Test
+  void testParseByteByByte() throws Exception {
+    final var recorder = new Recorder();
+    final var parser = new MultipartParser("xyz", recorder);
+
+    for (final var b : BODY.getBytes(StandardCharsets.ISO_8859_1)) {
+      parser.offer(ByteBuffer.wrap(new byte[] {b}));
+    }
+
+    assertTrue(parser.isDone());
+    assertParts(recorder);
+  }
+
+  @Test
+  void testLongBoundary() throws Exception {
+    final var boundary = "-".repeat(20) + "a".repeat(50);
+    final var recorder = new Recorder();
+    final var parser = new MultipartParser(boundary, recorder);
+    final var content = "\r\n--" + boundary.substring(0, 69) + "b" + "x".repeat(1000);
+    final var body = "--" + boundary + "\r\n\r\n" + content + "\r\n--" + boundary + "--";
+
+    for (var i = 0; i < body.length(); i += 7) {
+      parser.offer(bytes(body.substring(i, Math.min(body.length(), i + 7))));
+    }
+
+    assertTrue(parser.isDone());
+    assertEquals(List.of(content), recorder.contents);
+  }
+
+  @Test
+  void testReset() throws Exception {
+    final var recorder = new Recorder();
+    final var parser = new MultipartParser("xyz", recorder);
+
+    parser.offer(bytes(BODY));
+    parser.reset();
+    parser.offer(bytes("--xyz\r\n\r\nagain\r\n--xyz--"));
+
+    assertTrue(parser.isDone());
+    assertEquals("again", recorder.contents.get(3));
+  }
+
+  @Test
+  void testMalformedBoundaryLine() throws Exception {
+    final var parser = new MultipartParser("xyz", new Recorder());
+
+    final var exception =
+        assertThrows(ParseException.class, () -> parser.offer(bytes("--xyz\r\n\r\n\r\n--xyzz")));
+
+    assertTrue(exception.getMessage().contains("after a boundary"));
+    assertEquals("after a boundary", parser.getFriendlyStatusReport());
+    assertFalse(parser.isValid());
+    assertThrows(InvalidParserException.class, () -> parser.offer(ByteBuffer.allocate(0)));
+  }
+
+  @Test
+  void testTooManyHeaders() {
+    final var parser = new MultipartParser("xyz", new Recorder(), 0, 0, 1);
+
+    assertThrows(
+        TooManyHttpHeaders.class, () -> parser.offer(bytes("--xyz\r\nA: 1\r\nB: 2\r\n\r\n")));
+    assertFalse(parser.isValid());
+  }
+
+  @Test
+  void testInvalidBoundary() {
+    assertThrows(IllegalArgumentException.class, () -> new MultipartParser("", new Recorder()));
+    assertThrows(
+        IllegalArgumentException.class, () -> new MultipartParser("a".repeat(71), new Recorder()));
+  }
+
+  @Test
+  void testBoundary() {
+    assertEquals(
+        Optional.of("xyz"), MultipartParser.boundary("multipart/form-data; boundary=xyz"));
+    assertEquals(
+        Optional.of("a b"),
+        MultipartParser.boundary("Multipart/Mixed;charset=utf-8; BOUNDARY=\"a b\""));
+    assertEquals(Optional.empty(), MultipartParser.boundary("text/plain; boundary=xyz"));
+    assertEquals(Optional.empty(), MultipartParser.boundary("multipart/form-data"));
+  }
+
+  @Test
+  void testCollectorSpillsLargeParts() throws Exception {
+    final var directory = Files.createTempDirectory("multipart");
+    final var large = "x".repeat(10_000);
+    final var body =
+        "--xyz\r\nName: small\r\n\r\nsmall\r\n--xyz\r\nName: large\r\n\r\n" + large + "\r\n--xyz--";
+
+    try (final var collector = new MultipartCollector(1024, directory)) {
+      final var parser = new MultipartParser("xyz", collector);
+      for (var i = 0; i < body.length(); i += 100) {
+        parser.offer(bytes(body.substring(i, Math.min(body.length(), i + 100))));
+      }
+
+      assertTrue(parser.isDone());
+      final var small = collector.getParts().get(0);
+      assertEquals("small", small.getHeaders().get("Name").orElseThrow());
+      assertEquals(bytes("small"), small.getContent().orElseThrow());
+      assertTrue(small.getFile().isEmpty());
+
+      final var spilled = collector.getParts().get(1);
+      assertEquals(large.length(), spilled.getSize());
+      assertTrue(spilled.getContent().isEmpty());
+      assertEquals(large, Files.readString(spilled.getFile().orElseThrow()));
+    } finally {
+      try (final var files = Files.list(directory)) {
+        assertEquals(0, files.count());
+      }
+      Files.delete(directory);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static me.cjoftheweb.reactive_http_server.AllocationBudget.assertWithinBudget;
+
+@Tag("allocation")
+class ParserAllocationTest {
+  // bytes allocated per parsed request line, header field, request head and form; lower these when
+  // the parsers get cheaper, and only raise them in the same change that justifies the new
+  // allocation
+  private static final long REQUEST_LINE_BUDGET = 400;
+  private static final long HEADER_BUDGET = 256;
+  private static final long REQUEST_HEAD_BUDGET = 1200;
+  private static final long FORM_BUDGET = 64;
+
+  private static final ByteBuffer REQUEST_LINE =
+      ByteBuffer.wrap("GET /index.html?page=1 HTTP/1.1\r\n".getBytes()).asReadOnlyBuffer();
+  private static final ByteBuffer HEADER =
+      ByteBuffer.wrap("Accept-Language: en-US,en;q=0.9\r\n".getBytes()).asReadOnlyBuffer();
+  private static final ByteBuffer REQUEST_HEAD =
+      ByteBuffer.wrap(
+              ("GET /index.html?page=1 HTTP/1.1\r\n"
+                      + "Host: localhost\r\n"
+                      + "User-Agent: reactive-http-server\r\n"
+                      + "Accept: */*\r\n"
+                      + "Accept-Language: en-US,en;q=0.9\r\n"
+                      + "\r\n")
+                  .getBytes())
+          .asReadOnlyBuffer();
+  private static final ByteBuffer FORM =
+      ByteBuffer.wrap("name=J%C3%BCrgen+Smith&email=j%40example.com&tag=a&tag=b".getBytes())
+          .asReadOnlyBuffer();
+
+  @Test
+  void testRequestLineParser() throws Exception {
+    var httpRequestLineParser = new HttpRequestLineParser(8000);
+
+    assertWithinBudget(
+        "HttpRequestLineParser",
+        REQUEST_LINE_BUDGET,
+        () -> {
+          httpRequestLineParser.reset();
+          httpRequestLineParser.offer(REQUEST_LINE.duplicate());
+        });
+  }
+
+  @Test
+  void testHeaderParser() throws Exception {
+    var httpHeaderParser = new HttpHeaderParser(256, 8192);
+
+    assertWithinBudget(
+        "HttpHeaderParser",
+        HEADER_BUDGET,
+        () -> {
+          httpHeaderParser.reset();
+          httpHeaderParser.offer(HEADER.duplicate());
+        });
+  }
+
+  @Test
+  void testRequestHeadParser() throws Exception {
+    var httpRequestHeadParser = new HttpRequestHeadParser(8000, 256, 8192);
+
+    assertWithinBudget(
+        "HttpRequestHeadParser",
+        REQUEST_HEAD_BUDGET,
+        () -> {
+          httpRequestHeadParser.reset();
+          httpRequestHeadParser.offer(REQUEST_HEAD.duplicate());
+        });
+  }
+
+  @Test
+  void testFormParser() throws Exception {
+    var formParser = new FormParser(100, 8192);
+
+    assertWithinBudget(
+        "FormParser",
+        FORM_BUDGET,
+        () -> {
+          formParser.reset();
+          formParser.offer(FORM.duplicate());
+          formParser.finish();
+        });
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Christian Howe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.cjoftheweb.reactive_http_server.syntax;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static me.cjoftheweb.reactive_http_server.syntax.WebSocketFrameParser.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketFrameParserTest {
+  // the masked "Hello" from RFC 6455 section 5.7
+  private static final byte[] MASKED_HELLO = {
+    (byte) 0x81, (byte) 0x85, 0x37, (byte) 0xfa, 0x21, 0x3d, 0x7f, (byte) 0x9f, 0x4d, 0x51, 0x58
+  };
+
+  private static String payload(final WebSocketFrameParser parser, final ByteBuffer buffer) {
+    final var payload = parser.readPayload(buffer);
+    final var bytes = new byte[payload.remaining()];
+    payload.get(bytes);
+    return new String(bytes);
+  }
+
+  @Test
+  void testParseMaskedFrame() throws Exception {
+    var parser = new WebSocketFrameParser();
+    var buffer = ByteBuffer.wrap(MASKED_HELLO.clone());
+
+    parser.offer(buffer);
+
+    assertTrue(parser.isHeaderDone());
+    assertFalse(parser.isDone());
+    assertTrue(parser.isFin());
+    assertTrue(parser.isMasked());
+    assertEquals(TEXT, parser.getOpcode());
+    assertEquals(5, parser.getPayloadLength());
+    assertEquals("Hello", payload(parser, buffer));
+    assertTrue(parser.isDone());
+    assertFalse(buffer.hasRemaining());
+  }
+
+  @Test
+  void testParseByteByByte() throws Exception {
+    var parser = new WebSocketFrameParser();
+    var payload = new StringBuilder();
+
+    for (final var b : MASKED_HELLO) {
+      var buffer = ByteBuffer.wrap(new byte[] {b});
+      if (!parser.isHeaderDone()) {
+        parser.offer(buffer);
+      } else {
+        payload.append(payload(parser, buffer));
+      }
+    }
+
+    assertTrue(parser.isDone());
+    assertEquals("Hello", payload.toString());
+  }
+
+  @Test
+  void testExtendedLengths() throws Exception {
+    for (final var length : new int[] {125, 126, 65535, 65536}) {
+      var buffer = ByteBuffer.allocate(WebSocketFrameEncoder.headerLength(length) + length);
+      WebSocketFrameEncoder.putHeader(buffer, false, BINARY, length).position(buffer.limit());
+      buffer.flip();
+      var parser = new WebSocketFrameParser();
+
+      parser.offer(buffer);
+
+      assertFalse(parser.isFin());
+      assertFalse(parser.isMasked());
+      assertEquals(length, parser.getPayloadLength());
+      assertEquals(length, parser.readPayload(buffer).remaining());
+      assertTrue(parser.isDone());
+    }
+  }
+
+  @Test
+  void testUnmaskMatchesBytewiseUnmasking() {
+    var random = new Random(0);
+    var mask = random.nextInt();
+    for (final var order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      for (var offset = 0; offset < 8; offset++) {
+        var bytes = new byte[37];
+        random.nextBytes(bytes);
+        var buffer = ByteBuffer.wrap(bytes.clone()).order(order);
+
+        WebSocketFrameParser.unmask(buffer, 3, 37, mask, offset);
+
+        for (var i = 3; i < 37; i++) {
+          var maskByte = (byte) (mask >>> (24 - ((offset + i - 3) % 4) * 8));
+          assertEquals((byte) (bytes[i] ^ maskByte), buffer.get(i));
+        }
+        assertEquals(bytes[2], buffer.get(2));
+      }
+    }
+  }
+
+  @Test
+  void testInvalidFrames() {
+    var frames =
+        new byte[][] {
+          {(byte) 0xc1, 0x00}, // reserved bit
+          {(byte) 0x83, 0x00}, // unknown opcode
+          {(byte) 0x09, 0x00}, // fragmented ping
+          {(byte) 0x88, 0x7e, 0x00, 0x7e}, // long close
+          {(byte) 0x82, 0x7f, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0} // negative length
+        };
+
+    for (final var frame : frames) {
+      var parser = new WebSocketFrameParser();
+
+      assertThrows(ParseException.class, () -> parser.offer(ByteBuffer.wrap(frame)));
+      assertFalse(parser.isValid());
+      assertThrows(InvalidParserException.class, parser::getOpcode);
+    }
+  }
+
+  @Test
+  void testFrameTooLarge() {
+    var parser = new WebSocketFrameParser(100);
+
+    var exception =
+        assertThrows(
+            WebSocketFrameTooLarge.class,
+            () -> parser.offer(ByteBuffer.wrap(new byte[] {(byte) 0x82, 0x7e, 0x00, 0x65})));
+
+    assertEquals(100, exception.getMaxPayloadLength());
+    assertFalse(parser.isValid());
+  }
+
+  @Test
+  void testReset() throws Exception {
+    var parser = new WebSocketFrameParser();
+    var buffer = ByteBuffer.wrap(new byte[] {(byte) 0x89, 0x00, (byte) 0x8a, 0x00});
+
+    parser.offer(buffer);
+    assertTrue(parser.isDone());
+    assertEquals(PING, parser.getOpcode());
+    assertTrue(parser.isControlFrame());
+
+    parser.reset();
+    parser.offer(buffer);
+    assertTrue(parser.isDone());
+    assertEquals(PONG, parser.getOpcode());
+  }
+}